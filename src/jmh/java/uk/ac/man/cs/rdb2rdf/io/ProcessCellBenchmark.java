@@ -0,0 +1,88 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares CSV.processCell against the previous escapeXml11 call on cells
+ * shaped like encounter ids, ICD9 codes, drug classes and free-text names.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessCellBenchmark {
+
+    private static final int CELLS = 4096;
+
+    private static final String[] CLASSES = {
+            "ANALGESICS", "ANTIBIOTICS", "ANTICOAGULANTS", "BETA-BLOCKERS",
+            "DIURETICS", "INSULINS", "STATINS", "ANTIHISTAMINES"
+    };
+
+    // share of cells that need escaping, in percent
+    @Param({"0", "5"})
+    public int escaped;
+
+    private String[] cells;
+    private EscapeCache cache;
+
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        cells = new String[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            String cell;
+            switch (i % 4) {
+                case 0:
+                    cell = Integer.toString(100000 + random.nextInt(900000));
+                    break;
+                case 1:
+                    cell = (100 + random.nextInt(900)) + "." + random.nextInt(100);
+                    break;
+                case 2:
+                    cell = CLASSES[random.nextInt(CLASSES.length)];
+                    break;
+                default:
+                    cell = "Acetaminophen " + random.nextInt(1000) + " mg tablet";
+            }
+            if (random.nextInt(100) < escaped) {
+                cell = cell + " & \"co\"";
+            }
+            cells[i] = cell;
+        }
+        cache = new EscapeCache();
+    }
+
+
+    @Benchmark
+    public void escapeXml11(Blackhole bh) {
+        for (String cell : cells) {
+            bh.consume(StringEscapeUtils.escapeXml11(cell));
+        }
+    }
+
+
+    @Benchmark
+    public void processCell(Blackhole bh) {
+        for (String cell : cells) {
+            bh.consume(CSV.processCell(cell));
+        }
+    }
+
+
+    @Benchmark
+    public void processCellCached(Blackhole bh) {
+        for (String cell : cells) {
+            bh.consume(cache.processCell(cell));
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package uk.ac.man.cs.rdb2rdf.poc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static uk.ac.man.cs.rdb2rdf.poc.CSV2OWLConverter.IRI_DELIMITER;
+import static uk.ac.man.cs.rdb2rdf.poc.CSV2OWLConverter.IRI_NAME;
+
+/**
+ * EventDateComparator on prescription and lab events annotated with year,
+ * month and day, as TimeScaleConverter orders them per encounter: single
+ * comparisons and sorting the events of each encounter.
+ *
+ *   java -jar target/benchmarks.jar EventDateComparator -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDateComparatorBenchmark {
+
+    private static final int ENCOUNTERS = 256;
+
+    // events per encounter
+    @Param({"16"})
+    public int events;
+
+    private EventDateComparator comparator;
+    private OWLAxiom[] axioms;
+    private List<List<OWLAxiom>> encounters;
+
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        OWLDataFactory factory = OWLManager.getOWLDataFactory();
+        Vocabulary vocab = new Vocabulary(factory);
+        comparator = new EventDateComparator(true);
+        axioms = new OWLAxiom[ENCOUNTERS * events];
+        encounters = new ArrayList<>();
+        for (int i = 0; i < ENCOUNTERS; i++) {
+            OWLNamedIndividual enc = factory.getOWLNamedIndividual(IRI.create(IRI_NAME + IRI_DELIMITER + "E" + i));
+            // events of an encounter fall within a few days
+            int year = 2010 + random.nextInt(8);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(25);
+            List<OWLAxiom> list = new ArrayList<>();
+            for (int j = 0; j < events; j++) {
+                boolean lab = random.nextBoolean();
+                OWLObjectProperty prop = lab ? vocab.orderedLab : vocab.prescribedDrug;
+                String name = (lab ? "L" : "M") + random.nextInt(500);
+                OWLNamedIndividual ind = factory.getOWLNamedIndividual(IRI.create(IRI_NAME + IRI_DELIMITER + name));
+                Set<OWLAnnotation> annots = new HashSet<>();
+                annots.add(factory.getOWLAnnotation(vocab.year, factory.getOWLLiteral(year)));
+                annots.add(factory.getOWLAnnotation(vocab.month, factory.getOWLLiteral(month)));
+                annots.add(factory.getOWLAnnotation(vocab.day, factory.getOWLLiteral(day + random.nextInt(4))));
+                OWLAxiom axiom = factory.getOWLObjectPropertyAssertionAxiom(prop, enc, ind, annots);
+                axioms[i * events + j] = axiom;
+                list.add(axiom);
+            }
+            encounters.add(list);
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ENCOUNTERS)
+    public void compare(Blackhole bh) {
+        // the first two events of each encounter
+        for (int i = 1; i < axioms.length; i += events) {
+            bh.consume(comparator.compare(axioms[i - 1], axioms[i]));
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ENCOUNTERS)
+    public void sortEncounters(Blackhole bh) {
+        for (List<OWLAxiom> list : encounters) {
+            List<OWLAxiom> copy = new ArrayList<>(list);
+            copy.sort(comparator);
+            bh.consume(copy);
+        }
+    }
+
+}
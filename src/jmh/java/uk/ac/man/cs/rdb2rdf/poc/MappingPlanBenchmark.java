@@ -0,0 +1,125 @@
+package uk.ac.man.cs.rdb2rdf.poc;
+
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import uk.ac.man.cs.rdb2rdf.io.Row;
+import uk.ac.man.cs.rdb2rdf.io.RowProcessor;
+import uk.ac.man.cs.rdb2rdf.map.MappingLoader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per millisecond of each bundled mapping plan next to the
+ * processRowAs* method of CSV2OWLConverter it replaces, on the same
+ * synthetic rows as {@link RowMappingBenchmark}:
+ *   java -jar target/benchmarks.jar MappingPlan -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingPlanBenchmark {
+
+    @Param({"vitals_diagnosis_icd9", "vitals_diagnosis", "medicine_lab_diagnosis_time", "medicine_lab_time",
+            "medicine_diagnosis_icd9", "medicine_diagnosis_icd9_rich", "diagnosis_icd9_rich",
+            "medicine_diagnosis_icd9_demographics_rich", "population_diagnosis_icd9_patient_id",
+            "population_diagnosis_icd9", "population_diagnosis", "non_numeric_vital_diagnosis_medicine",
+            "orders"})
+    private String mapping;
+
+    private RowProcessor method;
+    private RowProcessor plan;
+    private Row[] rows;
+    private RowMappingBenchmark.CountingSink sink;
+
+
+    @Setup
+    public void setup() throws OWLOntologyCreationException, IOException {
+        RowMappingBenchmark data = new RowMappingBenchmark();
+        data.setup();
+        CSV2OWLConverter converter = data.converter;
+        sink = new RowMappingBenchmark.CountingSink();
+        plan = MappingLoader.initPlan(mapping, OWLManager.getOWLDataFactory(), converter.icd9Codes);
+        switch (mapping) {
+            case "vitals_diagnosis_icd9":
+                method = converter::processRowAsVitalsDiagnosisICD9;
+                rows = data.vitalsRows;
+                break;
+            case "vitals_diagnosis":
+                method = converter::processRowAsVitalsDiagnosis;
+                rows = data.vitalsRows;
+                break;
+            case "medicine_lab_diagnosis_time":
+                method = converter::processRowAsMedicineLabDiagnosisTime;
+                rows = data.medicineLabRows;
+                break;
+            case "medicine_lab_time":
+                method = converter::processRowAsMedicineLabTime;
+                rows = data.medicineLabRows;
+                break;
+            case "medicine_diagnosis_icd9":
+                method = converter::processRowAsMedicineDiagnosisICD9;
+                rows = data.medicineDiagnosisRows;
+                break;
+            case "medicine_diagnosis_icd9_rich":
+                method = converter::processRowAsMedicineDiagnosisICD9Rich;
+                rows = data.medicineDiagnosisRows;
+                break;
+            case "diagnosis_icd9_rich":
+                method = converter::processRowAsDiagnosisICD9Rich;
+                rows = data.diagnosisRows;
+                break;
+            case "medicine_diagnosis_icd9_demographics_rich":
+                method = converter::processRowAsMedicineDiagnosisICD9DemographicsRich;
+                rows = data.demographicsRows;
+                break;
+            case "population_diagnosis_icd9_patient_id":
+                method = converter::processRowAsPopulationDiagnosisICD9PatientID;
+                rows = data.populationRows;
+                break;
+            case "population_diagnosis_icd9":
+                method = converter::processRowAsPopulationDiagnosisICD9;
+                rows = data.populationRows;
+                break;
+            case "population_diagnosis":
+                method = converter::processRowAsPopulationDiagnosis;
+                rows = data.populationRows;
+                break;
+            case "non_numeric_vital_diagnosis_medicine":
+                method = converter::processRowAsNonNumericVitalDiagnosisMedicine;
+                rows = data.nonNumericRows;
+                break;
+            case "orders":
+                method = converter::processRowAsOrders;
+                rows = data.orderRows;
+                break;
+            default:
+                throw new IllegalArgumentException("No processRowAs* method for " + mapping);
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(RowMappingBenchmark.ROWS)
+    public long method() throws IOException {
+        for (Row row : rows) {
+            method.process(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(RowMappingBenchmark.ROWS)
+    public long plan() throws IOException {
+        for (Row row : rows) {
+            plan.process(row, sink);
+        }
+        return sink.count;
+    }
+
+}
@@ -0,0 +1,370 @@
+package uk.ac.man.cs.rdb2rdf.poc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import uk.ac.man.cs.rdb2rdf.io.ArrayRow;
+import uk.ac.man.cs.rdb2rdf.io.AxiomSink;
+import uk.ac.man.cs.rdb2rdf.io.Checkpoint;
+import uk.ac.man.cs.rdb2rdf.io.Row;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per millisecond of the row processors of CSV2OWLConverter and
+ * ABoxBuilder, and of the helpers they call for every row, on synthetic
+ * rows shaped like the exports: encounter ids, ICD9 codes of diagnoses,
+ * procedures and V/E codes, drug codes and classes, lab names, ages and
+ * timestamps. The axioms go to a sink that only keeps the last set.
+ *
+ * Run with the gc profiler to see the allocation rate per row:
+ *   java -jar target/benchmarks.jar RowMapping -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    static final int ROWS = 1024;
+
+    private static final String ICD9_IRI = "http://purl.bioontology.org/ontology/ICD9CM/";
+
+    private static final String[] VITALS = {"Pulse", "Systolic", "Diastolic", "Respiration", "Weight"};
+    private static final String[] RESULTS = {"Never", "Former", "Current", "Positive", "Negative"};
+    private static final String[] GENDERS = {"Male", "Female", "Unknown"};
+    private static final String[] RACES = {"Caucasian", "African American", "Hispanic", "Asian", "Other"};
+    private static final String[] TYPES = {"Inpatient", "Outpatient", "Emergency"};
+
+    // the converter and the rows are package-private for MappingPlanBenchmark
+    CSV2OWLConverter converter;
+    private ABoxBuilder builder;
+    private CountingSink sink;
+
+    private String[] codes;
+    private String[] ages;
+
+    Row[] vitalsRows;
+    Row[] medicineLabRows;
+    Row[] medicineDiagnosisRows;
+    Row[] diagnosisRows;
+    Row[] demographicsRows;
+    Row[] populationRows;
+    Row[] nonNumericRows;
+    Row[] orderRows;
+    private Row[] medicineRows;
+
+
+    @Setup
+    public void setup() throws OWLOntologyCreationException {
+        Random random = new Random(42);
+        converter = new CSV2OWLConverter();
+        builder = new ABoxBuilder();
+        sink = new CountingSink();
+        OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+        // a few thousand distinct codes, all of them in the ICD9 map
+        String[] pool = new String[4096];
+        OWLClass[] classes = new OWLClass[pool.length];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = code(random);
+            classes[i] = factory.getOWLClass(IRI.create(ICD9_IRI + pool[i]));
+        }
+        converter.icd9Codes = new ICD9CodeTrie<>(pool, classes);
+        codes = new String[ROWS];
+        ages = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            codes[i] = pool[random.nextInt(pool.length)];
+            ages[i] = age(random);
+        }
+
+        vitalsRows = new Row[ROWS];
+        medicineLabRows = new Row[ROWS];
+        medicineDiagnosisRows = new Row[ROWS];
+        diagnosisRows = new Row[ROWS];
+        demographicsRows = new Row[ROWS];
+        populationRows = new Row[ROWS];
+        nonNumericRows = new Row[ROWS];
+        orderRows = new Row[ROWS];
+        medicineRows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            String enc = encounter(random);
+            String med = "M" + random.nextInt(2000);
+            String drugClass = "Class" + random.nextInt(40);
+            String brand = "Brand " + random.nextInt(500) + (random.nextInt(20) == 0 ? " & Co" : "");
+            String lab = "L" + random.nextInt(300);
+            String cond = codes[i];
+            String gender = pick(random, GENDERS);
+            String race = pick(random, RACES);
+            vitalsRows[i] = new ArrayRow(enc, pick(random, VITALS),
+                    Integer.toString(40 + random.nextInt(140)) + ".0", cond);
+            medicineLabRows[i] = new ArrayRow(enc, med, brand, drugClass, lab, "Lab " + lab,
+                    timestamp(random), timestamp(random), cond, "Condition " + cond, timestamp(random));
+            medicineDiagnosisRows[i] = new ArrayRow(enc, med, cond);
+            diagnosisRows[i] = new ArrayRow(Integer.toString(i), enc, cond);
+            demographicsRows[i] = new ArrayRow(enc, med, cond, ages[i], gender, race);
+            populationRows[i] = new ArrayRow(enc, ages[i], gender, race, cond);
+            nonNumericRows[i] = new ArrayRow(enc, "Smoking", pick(random, RESULTS), cond,
+                    pick(random, TYPES), med);
+            orderRows[i] = new ArrayRow(enc, cond, "", "", "", med,
+                    (1 + random.nextInt(50)) * 10 + " mg", timestamp(random), timestamp(random));
+            medicineRows[i] = new ArrayRow(enc, med, brand, drugClass);
+        }
+    }
+
+
+    private static String encounter(Random random) {
+        return "E" + (100000 + random.nextInt(50000));
+    }
+
+
+    /**
+     * @return a diagnosis (401, 250.00), procedure (38.93), V or E code
+     */
+    private static String code(Random random) {
+        int kind = random.nextInt(10);
+        if (kind < 6) {
+            String code = Integer.toString(1 + random.nextInt(999));
+            while (code.length() < 3) {
+                code = "0" + code;
+            }
+            int digits = random.nextInt(3);
+            return digits == 0 ? code : code + "." + digits(random, digits);
+        }
+        if (kind < 8) {
+            return digits(random, 2) + "." + digits(random, 2);
+        }
+        if (kind < 9) {
+            return "V" + digits(random, 2) + "." + digits(random, 1);
+        }
+        return "E" + (800 + random.nextInt(200)) + "." + digits(random, 1);
+    }
+
+
+    private static String digits(Random random, int n) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            buf.append((char) ('0' + random.nextInt(10)));
+        }
+        return buf.toString();
+    }
+
+
+    /**
+     * @return years, or months with a fraction for infants
+     */
+    private static String age(Random random) {
+        if (random.nextInt(10) == 0) {
+            return (1 + random.nextInt(23)) + ".5";
+        }
+        return Integer.toString(random.nextInt(100));
+    }
+
+
+    private static String timestamp(Random random) {
+        return String.format("%04d-%02d-%02d %02d:%02d:%02d",
+                2010 + random.nextInt(8), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                random.nextInt(24), random.nextInt(60), random.nextInt(60));
+    }
+
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void isDiagnosis(Blackhole bh) {
+        for (String code : codes) {
+            bh.consume(CSV2OWLConverter.isDiagnosis(code));
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void getAgeClass(Blackhole bh) {
+        for (String age : ages) {
+            bh.consume(converter.getAgeClass(age));
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long vitalsDiagnosisICD9() throws IOException {
+        for (Row row : vitalsRows) {
+            converter.processRowAsVitalsDiagnosisICD9(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long vitalsDiagnosis() throws IOException {
+        for (Row row : vitalsRows) {
+            converter.processRowAsVitalsDiagnosis(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long medicineLabDiagnosisTime() throws IOException {
+        for (Row row : medicineLabRows) {
+            converter.processRowAsMedicineLabDiagnosisTime(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long medicineLabTime() throws IOException {
+        for (Row row : medicineLabRows) {
+            converter.processRowAsMedicineLabTime(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long medicineDiagnosisICD9() throws IOException {
+        for (Row row : medicineDiagnosisRows) {
+            converter.processRowAsMedicineDiagnosisICD9(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long medicineDiagnosisICD9Rich() throws IOException {
+        for (Row row : medicineDiagnosisRows) {
+            converter.processRowAsMedicineDiagnosisICD9Rich(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long diagnosisICD9Rich() throws IOException {
+        for (Row row : diagnosisRows) {
+            converter.processRowAsDiagnosisICD9Rich(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long medicineDiagnosisICD9DemographicsRich() throws IOException {
+        for (Row row : demographicsRows) {
+            converter.processRowAsMedicineDiagnosisICD9DemographicsRich(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long populationDiagnosisICD9PatientID() throws IOException {
+        for (Row row : populationRows) {
+            converter.processRowAsPopulationDiagnosisICD9PatientID(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long populationDiagnosisICD9() throws IOException {
+        for (Row row : populationRows) {
+            converter.processRowAsPopulationDiagnosisICD9(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long populationDiagnosis() throws IOException {
+        for (Row row : populationRows) {
+            converter.processRowAsPopulationDiagnosis(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long nonNumericVitalDiagnosisMedicine() throws IOException {
+        for (Row row : nonNumericRows) {
+            converter.processRowAsNonNumericVitalDiagnosisMedicine(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long orders() throws IOException {
+        for (Row row : orderRows) {
+            converter.processRowAsOrders(row, sink);
+        }
+        return sink.count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long medicineLine() throws IOException {
+        for (Row row : medicineRows) {
+            builder.processMedicineLine(row, sink);
+        }
+        return sink.count;
+    }
+
+
+
+    /**
+     * Counts the axioms and keeps the last set, so it is not optimised away
+     */
+    static class CountingSink implements AxiomSink {
+
+        long count;
+        private Set<? extends OWLAxiom> last;
+
+        @Override
+        public void add(Set<? extends OWLAxiom> axioms) {
+            count += axioms.size();
+            last = axioms;
+        }
+
+        @Override
+        public void checkpoint(Checkpoint checkpoint) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
@@ -0,0 +1,425 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
+import org.semanticweb.owlapi.io.XMLUtils;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.Namespaces;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * ABox axioms moved out of an in-memory ontology into sorted runs on disk,
+ * see {@link OntologySink}. Each axiom becomes RDF/XML property elements
+ * keyed by subject (and an owl:Axiom element if it is annotated), so the
+ * runs can be merged into the document rendered from the rest of the
+ * ontology: the elements of a subject end up in one rdf:Description and
+ * duplicates are dropped. The namespaces of the properties get prefixes
+ * abox0, abox1, ... which the document has to declare, see
+ * {@link #addPrefixes}.
+ *
+ * The individuals of the spilled axioms are declared as the renderer
+ * declares those of the ontology.
+ *
+ * Only axioms that map to a single triple between IRIs and literals are
+ * spilled; declarations of classes and properties, and anything the
+ * document needs to type the spilled triples, stay in the ontology.
+ */
+public class ABoxSpill {
+
+    public static final String RUN_SUFFIX = ".spill-";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // property elements of the subject's rdf:Description
+    private static final int PROPERTY = 0;
+    // owl:Axiom elements reifying an annotated axiom
+    private static final int AXIOM = 1;
+
+    private static final String INDENT = "    ";
+
+    private static final String PREFIX_NAME = "abox";
+
+    private static final IRI OWL_NAMED_INDIVIDUAL = OWLRDFVocabulary.OWL_NAMED_INDIVIDUAL.getIRI();
+    private static final IRI RDF_PLAIN_LITERAL = OWL2Datatype.RDF_PLAIN_LITERAL.getIRI();
+
+    private String prefix;
+    // namespace to prefix name
+    private Map<String, String> namespaces = new HashMap<>();
+    private int prefixes;
+    private List<File> runs = new ArrayList<>();
+    private long spilled;
+
+
+    /**
+     * @param ontFile output file, the runs are written next to it
+     */
+    public ABoxSpill(File ontFile) {
+        prefix = ontFile.getPath() + RUN_SUFFIX;
+        namespaces.put(Namespaces.RDF.toString(), "rdf");
+        namespaces.put(Namespaces.RDFS.toString(), "rdfs");
+        namespaces.put(Namespaces.OWL.toString(), "owl");
+        // runs of a killed run, a resumed run spills the journal again
+        File dir = ontFile.getAbsoluteFile().getParentFile();
+        File[] stale = dir.listFiles((d, name) -> name.startsWith(ontFile.getName() + RUN_SUFFIX));
+        if (stale != null) {
+            for (File run : stale) {
+                run.delete();
+            }
+        }
+    }
+
+
+    /**
+     * @return true if the axiom can be spilled; annotation assertions only
+     *         if their subject is not an entity of the ontology, so labels
+     *         of classes and properties stay with them
+     */
+    public static boolean isSpillable(OWLAxiom axiom, OWLOntology ontology) {
+        if (axiom.isOfType(AxiomType.DECLARATION)) {
+            if (!((OWLDeclarationAxiom) axiom).getEntity().isOWLNamedIndividual()) {
+                return false;
+            }
+        } else if (!axiom.isOfType(AxiomType.CLASS_ASSERTION, AxiomType.OBJECT_PROPERTY_ASSERTION,
+                AxiomType.DATA_PROPERTY_ASSERTION, AxiomType.ANNOTATION_ASSERTION)) {
+            return false;
+        }
+        OWLObject[] triple = BinaryTriples.tripleOf(axiom);
+        if (triple == null || !isNode(triple[0]) || !isNode(triple[2])
+                || XMLUtils.getNCNameSuffix(triple[1].toString()) == null) {
+            return false;
+        }
+        for (OWLAnnotation annotation : axiom.getAnnotations()) {
+            if (!annotation.getAnnotations().isEmpty() || !isNode(annotation.getValue())
+                    || XMLUtils.getNCNameSuffix(annotation.getProperty().getIRI().toString()) == null) {
+                return false;
+            }
+        }
+        if (axiom.isOfType(AxiomType.ANNOTATION_ASSERTION)) {
+            for (OWLEntity entity : ontology.getEntitiesInSignature((IRI) triple[0])) {
+                if (!entity.isOWLNamedIndividual()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    // anonymous individuals would need node ids shared with the rest of the document
+    private static boolean isNode(OWLObject object) {
+        return !(object instanceof OWLAnonymousIndividual);
+    }
+
+
+    public boolean isEmpty() {
+        return runs.isEmpty();
+    }
+
+
+    /**
+     * @return number of axioms spilled so far
+     */
+    public long getSpilled() {
+        return spilled;
+    }
+
+
+    /**
+     * Writes the axioms, all spillable, to a new sorted run
+     */
+    public void spill(Collection<OWLAxiom> axioms) throws IOException {
+        List<Record> records = new ArrayList<>(axioms.size() + axioms.size() / 4);
+        for (OWLAxiom axiom : axioms) {
+            addRecords(axiom, records);
+        }
+        Collections.sort(records);
+        // e.g. the declarations of an individual with several assertions
+        int n = 0;
+        for (Record record : records) {
+            if (n == 0 || record.compareTo(records.get(n - 1)) != 0) {
+                records.set(n++, record);
+            }
+        }
+        File run = new File(prefix + runs.size());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+            out.writeInt(n);
+            for (Record record : records.subList(0, n)) {
+                record.write(out);
+            }
+        }
+        runs.add(run);
+        spilled += axioms.size();
+    }
+
+
+    private void addRecords(OWLAxiom axiom, List<Record> records) {
+        OWLObject[] triple = BinaryTriples.tripleOf(axiom);
+        String subject = attribute("rdf:about", iriOf(triple[0]));
+        IRI predicate = (IRI) triple[1];
+        OWLObject object = triple[2];
+        if (axiom.isOfType(AxiomType.DECLARATION)) {
+            object = OWL_NAMED_INDIVIDUAL;
+        }
+        records.add(new Record(subject, PROPERTY, element(predicate, object)));
+        // the renderer declares the individuals of the ontology, so the runs declare theirs
+        for (OWLNamedIndividual individual : axiom.getIndividualsInSignature()) {
+            records.add(new Record(attribute("rdf:about", individual.getIRI()), PROPERTY,
+                    element(BinaryTriples.RDF_TYPE, OWL_NAMED_INDIVIDUAL)));
+        }
+        if (axiom.isAnnotated()) {
+            StringBuilder buf = new StringBuilder(INDENT).append("<owl:Axiom>\n");
+            buf.append(INDENT).append(INDENT).append("<owl:annotatedSource ")
+                    .append(attribute("rdf:resource", iriOf(triple[0]))).append("/>\n");
+            buf.append(INDENT).append(INDENT).append("<owl:annotatedProperty ")
+                    .append(attribute("rdf:resource", predicate)).append("/>\n");
+            buf.append(INDENT).append(INDENT)
+                    .append(element(OWLRDFVocabulary.OWL_ANNOTATED_TARGET.getIRI(), object)).append('\n');
+            for (OWLAnnotation annotation : axiom.getAnnotations()) {
+                buf.append(INDENT).append(INDENT)
+                        .append(element(annotation.getProperty().getIRI(), annotation.getValue())).append('\n');
+            }
+            buf.append(INDENT).append("</owl:Axiom>\n");
+            records.add(new Record(subject, AXIOM, buf.toString()));
+        }
+    }
+
+
+    private static IRI iriOf(OWLObject object) {
+        return object instanceof IRI ? (IRI) object : ((OWLNamedObject) object).getIRI();
+    }
+
+
+    private static String attribute(String name, Object value) {
+        return name + "=\"" + XmlEscaper.escape(value.toString()) + '"';
+    }
+
+
+    private String element(IRI predicate, OWLObject object) {
+        String iri = predicate.toString();
+        String local = XMLUtils.getNCNameSuffix(iri);
+        String ns = iri.substring(0, iri.length() - local.length());
+        String name = namespaces.get(ns);
+        if (name == null) {
+            name = PREFIX_NAME + prefixes++;
+            namespaces.put(ns, name);
+        }
+        String qname = name + ":" + local;
+        StringBuilder buf = new StringBuilder();
+        buf.append('<').append(qname);
+        if (!(object instanceof OWLLiteral)) {
+            return buf.append(' ').append(attribute("rdf:resource", iriOf(object))).append("/>").toString();
+        }
+        OWLLiteral literal = (OWLLiteral) object;
+        if (literal.hasLang()) {
+            buf.append(' ').append(attribute("xml:lang", literal.getLang()));
+        } else if (!literal.getDatatype().getIRI().equals(RDF_PLAIN_LITERAL)) {
+            buf.append(' ').append(attribute("rdf:datatype", literal.getDatatype().getIRI()));
+        }
+        return buf.append('>').append(XmlEscaper.escape(literal.getLiteral()))
+                .append("</").append(qname).append('>').toString();
+    }
+
+
+    /**
+     * Declares the prefixes used by the runs in the format the rest of the
+     * ontology is rendered with
+     */
+    public void addPrefixes(PrefixDocumentFormat format) {
+        for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+            format.setPrefix(entry.getValue() + ":", entry.getKey());
+        }
+    }
+
+
+    /**
+     * Merges the runs into an RDF/XML document rendered from the rest of the
+     * ontology, before its closing rdf:RDF tag, and deletes the runs
+     */
+    public void mergeInto(File ontFile) throws IOException {
+        byte[] tail = cutTail(ontFile);
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(ontFile, true), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            writer.write("\n\n\n");
+            Record last = null;
+            String open = null;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                Record record = reader.current;
+                if (last == null || record.compareTo(last) != 0) {
+                    if (open != null && (record.kind != PROPERTY || !record.subject.equals(open))) {
+                        writer.write(INDENT + "</rdf:Description>\n");
+                        open = null;
+                    }
+                    if (record.kind == PROPERTY) {
+                        if (open == null) {
+                            writer.write(INDENT + "<rdf:Description " + record.subject + ">\n");
+                            open = record.subject;
+                        }
+                        writer.write(INDENT + INDENT + record.fragment + "\n");
+                    } else {
+                        writer.write(record.fragment);
+                    }
+                    last = record;
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            if (open != null) {
+                writer.write(INDENT + "</rdf:Description>\n");
+            }
+            writer.write(new String(tail, StandardCharsets.UTF_8));
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+    }
+
+
+    // removes the closing tag and whatever follows it, which are returned
+    private static byte[] cutTail(File ontFile) throws IOException {
+        byte[] end = "</rdf:RDF>".getBytes(StandardCharsets.US_ASCII);
+        try (RandomAccessFile file = new RandomAccessFile(ontFile, "rw")) {
+            long length = file.length();
+            int n = (int) Math.min(length, BUFFER_SIZE);
+            byte[] buf = new byte[n];
+            file.seek(length - n);
+            file.readFully(buf);
+            for (int i = n - end.length; i >= 0; i--) {
+                int j = 0;
+                while (j < end.length && buf[i + j] == end[j]) {
+                    j++;
+                }
+                if (j == end.length) {
+                    file.setLength(length - n + i);
+                    return Arrays.copyOfRange(buf, i, n);
+                }
+            }
+        }
+        throw new IOException("No closing rdf:RDF tag in " + ontFile);
+    }
+
+
+    /**
+     * Deletes the runs, e.g. of a failed run
+     */
+    public void delete() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+
+
+    private static class Record implements Comparable<Record> {
+
+        private String subject;
+        private int kind;
+        private String fragment;
+
+
+        Record(String subject, int kind, String fragment) {
+            this.subject = subject;
+            this.kind = kind;
+            this.fragment = fragment;
+        }
+
+
+        static Record read(DataInputStream in) throws IOException {
+            String subject = readString(in);
+            int kind = in.readByte();
+            return new Record(subject, kind, readString(in));
+        }
+
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, subject);
+            out.writeByte(kind);
+            writeString(out, fragment);
+        }
+
+
+        // writeUTF is limited to 64K, long literals are not
+        private static void writeString(DataOutputStream out, String str) throws IOException {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+
+        private static String readString(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+
+        @Override
+        public int compareTo(Record other) {
+            int res = subject.compareTo(other.subject);
+            if (res == 0) {
+                res = Integer.compare(kind, other.kind);
+            }
+            return res != 0 ? res : fragment.compareTo(other.fragment);
+        }
+    }
+
+
+
+    private static class RunReader implements Comparable<RunReader>, Closeable {
+
+        private DataInputStream in;
+        private int remaining;
+        private Record current;
+
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+            remaining = in.readInt();
+        }
+
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            remaining--;
+            current = Record.read(in);
+            return true;
+        }
+
+
+        @Override
+        public int compareTo(RunReader other) {
+            return current.compareTo(other.current);
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+}
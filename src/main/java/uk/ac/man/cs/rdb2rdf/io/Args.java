@@ -0,0 +1,44 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+/**
+ * Command line options of the form --name=value or --name,
+ * given after the positional arguments.
+ */
+public abstract class Args {
+
+    public static final String PREFIX = "--";
+
+
+    public static String get(String[] args, String name, String defValue) {
+        String key = PREFIX + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(key)) {
+                return arg.substring(key.length());
+            }
+        }
+        return defValue;
+    }
+
+
+    public static int getInt(String[] args, String name, int defValue) {
+        String value = get(args, name, null);
+        return value == null ? defValue : Integer.parseInt(value);
+    }
+
+
+    public static double getDouble(String[] args, String name, double defValue) {
+        String value = get(args, name, null);
+        return value == null ? defValue : Double.parseDouble(value);
+    }
+
+
+    public static boolean has(String[] args, String name) {
+        for (String arg : args) {
+            if (arg.equals(PREFIX + name) || arg.startsWith(PREFIX + name + "=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
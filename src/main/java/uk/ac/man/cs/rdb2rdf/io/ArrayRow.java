@@ -0,0 +1,39 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+/**
+ * Row backed by an array of Strings.
+ */
+public class ArrayRow implements Row {
+
+    private String[] cells;
+
+
+    public ArrayRow(String... cells) {
+        this.cells = cells;
+    }
+
+
+    @Override
+    public int size() {
+        return cells.length;
+    }
+
+
+    @Override
+    public CharSequence getChars(int column) {
+        return cells[column];
+    }
+
+
+    @Override
+    public String get(int column) {
+        return cells[column];
+    }
+
+
+    @Override
+    public Row copy() {
+        return this;
+    }
+
+}
@@ -0,0 +1,116 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Per-thread buffer that collects axioms and passes them on
+ * to the target sink in batches, optionally for one part of the target.
+ * Closing it flushes the remaining axioms but leaves the target open.
+ */
+public class AxiomBuffer implements AxiomSink {
+
+    public static final int DEF_BATCH_SIZE = 8192;
+
+    private AxiomSink target;
+    private int batchSize;
+    private Set<OWLAxiom> axioms;
+    // part of the target, or -1 for none
+    private int part = -1;
+
+    private PipelineMetrics metrics;
+    // axioms added by type since the last flush, counted here to keep the shared counters cold
+    private long[] typeCounts;
+    private long added;
+
+
+    public AxiomBuffer(AxiomSink target, int batchSize) {
+        this.target = target;
+        this.batchSize = batchSize;
+        axioms = new HashSet<>();
+    }
+
+
+    /**
+     * @param metrics counters of the axioms by type, updated on flush
+     */
+    public AxiomBuffer(AxiomSink target, int batchSize, PipelineMetrics metrics) {
+        this(target, batchSize);
+        this.metrics = metrics;
+        typeCounts = new long[PipelineMetrics.getTypeCount()];
+    }
+
+
+    /**
+     * @param part part of the target the axioms are for, see {@link AxiomSink#add(Set, int)}
+     */
+    public AxiomBuffer(AxiomSink target, int batchSize, PipelineMetrics metrics, int part) {
+        this(target, batchSize, metrics);
+        this.part = part;
+    }
+
+
+    public AxiomBuffer(AxiomSink target) {
+        this(target, DEF_BATCH_SIZE);
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException {
+        if (typeCounts != null) {
+            for (OWLAxiom axiom : axioms) {
+                typeCounts[axiom.getAxiomType().getIndex()]++;
+            }
+        }
+        added += axioms.size();
+        this.axioms.addAll(axioms);
+        if (this.axioms.size() >= batchSize) {
+            flush();
+        }
+    }
+
+
+    /**
+     * @return number of axioms added so far, duplicates included
+     */
+    public long getAdded() {
+        return added;
+    }
+
+
+    public void flush() throws IOException {
+        if (metrics != null) {
+            metrics.addAxioms(typeCounts);
+            Arrays.fill(typeCounts, 0);
+        }
+        if (!axioms.isEmpty()) {
+            // the target keeps the set, so start a new one
+            if (part < 0) {
+                target.add(axioms);
+            } else {
+                target.add(axioms, part);
+            }
+            axioms = new HashSet<>();
+        }
+    }
+
+
+    /**
+     * Only flushes: the target is shared and checkpointed by its owner
+     */
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        flush();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+}
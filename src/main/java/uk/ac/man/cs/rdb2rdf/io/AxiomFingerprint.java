@@ -0,0 +1,102 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.*;
+
+/**
+ * 64-bit structural fingerprints of axioms. The axiom types built by the
+ * converters are hashed from their IRIs and literals directly; any other
+ * axiom falls back to its string rendering. Annotations are included, so
+ * an annotated axiom differs from the plain one.
+ */
+public abstract class AxiomFingerprint {
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+
+    public static long of(OWLAxiom axiom) {
+        long h;
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom ax = (OWLClassAssertionAxiom) axiom;
+            h = combine(combine(1, hash(ax.getClassExpression())), hash(ax.getIndividual()));
+        } else if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLSubClassOfAxiom ax = (OWLSubClassOfAxiom) axiom;
+            h = combine(combine(2, hash(ax.getSubClass())), hash(ax.getSuperClass()));
+        } else if (axiom instanceof OWLAnnotationAssertionAxiom) {
+            OWLAnnotationAssertionAxiom ax = (OWLAnnotationAssertionAxiom) axiom;
+            h = combine(combine(combine(3, hash(ax.getProperty())),
+                    hash(ax.getSubject())), hash(ax.getValue()));
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom ax = (OWLObjectPropertyAssertionAxiom) axiom;
+            h = combine(combine(combine(4, hash(ax.getProperty())),
+                    hash(ax.getSubject())), hash(ax.getObject()));
+        } else if (axiom instanceof OWLDataPropertyAssertionAxiom) {
+            OWLDataPropertyAssertionAxiom ax = (OWLDataPropertyAssertionAxiom) axiom;
+            h = combine(combine(combine(5, hash(ax.getProperty())),
+                    hash(ax.getSubject())), hash(ax.getObject()));
+        } else if (axiom instanceof OWLDeclarationAxiom) {
+            h = combine(6, hash(((OWLDeclarationAxiom) axiom).getEntity()));
+        } else {
+            h = combine(combine(0, axiom.getAxiomType().getIndex()), hash(axiom.toString()));
+            // the rendering already covers the annotations
+            return mix(h);
+        }
+        if (axiom.isAnnotated()) {
+            // order-independent
+            long annots = 0;
+            for (OWLAnnotation annotation : axiom.getAnnotations()) {
+                annots += mix(combine(hash(annotation.getProperty()), hash(annotation.getValue())));
+            }
+            h = combine(h, annots);
+        }
+        return mix(h);
+    }
+
+
+    private static long hash(OWLObject object) {
+        if (object instanceof OWLEntity) {
+            OWLEntity entity = (OWLEntity) object;
+            return combine(entity.getEntityType().getName().hashCode(), hash(entity.getIRI().toString()));
+        }
+        if (object instanceof IRI) {
+            return combine(7, hash(object.toString()));
+        }
+        if (object instanceof OWLLiteral) {
+            OWLLiteral literal = (OWLLiteral) object;
+            long h = combine(8, hash(literal.getLiteral()));
+            h = combine(h, hash(literal.getDatatype().getIRI().toString()));
+            return combine(h, hash(literal.getLang()));
+        }
+        return combine(9, hash(object.toString()));
+    }
+
+
+    // FNV-1a over the chars
+    private static long hash(String str) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < str.length(); i++) {
+            h ^= str.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+
+    private static long combine(long h, long x) {
+        h = (h ^ mix(x)) * MIX;
+        return h ^ (h >>> 32);
+    }
+
+
+    // murmur3 finaliser
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,43 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Destination for the axioms produced by the row processors.
+ * Closing a sink completes the output (saves or flushes it).
+ */
+public interface AxiomSink extends Closeable {
+
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException;
+
+
+    /**
+     * Adds axioms of rows whose key, e.g. the encounter, falls into the
+     * given part. A sink that splits its output keeps the axioms of a part
+     * together, the others ignore the part.
+     * @param part 0 .. {@link #getParts()} - 1
+     */
+    public default void add(Set<? extends OWLAxiom> axioms, int part) throws IOException {
+        add(axioms);
+    }
+
+
+    /**
+     * @return number of parts the output is split into by key, 1 if it is not split
+     */
+    public default int getParts() {
+        return 1;
+    }
+
+
+    /**
+     * Flushes what was added so far and records the state needed
+     * to continue from this point in a resumed run.
+     */
+    public void checkpoint(Checkpoint checkpoint) throws IOException;
+
+}
@@ -0,0 +1,519 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static uk.ac.man.cs.rdb2rdf.io.BinaryTriples.*;
+
+/**
+ * Reads the binary format of {@link BinaryTriples}. The dictionary and the
+ * triple blocks are memory-mapped, so the triples can be walked by id with
+ * a {@link TripleCursor} and terms looked up without loading the file, or
+ * the whole file turned into an ontology with {@link #loadOntology}.
+ */
+public class BinaryTripleReader {
+
+    private String ontologyIRI;
+
+    private int termCount;
+    private int blockSize;
+    private int[] blockOffsets;
+    private ByteBuffer dictionary;
+
+    private int[][] annotationSets;
+    private IntBuffer[] triples;
+    private byte[] others;
+
+
+    public BinaryTripleReader(File file) throws IOException {
+        triples = new IntBuffer[KINDS.length];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // unbuffered, so the channel is left after the header
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a binary triple file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of " + file);
+            }
+            String iri = in.readUTF();
+            ontologyIRI = iri.isEmpty() ? null : iri;
+            long position = channel.position();
+            ByteBuffer header = ByteBuffer.allocate(12);
+            while (position < channel.size()) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, position + header.position()) < 0) {
+                        throw new EOFException("Truncated section header in " + file);
+                    }
+                }
+                header.flip();
+                int type = header.getInt();
+                long length = header.getLong();
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Section of " + length + " bytes in " + file
+                            + " is too large to be mapped");
+                }
+                ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position + 12, length);
+                readSection(type, section);
+                position += 12 + length;
+            }
+        }
+        if (dictionary == null) {
+            throw new IOException(file + " has no dictionary");
+        }
+    }
+
+
+    /**
+     * @return true if the file starts with the magic number of the format
+     */
+    public static boolean isBinary(File file) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(magic);
+        } catch (EOFException e) {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+
+    /**
+     * Loads a binary triple file into a new ontology of the manager
+     */
+    public static OWLOntology loadOntology(OWLOntologyManager manager, File file)
+            throws IOException, OWLOntologyCreationException {
+        return new BinaryTripleReader(file).loadOntology(manager);
+    }
+
+
+    private void readSection(int type, ByteBuffer section) {
+        switch (type) {
+            case DICTIONARY:
+                termCount = section.getInt();
+                blockSize = section.getInt();
+                blockOffsets = new int[section.getInt()];
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    blockOffsets[i] = section.getInt();
+                }
+                dictionary = section.slice();
+                break;
+            case ANNOTATIONS:
+                annotationSets = new int[section.getInt()][];
+                for (int i = 0; i < annotationSets.length; i++) {
+                    int[] pairs = new int[2 * section.getInt()];
+                    for (int j = 0; j < pairs.length; j++) {
+                        pairs[j] = section.getInt();
+                    }
+                    annotationSets[i] = pairs;
+                }
+                break;
+            case TRIPLES:
+                int kind = section.get();
+                int count = section.getInt();
+                IntBuffer rows = section.slice().asIntBuffer();
+                rows.limit(count * ROW);
+                triples[kind] = rows;
+                break;
+            case OTHER:
+                others = new byte[section.remaining()];
+                section.get(others);
+                break;
+            default:
+                // sections of later versions
+                break;
+        }
+    }
+
+
+    /**
+     * @return IRI of the ontology, or null if it is anonymous
+     */
+    public String getOntologyIRI() {
+        return ontologyIRI;
+    }
+
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+
+    /**
+     * @return number of triples of the kind, see {@link BinaryTriples#KINDS}
+     */
+    public int getTripleCount(AxiomType<?> type) {
+        int kind = kindOf(type);
+        return kind < 0 || triples[kind] == null ? 0 : triples[kind].limit() / ROW;
+    }
+
+
+    /**
+     * @return the term with the given id
+     */
+    public String getTerm(int id) {
+        if (id < 0 || id >= termCount) {
+            throw new IndexOutOfBoundsException("No term " + id);
+        }
+        TermDecoder decoder = new TermDecoder(id / blockSize);
+        for (int i = id % blockSize; i > 0; i--) {
+            decoder.next();
+        }
+        return decoder.toString();
+    }
+
+
+    /**
+     * @return all terms, indexed by id
+     */
+    public String[] getTerms() {
+        String[] terms = new String[termCount];
+        TermDecoder decoder = null;
+        for (int id = 0; id < termCount; id++) {
+            if (id % blockSize == 0) {
+                decoder = new TermDecoder(id / blockSize);
+            } else {
+                decoder.next();
+            }
+            terms[id] = decoder.toString();
+        }
+        return terms;
+    }
+
+
+    /**
+     * @return id of the term, or -1 if it is not in the dictionary
+     */
+    public int lookup(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        // last block starting at or before the term
+        int lo = 0;
+        int hi = blockOffsets.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (new TermDecoder(mid).compareTo(key) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (blockOffsets.length == 0) {
+            return -1;
+        }
+        TermDecoder decoder = new TermDecoder(lo);
+        int id = lo * blockSize;
+        while (true) {
+            int c = decoder.compareTo(key);
+            if (c == 0) {
+                return id;
+            }
+            id++;
+            if (c > 0 || id % blockSize == 0 || id >= termCount) {
+                return -1;
+            }
+            decoder.next();
+        }
+    }
+
+
+    /**
+     * @return property and value ids of an annotation set, in pairs
+     */
+    public int[] getAnnotations(int set) {
+        return annotationSets[set];
+    }
+
+
+    /**
+     * @return cursor over the triples of all kinds
+     */
+    public TripleCursor cursor() {
+        return new TripleCursor(-1);
+    }
+
+
+    /**
+     * @return cursor over the triples of one kind, e.g. class assertions
+     */
+    public TripleCursor cursor(AxiomType<?> type) {
+        int kind = kindOf(type);
+        if (kind < 0) {
+            throw new IllegalArgumentException(type + " axioms are not stored as triples");
+        }
+        return new TripleCursor(kind);
+    }
+
+
+    /**
+     * Creates the axioms of the file in a new ontology of the manager
+     */
+    public OWLOntology loadOntology(OWLOntologyManager manager) throws IOException, OWLOntologyCreationException {
+        OWLOntology ontology = ontologyIRI == null
+                ? manager.createOntology()
+                : manager.createOntology(IRI.create(ontologyIRI));
+        new OntologyBuilder(manager.getOWLDataFactory()).addAxioms(manager, ontology);
+        if (others != null) {
+            manager.addAxioms(ontology, FunctionalSyntaxWriter.readAxioms(
+                    new ByteArrayInputStream(others), "the other axioms"));
+        }
+        return ontology;
+    }
+
+
+
+    /**
+     * Decodes the front-coded terms of a block one after the other
+     */
+    private class TermDecoder {
+        private ByteBuffer data;
+        private byte[] term = new byte[64];
+        private int length;
+
+        TermDecoder(int block) {
+            data = dictionary.duplicate();
+            data.position(blockOffsets[block]);
+            length = 0;
+            read(readVarInt());
+        }
+
+        void next() {
+            length = readVarInt();
+            read(readVarInt());
+        }
+
+        private void read(int count) {
+            if (length + count > term.length) {
+                term = Arrays.copyOf(term, Math.max(2 * term.length, length + count));
+            }
+            data.get(term, length, count);
+            length += count;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        // unsigned, as the terms are sorted
+        int compareTo(byte[] key) {
+            int n = Math.min(length, key.length);
+            for (int i = 0; i < n; i++) {
+                if (term[i] != key[i]) {
+                    return (term[i] & 0xff) - (key[i] & 0xff);
+                }
+            }
+            return length - key.length;
+        }
+
+        @Override
+        public String toString() {
+            return new String(term, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+
+
+    /**
+     * Walks triples as ids without creating objects:
+     * while (cursor.next()) { cursor.subject() ... }
+     */
+    public class TripleCursor {
+        private int kind;
+        private int lastKind;
+        private int row = -1;
+        private IntBuffer rows;
+
+        TripleCursor(int kind) {
+            this.kind = kind < 0 ? 0 : kind;
+            lastKind = kind < 0 ? KINDS.length - 1 : kind;
+            rows = triples[this.kind];
+        }
+
+        public boolean next() {
+            row++;
+            while (rows == null || row * ROW >= rows.limit()) {
+                if (kind == lastKind) {
+                    return false;
+                }
+                kind++;
+                rows = triples[kind];
+                row = 0;
+            }
+            return true;
+        }
+
+        public AxiomType<?> getType() {
+            return KINDS[kind];
+        }
+
+        public int subject() {
+            return rows.get(row * ROW);
+        }
+
+        public int predicate() {
+            return rows.get(row * ROW + 1);
+        }
+
+        public int object() {
+            return rows.get(row * ROW + 2);
+        }
+
+        /**
+         * @return annotation set of the axiom, or -1
+         */
+        public int annotations() {
+            return rows.get(row * ROW + 3);
+        }
+    }
+
+
+
+    /**
+     * Creates OWL objects from ids, each term and annotation set once
+     */
+    private class OntologyBuilder {
+        private OWLDataFactory factory;
+        private String[] terms;
+        private IRI[] iris;
+        private OWLObject[] values;
+        // an IRI is mostly used for one kind of entity
+        private OWLEntity[] entities;
+        private List<Set<OWLAnnotation>> annotations;
+        private Map<IRI, EntityType<?>> entityTypes;
+
+        OntologyBuilder(OWLDataFactory factory) {
+            this.factory = factory;
+            terms = getTerms();
+            iris = new IRI[termCount];
+            values = new OWLObject[termCount];
+            entities = new OWLEntity[termCount];
+            annotations = new ArrayList<>();
+            entityTypes = new HashMap<>();
+            for (EntityType<?> type : EntityType.values()) {
+                entityTypes.put(type.getIRI(), type);
+            }
+        }
+
+        void addAxioms(OWLOntologyManager manager, OWLOntology ontology) {
+            if (annotationSets != null) {
+                for (int[] pairs : annotationSets) {
+                    Set<OWLAnnotation> set = new HashSet<>();
+                    for (int i = 0; i < pairs.length; i += 2) {
+                        set.add(factory.getOWLAnnotation(factory.getOWLAnnotationProperty(iri(pairs[i])),
+                                (OWLAnnotationValue) value(pairs[i + 1])));
+                    }
+                    annotations.add(set);
+                }
+            }
+            List<OWLAxiom> axioms = new ArrayList<>();
+            TripleCursor cursor = cursor();
+            while (cursor.next()) {
+                axioms.add(axiom(cursor));
+            }
+            // the rows are distinct, so the axioms need not be hashed twice
+            manager.addAxioms(ontology, new AbstractSet<OWLAxiom>() {
+                @Override
+                public Iterator<OWLAxiom> iterator() {
+                    return axioms.iterator();
+                }
+
+                @Override
+                public int size() {
+                    return axioms.size();
+                }
+            });
+        }
+
+        private OWLAxiom axiom(TripleCursor cursor) {
+            int s = cursor.subject();
+            int p = cursor.predicate();
+            int o = cursor.object();
+            Set<OWLAnnotation> axiomAnnotations = cursor.annotations() < 0
+                    ? Collections.emptySet()
+                    : annotations.get(cursor.annotations());
+            AxiomType<?> type = cursor.getType();
+            if (type == AxiomType.DECLARATION) {
+                return factory.getOWLDeclarationAxiom(
+                        factory.getOWLEntity(entityTypes.get(iri(o)), iri(s)), axiomAnnotations);
+            } else if (type == AxiomType.CLASS_ASSERTION) {
+                return factory.getOWLClassAssertionAxiom(entity(EntityType.CLASS, o),
+                        individual(s), axiomAnnotations);
+            } else if (type == AxiomType.OBJECT_PROPERTY_ASSERTION) {
+                return factory.getOWLObjectPropertyAssertionAxiom(entity(EntityType.OBJECT_PROPERTY, p),
+                        individual(s), individual(o), axiomAnnotations);
+            } else if (type == AxiomType.DATA_PROPERTY_ASSERTION) {
+                return factory.getOWLDataPropertyAssertionAxiom(entity(EntityType.DATA_PROPERTY, p),
+                        individual(s), (OWLLiteral) value(o), axiomAnnotations);
+            } else if (type == AxiomType.ANNOTATION_ASSERTION) {
+                return factory.getOWLAnnotationAssertionAxiom(entity(EntityType.ANNOTATION_PROPERTY, p),
+                        (OWLAnnotationSubject) value(s), (OWLAnnotationValue) value(o), axiomAnnotations);
+            } else {
+                return factory.getOWLSubClassOfAxiom(entity(EntityType.CLASS, s),
+                        entity(EntityType.CLASS, o), axiomAnnotations);
+            }
+        }
+
+        private <E extends OWLEntity> E entity(EntityType<E> type, int id) {
+            OWLEntity entity = entities[id];
+            if (entity == null || !entity.isType(type)) {
+                entity = factory.getOWLEntity(type, iri(id));
+                entities[id] = entity;
+            }
+            @SuppressWarnings("unchecked")
+            E typed = (E) entity;
+            return typed;
+        }
+
+        private IRI iri(int id) {
+            IRI iri = iris[id];
+            if (iri == null) {
+                iri = IRI.create(terms[id]);
+                iris[id] = iri;
+            }
+            return iri;
+        }
+
+        private OWLIndividual individual(int id) {
+            return isBlank(terms[id])
+                    ? (OWLAnonymousIndividual) value(id)
+                    : entity(EntityType.NAMED_INDIVIDUAL, id);
+        }
+
+        // IRI, literal or anonymous individual
+        private OWLObject value(int id) {
+            OWLObject value = values[id];
+            if (value == null) {
+                String term = terms[id];
+                if (isLiteral(term)) {
+                    value = toLiteral(term, factory);
+                } else if (isBlank(term)) {
+                    value = toBlank(term, factory);
+                } else {
+                    value = iri(id);
+                }
+                values[id] = value;
+            }
+            return value;
+        }
+    }
+
+}
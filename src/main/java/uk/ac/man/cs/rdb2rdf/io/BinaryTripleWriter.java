@@ -0,0 +1,409 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.functional.renderer.FunctionalSyntaxObjectRenderer;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.util.DefaultPrefixManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static uk.ac.man.cs.rdb2rdf.io.BinaryTriples.*;
+
+/**
+ * Writes axioms in the binary format of {@link BinaryTriples}. Terms are
+ * given ids and axioms turned into int rows as they come; the dictionary is
+ * sorted and the rows remapped and sorted when the writer is closed, so the
+ * heap holds 16 bytes per axiom plus the distinct terms.
+ *
+ * As with {@link OntologySink}, checkpoints keep a journal of the axioms
+ * in functional syntax, from which a resumed run restores the rows.
+ */
+public class BinaryTripleWriter implements AxiomSink {
+
+    private OWLOntology ontology;
+    private File ontFile;
+
+    private Map<String, Integer> termIds;
+    private List<String> terms;
+    private IntList[] rows;
+    private Map<Set<OWLAnnotation>, Integer> annotationIds;
+    private List<int[]> annotationSets;
+    private List<OWLAxiom> others;
+
+    private File journalFile;
+    private FunctionalSyntaxWriter journal;
+
+
+    public BinaryTripleWriter(OWLOntology ontology, File ontFile) throws IOException {
+        this(ontology, ontFile, null);
+    }
+
+
+    /**
+     * @param checkpoint journal the axioms for checkpoints, or null for none
+     */
+    public BinaryTripleWriter(OWLOntology ontology, File ontFile, Checkpoint checkpoint) throws IOException {
+        this.ontology = ontology;
+        this.ontFile = ontFile;
+        termIds = new HashMap<>();
+        terms = new ArrayList<>();
+        rows = new IntList[KINDS.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new IntList();
+        }
+        annotationIds = new HashMap<>();
+        annotationSets = new ArrayList<>();
+        others = new ArrayList<>();
+        if (checkpoint != null) {
+            journalFile = new File(ontFile.getPath() + OntologySink.JOURNAL_SUFFIX);
+            journal = new FunctionalSyntaxWriter(ontology, journalFile, checkpoint, false);
+            if (checkpoint.isResumed()) {
+                // includes the axioms of the ontology
+                Out.p("Loading " + journalFile);
+                addRows(FunctionalSyntaxWriter.readJournal(journalFile));
+                return;
+            }
+        }
+        addRows(ontology.getAxioms());
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException {
+        addRows(axioms);
+        if (journal != null) {
+            journal.add(axioms);
+        }
+    }
+
+
+    private void addRows(Set<? extends OWLAxiom> axioms) {
+        for (OWLAxiom axiom : axioms) {
+            if (!addRow(axiom)) {
+                others.add(axiom);
+            }
+        }
+    }
+
+
+    /**
+     * @return false if the axiom is not one of the kinds stored as triples
+     */
+    private boolean addRow(OWLAxiom axiom) {
+        int kind = kindOf(axiom.getAxiomType());
+        if (kind < 0) {
+            return false;
+        }
+        OWLObject[] triple = tripleOf(axiom);
+        if (triple == null) {
+            return false;
+        }
+        int annotations = -1;
+        if (axiom.isAnnotated()) {
+            annotations = annotationSetId(axiom.getAnnotations());
+            if (annotations < 0) {
+                return false;
+            }
+        }
+        IntList kindRows = rows[kind];
+        kindRows.add(termId(termOf(triple[0])));
+        kindRows.add(termId(termOf(triple[1])));
+        kindRows.add(termId(termOf(triple[2])));
+        kindRows.add(annotations);
+        return true;
+    }
+
+
+    /**
+     * @return id of the set, or -1 if an annotation is annotated itself
+     */
+    private int annotationSetId(Set<OWLAnnotation> annotations) {
+        Integer id = annotationIds.get(annotations);
+        if (id != null) {
+            return id;
+        }
+        int[] pairs = new int[2 * annotations.size()];
+        int i = 0;
+        for (OWLAnnotation annotation : annotations) {
+            if (!annotation.getAnnotations().isEmpty()) {
+                return -1;
+            }
+            pairs[i++] = termId(termOf(annotation.getProperty()));
+            pairs[i++] = termId(termOf(annotation.getValue()));
+        }
+        annotationIds.put(annotations, annotationSets.size());
+        annotationSets.add(pairs);
+        return annotationSets.size() - 1;
+    }
+
+
+    private int termId(String term) {
+        Integer id = termIds.get(term);
+        if (id == null) {
+            id = terms.size();
+            termIds.put(term, id);
+            terms.add(term);
+        }
+        return id;
+    }
+
+
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        if (journal == null) {
+            throw new IOException("Checkpoints need a journal: create the sink with the checkpoint");
+        }
+        journal.checkpoint(checkpoint);
+    }
+
+
+    /**
+     * Sorts the dictionary and the rows and writes the file
+     */
+    @Override
+    public void close() throws IOException {
+        // ids in the order of the sorted terms
+        byte[][] bytes = new byte[terms.size()][];
+        Integer[] order = new Integer[terms.size()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = terms.get(i).getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(bytes[a], bytes[b]));
+        int[] remap = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            remap[order[i]] = i;
+        }
+        termIds = null;
+        terms = null;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(ontFile), FunctionalSyntaxWriter.BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(ontology.isAnonymous() ? "" : ontology.getOntologyID().getOntologyIRI().get().toString());
+            writeDictionary(out, bytes, order);
+            writeAnnotations(out, remap);
+            for (int kind = 0; kind < KINDS.length; kind++) {
+                writeTriples(out, kind, remap);
+            }
+            if (!others.isEmpty()) {
+                writeOthers(out);
+            }
+        }
+        if (journal != null) {
+            journal.close();
+            journalFile.delete();
+        }
+    }
+
+
+    // unsigned, i.e. the order of the code points
+    private static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i]) {
+                return (a[i] & 0xff) - (b[i] & 0xff);
+            }
+        }
+        return a.length - b.length;
+    }
+
+
+    private void writeDictionary(DataOutputStream out, byte[][] bytes, Integer[] order) throws IOException {
+        int blocks = (order.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] offsets = new int[blocks];
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] prev = null;
+        for (int i = 0; i < order.length; i++) {
+            byte[] term = bytes[order[i]];
+            if (i % BLOCK_SIZE == 0) {
+                offsets[i / BLOCK_SIZE] = data.size();
+                writeVarInt(data, term.length);
+                data.write(term, 0, term.length);
+            } else {
+                int shared = 0;
+                int n = Math.min(prev.length, term.length);
+                while (shared < n && prev[shared] == term[shared]) {
+                    shared++;
+                }
+                writeVarInt(data, shared);
+                writeVarInt(data, term.length - shared);
+                data.write(term, shared, term.length - shared);
+            }
+            prev = term;
+        }
+        out.writeInt(DICTIONARY);
+        out.writeLong(12 + 4L * blocks + data.size());
+        out.writeInt(order.length);
+        out.writeInt(BLOCK_SIZE);
+        out.writeInt(blocks);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        data.writeTo(out);
+    }
+
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+
+    private void writeAnnotations(DataOutputStream out, int[] remap) throws IOException {
+        long length = 4;
+        for (int[] pairs : annotationSets) {
+            length += 4 + 4L * pairs.length;
+        }
+        out.writeInt(ANNOTATIONS);
+        out.writeLong(length);
+        out.writeInt(annotationSets.size());
+        for (int[] pairs : annotationSets) {
+            out.writeInt(pairs.length / 2);
+            for (int id : pairs) {
+                out.writeInt(remap[id]);
+            }
+        }
+    }
+
+
+    private void writeTriples(DataOutputStream out, int kind, int[] remap) throws IOException {
+        IntList list = rows[kind];
+        int[] data = list.data;
+        int n = list.size / ROW;
+        for (int i = 0; i < list.size; i += ROW) {
+            data[i] = remap[data[i]];
+            data[i + 1] = remap[data[i + 1]];
+            data[i + 2] = remap[data[i + 2]];
+        }
+        sort(data, 0, n - 1);
+        // without dedup the same axiom may have been added more than once
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (count == 0 || compareRows(data, i, data, count - 1) != 0) {
+                System.arraycopy(data, i * ROW, data, count * ROW, ROW);
+                count++;
+            }
+        }
+        out.writeInt(TRIPLES);
+        out.writeLong(5 + 4L * ROW * count);
+        out.writeByte(kind);
+        out.writeInt(count);
+        for (int i = 0; i < count * ROW; i++) {
+            out.writeInt(data[i]);
+        }
+        rows[kind] = null;
+    }
+
+
+    // quicksort of rows lo..hi by subject, predicate, object, annotations
+    private static void sort(int[] data, int lo, int hi) {
+        int[] pivot = new int[ROW];
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            // median of three into the middle
+            if (compareRows(data, mid, data, lo) < 0) {
+                swap(data, mid, lo);
+            }
+            if (compareRows(data, hi, data, lo) < 0) {
+                swap(data, hi, lo);
+            }
+            if (compareRows(data, hi, data, mid) < 0) {
+                swap(data, hi, mid);
+            }
+            System.arraycopy(data, mid * ROW, pivot, 0, ROW);
+            int i = lo - 1;
+            int j = hi + 1;
+            while (true) {
+                do {
+                    i++;
+                } while (compareRows(data, i, pivot, 0) < 0);
+                do {
+                    j--;
+                } while (compareRows(data, j, pivot, 0) > 0);
+                if (i >= j) {
+                    break;
+                }
+                swap(data, i, j);
+            }
+            // recurse into the smaller part
+            if (j - lo < hi - j) {
+                sort(data, lo, j);
+                lo = j + 1;
+            } else {
+                sort(data, j + 1, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compareRows(data, j, data, j - 1) < 0; j--) {
+                swap(data, j, j - 1);
+            }
+        }
+    }
+
+
+    private static int compareRows(int[] a, int i, int[] b, int j) {
+        for (int k = 0; k < ROW; k++) {
+            int c = Integer.compare(a[i * ROW + k], b[j * ROW + k]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+
+    private static void swap(int[] data, int i, int j) {
+        for (int k = 0; k < ROW; k++) {
+            int tmp = data[i * ROW + k];
+            data[i * ROW + k] = data[j * ROW + k];
+            data[j * ROW + k] = tmp;
+        }
+    }
+
+
+    private void writeOthers(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream document = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(document, StandardCharsets.UTF_8);
+        DefaultPrefixManager prefixManager = new DefaultPrefixManager();
+        for (Map.Entry<String, String> prefix : prefixManager.getPrefixName2PrefixMap().entrySet()) {
+            writer.write("Prefix(" + prefix.getKey() + "=<" + prefix.getValue() + ">)\n");
+        }
+        writer.write("Ontology(\n");
+        FunctionalSyntaxObjectRenderer renderer = new FunctionalSyntaxObjectRenderer(ontology, writer);
+        renderer.setPrefixManager(prefixManager);
+        for (OWLAxiom axiom : others) {
+            axiom.accept(renderer);
+            writer.write('\n');
+        }
+        writer.write(")\n");
+        writer.flush();
+        out.writeInt(OTHER);
+        out.writeLong(document.size());
+        document.writeTo(out);
+    }
+
+
+
+    /**
+     * Growable array of ints
+     */
+    private static class IntList {
+        int[] data = new int[64];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, 2 * size);
+            }
+            data[size++] = value;
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the binary output (--format=BIN), written by
+ * {@link BinaryTripleWriter} and read by {@link BinaryTripleReader}.
+ *
+ * After the magic number, the version and the ontology IRI come sections,
+ * each an int type and a long length:
+ * - the term dictionary: IRIs, literals and blank nodes sorted by their
+ *   UTF-8 bytes, front-coded in blocks of 16 terms with the offset of each
+ *   block, so a term id is its position in the order;
+ * - the axiom annotation sets, as pairs of property and value ids;
+ * - a triple block per kind of axiom below, rows of subject, predicate,
+ *   object and annotation set (-1 for none) sorted in that order;
+ * - any other axioms, as a functional syntax document.
+ *
+ * Literals are stored as "lexical"^^datatype or "lexical"@lang, blank
+ * nodes as _:id and IRIs as they are.
+ */
+public abstract class BinaryTriples {
+
+    public static final byte[] MAGIC = "RDB2RDFB".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+
+    public static final int DICTIONARY = 0;
+    public static final int ANNOTATIONS = 1;
+    public static final int TRIPLES = 2;
+    public static final int OTHER = 3;
+
+    public static final int BLOCK_SIZE = 16;
+    // ints per row
+    public static final int ROW = 4;
+
+    /**
+     * Kinds of axioms stored as triples, in the order of their blocks
+     */
+    public static final AxiomType<?>[] KINDS = {
+            AxiomType.DECLARATION,
+            AxiomType.CLASS_ASSERTION,
+            AxiomType.OBJECT_PROPERTY_ASSERTION,
+            AxiomType.DATA_PROPERTY_ASSERTION,
+            AxiomType.ANNOTATION_ASSERTION,
+            AxiomType.SUBCLASS_OF
+    };
+
+    public static final IRI RDF_TYPE = OWLRDFVocabulary.RDF_TYPE.getIRI();
+    public static final IRI RDFS_SUBCLASS_OF = OWLRDFVocabulary.RDFS_SUBCLASS_OF.getIRI();
+
+    private static final String BLANK_PREFIX = "_:";
+
+
+    /**
+     * @return index of the kind in {@link #KINDS}, or -1
+     */
+    public static int kindOf(AxiomType<?> type) {
+        for (int i = 0; i < KINDS.length; i++) {
+            if (KINDS[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Maps the axioms of the {@link #KINDS} to a single RDF triple, as in the
+     * OWL to RDF mapping; also used by {@link NTriplesWriter}
+     * @return subject, predicate IRI and object, or null if the axiom is of
+     *         another kind or uses class or property expressions
+     */
+    public static OWLObject[] tripleOf(OWLAxiom axiom) {
+        if (axiom instanceof OWLDeclarationAxiom) {
+            OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+            return new OWLObject[] {entity, RDF_TYPE, entity.getEntityType().getIRI()};
+        } else if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom) axiom;
+            if (assertion.getClassExpression().isAnonymous()) {
+                return null;
+            }
+            return new OWLObject[] {assertion.getIndividual(), RDF_TYPE, assertion.getClassExpression()};
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom
+                || axiom instanceof OWLDataPropertyAssertionAxiom) {
+            OWLPropertyAssertionAxiom<?, ?> assertion = (OWLPropertyAssertionAxiom<?, ?>) axiom;
+            if (assertion.getProperty().isAnonymous()) {
+                return null;
+            }
+            return new OWLObject[] {assertion.getSubject(), ((OWLEntity) assertion.getProperty()).getIRI(),
+                    assertion.getObject()};
+        } else if (axiom instanceof OWLAnnotationAssertionAxiom) {
+            OWLAnnotationAssertionAxiom assertion = (OWLAnnotationAssertionAxiom) axiom;
+            return new OWLObject[] {assertion.getSubject(), assertion.getProperty().getIRI(),
+                    assertion.getValue()};
+        } else if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+            if (subClassOf.getSubClass().isAnonymous() || subClassOf.getSuperClass().isAnonymous()) {
+                return null;
+            }
+            return new OWLObject[] {subClassOf.getSubClass(), RDFS_SUBCLASS_OF, subClassOf.getSuperClass()};
+        }
+        return null;
+    }
+
+
+    /**
+     * @return dictionary term of an IRI, literal, entity or individual
+     */
+    public static String termOf(OWLObject object) {
+        if (object instanceof IRI) {
+            return object.toString();
+        }
+        if (object instanceof OWLLiteral) {
+            OWLLiteral literal = (OWLLiteral) object;
+            if (literal.hasLang()) {
+                return '"' + literal.getLiteral() + "\"@" + literal.getLang();
+            }
+            return '"' + literal.getLiteral() + "\"^^" + literal.getDatatype().getIRI();
+        }
+        if (object instanceof OWLAnonymousIndividual) {
+            // node ids are already of the form _:id
+            return ((OWLAnonymousIndividual) object).getID().getID();
+        }
+        return ((OWLNamedObject) object).getIRI().toString();
+    }
+
+
+    public static boolean isLiteral(String term) {
+        return term.startsWith("\"");
+    }
+
+
+    public static boolean isBlank(String term) {
+        return term.startsWith(BLANK_PREFIX);
+    }
+
+
+    public static OWLLiteral toLiteral(String term, OWLDataFactory factory) {
+        // the datatype IRI and language tag cannot contain quotes
+        int quote = term.lastIndexOf('"');
+        String lexical = term.substring(1, quote);
+        if (term.charAt(quote + 1) == '@') {
+            return factory.getOWLLiteral(lexical, term.substring(quote + 2));
+        }
+        return factory.getOWLLiteral(lexical, factory.getOWLDatatype(IRI.create(term.substring(quote + 3))));
+    }
+
+
+    public static OWLAnonymousIndividual toBlank(String term, OWLDataFactory factory) {
+        return factory.getOWLAnonymousIndividual(term);
+    }
+
+}
@@ -1,7 +1,5 @@
 package uk.ac.man.cs.rdb2rdf.io;
 
-import org.apache.commons.text.StringEscapeUtils;
-
 import static uk.ac.man.cs.rdb2rdf.poc.CSV2OWLConverter.ENTITY_DELIMITER;
 
 /**
@@ -15,7 +13,8 @@ public interface CSV {
 
 
     public static String processCell(String str) {
-        return StringEscapeUtils.escapeXml11(str);
+        return XmlEscaper.escape(str);
+//        return StringEscapeUtils.escapeXml11(str);
 //        return str.replace(" ", "").replace("\"", "")
 //                .replace("\'", "").replace("\n", "")
 //                .replace("\t", "").replace("\r", "")
@@ -0,0 +1,309 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * State of a conversion saved every --checkpoint=N seconds next to the
+ * output file (output.checkpoint): how far each source has been read and
+ * what the sinks had written by then. A run started with --resume
+ * continues from the last checkpoint and produces the same output as an
+ * uninterrupted run. The checkpoint is removed once the output is complete.
+ *
+ * With --incremental the checkpoint is kept after the run and the next
+ * run continues from it: CSV sources from the offset they ended at,
+ * queries from the --watermark column value they were read up to, and the
+ * output is appended to. Checkpoints within such a run are optional.
+ *
+ * Larger state (e.g. the dedup table) goes into files numbered by the
+ * checkpoint, so the properties file, which is replaced atomically, always
+ * refers to a complete set.
+ */
+public class Checkpoint {
+
+    public static final String CHECKPOINT_OPTION = "checkpoint";
+    public static final String RESUME_OPTION = "resume";
+    public static final String INCREMENTAL_OPTION = "incremental";
+
+    /**
+     * Default interval in seconds
+     */
+    public static final int DEF_INTERVAL = 600;
+
+    public static final String SUFFIX = ".checkpoint";
+
+    private static final String SEQ = "checkpoint.seq";
+    private static final String INTERVAL = "checkpoint.interval";
+
+    private File file;
+    private Properties state;
+    private boolean resumed;
+    private boolean incremental;
+    private int interval;
+    // number of the checkpoint being written
+    private int seq;
+
+    private List<File> savedFiles;
+    private List<File> newFiles;
+
+    // scoped views share the state of their root under a key prefix
+    private Checkpoint root = this;
+    private String prefix = "";
+
+
+    private Checkpoint(File file, Properties state, boolean resumed, boolean incremental, int interval) {
+        this.file = file;
+        this.state = state;
+        this.resumed = resumed;
+        this.incremental = incremental;
+        this.interval = interval;
+        seq = Integer.parseInt(state.getProperty(SEQ, "0")) + 1;
+        savedFiles = new ArrayList<>();
+        newFiles = new ArrayList<>();
+    }
+
+
+    private Checkpoint(Checkpoint root, String prefix) {
+        this.root = root;
+        this.prefix = prefix;
+        file = root.file;
+        state = root.state;
+        resumed = root.resumed;
+        incremental = root.incremental;
+        interval = root.interval;
+    }
+
+
+    /**
+     * Reads --checkpoint, --resume and --incremental
+     * @return checkpoint or null if the run is neither checkpointed, resumed nor incremental
+     */
+    public static Checkpoint initCheckpoint(File ontFile, String[] args) throws IOException {
+        int interval = parseInterval(args);
+        boolean resume = Args.has(args, RESUME_OPTION);
+        boolean incremental = Args.has(args, INCREMENTAL_OPTION);
+        if (interval <= 0 && !resume && !incremental) {
+            return null;
+        }
+        File file = new File(ontFile.getPath() + SUFFIX);
+        Properties state = new Properties();
+        if ((resume || incremental) && file.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                state.load(in);
+            }
+            if (interval <= 0 && !incremental) {
+                interval = Integer.parseInt(state.getProperty(INTERVAL, "" + DEF_INTERVAL));
+            }
+            Out.p("Resuming from checkpoint " + state.getProperty(SEQ) + " in " + file);
+            Checkpoint checkpoint = new Checkpoint(file, state, true, incremental, interval);
+            checkpoint.savedFiles.addAll(checkpoint.listFiles(checkpoint.seq - 1));
+            return checkpoint;
+        }
+        if (resume) {
+            Out.p("No checkpoint found in " + file + ", starting from the beginning");
+            interval = interval <= 0 && !incremental ? DEF_INTERVAL : interval;
+        }
+        Checkpoint checkpoint = new Checkpoint(file, state, false, incremental, interval);
+        // left over from an earlier run
+        checkpoint.delete();
+        return checkpoint;
+    }
+
+
+    /**
+     * @return the interval given with --checkpoint, or 0
+     */
+    private static int parseInterval(String[] args) {
+        if (Args.has(args, CHECKPOINT_OPTION) && Args.get(args, CHECKPOINT_OPTION, null) == null) {
+            return DEF_INTERVAL;
+        }
+        return Args.getInt(args, CHECKPOINT_OPTION, 0);
+    }
+
+
+    /**
+     * @return view of the checkpoint for one of several sinks of the same
+     *         kind (e.g. shards), whose keys and files are kept apart
+     */
+    public Checkpoint scope(String name) {
+        return new Checkpoint(root, prefix + name + ".");
+    }
+
+
+    /**
+     * @return true if the run continues from a saved checkpoint
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+
+    /**
+     * @return true if the checkpoint is kept for the next run
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+
+    /**
+     * @return milliseconds between checkpoints, 0 for none
+     */
+    public long getIntervalMillis() {
+        return 1000L * interval;
+    }
+
+
+    public long getLong(String key, long defValue) {
+        String value = state.getProperty(prefix + key);
+        return value == null ? defValue : Long.parseLong(value);
+    }
+
+
+    public void setLong(String key, long value) {
+        state.setProperty(prefix + key, Long.toString(value));
+    }
+
+
+    /**
+     * @return low and high bound of the watermark column of an input and
+     *         the column's type, each may be null
+     */
+    public String[] getWatermark(String input) {
+        String key = "watermark." + input;
+        return new String[] {state.getProperty(key + ".low"), state.getProperty(key + ".high"),
+                state.getProperty(key + ".type")};
+    }
+
+
+    /**
+     * Records the range of watermark values read by the current run
+     */
+    public void setWatermark(String input, String low, String high, String type) {
+        String key = "watermark." + input;
+        setOrRemove(key + ".low", low);
+        setOrRemove(key + ".high", high);
+        setOrRemove(key + ".type", type);
+    }
+
+
+    /**
+     * Marks the run as complete: the high watermarks become the low ones
+     * of the next run
+     */
+    public void complete() {
+        if (root != this) {
+            root.complete();
+            return;
+        }
+        for (String key : state.stringPropertyNames()) {
+            if (key.startsWith("watermark.") && key.endsWith(".high")) {
+                String input = key.substring(0, key.length() - ".high".length());
+                state.setProperty(input + ".low", state.getProperty(key));
+                state.remove(key);
+            }
+        }
+    }
+
+
+    private void setOrRemove(String key, String value) {
+        if (value == null) {
+            state.remove(key);
+        } else {
+            state.setProperty(key, value);
+        }
+    }
+
+
+    /**
+     * @return file for state of the checkpoint being written
+     */
+    public File newFile(String name) {
+        if (root != this) {
+            return root.newFile(prefix + name);
+        }
+        File stateFile = stateFile(seq, name);
+        newFiles.add(stateFile);
+        return stateFile;
+    }
+
+
+    /**
+     * @return file written with {@link #newFile} for the checkpoint resumed from
+     */
+    public File savedFile(String name) {
+        if (root != this) {
+            return root.savedFile(prefix + name);
+        }
+        return stateFile(seq - 1, name);
+    }
+
+
+    private File stateFile(int n, String name) {
+        return new File(file.getPath() + "." + n + "." + name);
+    }
+
+
+    private List<File> listFiles(int n) {
+        List<File> files = new ArrayList<>();
+        File dir = file.getAbsoluteFile().getParentFile();
+        String prefix = file.getName() + "." + n + ".";
+        File[] all = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if (all != null) {
+            for (File f : all) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+
+    /**
+     * Replaces the previous checkpoint with the current state
+     */
+    public void save() throws IOException {
+        if (root != this) {
+            root.save();
+            return;
+        }
+        state.setProperty(SEQ, Integer.toString(seq));
+        state.setProperty(INTERVAL, Integer.toString(interval));
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            state.store(out, "rdb2rdf checkpoint");
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (File old : savedFiles) {
+            old.delete();
+        }
+        savedFiles = newFiles;
+        newFiles = new ArrayList<>();
+        seq++;
+    }
+
+
+    /**
+     * Removes the checkpoint, e.g. once the output is complete
+     */
+    public void delete() {
+        if (root != this) {
+            root.delete();
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        String prefix = file.getName() + ".";
+        File[] stateFiles = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if (stateFiles != null) {
+            for (File f : stateFiles) {
+                f.delete();
+            }
+        }
+        file.delete();
+    }
+
+}
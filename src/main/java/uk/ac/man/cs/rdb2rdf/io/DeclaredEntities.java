@@ -0,0 +1,57 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Entities a streaming writer has declared so far. Kept with each
+ * checkpoint, so that a resumed run does not read the document again.
+ */
+class DeclaredEntities {
+
+    private static final String FILE = "declared";
+
+    private Set<OWLEntity> entities = new HashSet<>();
+
+
+    /**
+     * @return true if the entity was not declared yet
+     */
+    boolean add(OWLEntity entity) {
+        return entities.add(entity);
+    }
+
+
+    void load(Checkpoint checkpoint, OWLDataFactory factory) throws IOException {
+        Map<String, EntityType<?>> types = new HashMap<>();
+        for (EntityType<?> type : EntityType.values()) {
+            types.put(type.getName(), type);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(checkpoint.savedFile(FILE)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                EntityType<?> type = types.get(line.substring(0, tab));
+                entities.add(factory.getOWLEntity(type, IRI.create(line.substring(tab + 1))));
+            }
+        }
+    }
+
+
+    void save(Checkpoint checkpoint) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(checkpoint.newFile(FILE)), StandardCharsets.UTF_8))) {
+            for (OWLEntity entity : entities) {
+                out.write(entity.getEntityType().getName() + "\t" + entity.getIRI() + "\n");
+            }
+        }
+    }
+
+}
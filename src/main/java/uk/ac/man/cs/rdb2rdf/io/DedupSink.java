@@ -0,0 +1,286 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.*;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Drops axioms that were already passed on, so repeated rows of a wide
+ * join do not reach the ontology manager or the writer again. Seen axioms
+ * are kept as 64-bit fingerprints in an open-addressing table, optionally
+ * fronted by a Bloom filter that answers most first-time lookups without
+ * touching the larger table. Not thread-safe: place it behind a
+ * {@link QueuedAxiomSink}.
+ */
+public class DedupSink implements AxiomSink {
+
+    public static final int INIT_CAPACITY = 1 << 16;
+
+    // fingerprint 0 marks an empty slot
+    private static final long EMPTY = 0L;
+
+    private static final int BLOOM_HASHES = 3;
+
+    private static final String TABLE_FILE = "dedup";
+
+    private AxiomSink target;
+    private long[] table;
+    private int size;
+    private long[] bloom;
+
+    private long axioms;
+    private long duplicates;
+    private long bloomMisses;
+
+
+    /**
+     * @param bloom check a Bloom filter before the fingerprint table
+     */
+    public DedupSink(AxiomSink target, boolean bloom) {
+        this.target = target;
+        table = new long[INIT_CAPACITY];
+        if (bloom) {
+            this.bloom = new long[bloomWords(INIT_CAPACITY)];
+        }
+    }
+
+
+    /**
+     * @param checkpoint if resumed, the axioms seen before it are restored
+     */
+    public DedupSink(AxiomSink target, boolean bloom, Checkpoint checkpoint) throws IOException {
+        this(target, bloom);
+        if (checkpoint != null && checkpoint.isResumed()) {
+            restore(checkpoint);
+        }
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> batch) throws IOException {
+        Set<? extends OWLAxiom> fresh = filter(batch);
+        if (!fresh.isEmpty()) {
+            target.add(fresh);
+        }
+    }
+
+
+    /**
+     * Drops the axioms seen in any part, so it should be in front of a
+     * single part, e.g. a shard of a {@link ShardedSink}
+     */
+    @Override
+    public void add(Set<? extends OWLAxiom> batch, int part) throws IOException {
+        Set<? extends OWLAxiom> fresh = filter(batch);
+        if (!fresh.isEmpty()) {
+            target.add(fresh, part);
+        }
+    }
+
+
+    @Override
+    public int getParts() {
+        return target.getParts();
+    }
+
+
+    /**
+     * @return the batch itself if all its axioms are new, else a set of the new ones
+     */
+    private Set<? extends OWLAxiom> filter(Set<? extends OWLAxiom> batch) {
+        Set<OWLAxiom> fresh = null;
+        int count = 0;
+        for (OWLAxiom axiom : batch) {
+            if (!addFingerprint(AxiomFingerprint.of(axiom))) {
+                duplicates++;
+                if (fresh == null) {
+                    // copy the new axioms seen so far
+                    fresh = new HashSet<>();
+                    Iterator<? extends OWLAxiom> it = batch.iterator();
+                    for (int i = 0; i < count; i++) {
+                        fresh.add(it.next());
+                    }
+                }
+            } else if (fresh != null) {
+                fresh.add(axiom);
+            }
+            count++;
+        }
+        axioms += count;
+        return fresh == null ? batch : fresh;
+    }
+
+
+    /**
+     * @return true if the fingerprint was not seen before
+     */
+    private boolean addFingerprint(long fp) {
+        if (fp == EMPTY) {
+            fp = 1;
+        }
+        if (bloom != null && !bloomContains(fp)) {
+            bloomMisses++;
+            insert(fp);
+            return true;
+        }
+        int mask = table.length - 1;
+        int slot = (int) fp & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == fp) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(fp);
+        return true;
+    }
+
+
+    private void insert(long fp) {
+        if (2 * (size + 1) > table.length) {
+            resize();
+        }
+        int mask = table.length - 1;
+        int slot = (int) fp & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = fp;
+        size++;
+        if (bloom != null) {
+            bloomAdd(fp);
+        }
+    }
+
+
+    private void resize() {
+        long[] old = table;
+        table = new long[2 * old.length];
+        int mask = table.length - 1;
+        if (bloom != null) {
+            bloom = new long[bloomWords(table.length)];
+        }
+        for (long fp : old) {
+            if (fp != EMPTY) {
+                int slot = (int) fp & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = fp;
+                if (bloom != null) {
+                    bloomAdd(fp);
+                }
+            }
+        }
+    }
+
+
+    // 8 bits per table slot, i.e. at least 16 bits per fingerprint
+    private static int bloomWords(int capacity) {
+        return capacity / 8;
+    }
+
+
+    private boolean bloomContains(long fp) {
+        long bits = (long) bloom.length << 6;
+        long h = Long.rotateLeft(fp, 29);
+        long step = (fp >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h & Long.MAX_VALUE) % bits;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            h += step;
+        }
+        return true;
+    }
+
+
+    private void bloomAdd(long fp) {
+        long bits = (long) bloom.length << 6;
+        long h = Long.rotateLeft(fp, 29);
+        long step = (fp >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h & Long.MAX_VALUE) % bits;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+            h += step;
+        }
+    }
+
+
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        File file = checkpoint.newFile(TABLE_FILE);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(table.length);
+            out.writeInt(size);
+            for (long fp : table) {
+                out.writeLong(fp);
+            }
+        }
+        checkpoint.setLong("dedup.axioms", axioms);
+        checkpoint.setLong("dedup.duplicates", duplicates);
+        checkpoint.setLong("dedup.bloomMisses", bloomMisses);
+        target.checkpoint(checkpoint);
+    }
+
+
+    private void restore(Checkpoint checkpoint) throws IOException {
+        File file = checkpoint.savedFile(TABLE_FILE);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            table = new long[in.readInt()];
+            size = in.readInt();
+            for (int i = 0; i < table.length; i++) {
+                table[i] = in.readLong();
+            }
+        }
+        if (bloom != null) {
+            bloom = new long[bloomWords(table.length)];
+            for (long fp : table) {
+                if (fp != EMPTY) {
+                    bloomAdd(fp);
+                }
+            }
+        }
+        axioms = checkpoint.getLong("dedup.axioms", 0);
+        duplicates = checkpoint.getLong("dedup.duplicates", 0);
+        bloomMisses = checkpoint.getLong("dedup.bloomMisses", 0);
+    }
+
+
+    public long getAxiomCount() {
+        return axioms;
+    }
+
+
+    public long getDuplicateCount() {
+        return duplicates;
+    }
+
+
+    /**
+     * @return share of axioms that were dropped as duplicates
+     */
+    public double getHitRate() {
+        return axioms == 0 ? 0 : (double) duplicates / axioms;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        String report = String.format("Dedup: %d axioms, %d duplicates dropped (%.1f%%), %d distinct",
+                axioms, duplicates, 100 * getHitRate(), size);
+        if (bloom != null) {
+            report += String.format(", Bloom filter answered %.1f%% of lookups",
+                    axioms == 0 ? 0 : 100.0 * bloomMisses / axioms);
+        }
+        Out.p(report);
+        target.close();
+    }
+
+}
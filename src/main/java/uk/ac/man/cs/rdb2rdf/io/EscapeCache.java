@@ -0,0 +1,55 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+/**
+ * Bounded direct-mapped cache of escaped cells for columns with few distinct
+ * values, e.g. drug classes. A slot is overwritten on collision; entries are
+ * immutable, so the cache can be shared between threads without locking.
+ */
+public class EscapeCache {
+
+    public static final int DEF_SIZE = 4096;
+
+    private final Entry[] entries;
+    private final int mask;
+
+
+    public EscapeCache() {
+        this(DEF_SIZE);
+    }
+
+
+    public EscapeCache(int size) {
+        int cap = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        entries = new Entry[cap];
+        mask = cap - 1;
+    }
+
+
+    public String processCell(String str) {
+        if (str == null) {
+            return null;
+        }
+        int h = str.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        Entry entry = entries[slot];
+        if (entry != null && entry.key.equals(str)) {
+            return entry.value;
+        }
+        String value = XmlEscaper.escape(str);
+        entries[slot] = new Entry(str, value);
+        return value;
+    }
+
+
+
+    private static final class Entry {
+        final String key;
+        final String value;
+
+        Entry(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+}
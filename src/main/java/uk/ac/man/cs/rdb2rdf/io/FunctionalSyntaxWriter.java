@@ -0,0 +1,171 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.functional.renderer.FunctionalSyntaxObjectRenderer;
+import org.semanticweb.owlapi.io.StreamDocumentSource;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.util.DefaultPrefixManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams axioms to an OWL Functional Syntax document on disk
+ * instead of collecting them in an in-memory ontology.
+ *
+ * The axioms of the given ontology (e.g. the ICD9 TBox) are written once
+ * when the writer is opened. Classes and properties are declared the first
+ * time they are seen; individuals are not declared, since functional syntax
+ * types them by position, so the heap stays bounded by the vocabulary size
+ * rather than by the number of rows.
+ */
+public class FunctionalSyntaxWriter implements AxiomSink {
+
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private static final String LENGTH = "ofn.length";
+
+    private FileOutputStream stream;
+    private Writer writer;
+    private FunctionalSyntaxObjectRenderer renderer;
+    private OWLDataFactory factory;
+
+    private DeclaredEntities declared;
+    // false for a journal, whose axioms are read back as they were added
+    private boolean declare = true;
+
+
+    public FunctionalSyntaxWriter(OWLOntology ontology, File ontFile) throws IOException {
+        this(ontology, ontFile, null);
+    }
+
+
+    /**
+     * @param checkpoint if resumed, the file is cut back to the length it had
+     *                   at the checkpoint and written on from there
+     */
+    public FunctionalSyntaxWriter(OWLOntology ontology, File ontFile, Checkpoint checkpoint)
+            throws IOException {
+        this(ontology, ontFile, checkpoint, true);
+    }
+
+
+    /**
+     * @param declare declare the classes and properties of the axioms; a
+     *                journal does without, or the axioms read back from it
+     *                would include declarations that were never added
+     */
+    public FunctionalSyntaxWriter(OWLOntology ontology, File ontFile, Checkpoint checkpoint, boolean declare)
+            throws IOException {
+        this.declare = declare;
+        boolean resumed = checkpoint != null && checkpoint.isResumed();
+        stream = new FileOutputStream(ontFile, resumed);
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        declared = new DeclaredEntities();
+        // full IRIs only: row values are not guaranteed to be valid local names
+        DefaultPrefixManager prefixManager = new DefaultPrefixManager();
+        renderer = new FunctionalSyntaxObjectRenderer(ontology, writer);
+        renderer.setPrefixManager(prefixManager);
+        if (resumed) {
+            long length = checkpoint.getLong(LENGTH, -1);
+            if (length < 0 || length > stream.getChannel().size()) {
+                throw new IOException("Cannot resume " + ontFile + ": expected at least "
+                        + length + " bytes written");
+            }
+            stream.getChannel().truncate(length);
+            declared.load(checkpoint, factory);
+        } else {
+            writeHeader(ontology, prefixManager);
+            add(ontology.getAxioms());
+        }
+    }
+
+
+    private void writeHeader(OWLOntology ontology, DefaultPrefixManager prefixManager) throws IOException {
+        for (Map.Entry<String, String> prefix : prefixManager.getPrefixName2PrefixMap().entrySet()) {
+            writer.write("Prefix(" + prefix.getKey() + "=<" + prefix.getValue() + ">)\n");
+        }
+        writer.write("\n\nOntology(");
+        if (!ontology.isAnonymous()) {
+            writer.write("<" + ontology.getOntologyID().getOntologyIRI().get() + ">");
+        }
+        writer.write("\n\n");
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException {
+        for (OWLAxiom axiom : axioms) {
+            if (axiom.isOfType(AxiomType.DECLARATION)) {
+                declared.add(((OWLDeclarationAxiom) axiom).getEntity());
+            } else if (declare) {
+                declare(axiom);
+            }
+            axiom.accept(renderer);
+            writer.write('\n');
+        }
+    }
+
+
+    private void declare(OWLAxiom axiom) throws IOException {
+        for (OWLEntity entity : axiom.getSignature()) {
+            if (entity.isOWLNamedIndividual() || entity.isBuiltIn()) {
+                continue;
+            }
+            if (declared.add(entity)) {
+                factory.getOWLDeclarationAxiom(entity).accept(renderer);
+                writer.write('\n');
+            }
+        }
+    }
+
+
+    /**
+     * Flushes the document and records its length and the declared entities
+     */
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        writer.flush();
+        checkpoint.setLong(LENGTH, stream.getChannel().position());
+        declared.save(checkpoint);
+    }
+
+
+    /**
+     * @return the axioms of a document cut off before its closing bracket,
+     *         as left by a checkpoint
+     */
+    public static Set<OWLAxiom> readJournal(File journalFile) throws IOException {
+        return readAxioms(new SequenceInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)),
+                new ByteArrayInputStream(")\n".getBytes(StandardCharsets.UTF_8))), journalFile.toString());
+    }
+
+
+    /**
+     * @return the axioms of a functional syntax document
+     */
+    public static Set<OWLAxiom> readAxioms(InputStream in, String name) throws IOException {
+        try (InputStream document = in) {
+            OWLOntology ontology = OWLManager.createOWLOntologyManager()
+                    .loadOntologyFromOntologyDocument(
+                            new StreamDocumentSource(document, IRI.generateDocumentIRI(),
+                                    new FunctionalSyntaxDocumentFormat(), null));
+            return ontology.getAxioms();
+        } catch (OWLOntologyCreationException e) {
+            throw new IOException("Cannot load " + name, e);
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        writer.write(")\n");
+        writer.close();
+    }
+
+}
@@ -0,0 +1,147 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.IOException;
+import java.sql.*;
+
+/**
+ * Streams the result of a query through a server-side cursor, so rows are
+ * fetched in chunks of the fetch size instead of being loaded at once.
+ * SQL NULLs become empty cells, as in a CSV export made with COPY.
+ */
+public class JdbcRowSource implements RowSource {
+
+    public static final int DEF_FETCH_SIZE = 10000;
+
+    private Connection connection;
+    private ResultSet resultSet;
+    private int columns;
+
+
+    public JdbcRowSource(String url, String user, String password, String sql, int fetchSize)
+            throws IOException {
+        try {
+            connection = DriverManager.getConnection(url, user, password);
+            // the PostgreSQL driver only uses a cursor inside a transaction
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            PreparedStatement statement = connection.prepareStatement(trimQuery(sql),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            resultSet = statement.executeQuery();
+            columns = resultSet.getMetaData().getColumnCount();
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Query failed: " + e.getMessage(), e);
+        }
+    }
+
+
+    // a trailing semicolon turns the query into a multi-statement
+    // batch for which the driver does not use a cursor
+    private static String trimQuery(String sql) {
+        String query = sql.trim();
+        while (query.endsWith(";")) {
+            query = query.substring(0, query.length() - 1).trim();
+        }
+        return query;
+    }
+
+
+    /**
+     * Restricts a query to one of n hash partitions of its rows, so the
+     * partitions can be read over separate connections in parallel.
+     * @param key column to partition on, e.g. the encounter id;
+     *            if null, whole rows are hashed
+     * @return query for the partition
+     */
+    public static String partitionQuery(String sql, String key, int partitions, int partition) {
+        String hashed = key == null ? "part" : "part." + key;
+        return "SELECT * FROM (" + trimQuery(sql) + ") AS part"
+                + " WHERE (hashtext(" + hashed + "::text) & 2147483647) % " + partitions
+                + " = " + partition;
+    }
+
+
+    /**
+     * Restricts a query to the rows whose watermark column is above the
+     * value read up to by the last run and at most the current maximum
+     * @param low watermark of the last run, or null to read from the start
+     * @param high maximum when the run started, or null if there were no rows
+     * @param type SQL type of the column, to compare the values as
+     * @return query for the new rows
+     */
+    public static String watermarkQuery(String sql, String column, String low, String high, String type) {
+        String query = "SELECT * FROM (" + trimQuery(sql) + ") AS wm WHERE ";
+        if (high == null) {
+            return query + "false";
+        }
+        if (low != null) {
+            query += "wm." + column + " > CAST(" + literal(low) + " AS " + type + ") AND ";
+        }
+        return query + "wm." + column + " <= CAST(" + literal(high) + " AS " + type + ")";
+    }
+
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+
+    /**
+     * @return the maximum of a column in the result of a query as text and
+     *         the column's type, or a null maximum if there are no rows
+     */
+    public static String[] queryMax(String url, String user, String password, String sql, String column)
+            throws IOException {
+        String query = "SELECT max(wm." + column + ")::text, pg_typeof(max(wm." + column + "))::text"
+                + " FROM (" + trimQuery(sql) + ") AS wm";
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(query)) {
+            result.next();
+            return new String[] {result.getString(1), result.getString(2)};
+        } catch (SQLException e) {
+            throw new IOException("Watermark query failed: " + e.getMessage(), e);
+        }
+    }
+
+
+    @Override
+    public Row next() throws IOException {
+        try {
+            if (!resultSet.next()) {
+                return null;
+            }
+            String[] cells = new String[columns];
+            for (int i = 0; i < columns; i++) {
+                String cell = resultSet.getString(i + 1);
+                cells[i] = cell == null ? "" : cell;
+            }
+            return new ArrayRow(cells);
+        } catch (SQLException e) {
+            throw new IOException("Fetching rows failed: " + e.getMessage(), e);
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (connection == null) {
+            return;
+        }
+        try {
+            try {
+                // read-only: ends the transaction and releases the cursor
+                connection.rollback();
+            } finally {
+                // also closes the statement and its result set
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Closing the connection failed: " + e.getMessage(), e);
+        } finally {
+            connection = null;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Each power of two is
+ * split into 4 buckets, so a percentile is exact to within 25%; recording
+ * is a few atomic increments and takes no locks.
+ */
+public class LatencyHistogram {
+
+    // buckets per power of two
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private LongAdder count = new LongAdder();
+    private LongAdder sum = new LongAdder();
+    private LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+
+    /**
+     * @return largest value that falls into the bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lower = (1L << exp) + ((long) sub << (exp - SUB_BITS));
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+
+
+    public long getCount() {
+        return count.sum();
+    }
+
+
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+
+    /**
+     * @param q quantile between 0 and 1
+     * @return upper bound of the bucket holding the quantile, at most the maximum
+     */
+    public long getPercentileNanos(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+}
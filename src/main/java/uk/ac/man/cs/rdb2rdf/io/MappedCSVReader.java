@@ -0,0 +1,441 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * CSV reader over a memory-mapped file. Row and field boundaries are
+ * found in place; a cell is copied into a String only when it is asked
+ * for, and plain ASCII cells can be read as views without copying.
+ *
+ * Quoting follows the rule of opencsv's default CSVParser: a double quote
+ * opens a quoted cell only at the start of the cell, after any spaces,
+ * which are then dropped. Inside a quoted cell a quote is doubled or
+ * backslash-escaped, and text after the closing quote is kept with that
+ * quote. A quote inside an unquoted cell is text, e.g. GAUZE 4"X4" PAD,
+ * so an unbalanced one cannot run into the following rows, where opencsv
+ * loses them. Backslashes that do not escape a quote or a backslash are
+ * dropped. Rows end at \n, \r\n or a lone \r, as lines of CSVReader do,
+ * and line breaks inside quoted cells are read as \n.
+ */
+public class MappedCSVReader implements RowSource {
+
+    /**
+     * Largest part of the file mapped at once
+     */
+    public static final int MAX_WINDOW = 1 << 28;
+
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+
+    // cell flags
+    private static final byte QUOTED = 1;
+    private static final byte UNESCAPE = 2;
+    private static final byte NON_ASCII = 4;
+
+    private FileChannel channel;
+    private long fileSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowSize;
+
+    // start of the next row relative to the file
+    private long position;
+
+    private MappedRow row;
+
+
+    public MappedCSVReader(File csvFile) throws IOException {
+        channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        row = new MappedRow();
+        map(0);
+    }
+
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        windowSize = (int) Math.min(MAX_WINDOW, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+    }
+
+
+    /**
+     * @return byte offset of the next row in the file
+     */
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+
+    /**
+     * Continues reading at a row starting at the given byte offset
+     */
+    @Override
+    public void seek(long position) throws IOException {
+        if (position < 0 || position > fileSize) {
+            throw new IOException("Position " + position + " is outside of the file (" + fileSize + " bytes)");
+        }
+        this.position = position;
+        if (position < fileSize && (position < windowStart || position >= windowStart + windowSize)) {
+            map(position);
+        }
+    }
+
+
+    /**
+     * Reads the next row. The returned row is reused by the following call;
+     * use {@link Row#copy()} to keep it.
+     * @return next row or null at the end of the file
+     */
+    @Override
+    public Row next() throws IOException {
+        if (position >= fileSize) {
+            return null;
+        }
+        if (position >= windowStart + windowSize) {
+            map(position);
+        }
+        int end = scan((int) (position - windowStart));
+        if (end < 0) {
+            // the row crosses the end of the window
+            if (position == windowStart) {
+                throw new IOException("Row at " + position + " is longer than " + MAX_WINDOW + " bytes");
+            }
+            map(position);
+            return next();
+        }
+        position = windowStart + end;
+        return row;
+    }
+
+
+    /**
+     * Finds the cell boundaries of the row starting at the given offset
+     * @return offset after the row terminator, or -1 if the window ends first
+     */
+    private int scan(int offset) {
+        MappedByteBuffer buffer = window;
+        row.reset(buffer);
+        boolean lastWindow = windowStart + windowSize >= fileSize;
+        int i = offset;
+        int cellStart = i;
+        boolean inQuotes = false;
+        // only spaces so far, so a quote opens the cell
+        boolean blank = true;
+        // an escape only applies once the cell has content (as in opencsv)
+        boolean inCell = false;
+        while (i < windowSize) {
+            byte b = buffer.get(i);
+            if (inQuotes) {
+                if (b == QUOTE) {
+                    if (i + 1 < windowSize && buffer.get(i + 1) == QUOTE) {
+                        row.flags |= UNESCAPE;
+                        i++;
+                    } else {
+                        inQuotes = false;
+                        if (i + 1 < windowSize && !isCellEnd(buffer.get(i + 1))) {
+                            // text after the closing quote
+                            row.flags |= UNESCAPE;
+                        }
+                    }
+                } else if (b == ESCAPE) {
+                    row.flags |= UNESCAPE;
+                    i += escaped(buffer, i);
+                } else if (b == '\r') {
+                    row.flags |= UNESCAPE;
+                } else if (b < 0) {
+                    row.flags |= NON_ASCII;
+                }
+            } else if (b == SEPARATOR) {
+                row.endCell(cellStart, i);
+                cellStart = i + 1;
+                blank = true;
+                inCell = false;
+            } else if (b == '\n') {
+                row.endCell(cellStart, i);
+                return i + 1;
+            } else if (b == '\r') {
+                if (i + 1 == windowSize && !lastWindow) {
+                    // \r\n may cross the end of the window
+                    return -1;
+                }
+                row.endCell(cellStart, i);
+                return i + 1 < windowSize && buffer.get(i + 1) == '\n' ? i + 2 : i + 1;
+            } else if (b == QUOTE && blank) {
+                inQuotes = true;
+                blank = false;
+                row.flags |= (i == cellStart ? QUOTED : UNESCAPE);
+            } else if (b == ESCAPE) {
+                row.flags |= UNESCAPE;
+                blank = false;
+                if (inCell) {
+                    i += escaped(buffer, i);
+                }
+            } else {
+                if (b < 0) {
+                    row.flags |= NON_ASCII;
+                }
+                if (!isSpace(b)) {
+                    blank = false;
+                }
+                inCell = true;
+            }
+            i++;
+        }
+        if (lastWindow) {
+            // last row without a terminator
+            if (inQuotes) {
+                row.flags |= UNESCAPE;
+            }
+            row.endCell(cellStart, windowSize);
+            return windowSize;
+        }
+        return -1;
+    }
+
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+
+    private static boolean isCellEnd(byte b) {
+        return b == SEPARATOR || b == '\n' || b == '\r';
+    }
+
+
+    /**
+     * @return 1 if the escape at the given offset applies to the next byte
+     */
+    private int escaped(MappedByteBuffer buffer, int i) {
+        if (i + 1 < windowSize) {
+            byte next = buffer.get(i + 1);
+            if (next == QUOTE || next == ESCAPE) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+
+    private static class MappedRow implements Row {
+
+        MappedByteBuffer buffer;
+        int size;
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        byte[] cellFlags = new byte[16];
+        // flags of the cell being scanned
+        byte flags;
+        // scratch space for cells that need unescaping
+        byte[] scratch = new byte[256];
+
+
+        void reset(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            size = 0;
+            flags = 0;
+        }
+
+
+        void endCell(int start, int end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * size);
+                ends = Arrays.copyOf(ends, 2 * size);
+                cellFlags = Arrays.copyOf(cellFlags, 2 * size);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            cellFlags[size] = flags;
+            size++;
+            flags = 0;
+        }
+
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+
+        private void check(int column) {
+            if (column >= size) {
+                throw new ArrayIndexOutOfBoundsException(column);
+            }
+        }
+
+
+        @Override
+        public CharSequence getChars(int column) {
+            check(column);
+            byte f = cellFlags[column];
+            if ((f & (UNESCAPE | NON_ASCII)) != 0) {
+                return get(column);
+            }
+            if ((f & QUOTED) != 0) {
+                return new ByteSlice(buffer, starts[column] + 1, ends[column] - 1);
+            }
+            return new ByteSlice(buffer, starts[column], ends[column]);
+        }
+
+
+        @Override
+        public String get(int column) {
+            check(column);
+            byte f = cellFlags[column];
+            int start = starts[column];
+            int end = ends[column];
+            if ((f & UNESCAPE) != 0) {
+                return unescape(start, end);
+            }
+            if ((f & QUOTED) != 0) {
+                start++;
+                end--;
+            }
+            return decode(start, end, (f & NON_ASCII) != 0);
+        }
+
+
+        private String decode(int start, int end, boolean nonAscii) {
+            int length = end - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            for (int i = 0; i < length; i++) {
+                scratch[i] = buffer.get(start + i);
+            }
+            return new String(scratch, 0, length,
+                    nonAscii ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        }
+
+
+        private String unescape(int start, int end) {
+            if (scratch.length < end - start) {
+                scratch = new byte[Math.max(end - start, 2 * scratch.length)];
+            }
+            int length = 0;
+            boolean inQuotes = false;
+            boolean blank = true;
+            boolean inCell = false;
+            int i = start;
+            while (i < end) {
+                byte b = buffer.get(i);
+                if (b == QUOTE && inQuotes) {
+                    if (i + 1 < end && buffer.get(i + 1) == QUOTE) {
+                        scratch[length++] = QUOTE;
+                        i++;
+                    } else {
+                        inQuotes = false;
+                        if (i + 1 < end) {
+                            // kept before the text after it, as opencsv does
+                            scratch[length++] = QUOTE;
+                        }
+                    }
+                } else if (b == QUOTE && blank) {
+                    // the spaces before the opening quote are dropped
+                    length = 0;
+                    inQuotes = true;
+                    blank = false;
+                } else if (b == ESCAPE) {
+                    if ((inQuotes || inCell) && i + 1 < end
+                            && (buffer.get(i + 1) == QUOTE || buffer.get(i + 1) == ESCAPE)) {
+                        scratch[length++] = buffer.get(i + 1);
+                        inCell = true;
+                        i++;
+                    }
+                    blank = false;
+                } else if (b == '\r') {
+                    // line breaks inside quotes are read as \n
+                    if (i + 1 == end || buffer.get(i + 1) != '\n') {
+                        scratch[length++] = '\n';
+                    }
+                } else {
+                    scratch[length++] = b;
+                    if (!isSpace(b)) {
+                        blank = false;
+                    }
+                    inCell = true;
+                }
+                i++;
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+
+        @Override
+        public Row copy() {
+            MappedRow copy = new MappedRow();
+            copy.buffer = buffer;
+            copy.size = size;
+            copy.starts = Arrays.copyOf(starts, size);
+            copy.ends = Arrays.copyOf(ends, size);
+            copy.cellFlags = Arrays.copyOf(cellFlags, size);
+            copy.scratch = new byte[0];
+            return copy;
+        }
+    }
+
+
+
+    /**
+     * Character view of an ASCII cell
+     */
+    private static class ByteSlice implements CharSequence {
+
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int end;
+
+
+        ByteSlice(MappedByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+
+        @Override
+        public char charAt(int index) {
+            return (char) buffer.get(start + index);
+        }
+
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new ByteSlice(buffer, start + from, start + to);
+        }
+
+
+        @Override
+        public String toString() {
+            char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) buffer.get(start + i);
+            }
+            return new String(chars);
+        }
+    }
+
+}
@@ -0,0 +1,443 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.io.RDFLiteral;
+import org.semanticweb.owlapi.io.RDFNode;
+import org.semanticweb.owlapi.io.RDFResourceBlankNode;
+import org.semanticweb.owlapi.io.RDFTriple;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.rdf.model.RDFTranslator;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.semanticweb.owlapi.vocab.Namespaces;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static uk.ac.man.cs.rdb2rdf.io.BinaryTriples.RDF_TYPE;
+import static uk.ac.man.cs.rdb2rdf.io.BinaryTriples.tripleOf;
+
+/**
+ * Streams axioms to an N-Triples or Turtle document. Triples are encoded
+ * straight into one reused byte buffer, which is written to the file
+ * channel when full; the encoded IRIs and literals are cached.
+ *
+ * Assertions, declarations and subclass axioms between named classes are
+ * mapped to triples directly, with axiom annotations reified on a blank
+ * node; other axioms go through the OWL API's RDF translator. Classes and
+ * properties are declared the first time they are seen, as in
+ * {@link FunctionalSyntaxWriter}.
+ *
+ * Turtle differs only in the prefixes, "a" and the triples of one subject
+ * being listed with ";". If the file name ends with .gz, the output is
+ * compressed by a {@link ParallelGzipOutputStream}.
+ */
+public class NTriplesWriter implements AxiomSink {
+
+    public static final String GZIP_EXT = ".gz";
+
+    public static final int BUFFER_SIZE = 1 << 20;
+    public static final int CACHE_SIZE = 1 << 16;
+
+    private static final String LENGTH = "nt.length";
+    private static final String BLANK = "nt.blank";
+
+    private static final IRI OWL_AXIOM = OWLRDFVocabulary.OWL_AXIOM.getIRI();
+    private static final IRI ANNOTATED_SOURCE = OWLRDFVocabulary.OWL_ANNOTATED_SOURCE.getIRI();
+    private static final IRI ANNOTATED_PROPERTY = OWLRDFVocabulary.OWL_ANNOTATED_PROPERTY.getIRI();
+    private static final IRI ANNOTATED_TARGET = OWLRDFVocabulary.OWL_ANNOTATED_TARGET.getIRI();
+    private static final IRI RDF_PLAIN_LITERAL = OWL2Datatype.RDF_PLAIN_LITERAL.getIRI();
+
+    private static final byte[] A = bytes("a");
+    private static final byte[] END = bytes(" .\n");
+    private static final byte[] NEXT = bytes(" ;\n    ");
+
+    private OWLOntology ontology;
+    private OWLDataFactory factory;
+    private boolean turtle;
+    // namespace and prefix name, Turtle only
+    private List<String[]> prefixes;
+
+    private FileChannel channel;
+    private ParallelGzipOutputStream gzip;
+    private byte[] buffer;
+    private int length;
+
+    private Object[] cacheKeys;
+    private byte[][] cacheValues;
+
+    private DeclaredEntities declared;
+    // reification nodes written so far
+    private long blank;
+    // subject of the open Turtle statement
+    private byte[] subject;
+    private RDFTranslator translator;
+
+
+    public NTriplesWriter(OWLOntology ontology, File ontFile, boolean turtle) throws IOException {
+        this(ontology, ontFile, turtle, null);
+    }
+
+
+    /**
+     * @param checkpoint if resumed, the file is cut back to the length it had
+     *                   at the checkpoint and written on from there
+     */
+    public NTriplesWriter(OWLOntology ontology, File ontFile, boolean turtle, Checkpoint checkpoint)
+            throws IOException {
+        this.ontology = ontology;
+        this.turtle = turtle;
+        factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        buffer = new byte[BUFFER_SIZE];
+        cacheKeys = new Object[CACHE_SIZE];
+        cacheValues = new byte[CACHE_SIZE][];
+        declared = new DeclaredEntities();
+        prefixes = new ArrayList<>();
+        if (turtle) {
+            prefixes.add(new String[] {Namespaces.RDF.toString(), "rdf"});
+            prefixes.add(new String[] {Namespaces.RDFS.toString(), "rdfs"});
+            prefixes.add(new String[] {Namespaces.OWL.toString(), "owl"});
+            prefixes.add(new String[] {Namespaces.XSD.toString(), "xsd"});
+            if (!ontology.isAnonymous()) {
+                prefixes.add(new String[] {ontology.getOntologyID().getOntologyIRI().get() + "#", ""});
+            }
+        }
+        boolean resumed = checkpoint != null && checkpoint.isResumed();
+        channel = FileChannel.open(ontFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (resumed) {
+            long size = checkpoint.getLong(LENGTH, -1);
+            if (size < 0 || size > channel.size()) {
+                throw new IOException("Cannot resume " + ontFile + ": expected at least "
+                        + size + " bytes written");
+            }
+            channel.truncate(size);
+            channel.position(size);
+            blank = checkpoint.getLong(BLANK, 0);
+            declared.load(checkpoint, factory);
+        } else {
+            channel.truncate(0);
+        }
+        if (ontFile.getName().endsWith(GZIP_EXT)) {
+            gzip = new ParallelGzipOutputStream(channel, Runtime.getRuntime().availableProcessors());
+        }
+        if (!resumed) {
+            writeHeader();
+            add(ontology.getAxioms());
+        }
+    }
+
+
+    private void writeHeader() throws IOException {
+        for (String[] prefix : prefixes) {
+            put(bytes("@prefix " + prefix[1] + ": <" + prefix[0] + "> .\n"));
+        }
+        if (turtle) {
+            put(bytes("\n"));
+        }
+        if (!ontology.isAnonymous()) {
+            triple(term(ontology.getOntologyID().getOntologyIRI().get()), predicate(RDF_TYPE),
+                    term(OWLRDFVocabulary.OWL_ONTOLOGY.getIRI()));
+        }
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException {
+        for (OWLAxiom axiom : axioms) {
+            if (axiom.isOfType(AxiomType.DECLARATION)) {
+                declared.add(((OWLDeclarationAxiom) axiom).getEntity());
+            } else {
+                declare(axiom);
+            }
+            write(axiom);
+        }
+    }
+
+
+    private void declare(OWLAxiom axiom) throws IOException {
+        for (OWLEntity entity : axiom.getSignature()) {
+            if (entity.isOWLNamedIndividual() || entity.isBuiltIn()) {
+                continue;
+            }
+            if (declared.add(entity)) {
+                triple(term(entity.getIRI()), predicate(RDF_TYPE), term(entity.getEntityType().getIRI()));
+            }
+        }
+    }
+
+
+    private void write(OWLAxiom axiom) throws IOException {
+        OWLObject[] triple = tripleOf(axiom);
+        if (triple == null || !isFlat(axiom)) {
+            writeTranslated(axiom);
+            return;
+        }
+        byte[] s = term(triple[0]);
+        byte[] o = term(triple[2]);
+        triple(s, predicate((IRI) triple[1]), o);
+        if (axiom.isAnnotated()) {
+            byte[] node = bytes("_:r" + blank++);
+            triple(node, predicate(RDF_TYPE), term(OWL_AXIOM));
+            triple(node, predicate(ANNOTATED_SOURCE), s);
+            triple(node, predicate(ANNOTATED_PROPERTY), term(triple[1]));
+            triple(node, predicate(ANNOTATED_TARGET), o);
+            for (OWLAnnotation annotation : axiom.getAnnotations()) {
+                triple(node, predicate(annotation.getProperty().getIRI()), term(annotation.getValue()));
+            }
+        }
+    }
+
+
+    // annotations on annotations need more than one reification node
+    private static boolean isFlat(OWLAxiom axiom) {
+        for (OWLAnnotation annotation : axiom.getAnnotations()) {
+            if (!annotation.getAnnotations().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void writeTranslated(OWLAxiom axiom) throws IOException {
+        if (translator == null) {
+            translator = new RDFTranslator(ontology.getOWLOntologyManager(), ontology, false,
+                    individual -> false, annotated -> false, new AtomicInteger());
+        }
+        translator.reset();
+        axiom.accept(translator);
+        for (RDFTriple triple : translator.getGraph().getAllTriples()) {
+            triple(node(triple.getSubject()), predicate(triple.getPredicate().getIRI()), node(triple.getObject()));
+        }
+    }
+
+
+    private byte[] node(RDFNode node) {
+        if (node.isLiteral()) {
+            RDFLiteral literal = (RDFLiteral) node;
+            return term(literal.hasLang()
+                    ? factory.getOWLLiteral(literal.getLexicalValue(), literal.getLang())
+                    : factory.getOWLLiteral(literal.getLexicalValue(), factory.getOWLDatatype(literal.getDatatype())));
+        }
+        if (node.isAnonymous()) {
+            String id = node.getIRI().toString().replace("_:", "");
+            // anonymous individuals keep their id, expression nodes get their own
+            return bytes(((RDFResourceBlankNode) node).isIndividual() ? "_:" + id : "_:t" + id);
+        }
+        return term(node.getIRI());
+    }
+
+
+    private void triple(byte[] s, byte[] p, byte[] o) throws IOException {
+        if (turtle) {
+            if (subject != null && (s == subject || Arrays.equals(s, subject))) {
+                put(NEXT);
+            } else {
+                if (subject != null) {
+                    put(END);
+                }
+                put(s);
+                put((byte) ' ');
+                subject = s;
+            }
+            put(p);
+            put((byte) ' ');
+            put(o);
+        } else {
+            put(s);
+            put((byte) ' ');
+            put(p);
+            put((byte) ' ');
+            put(o);
+            put(END);
+        }
+    }
+
+
+    private byte[] predicate(IRI iri) {
+        return turtle && iri.equals(RDF_TYPE) ? A : term(iri);
+    }
+
+
+    /**
+     * @return encoded IRI, entity, literal or anonymous individual
+     */
+    private byte[] term(OWLObject object) {
+        Object key = object instanceof OWLEntity ? ((OWLEntity) object).getIRI() : object;
+        int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+        if (key.equals(cacheKeys[slot])) {
+            return cacheValues[slot];
+        }
+        byte[] value;
+        if (key instanceof IRI) {
+            value = bytes(encodeIRI(key.toString()));
+        } else if (key instanceof OWLLiteral) {
+            value = bytes(encodeLiteral((OWLLiteral) key));
+        } else {
+            value = bytes(((OWLAnonymousIndividual) key).getID().getID());
+        }
+        cacheKeys[slot] = key;
+        cacheValues[slot] = value;
+        return value;
+    }
+
+
+    private String encodeIRI(String iri) {
+        for (String[] prefix : prefixes) {
+            if (iri.startsWith(prefix[0]) && isLocalName(iri, prefix[0].length())) {
+                return prefix[1] + ":" + iri.substring(prefix[0].length());
+            }
+        }
+        StringBuilder buf = new StringBuilder(iri.length() + 2);
+        buf.append('<');
+        for (int i = 0; i < iri.length(); i++) {
+            char c = iri.charAt(i);
+            if (c <= ' ' || c == '<' || c == '>' || c == '"' || c == '{' || c == '}'
+                    || c == '|' || c == '^' || c == '`' || c == '\\') {
+                buf.append(String.format("\\u%04X", (int) c));
+            } else {
+                buf.append(c);
+            }
+        }
+        return buf.append('>').toString();
+    }
+
+
+    // a conservative subset of the Turtle local names
+    private static boolean isLocalName(String iri, int from) {
+        if (from == iri.length()) {
+            return false;
+        }
+        for (int i = from; i < iri.length(); i++) {
+            char c = iri.charAt(i);
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+            if (!letter && (i == from || !((c >= '0' && c <= '9') || c == '-'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private String encodeLiteral(OWLLiteral literal) {
+        String lexical = literal.getLiteral();
+        StringBuilder buf = new StringBuilder(lexical.length() + 16);
+        buf.append('"');
+        for (int i = 0; i < lexical.length(); i++) {
+            char c = lexical.charAt(i);
+            switch (c) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                default:
+                    buf.append(c);
+            }
+        }
+        buf.append('"');
+        // xsd:string is kept explicit, as the OWL API reads plain literals as rdf:PlainLiteral
+        if (literal.hasLang()) {
+            buf.append('@').append(literal.getLang());
+        } else if (!literal.getDatatype().getIRI().equals(RDF_PLAIN_LITERAL)) {
+            buf.append("^^").append(encodeIRI(literal.getDatatype().getIRI().toString()));
+        }
+        return buf.toString();
+    }
+
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    private void put(byte b) throws IOException {
+        if (length == buffer.length) {
+            flushBuffer();
+        }
+        buffer[length++] = b;
+    }
+
+
+    private void put(byte[] bytes) throws IOException {
+        int off = 0;
+        while (off < bytes.length) {
+            if (length == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(bytes.length - off, buffer.length - length);
+            System.arraycopy(bytes, off, buffer, length, n);
+            length += n;
+            off += n;
+        }
+    }
+
+
+    private void flushBuffer() throws IOException {
+        if (gzip != null) {
+            gzip.write(buffer, 0, length);
+        } else {
+            ByteBuffer out = ByteBuffer.wrap(buffer, 0, length);
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        length = 0;
+    }
+
+
+    // ends the open Turtle statement and writes everything out
+    private void flush() throws IOException {
+        if (subject != null) {
+            put(END);
+            subject = null;
+        }
+        flushBuffer();
+        if (gzip != null) {
+            gzip.flush();
+        }
+    }
+
+
+    /**
+     * Flushes the document and records its length, the reification nodes
+     * used and the declared entities
+     */
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        flush();
+        checkpoint.setLong(LENGTH, channel.position());
+        checkpoint.setLong(BLANK, blank);
+        declared.save(checkpoint);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if (gzip != null) {
+                gzip.close();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+}
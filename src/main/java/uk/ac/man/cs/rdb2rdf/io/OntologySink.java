@@ -0,0 +1,250 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Adds axioms to an in-memory ontology and saves it
+ * with the manager's default (RDF/XML) renderer on close.
+ *
+ * With checkpoints the added axioms are also streamed to a journal in
+ * functional syntax (output.journal), since the ontology itself is only
+ * written at the end. A resumed run reloads the journal up to the
+ * checkpoint into the ontology.
+ *
+ * With a heap budget, the ABox is moved to sorted runs on disk whenever
+ * the used heap exceeds the budget after a collection, see {@link ABoxSpill}.
+ * The TBox and the declarations of classes and properties stay in memory,
+ * and the runs are merged into the document on close. A resumed run still
+ * loads the whole journal before the first spill.
+ */
+public class OntologySink implements AxiomSink {
+
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    public static final String HEAP_BUDGET_OPTION = "heap-budget";
+
+    /**
+     * Default heap budget, spilling only when the run would otherwise
+     * come close to running out of memory
+     */
+    public static final String DEF_HEAP_BUDGET = "80%";
+
+    // spillable axioms added between checks of the heap
+    private static final int CHECK_INTERVAL = 1 << 16;
+
+    // axioms per run
+    private static final int RUN_SIZE = 1 << 14;
+
+    private static final AxiomType<?>[] SPILLABLE_TYPES = {AxiomType.DECLARATION, AxiomType.CLASS_ASSERTION,
+            AxiomType.OBJECT_PROPERTY_ASSERTION, AxiomType.DATA_PROPERTY_ASSERTION,
+            AxiomType.ANNOTATION_ASSERTION};
+
+    private OWLOntologyManager manager;
+    private OWLOntology ontology;
+    private File ontFile;
+
+    private File journalFile;
+    private FunctionalSyntaxWriter journal;
+
+    private long heapBudget;
+    private ABoxSpill spill;
+    // spillable axioms added since the last spill; copying them out of the ontology would need a set of all
+    private ArrayList<OWLAxiom> pending;
+    private int unchecked;
+
+
+    public OntologySink(OWLOntologyManager manager, OWLOntology ontology, File ontFile) {
+        this.manager = manager;
+        this.ontology = ontology;
+        this.ontFile = ontFile;
+    }
+
+
+    /**
+     * @param checkpoint journal the axioms for checkpoints, or null for none
+     * @param heapBudget bytes of used heap above which the ABox is spilled, 0 for no limit
+     */
+    public OntologySink(OWLOntologyManager manager, OWLOntology ontology, File ontFile,
+                        Checkpoint checkpoint, long heapBudget) throws IOException {
+        this(manager, ontology, ontFile, checkpoint);
+        this.heapBudget = heapBudget;
+        if (heapBudget > 0) {
+            spill = new ABoxSpill(ontFile);
+            pending = new ArrayList<>();
+            for (AxiomType<?> type : SPILLABLE_TYPES) {
+                addPending(ontology.getAxioms(type));
+            }
+            checkHeap();
+        }
+    }
+
+
+    /**
+     * @param checkpoint journal the axioms for checkpoints, or null for none
+     */
+    public OntologySink(OWLOntologyManager manager, OWLOntology ontology, File ontFile,
+                        Checkpoint checkpoint) throws IOException {
+        this(manager, ontology, ontFile);
+        if (checkpoint != null) {
+            journalFile = new File(ontFile.getPath() + JOURNAL_SUFFIX);
+            journal = new FunctionalSyntaxWriter(ontology, journalFile, checkpoint, false);
+            if (checkpoint.isResumed()) {
+                loadJournal();
+            }
+        }
+    }
+
+
+    /**
+     * @param budget size in MB, or percentage of the maximum heap, e.g. 80%
+     * @return budget in bytes, 0 for none
+     */
+    public static long parseHeapBudget(String budget) throws IOException {
+        try {
+            if (budget.endsWith("%")) {
+                double percent = Double.parseDouble(budget.substring(0, budget.length() - 1));
+                return (long) (Runtime.getRuntime().maxMemory() * percent / 100);
+            }
+            return Long.parseLong(budget) << 20;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid heap budget: " + budget + ". Give MB or a percentage, e.g. 80%");
+        }
+    }
+
+
+    // the journal has been cut back to the checkpoint, so only the closing bracket is missing
+    private void loadJournal() throws IOException {
+        Out.p("Loading " + journalFile);
+        manager.addAxioms(ontology, FunctionalSyntaxWriter.readJournal(journalFile));
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException {
+        manager.addAxioms(ontology, axioms);
+        if (journal != null) {
+            journal.add(axioms);
+        }
+        if (spill != null) {
+            addPending(axioms);
+            if (unchecked >= CHECK_INTERVAL) {
+                checkHeap();
+            }
+        }
+    }
+
+
+    private void addPending(Set<? extends OWLAxiom> axioms) {
+        for (OWLAxiom axiom : axioms) {
+            if (ABoxSpill.isSpillable(axiom, ontology)) {
+                pending.add(axiom);
+                unchecked++;
+            }
+        }
+    }
+
+
+    private void checkHeap() throws IOException {
+        unchecked = 0;
+        if (usedHeap() <= heapBudget) {
+            return;
+        }
+        // most of the used heap may be garbage
+        System.gc();
+        if (usedHeap() > heapBudget) {
+            spill();
+        }
+    }
+
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    // moves the pending axioms to runs, keeping the declarations of the entities they use
+    private void spill() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Set<OWLEntity> entities = new HashSet<>();
+        while (!pending.isEmpty()) {
+            // from the end, so clearing the run does not shift the list
+            List<OWLAxiom> run = pending.subList(Math.max(0, pending.size() - RUN_SIZE), pending.size());
+            spill.spill(run);
+            for (OWLAxiom axiom : run) {
+                for (OWLEntity entity : axiom.getSignature()) {
+                    if (!entity.isOWLNamedIndividual() && !entity.isBuiltIn()) {
+                        entities.add(entity);
+                    }
+                }
+            }
+            manager.removeAxioms(ontology, new HashSet<>(run));
+            run.clear();
+        }
+        pending.trimToSize();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        for (OWLEntity entity : entities) {
+            if (!ontology.isDeclared(entity)) {
+                manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(entity));
+            }
+        }
+        Out.p("Spilled " + spill.getSpilled() + " axioms of " + ontFile.getName() + " to disk");
+    }
+
+
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        if (journal == null) {
+            throw new IOException("Checkpoints need a journal: create the sink with the checkpoint");
+        }
+        journal.checkpoint(checkpoint);
+    }
+
+
+    // RDF/XML declaring the prefixes of the runs
+    private OWLDocumentFormat spillFormat() {
+        RDFXMLDocumentFormat format = new RDFXMLDocumentFormat();
+        OWLDocumentFormat ontologyFormat = manager.getOntologyFormat(ontology);
+        if (ontologyFormat != null && ontologyFormat.isPrefixOWLOntologyFormat()) {
+            format.copyPrefixesFrom(ontologyFormat.asPrefixOWLOntologyFormat());
+        }
+        spill.addPrefixes(format);
+        return format;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (spill != null && !spill.isEmpty()) {
+            // the rest of the ABox goes to the runs as well, so each axiom is written once
+            spill();
+        }
+        pending = null;
+        if (!ontFile.exists()) {
+            ontFile.createNewFile();
+        }
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(ontFile))) {
+            if (spill != null && !spill.isEmpty()) {
+                manager.saveOntology(ontology, spillFormat(), outputStream);
+            } else {
+                manager.saveOntology(ontology, outputStream);
+            }
+        } catch (OWLOntologyStorageException e) {
+            throw new IOException(e);
+        }
+        if (spill != null && !spill.isEmpty()) {
+            spill.mergeInto(ontFile);
+        }
+        if (journal != null) {
+            journal.close();
+            journalFile.delete();
+        }
+    }
+
+}
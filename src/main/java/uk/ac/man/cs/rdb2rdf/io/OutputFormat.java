@@ -0,0 +1,28 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+/**
+ * Output formats supported by the converters.
+ */
+public enum OutputFormat {
+    // in-memory ontology saved as RDF/XML
+    RDFXML("RDFXML"),
+    // streamed OWL Functional Syntax
+    OFN("OFN"),
+    // dictionary-encoded binary triples, see BinaryTriples
+    BIN("BIN"),
+    // streamed N-Triples and Turtle, gzipped for *.gz
+    NT("NT"),
+    TTL("TTL");
+
+    private final String name;
+
+    OutputFormat(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
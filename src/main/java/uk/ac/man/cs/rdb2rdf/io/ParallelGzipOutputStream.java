@@ -0,0 +1,140 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses fixed-size blocks in parallel, each into a gzip member of
+ * its own, and writes the members to the channel in order. Concatenated
+ * members form a valid gzip file (gunzip, GZIPInputStream).
+ *
+ * {@link #flush} ends the current member and waits until everything is
+ * written, so the channel position is then a valid end of the file.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int BLOCK_SIZE = 1 << 20;
+
+    private FileChannel channel;
+    private ExecutorService executor;
+    // members being compressed, in file order
+    private Deque<Future<byte[]>> pending;
+    private int maxPending;
+
+    private byte[] block;
+    private int length;
+
+
+    public ParallelGzipOutputStream(FileChannel channel, int threads) {
+        this.channel = channel;
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pending = new ArrayDeque<>();
+        maxPending = 2 * threads;
+        block = new byte[BLOCK_SIZE];
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) {
+            submit();
+        }
+        block[length++] = (byte) b;
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == block.length) {
+                submit();
+            }
+            int n = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    private void submit() throws IOException {
+        byte[] data = block;
+        int size = length;
+        pending.add(executor.submit(() -> compress(data, size)));
+        block = new byte[BLOCK_SIZE];
+        length = 0;
+        while (pending.size() > maxPending) {
+            writeNext();
+        }
+    }
+
+
+    private static byte[] compress(byte[] data, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16)) {
+            gzip.write(data, 0, size);
+        }
+        return out.toByteArray();
+    }
+
+
+    private void writeNext() throws IOException {
+        byte[] member;
+        try {
+            member = pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(member);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    /**
+     * Ends the current member and writes all pending ones
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+    }
+
+
+    /**
+     * Writes what is left; the channel is left open
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates the row pipeline of a conversion and the sink it writes to,
+ * configured by the command line options --format, --threads, --shards,
+ * --no-dedup, --bloom and --heap-budget.
+ */
+public abstract class PipelineLoader {
+
+    public static final String FORMAT_OPTION = "format";
+    public static final String THREADS_OPTION = "threads";
+    public static final String NO_DEDUP_OPTION = "no-dedup";
+    public static final String BLOOM_OPTION = "bloom";
+
+
+    /**
+     * Create a pipeline writing to the given file through a queued sink,
+     * whose applier thread is the only one touching the manager. The
+     * axioms already in the ontology (e.g. the TBox) are included in the
+     * output, see {@link SinkLoader}.
+     * @param checkpoint checkpoint of the run or null
+     * @param metrics counters and stage timings of the run
+     * @return pipeline without sources, to be closed after the run
+     */
+    public static RowPipeline initPipeline(OWLOntologyManager manager, OWLOntology ontology, File ontFile,
+                                           Checkpoint checkpoint, PipelineMetrics metrics, String[] args)
+            throws IOException {
+        OutputFormat format = SinkLoader.parseFormat(
+                Args.get(args, FORMAT_OPTION, SinkLoader.DEF_FORMAT.toString()));
+        int threads = Args.getInt(args, THREADS_OPTION, Runtime.getRuntime().availableProcessors());
+        int shards = Args.getInt(args, ShardedSink.SHARDS_OPTION, 1);
+        long heapBudget = OntologySink.parseHeapBudget(
+                Args.get(args, OntologySink.HEAP_BUDGET_OPTION, OntologySink.DEF_HEAP_BUDGET));
+        AxiomSink out = SinkLoader.initSink(format, manager, ontology, ontFile, shards,
+                !Args.has(args, NO_DEDUP_OPTION), Args.has(args, BLOOM_OPTION), checkpoint, heapBudget);
+        RowPipeline pipeline = new RowPipeline(new QueuedAxiomSink(out, 4 * threads, metrics), threads);
+        pipeline.setCheckpoint(checkpoint);
+        pipeline.setMetrics(metrics);
+        return pipeline;
+    }
+
+}
@@ -0,0 +1,409 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.AxiomType;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and stage latencies of a run: rows read, rows that produced
+ * no axioms (e.g. codes missing from ICD9), axioms per type, and the time
+ * of each stage in a {@link LatencyHistogram}. Stages are timed per batch
+ * (parse, map, add) or once (reason, save), so the cost per row is a few
+ * counter increments.
+ *
+ * The metrics are published as an MXBean and, every --metrics seconds
+ * (0 to turn off), as a log line "metrics {...}" holding one JSON object
+ * with the rates over the last interval.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+    public static final String METRICS_OPTION = "metrics";
+
+    /**
+     * Default interval of the log line in seconds
+     */
+    public static final int DEF_INTERVAL = 60;
+
+    public static final String DOMAIN = "uk.ac.man.cs.rdb2rdf";
+
+    public static final String LOG_PREFIX = "metrics ";
+
+    public enum Stage {
+        // reading a batch of rows from a source
+        PARSE,
+        // mapping a batch of rows to axioms in a worker, including handing full buffers on
+        MAP,
+        // applying a batch of axioms to the output (dedup and writing)
+        ADD,
+        // classification by the reasoner
+        REASON,
+        // completing the output when the sink is closed
+        SAVE;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final AxiomType<?>[] TYPES = initTypes();
+
+    private LongAdder rowsRead = new LongAdder();
+    private LongAdder rowsSkipped = new LongAdder();
+    private LongAdder[] axioms;
+    private LatencyHistogram[] stages;
+
+    private long startNanos;
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+    // totals at the last log line
+    private long lastNanos;
+    private long lastRows;
+    private long lastAxioms;
+
+
+    public PipelineMetrics() {
+        axioms = new LongAdder[TYPES.length];
+        for (int i = 0; i < axioms.length; i++) {
+            axioms[i] = new LongAdder();
+        }
+        stages = new LatencyHistogram[Stage.values().length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        startNanos = System.nanoTime();
+        lastNanos = startNanos;
+    }
+
+
+    private static AxiomType<?>[] initTypes() {
+        int n = 0;
+        for (AxiomType<?> type : AxiomType.AXIOM_TYPES) {
+            n = Math.max(n, type.getIndex() + 1);
+        }
+        AxiomType<?>[] types = new AxiomType<?>[n];
+        for (AxiomType<?> type : AxiomType.AXIOM_TYPES) {
+            types[type.getIndex()] = type;
+        }
+        return types;
+    }
+
+
+    /**
+     * Creates the metrics of a run, registers them with the platform
+     * MBean server and starts the periodic log line
+     * @param name name of the run, usually the output file
+     */
+    public static PipelineMetrics initMetrics(String name, String[] args) {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.register(name);
+        metrics.startReporting(Args.getInt(args, METRICS_OPTION, DEF_INTERVAL));
+        return metrics;
+    }
+
+
+    /**
+     * @return number of axiom types, the length of the arrays passed to {@link #addAxioms}
+     */
+    public static int getTypeCount() {
+        return TYPES.length;
+    }
+
+
+    public void addRowsRead(long n) {
+        rowsRead.add(n);
+    }
+
+
+    public void addRowsSkipped(long n) {
+        rowsSkipped.add(n);
+    }
+
+
+    /**
+     * @param counts numbers of axioms by {@link AxiomType#getIndex()}
+     */
+    public void addAxioms(long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                axioms[i].add(counts[i]);
+            }
+        }
+    }
+
+
+    /**
+     * @param start {@link System#nanoTime()} at the start of the stage
+     */
+    public void record(Stage stage, long start) {
+        stages[stage.ordinal()].record(System.nanoTime() - start);
+    }
+
+
+    public LatencyHistogram getStage(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+
+    public void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(DOMAIN + ":type=Pipeline,name=" + ObjectName.quote(name));
+            // a later run in the same JVM replaces the previous one
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            Out.p("Cannot register the metrics MBean: " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+
+    /**
+     * @param seconds interval of the log line, 0 for none
+     */
+    public void startReporting(int seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * Prints the log line
+     */
+    public synchronized void report() {
+        Out.p(LOG_PREFIX + toJson());
+    }
+
+
+    /**
+     * Stops the log line after printing a final one, and unregisters the MBean
+     */
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            report();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // already replaced by another run
+            }
+            objectName = null;
+        }
+    }
+
+
+    /**
+     * @return the metrics as a JSON object, with the rates since the previous call
+     */
+    public synchronized String toJson() {
+        long now = System.nanoTime();
+        long rows = getRowsRead();
+        long total = getAxioms();
+        double seconds = (now - lastNanos) / 1e9;
+        StringBuilder buf = new StringBuilder("{");
+        field(buf, "elapsed", (now - startNanos) / 1e9);
+        field(buf, "rows", rows);
+        field(buf, "rowsSkipped", getRowsSkipped());
+        field(buf, "rowsPerSec", seconds > 0 ? (rows - lastRows) / seconds : 0);
+        field(buf, "axioms", total);
+        field(buf, "axiomsPerSec", seconds > 0 ? (total - lastAxioms) / seconds : 0);
+        field(buf, "heapUsed", getHeapUsedBytes());
+        field(buf, "heapMax", getHeapMaxBytes());
+        buf.append("\"stages\":{");
+        boolean first = true;
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = getStage(stage);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            if (!first) {
+                buf.append(',');
+            }
+            first = false;
+            buf.append('"').append(stage.getName()).append("\":{");
+            field(buf, "count", histogram.getCount());
+            field(buf, "totalMs", histogram.getSumNanos() / 1e6);
+            field(buf, "meanMs", histogram.getMeanNanos() / 1e6);
+            field(buf, "p50Ms", histogram.getPercentileNanos(0.5) / 1e6);
+            field(buf, "p99Ms", histogram.getPercentileNanos(0.99) / 1e6);
+            buf.append("\"maxMs\":").append(format(histogram.getMaxNanos() / 1e6)).append('}');
+        }
+        buf.append("},\"axiomTypes\":{");
+        first = true;
+        for (Map.Entry<String, Long> entry : getAxiomsByType().entrySet()) {
+            if (!first) {
+                buf.append(',');
+            }
+            first = false;
+            buf.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+        }
+        buf.append("}}");
+        lastNanos = now;
+        lastRows = rows;
+        lastAxioms = total;
+        return buf.toString();
+    }
+
+
+    private static void field(StringBuilder buf, String name, long value) {
+        buf.append('"').append(name).append("\":").append(value).append(',');
+    }
+
+
+    private static void field(StringBuilder buf, String name, double value) {
+        buf.append('"').append(name).append("\":").append(format(value)).append(',');
+    }
+
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+
+    @Override
+    public long getRowsSkipped() {
+        return rowsSkipped.sum();
+    }
+
+
+    @Override
+    public long getAxioms() {
+        long total = 0;
+        for (LongAdder count : axioms) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+
+    @Override
+    public Map<String, Long> getAxiomsByType() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            long count = axioms[i].sum();
+            if (count > 0 && TYPES[i] != null) {
+                map.put(TYPES[i].getName(), count);
+            }
+        }
+        return map;
+    }
+
+
+    @Override
+    public double getRowsPerSecond() {
+        return perSecond(getRowsRead());
+    }
+
+
+    @Override
+    public double getAxiomsPerSecond() {
+        return perSecond(getAxioms());
+    }
+
+
+    private double perSecond(long count) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? count / seconds : 0;
+    }
+
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            map.put(stage.getName(), getStage(stage).getCount());
+        }
+        return map;
+    }
+
+
+    @Override
+    public Map<String, Double> getStageMeanMillis() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            map.put(stage.getName(), getStage(stage).getMeanNanos() / 1e6);
+        }
+        return map;
+    }
+
+
+    @Override
+    public Map<String, Double> getStageP50Millis() {
+        return percentiles(0.5);
+    }
+
+
+    @Override
+    public Map<String, Double> getStageP99Millis() {
+        return percentiles(0.99);
+    }
+
+
+    private Map<String, Double> percentiles(double q) {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            map.put(stage.getName(), getStage(stage).getPercentileNanos(q) / 1e6);
+        }
+        return map;
+    }
+
+
+    @Override
+    public Map<String, Double> getStageMaxMillis() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            map.put(stage.getName(), getStage(stage).getMaxNanos() / 1e6);
+        }
+        return map;
+    }
+
+
+    @Override
+    public long getHeapUsedBytes() {
+        return heap().getUsed();
+    }
+
+
+    @Override
+    public long getHeapMaxBytes() {
+        return heap().getMax();
+    }
+
+
+    private static MemoryUsage heap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+
+
+    @Override
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+}
@@ -0,0 +1,46 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link PipelineMetrics}, registered as
+ * uk.ac.man.cs.rdb2rdf:type=Pipeline,name=(output file).
+ * Stage maps are keyed by stage name (parse, map, add, reason, save).
+ */
+public interface PipelineMetricsMXBean {
+
+    public long getRowsRead();
+
+    public long getRowsSkipped();
+
+    public long getAxioms();
+
+    public Map<String, Long> getAxiomsByType();
+
+    /**
+     * @return rows read per second since the start
+     */
+    public double getRowsPerSecond();
+
+    /**
+     * @return axioms produced per second since the start
+     */
+    public double getAxiomsPerSecond();
+
+    public Map<String, Long> getStageCounts();
+
+    public Map<String, Double> getStageMeanMillis();
+
+    public Map<String, Double> getStageP50Millis();
+
+    public Map<String, Double> getStageP99Millis();
+
+    public Map<String, Double> getStageMaxMillis();
+
+    public long getHeapUsedBytes();
+
+    public long getHeapMaxBytes();
+
+    public long getElapsedMillis();
+
+}
@@ -0,0 +1,225 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Thread-safe front of a sink: batches added by any thread are queued
+ * and applied by a single applier thread, which is the only thread that
+ * touches the underlying sink (and its ontology manager). The bounded
+ * queue blocks producers when the applier falls behind.
+ */
+public class QueuedAxiomSink implements AxiomSink {
+
+    private static final Set<OWLAxiom> END = Collections.emptySet();
+
+    private AxiomSink target;
+    private BlockingQueue<Set<? extends OWLAxiom>> queue;
+    private Thread applier;
+    private volatile Throwable error;
+    private PipelineMetrics metrics;
+
+
+    public QueuedAxiomSink(AxiomSink target, int capacity) {
+        this(target, capacity, null);
+    }
+
+
+    /**
+     * @param metrics timing of the add stage, or null
+     */
+    public QueuedAxiomSink(AxiomSink target, int capacity, PipelineMetrics metrics) {
+        this.target = target;
+        this.metrics = metrics;
+        queue = new ArrayBlockingQueue<>(capacity);
+        applier = new Thread(this::apply, "axiom-applier");
+        // a failed run must not be kept alive by a waiting applier
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+
+    private void apply() {
+        try {
+            Set<? extends OWLAxiom> axioms = queue.take();
+            while (axioms != END) {
+                if (axioms instanceof CheckpointMarker) {
+                    ((CheckpointMarker) axioms).apply(target, error);
+                } else if (error == null) {
+                    try {
+                        long start = System.nanoTime();
+                        if (axioms instanceof PartBatch) {
+                            target.add(((PartBatch) axioms).axioms, ((PartBatch) axioms).part);
+                        } else {
+                            target.add(axioms);
+                        }
+                        if (metrics != null) {
+                            metrics.record(PipelineMetrics.Stage.ADD, start);
+                        }
+                    } catch (Throwable e) {
+                        // keep draining so that producers do not block
+                        error = e;
+                    }
+                }
+                axioms = queue.take();
+            }
+        } catch (InterruptedException e) {
+            error = e;
+        }
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException {
+        checkError();
+        if (axioms.isEmpty()) {
+            return;
+        }
+        put(axioms);
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms, int part) throws IOException {
+        checkError();
+        if (axioms.isEmpty()) {
+            return;
+        }
+        put(new PartBatch(axioms, part));
+    }
+
+
+    private void put(Set<? extends OWLAxiom> axioms) throws IOException {
+        try {
+            queue.put(axioms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing axioms");
+        }
+    }
+
+
+    @Override
+    public int getParts() {
+        return target.getParts();
+    }
+
+
+    /**
+     * Waits until all queued axioms are applied, then checkpoints the
+     * target on the applier thread
+     */
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        checkError();
+        CheckpointMarker marker = new CheckpointMarker(checkpoint);
+        try {
+            queue.put(marker);
+            marker.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing a checkpoint");
+        }
+        if (marker.error != null) {
+            throw new IOException("Checkpoint failed", marker.error);
+        }
+    }
+
+
+    private void checkError() throws IOException {
+        if (error != null) {
+            throw new IOException("Axiom applier failed", error);
+        }
+    }
+
+
+    /**
+     * Waits until all queued axioms are applied, then closes the target
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the sink");
+        }
+        checkError();
+        target.close();
+    }
+
+
+
+    /**
+     * Axioms queued for a part of the target
+     */
+    private static class PartBatch extends AbstractSet<OWLAxiom> {
+        final Set<? extends OWLAxiom> axioms;
+        final int part;
+
+        PartBatch(Set<? extends OWLAxiom> axioms, int part) {
+            this.axioms = axioms;
+            this.part = part;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<OWLAxiom> iterator() {
+            return (Iterator<OWLAxiom>) axioms.iterator();
+        }
+
+        @Override
+        public int size() {
+            return axioms.size();
+        }
+    }
+
+
+    /**
+     * Queued after the axioms to be included in a checkpoint
+     */
+    private static class CheckpointMarker extends AbstractSet<OWLAxiom> {
+        final Checkpoint checkpoint;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable error;
+
+        CheckpointMarker(Checkpoint checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
+        void apply(AxiomSink target, Throwable applierError) {
+            try {
+                if (applierError != null) {
+                    error = applierError;
+                } else {
+                    target.checkpoint(checkpoint);
+                }
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public Iterator<OWLAxiom> iterator() {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+
+}
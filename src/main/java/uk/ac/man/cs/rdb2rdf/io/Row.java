@@ -0,0 +1,23 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+/**
+ * One input row. Cells are only turned into Strings when requested.
+ */
+public interface Row {
+
+    public int size();
+
+    /**
+     * @return the cell as a character sequence, possibly a view
+     * that is only valid until the row is reused
+     */
+    public CharSequence getChars(int column);
+
+    public String get(int column);
+
+    /**
+     * @return a row that stays valid after the reader moves on
+     */
+    public Row copy();
+
+}
@@ -0,0 +1,433 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged ingestion: one reader thread per row source, a pool of workers
+ * that map rows to axioms in thread-local buffers, and a queued sink
+ * whose single applier thread owns the output. Bounded queues between
+ * the stages provide backpressure.
+ *
+ * With a {@link Checkpoint}, the readers are paused every interval at a
+ * batch boundary; once the queued batches are processed and flushed, the
+ * sink and the read positions of the sources are checkpointed. Resumed
+ * sources start after the rows read by then: CSV files seek to the byte
+ * offset, queries skip the rows (so they need a stable ORDER BY).
+ * At the end of an incremental run the end of every source is saved for
+ * the next run.
+ *
+ * Rows read and skipped, axioms by type and the time of the parse and map
+ * stages go to the {@link PipelineMetrics} of the run.
+ *
+ * A sink split into parts, e.g. the shards of a {@link ShardedSink}, gets
+ * the axioms of a row in the part of its key column, e.g. the encounter.
+ */
+public class RowPipeline {
+
+    public static final int ROW_BATCH_SIZE = 1024;
+
+    private static final RowBatch END = new RowBatch(null, -1, null);
+
+    private static final long POLL_MILLIS = 100;
+
+    private AxiomSink sink;
+    private int workers;
+    private BlockingQueue<RowBatch> queue;
+    private List<Source> sources;
+
+    private Checkpoint checkpoint;
+    private PipelineMetrics metrics = new PipelineMetrics();
+    private final Object pauseLock = new Object();
+    // guarded by pauseLock
+    private boolean paused;
+    private int readersPaused;
+    private int readersDone;
+    private final AtomicLong batchesQueued = new AtomicLong();
+    private final AtomicLong batchesDone = new AtomicLong();
+
+
+    /**
+     * @param sink thread-safe sink, e.g. a {@link QueuedAxiomSink}
+     */
+    public RowPipeline(AxiomSink sink, int workers) {
+        this.sink = sink;
+        this.workers = workers;
+        queue = new ArrayBlockingQueue<>(4 * workers);
+        sources = new ArrayList<>();
+    }
+
+
+    /**
+     * @param rows source read by its own thread and closed at the end
+     */
+    public void addSource(String name, RowSource rows, RowProcessor processor) {
+        addSource(name, rows, processor, -1);
+    }
+
+
+    /**
+     * @param keyColumn column of the row key, e.g. the encounter, or -1 for none
+     */
+    public void addSource(String name, RowSource rows, RowProcessor processor, int keyColumn) {
+        Source source = new Source();
+        source.name = name;
+        source.rows = rows;
+        source.processor = processor;
+        source.keyColumn = keyColumn;
+        sources.add(source);
+    }
+
+
+    /**
+     * Adds the partitions of one input, each read by its own thread
+     */
+    public void addSources(String name, List<RowSource> parts, RowProcessor processor) {
+        addSources(name, parts, processor, -1);
+    }
+
+
+    /**
+     * Adds the partitions of one input whose rows have a key, each read by its own thread
+     * @param keyColumn column of the row key, e.g. the encounter, or -1 for none
+     */
+    public void addSources(String name, List<RowSource> parts, RowProcessor processor, int keyColumn) {
+        for (int i = 0; i < parts.size(); i++) {
+            addSource(parts.size() == 1 ? name : name + "[" + i + "]", parts.get(i), processor, keyColumn);
+        }
+    }
+
+
+    /**
+     * @param checkpoint checkpoint written periodically and, if resumed,
+     *                   read positions of the sources
+     */
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+
+    /**
+     * @param metrics counters and stage timings of the run
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Runs all stages and waits until every row has reached the sink
+     */
+    public void run() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(sources.size() + workers);
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        Set<Future<Void>> readers = new HashSet<>();
+        for (Source source : sources) {
+            readers.add(completion.submit(() -> read(source)));
+        }
+        for (int i = 0; i < workers; i++) {
+            completion.submit(this::work);
+        }
+        try {
+            int readersLeft = readers.size();
+            if (readersLeft == 0) {
+                for (int j = 0; j < workers; j++) {
+                    queue.put(END);
+                }
+            }
+            long nextCheckpoint = isCheckpointed()
+                    ? System.currentTimeMillis() + checkpoint.getIntervalMillis() : Long.MAX_VALUE;
+            int left = sources.size() + workers;
+            while (left > 0) {
+                Future<Void> future = completion.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (future != null) {
+                    future.get();
+                    left--;
+                    if (readers.contains(future) && --readersLeft == 0) {
+                        setPaused(false);
+                        for (int j = 0; j < workers; j++) {
+                            queue.put(END);
+                        }
+                    }
+                }
+                if (readersLeft > 0 && System.currentTimeMillis() >= nextCheckpoint) {
+                    // the workers keep going until the queued batches are done
+                    setPaused(true);
+                    if (isIdle()) {
+                        saveCheckpoint();
+                        setPaused(false);
+                        nextCheckpoint = System.currentTimeMillis() + checkpoint.getIntervalMillis();
+                    }
+                }
+            }
+            if (checkpoint != null && checkpoint.isIncremental()) {
+                saveEnd();
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            closeSources();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            closeSources();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pipeline");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Saves the output by closing the sink. The checkpoint is deleted
+     * unless the run is incremental, and the metrics are reported.
+     */
+    public void close() throws IOException {
+        long start = System.nanoTime();
+        sink.close();
+        metrics.record(PipelineMetrics.Stage.SAVE, start);
+        if (checkpoint != null && !checkpoint.isIncremental()) {
+            checkpoint.delete();
+        }
+        metrics.close();
+    }
+
+
+    // sources whose reader never started would otherwise stay open
+    private void closeSources() {
+        for (Source source : sources) {
+            try {
+                source.rows.close();
+            } catch (IOException e) {
+                Out.p("Failed to close " + source.name + ": " + e.getMessage());
+            }
+        }
+    }
+
+
+    private boolean isCheckpointed() {
+        return checkpoint != null && checkpoint.getIntervalMillis() > 0;
+    }
+
+
+    private void setPaused(boolean paused) {
+        synchronized (pauseLock) {
+            this.paused = paused;
+            if (!paused) {
+                pauseLock.notifyAll();
+            }
+        }
+    }
+
+
+    // every reader waits at a batch boundary or is done, and the queued batches are flushed
+    private boolean isIdle() {
+        synchronized (pauseLock) {
+            if (readersPaused + readersDone < sources.size()) {
+                return false;
+            }
+        }
+        return batchesDone.get() == batchesQueued.get();
+    }
+
+
+    private void saveCheckpoint() throws IOException {
+        sink.checkpoint(checkpoint);
+        long rows = 0;
+        for (Source source : sources) {
+            checkpoint.setLong(source.key("rows"), source.count);
+            checkpoint.setLong(source.key("position"), source.position);
+            rows += source.count;
+        }
+        checkpoint.save();
+        Out.p("Checkpoint: " + rows + " lines");
+    }
+
+
+    // the next run continues CSV files from their end; queries start
+    // over with the next range of watermark values
+    private void saveEnd() throws IOException {
+        sink.checkpoint(checkpoint);
+        for (Source source : sources) {
+            boolean seekable = source.position >= 0;
+            checkpoint.setLong(source.key("rows"), seekable ? source.count : 0);
+            checkpoint.setLong(source.key("position"), source.position);
+        }
+        checkpoint.complete();
+        checkpoint.save();
+    }
+
+
+    private Void read(Source source) throws IOException, InterruptedException {
+        try (RowSource reader = source.rows) {
+            long count = skipRead(source, reader);
+            List<Row> rows = new ArrayList<>(ROW_BATCH_SIZE);
+            long start = System.nanoTime();
+            Row row = reader.next();
+            while (row != null) {
+                // the reader reuses its row
+                rows.add(row.copy());
+                count++;
+                if (rows.size() == ROW_BATCH_SIZE) {
+                    put(source, rows, count, reader.getPosition(), start);
+                    rows = new ArrayList<>(ROW_BATCH_SIZE);
+                    start = System.nanoTime();
+                }
+                row = reader.next();
+                if (count % 10000 == 0) {
+                    Out.p("Reading " + source.name + ": " + count + " lines");
+                }
+            }
+            if (!rows.isEmpty()) {
+                put(source, rows, count, reader.getPosition(), start);
+            }
+        } finally {
+            synchronized (pauseLock) {
+                readersDone++;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Moves a resumed source past the rows read before the checkpoint
+     * @return number of rows skipped
+     */
+    private long skipRead(Source source, RowSource reader) throws IOException {
+        if (checkpoint == null || !checkpoint.isResumed()) {
+            return 0;
+        }
+        long count = checkpoint.getLong(source.key("rows"), 0);
+        long position = checkpoint.getLong(source.key("position"), -1);
+        if (count > 0) {
+            if (position >= 0 && reader.getPosition() >= 0) {
+                reader.seek(position);
+            } else {
+                for (long i = 0; i < count; i++) {
+                    if (reader.next() == null) {
+                        throw new IOException(source.name + " has fewer rows than at the checkpoint: " + i);
+                    }
+                }
+            }
+            Out.p("Resuming " + source.name + " after " + count + " lines");
+        }
+        source.count = count;
+        source.position = position;
+        return count;
+    }
+
+
+    /**
+     * @param start time the reading of the batch started, the wait for the queue is not included
+     */
+    private void put(Source source, List<Row> rows, long count, long position, long start)
+            throws InterruptedException {
+        metrics.record(PipelineMetrics.Stage.PARSE, start);
+        metrics.addRowsRead(rows.size());
+        batchesQueued.incrementAndGet();
+        queue.put(new RowBatch(source.processor, source.keyColumn, rows));
+        source.count = count;
+        source.position = position;
+        if (isCheckpointed()) {
+            synchronized (pauseLock) {
+                if (paused) {
+                    readersPaused++;
+                    while (paused) {
+                        pauseLock.wait();
+                    }
+                    readersPaused--;
+                }
+            }
+        }
+    }
+
+
+    private Void work() throws IOException, InterruptedException {
+        int parts = sink.getParts();
+        // the last one for the rows without a key
+        AxiomBuffer[] buffers = new AxiomBuffer[parts + 1];
+        buffers[parts] = new AxiomBuffer(sink, AxiomBuffer.DEF_BATCH_SIZE, metrics);
+        try {
+            RowBatch batch = queue.take();
+            while (batch != END) {
+                long start = System.nanoTime();
+                long skipped = 0;
+                for (Row row : batch.rows) {
+                    AxiomBuffer buffer = buffers[parts];
+                    if (parts > 1 && batch.keyColumn >= 0) {
+                        int part = ShardedSink.shardOf(row.get(batch.keyColumn), parts);
+                        if (buffers[part] == null) {
+                            buffers[part] = new AxiomBuffer(sink, AxiomBuffer.DEF_BATCH_SIZE, metrics, part);
+                        }
+                        buffer = buffers[part];
+                    }
+                    long added = buffer.getAdded();
+                    batch.processor.process(row, buffer);
+                    // e.g. a code missing from ICD9
+                    if (buffer.getAdded() == added) {
+                        skipped++;
+                    }
+                }
+                metrics.addRowsSkipped(skipped);
+                metrics.record(PipelineMetrics.Stage.MAP, start);
+                if (isCheckpointed()) {
+                    // a checkpoint covers whole batches
+                    flush(buffers);
+                }
+                batchesDone.incrementAndGet();
+                batch = queue.take();
+            }
+        } finally {
+            flush(buffers);
+        }
+        return null;
+    }
+
+
+    private static void flush(AxiomBuffer[] buffers) throws IOException {
+        for (AxiomBuffer buffer : buffers) {
+            if (buffer != null) {
+                buffer.flush();
+            }
+        }
+    }
+
+
+
+    private static class Source {
+        String name;
+        RowSource rows;
+        RowProcessor processor;
+        int keyColumn = -1;
+        // rows queued so far and the source position after them
+        volatile long count;
+        volatile long position = -1;
+
+        String key(String field) {
+            return "source." + name + "." + field;
+        }
+    }
+
+
+    private static class RowBatch {
+        final RowProcessor processor;
+        // column of the row key or -1
+        final int keyColumn;
+        final List<Row> rows;
+
+        RowBatch(RowProcessor processor, int keyColumn, List<Row> rows) {
+            this.processor = processor;
+            this.keyColumn = keyColumn;
+            this.rows = rows;
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.IOException;
+
+/**
+ * Maps one input row to axioms. Implementations must be safe to call
+ * from several worker threads, each with its own sink.
+ */
+public interface RowProcessor {
+
+    public void process(Row row, AxiomSink sink) throws IOException;
+
+}
@@ -0,0 +1,34 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward-only stream of rows, e.g. a CSV file or a database cursor.
+ */
+public interface RowSource extends Closeable {
+
+    /**
+     * Reads the next row. The returned row may be reused by the following
+     * call; use {@link Row#copy()} to keep it.
+     * @return next row or null at the end of the input
+     */
+    public Row next() throws IOException;
+
+
+    /**
+     * @return position after the last row read, or -1 if the source cannot seek
+     */
+    public default long getPosition() {
+        return -1;
+    }
+
+
+    /**
+     * Continues reading from a position returned by {@link #getPosition()}
+     */
+    public default void seek(long position) throws IOException {
+        throw new IOException("Cannot seek in " + getClass().getSimpleName());
+    }
+
+}
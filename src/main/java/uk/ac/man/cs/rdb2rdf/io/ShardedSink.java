@@ -0,0 +1,320 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the output into N shard files, plus a TBox file with the given
+ * ontology and all other axioms. The assertions of a row go to the shard
+ * of the row key (see {@link RowPipeline#addSources(String, List, RowProcessor, int)}),
+ * e.g. the encounter, so a shard has the encounters together with the
+ * conditions, medicines and labs they link to. Assertions added without a
+ * key go by a hash of the individual they are about. Each file has its own
+ * writer thread and, with dedup, its own {@link DedupSink}, so the shards
+ * are written concurrently and an individual shared by encounters of
+ * several shards is described in each. A manifest (output.manifest) lists
+ * the files.
+ *
+ * For output.ofn the files are output.tbox.ofn, output.shard-0.ofn, ...
+ */
+public class ShardedSink implements AxiomSink {
+
+    public static final String SHARDS_OPTION = "shards";
+    public static final String MANIFEST_EXT = ".manifest";
+
+    // batches queued per writer thread
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static final String SHARDS = "shards";
+
+    private OutputFormat format;
+    private File manifestFile;
+    private File tboxFile;
+    private File[] shardFiles;
+
+    private AxiomSink tbox;
+    private AxiomSink[] shards;
+    private long[] counts;
+    // of the shards with dedup, which count the axioms passed on
+    private DedupSink[] dedups;
+    // whether the axioms came with row keys, for the manifest
+    private boolean keyed;
+
+
+    /**
+     * @param checkpoint checkpoint of the run or null
+     * @param heapBudget bytes of used heap shared by all files, 0 for no limit
+     */
+    public ShardedSink(OutputFormat format, OWLOntologyManager manager, OWLOntology ontology,
+                       File ontFile, int n, Checkpoint checkpoint, long heapBudget)
+            throws IOException, OWLOntologyCreationException {
+        this(format, manager, ontology, ontFile, n, false, false, checkpoint, heapBudget);
+    }
+
+
+    /**
+     * @param dedup drop the axioms already in a file, see {@link DedupSink}
+     * @param bloom check a Bloom filter first
+     * @param checkpoint checkpoint of the run or null
+     * @param heapBudget bytes of used heap shared by all files, 0 for no limit
+     */
+    public ShardedSink(OutputFormat format, OWLOntologyManager manager, OWLOntology ontology,
+                       File ontFile, int n, boolean dedup, boolean bloom, Checkpoint checkpoint,
+                       long heapBudget)
+            throws IOException, OWLOntologyCreationException {
+        this.format = format;
+        manifestFile = new File(replaceExt(ontFile.getPath(), MANIFEST_EXT));
+        tboxFile = insertName(ontFile, "tbox");
+        shardFiles = new File[n];
+        shards = new AxiomSink[n];
+        counts = new long[n];
+        if (checkpoint != null && checkpoint.isResumed()) {
+            long saved = checkpoint.getLong(SHARDS, n);
+            if (saved != n) {
+                throw new IOException("The checkpoint was written with --shards=" + saved);
+            }
+        }
+        AxiomSink tboxSink = SinkLoader.initSink(format, manager, ontology, tboxFile,
+                scope(checkpoint, "tbox"), heapBudget);
+        if (dedup) {
+            tboxSink = new DedupSink(tboxSink, bloom, scope(checkpoint, "tbox"));
+            dedups = new DedupSink[n];
+        }
+        tbox = new QueuedAxiomSink(tboxSink, QUEUE_CAPACITY);
+        IRI ontIRI = ontology.getOntologyID().getOntologyIRI().orNull();
+        for (int i = 0; i < n; i++) {
+            String name = "shard-" + i;
+            shardFiles[i] = insertName(ontFile, name);
+            // a manager per shard, as each is used by its own writer thread
+            OWLOntologyManager shardManager = OWLManager.createOWLOntologyManager();
+            OWLOntology shardOntology = ontIRI == null
+                    ? shardManager.createOntology()
+                    : shardManager.createOntology(IRI.create(ontIRI + "/" + name));
+            AxiomSink shard = SinkLoader.initSink(format, shardManager, shardOntology, shardFiles[i],
+                    scope(checkpoint, name), heapBudget);
+            if (dedup) {
+                // on the writer thread of the shard
+                shard = dedups[i] = new DedupSink(shard, bloom, scope(checkpoint, name));
+            }
+            shards[i] = new QueuedAxiomSink(shard, QUEUE_CAPACITY);
+            if (checkpoint != null && checkpoint.isResumed()) {
+                counts[i] = checkpoint.getLong(name + ".axioms", 0);
+            }
+        }
+    }
+
+
+    private static Checkpoint scope(Checkpoint checkpoint, String name) {
+        return checkpoint == null ? null : checkpoint.scope(name);
+    }
+
+
+    /**
+     * @return output.name.ext for output.ext, output.name.ext.gz for output.ext.gz
+     */
+    public static File insertName(File ontFile, String name) {
+        String path = ontFile.getPath();
+        if (path.endsWith(NTriplesWriter.GZIP_EXT)) {
+            int end = path.length() - NTriplesWriter.GZIP_EXT.length();
+            return new File(insertName(new File(path.substring(0, end)), name) + NTriplesWriter.GZIP_EXT);
+        }
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf(File.separatorChar)) {
+            return new File(path + "." + name);
+        }
+        return new File(path.substring(0, dot) + "." + name + path.substring(dot));
+    }
+
+
+    private static String replaceExt(String path, String ext) {
+        if (path.endsWith(NTriplesWriter.GZIP_EXT)) {
+            path = path.substring(0, path.length() - NTriplesWriter.GZIP_EXT.length());
+        }
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf(File.separatorChar)) {
+            return path + ext;
+        }
+        return path.substring(0, dot) + ext;
+    }
+
+
+    /**
+     * @return shard of the row key, or of the individual with the given IRI (or node id)
+     */
+    public static int shardOf(String key, int n) {
+        return (key.hashCode() & 0x7fffffff) % n;
+    }
+
+
+    /**
+     * @return the individual (or annotated IRI) an assertion is about, or
+     *         null for axioms that go to the TBox file
+     */
+    private static String keyOf(OWLAxiom axiom) {
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            return ((OWLClassAssertionAxiom) axiom).getIndividual().toStringID();
+        }
+        if (axiom instanceof OWLPropertyAssertionAxiom) {
+            return ((OWLPropertyAssertionAxiom<?, ?>) axiom).getSubject().toStringID();
+        }
+        if (axiom instanceof OWLAnnotationAssertionAxiom) {
+            return ((OWLAnnotationAssertionAxiom) axiom).getSubject().toString();
+        }
+        if (axiom instanceof OWLDeclarationAxiom) {
+            OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+            return entity.isOWLNamedIndividual() ? entity.toStringID() : null;
+        }
+        return null;
+    }
+
+
+    /**
+     * Adds the axioms to the shards of the individuals they are about
+     */
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms) throws IOException {
+        Set<OWLAxiom> tboxAxioms = null;
+        List<Set<OWLAxiom>> shardAxioms = null;
+        for (OWLAxiom axiom : axioms) {
+            String key = keyOf(axiom);
+            if (key == null) {
+                if (tboxAxioms == null) {
+                    tboxAxioms = new HashSet<>();
+                }
+                tboxAxioms.add(axiom);
+                continue;
+            }
+            int i = shardOf(key, shards.length);
+            if (shardAxioms == null) {
+                shardAxioms = new ArrayList<>(Collections.nCopies(shards.length, (Set<OWLAxiom>) null));
+            }
+            if (shardAxioms.get(i) == null) {
+                shardAxioms.set(i, new HashSet<>());
+            }
+            shardAxioms.get(i).add(axiom);
+        }
+        if (tboxAxioms != null) {
+            tbox.add(tboxAxioms);
+        }
+        if (shardAxioms != null) {
+            for (int i = 0; i < shards.length; i++) {
+                if (shardAxioms.get(i) != null) {
+                    addToShard(i, shardAxioms.get(i));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Adds the assertions to the shard of the row keys, the other axioms to the TBox file
+     * @param part shard of the row keys, see {@link #shardOf(String, int)}
+     */
+    @Override
+    public void add(Set<? extends OWLAxiom> axioms, int part) throws IOException {
+        keyed = true;
+        Set<OWLAxiom> tboxAxioms = null;
+        Set<OWLAxiom> shardAxioms = new HashSet<>();
+        for (OWLAxiom axiom : axioms) {
+            if (keyOf(axiom) != null) {
+                shardAxioms.add(axiom);
+                continue;
+            }
+            if (tboxAxioms == null) {
+                tboxAxioms = new HashSet<>();
+            }
+            tboxAxioms.add(axiom);
+        }
+        if (tboxAxioms != null) {
+            tbox.add(tboxAxioms);
+        }
+        if (!shardAxioms.isEmpty()) {
+            addToShard(part, shardAxioms);
+        }
+    }
+
+
+    private void addToShard(int i, Set<? extends OWLAxiom> axioms) throws IOException {
+        shards[i].add(axioms);
+        counts[i] += axioms.size();
+    }
+
+
+    // axioms written to the shard, once its queue is applied
+    private long countOf(int i) {
+        return dedups == null ? counts[i] : dedups[i].getAxiomCount() - dedups[i].getDuplicateCount();
+    }
+
+
+    @Override
+    public int getParts() {
+        return shards.length;
+    }
+
+
+    @Override
+    public void checkpoint(Checkpoint checkpoint) throws IOException {
+        tbox.checkpoint(checkpoint.scope("tbox"));
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].checkpoint(checkpoint.scope("shard-" + i));
+            checkpoint.setLong("shard-" + i + ".axioms", countOf(i));
+        }
+        checkpoint.setLong(SHARDS, shards.length);
+    }
+
+
+    /**
+     * Closes the TBox and shard files in parallel, then writes the manifest
+     */
+    @Override
+    public void close() throws IOException {
+        List<AxiomSink> sinks = new ArrayList<>();
+        sinks.add(tbox);
+        sinks.addAll(Arrays.asList(shards));
+        ExecutorService executor = Executors.newFixedThreadPool(sinks.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (AxiomSink sink : sinks) {
+                futures.add(executor.submit(() -> {
+                    sink.close();
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the shards");
+        } catch (ExecutionException e) {
+            throw new IOException("Writing a shard failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        writeManifest();
+    }
+
+
+    private void writeManifest() throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("format", format.toString());
+        manifest.setProperty("key", keyed ? "row key" : "subject individual");
+        manifest.setProperty("tbox", tboxFile.getName());
+        manifest.setProperty(SHARDS, Integer.toString(shards.length));
+        for (int i = 0; i < shards.length; i++) {
+            manifest.setProperty("shard." + i, shardFiles[i].getName());
+            manifest.setProperty("shard." + i + ".axioms", Long.toString(countOf(i)));
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(manifestFile))) {
+            manifest.store(out, "rdb2rdf shards");
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates axiom sinks for the output formats.
+ */
+public abstract class SinkLoader {
+
+    public static final String INVALID_FORMAT_ERR = "Valid formats: RDFXML | OFN | BIN | NT | TTL";
+
+
+    /**
+     * Default format
+     */
+    public static final OutputFormat DEF_FORMAT = OutputFormat.RDFXML;
+
+
+    /**
+     * Create a sink writing to the given file. The axioms already in
+     * the ontology (e.g. the TBox) are included in the output.
+     * @return axiom sink
+     */
+    public static AxiomSink initSink(OutputFormat format, OWLOntologyManager manager,
+                                     OWLOntology ontology, File ontFile)
+            throws IOException {
+        return initSink(format, manager, ontology, ontFile, null);
+    }
+
+
+    /**
+     * Create a sink that can be checkpointed. If the checkpoint is resumed,
+     * the sink continues the output written up to it.
+     * @param checkpoint checkpoint of the run or null
+     * @return axiom sink
+     */
+    public static AxiomSink initSink(OutputFormat format, OWLOntologyManager manager,
+                                     OWLOntology ontology, File ontFile, Checkpoint checkpoint)
+            throws IOException {
+        return initSink(format, manager, ontology, ontFile, checkpoint, 0);
+    }
+
+
+    /**
+     * Create a sink that can be checkpointed and, for RDF/XML, spills the
+     * ABox to disk above the heap budget, see {@link OntologySink}. The
+     * other formats are written as the axioms arrive and need no budget.
+     * @param checkpoint checkpoint of the run or null
+     * @param heapBudget bytes of used heap, 0 for no limit
+     * @return axiom sink
+     */
+    public static AxiomSink initSink(OutputFormat format, OWLOntologyManager manager,
+                                     OWLOntology ontology, File ontFile, Checkpoint checkpoint,
+                                     long heapBudget)
+            throws IOException {
+        if ((format.equals(OutputFormat.RDFXML) || format.equals(OutputFormat.BIN))
+                && checkpoint != null && checkpoint.isIncremental()) {
+            // the document would have to be rewritten
+            throw new IOException("Incremental runs append to the output: use --format=OFN, NT or TTL");
+        }
+        if (format.equals(OutputFormat.RDFXML)) {
+            return new OntologySink(manager, ontology, ontFile, checkpoint, heapBudget);
+        }
+        else if (format.equals(OutputFormat.OFN)) {
+            return new FunctionalSyntaxWriter(ontology, ontFile, checkpoint);
+        }
+        else if (format.equals(OutputFormat.BIN)) {
+            return new BinaryTripleWriter(ontology, ontFile, checkpoint);
+        }
+        else if (format.equals(OutputFormat.NT) || format.equals(OutputFormat.TTL)) {
+            return new NTriplesWriter(ontology, ontFile, format.equals(OutputFormat.TTL), checkpoint);
+        }
+        else {
+            throw new IOException("Unknown format: " + format + ". " +
+                    INVALID_FORMAT_ERR);
+        }
+    }
+
+
+    /**
+     * Create a sink writing the ABox to the given number of shard files
+     * and everything else to a TBox file, see {@link ShardedSink}
+     * @param shards number of shards, 1 for a single file
+     * @param checkpoint checkpoint of the run or null
+     * @param heapBudget bytes of used heap, 0 for no limit
+     * @return axiom sink
+     */
+    public static AxiomSink initSink(OutputFormat format, OWLOntologyManager manager,
+                                     OWLOntology ontology, File ontFile, int shards,
+                                     Checkpoint checkpoint, long heapBudget)
+            throws IOException {
+        return initSink(format, manager, ontology, ontFile, shards, false, false, checkpoint, heapBudget);
+    }
+
+
+    /**
+     * Create a sink as above that drops the axioms already written, see
+     * {@link DedupSink}. Shards have a DedupSink each, so the individuals
+     * linked from the encounters of several shards are in each of them.
+     * @param dedup drop the axioms already written
+     * @param bloom check a Bloom filter first
+     * @return axiom sink, not thread-safe
+     */
+    public static AxiomSink initSink(OutputFormat format, OWLOntologyManager manager,
+                                     OWLOntology ontology, File ontFile, int shards,
+                                     boolean dedup, boolean bloom, Checkpoint checkpoint, long heapBudget)
+            throws IOException {
+        if (shards <= 1) {
+            AxiomSink sink = initSink(format, manager, ontology, ontFile, checkpoint, heapBudget);
+            return dedup ? new DedupSink(sink, bloom, checkpoint) : sink;
+        }
+        try {
+            return new ShardedSink(format, manager, ontology, ontFile, shards, dedup, bloom, checkpoint,
+                    heapBudget);
+        } catch (OWLOntologyCreationException e) {
+            throw new IOException("Cannot create the shards", e);
+        }
+    }
+
+
+    /**
+     * Parse a format name, e.g. from the command line
+     * @return output format
+     */
+    public static OutputFormat parseFormat(String name) throws IOException {
+        for (OutputFormat format : OutputFormat.values()) {
+            if (format.toString().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IOException("Unknown format: " + name + ". " +
+                INVALID_FORMAT_ERR);
+    }
+
+}
@@ -0,0 +1,146 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opens row sources. An input is read as a CSV file unless a database is
+ * given with --db=jdbc:postgresql://..., in which case the input file holds
+ * the SQL query (e.g. orders.sql) and its result is streamed directly.
+ * Other options: --user, --password, --fetch (rows per round trip),
+ * --partitions (number of connections a query is split across),
+ * --partition-key (column the partitions are hashed on) and --watermark
+ * (increasing column, e.g. an encounter id or a timestamp, that an
+ * incremental run reads new rows by; see {@link Checkpoint}).
+ */
+public abstract class SourceLoader {
+
+    public static final String DB_OPTION = "db";
+    public static final String USER_OPTION = "user";
+    public static final String PASSWORD_OPTION = "password";
+    public static final String FETCH_OPTION = "fetch";
+    public static final String PARTITIONS_OPTION = "partitions";
+    public static final String KEY_OPTION = "partition-key";
+    public static final String WATERMARK_OPTION = "watermark";
+
+
+    /**
+     * @param skipHeader skip the first line of a CSV file; query results have no header
+     * @return row source
+     */
+    public static RowSource initSource(File input, boolean skipHeader, String[] args)
+            throws IOException {
+        return initSource(input, skipHeader, args, null);
+    }
+
+
+    /**
+     * @param checkpoint checkpoint of an incremental run, or null
+     * @return row source
+     */
+    public static RowSource initSource(File input, boolean skipHeader, String[] args, Checkpoint checkpoint)
+            throws IOException {
+        String url = Args.get(args, DB_OPTION, null);
+        if (url != null) {
+            String sql = readQuery(input, args, checkpoint);
+            return new JdbcRowSource(url,
+                    Args.get(args, USER_OPTION, null),
+                    Args.get(args, PASSWORD_OPTION, null),
+                    sql,
+                    Args.getInt(args, FETCH_OPTION, JdbcRowSource.DEF_FETCH_SIZE));
+        }
+        return initCSVSource(input, skipHeader);
+    }
+
+
+    /**
+     * Opens a query as --partitions sources over separate connections,
+     * each reading its own hash partition of the rows. A CSV file is
+     * always a single source.
+     * @return row sources, to be read in parallel
+     */
+    public static List<RowSource> initSources(File input, boolean skipHeader, String[] args)
+            throws IOException {
+        return initSources(input, skipHeader, args, null);
+    }
+
+
+    /**
+     * @param checkpoint checkpoint of an incremental run, or null
+     * @return row sources, to be read in parallel
+     */
+    public static List<RowSource> initSources(File input, boolean skipHeader, String[] args,
+                                              Checkpoint checkpoint)
+            throws IOException {
+        String url = Args.get(args, DB_OPTION, null);
+        int partitions = Args.getInt(args, PARTITIONS_OPTION, 1);
+        if (url == null || partitions <= 1) {
+            return Collections.singletonList(initSource(input, skipHeader, args, checkpoint));
+        }
+        String sql = readQuery(input, args, checkpoint);
+        String key = Args.get(args, KEY_OPTION, null);
+        List<RowSource> sources = new ArrayList<>();
+        try {
+            for (int i = 0; i < partitions; i++) {
+                sources.add(new JdbcRowSource(url,
+                        Args.get(args, USER_OPTION, null),
+                        Args.get(args, PASSWORD_OPTION, null),
+                        JdbcRowSource.partitionQuery(sql, key, partitions, i),
+                        Args.getInt(args, FETCH_OPTION, JdbcRowSource.DEF_FETCH_SIZE)));
+            }
+        } catch (IOException e) {
+            for (RowSource source : sources) {
+                source.close();
+            }
+            throw e;
+        }
+        return sources;
+    }
+
+
+    /**
+     * Reads the query of an input. In an incremental run it is restricted
+     * to the rows above the watermark of the last run, up to the current
+     * maximum, which is kept in the checkpoint until the run completes.
+     */
+    private static String readQuery(File input, String[] args, Checkpoint checkpoint)
+            throws IOException {
+        String sql = new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+        if (checkpoint == null || !checkpoint.isIncremental()) {
+            return sql;
+        }
+        String column = Args.get(args, WATERMARK_OPTION, null);
+        if (column == null) {
+            throw new IOException("Incremental runs over a query need --" + WATERMARK_OPTION + "=<column>");
+        }
+        String name = input.getName();
+        String[] watermark = checkpoint.getWatermark(name);
+        if (watermark[1] == null) {
+            // not set by an interrupted run of the same delta
+            String[] max = JdbcRowSource.queryMax(Args.get(args, DB_OPTION, null),
+                    Args.get(args, USER_OPTION, null),
+                    Args.get(args, PASSWORD_OPTION, null),
+                    sql, column);
+            String high = max[0] == null ? watermark[0] : max[0];
+            watermark = new String[] {watermark[0], high, max[1] == null ? watermark[2] : max[1]};
+            checkpoint.setWatermark(name, watermark[0], watermark[1], watermark[2]);
+        }
+        Out.p("Reading " + name + " for " + column + " in (" + watermark[0] + ", " + watermark[1] + "]");
+        return JdbcRowSource.watermarkQuery(sql, column, watermark[0], watermark[1], watermark[2]);
+    }
+
+
+    private static RowSource initCSVSource(File input, boolean skipHeader) throws IOException {
+        MappedCSVReader reader = new MappedCSVReader(input);
+        if (skipHeader) {
+            reader.next();
+        }
+        return reader;
+    }
+
+}
@@ -0,0 +1,152 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Decodes the timestamps of the exports, e.g. "2017-10-06 13:45:00", by
+ * reading the digits at their fixed positions. Only that exact layout is
+ * decoded this way; anything else, or an out-of-range field, goes through
+ * {@link #DATE_FORMAT}, so what it rejects (dates without time, a 'T'
+ * separator, no seconds, fractional seconds) still fails as before.
+ *
+ * A decoded timestamp is packed into a long: year, month, day, hour,
+ * minute, second and millisecond from high to low bits. Packed values
+ * compare in chronological order and need no allocation.
+ */
+public abstract class TimestampDecoder {
+
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final int MILLI_BITS = 10;
+    private static final int SECOND_SHIFT = MILLI_BITS;
+    private static final int MINUTE_SHIFT = SECOND_SHIFT + 6;
+    private static final int HOUR_SHIFT = MINUTE_SHIFT + 6;
+    private static final int DAY_SHIFT = HOUR_SHIFT + 5;
+    private static final int MONTH_SHIFT = DAY_SHIFT + 5;
+    private static final int YEAR_SHIFT = MONTH_SHIFT + 4;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+
+    /**
+     * @return the packed timestamp
+     */
+    public static long decode(String str) {
+        if (str.length() == 19 && str.charAt(4) == '-' && str.charAt(7) == '-' && str.charAt(10) == ' '
+                && str.charAt(13) == ':' && str.charAt(16) == ':') {
+            int year = digits(str, 0, 4);
+            int month = digits(str, 5, 2);
+            int day = digits(str, 8, 2);
+            int hour = digits(str, 11, 2);
+            int minute = digits(str, 14, 2);
+            int second = digits(str, 17, 2);
+            if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+                return pack(year, month, day, hour, minute, second, 0);
+            }
+        }
+        return decodeGeneral(str);
+    }
+
+
+    private static long decodeGeneral(String str) {
+        LocalDateTime dateTime = LocalDateTime.from(DATE_FORMAT.parse(str));
+        return pack(dateTime.getYear(), dateTime.getMonthValue(), dateTime.getDayOfMonth(),
+                dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond(), dateTime.getNano() / 1000000);
+    }
+
+
+    /**
+     * @return the number, or -1 if the chars are not all digits
+     */
+    private static int digits(String str, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = str.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = 10 * value + d;
+        }
+        return value;
+    }
+
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+
+    public static long pack(int year, int month, int day, int hour, int minute, int second, int milli) {
+        return (long) year << YEAR_SHIFT | (long) month << MONTH_SHIFT | (long) day << DAY_SHIFT
+                | (long) hour << HOUR_SHIFT | minute << MINUTE_SHIFT | second << SECOND_SHIFT | milli;
+    }
+
+
+    public static int year(long packed) {
+        return (int) (packed >> YEAR_SHIFT);
+    }
+
+
+    public static int month(long packed) {
+        return (int) (packed >>> MONTH_SHIFT) & 0xF;
+    }
+
+
+    public static int day(long packed) {
+        return (int) (packed >>> DAY_SHIFT) & 0x1F;
+    }
+
+
+    public static int hour(long packed) {
+        return (int) (packed >>> HOUR_SHIFT) & 0x1F;
+    }
+
+
+    public static int minute(long packed) {
+        return (int) (packed >>> MINUTE_SHIFT) & 0x3F;
+    }
+
+
+    public static int second(long packed) {
+        return (int) (packed >>> SECOND_SHIFT) & 0x3F;
+    }
+
+
+    public static int milli(long packed) {
+        return (int) packed & ((1 << MILLI_BITS) - 1);
+    }
+
+
+    /**
+     * @return milliseconds since 1970-01-01T00:00:00, reading the timestamp as UTC
+     */
+    public static long toEpochMilli(long packed) {
+        long days = epochDay(year(packed), month(packed), day(packed));
+        return days * MILLIS_PER_DAY + ((hour(packed) * 60L + minute(packed)) * 60 + second(packed)) * 1000
+                + milli(packed);
+    }
+
+
+    // days from civil, proleptic Gregorian calendar
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+}
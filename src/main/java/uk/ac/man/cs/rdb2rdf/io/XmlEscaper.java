@@ -0,0 +1,99 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+/**
+ * Produces the same output as StringEscapeUtils.escapeXml11 but returns the
+ * input itself when nothing needs escaping, which is the common case for
+ * codes and ids. Escaped cells are built in a per-thread buffer.
+ */
+public abstract class XmlEscaper {
+
+    private static final int INIT_CAPACITY = 256;
+
+    private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(INIT_CAPACITY));
+
+
+    public static String escape(String str) {
+        if (str == null) {
+            return null;
+        }
+        int len = str.length();
+        for (int i = 0; i < len; i++) {
+            if (needsEscape(str.charAt(i))) {
+                return escape(str, i);
+            }
+        }
+        return str;
+    }
+
+
+    private static boolean needsEscape(char c) {
+        if (c < 0x20) {
+            return c != '\t' && c != '\n' && c != '\r';
+        }
+        if (c < 0x7F) {
+            return c == '&' || c == '<' || c == '>' || c == '"' || c == '\'';
+        }
+        if (c <= 0x9F) {
+            return c != 0x85;
+        }
+        // surrogates are checked for pairing on the slow path
+        return Character.isSurrogate(c) || c == 0xFFFE || c == 0xFFFF;
+    }
+
+
+    private static String escape(String str, int from) {
+        StringBuilder buf = BUFFER.get();
+        buf.setLength(0);
+        buf.append(str, 0, from);
+        int len = str.length();
+        for (int i = from; i < len; i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '&':
+                    buf.append("&amp;");
+                    break;
+                case '<':
+                    buf.append("&lt;");
+                    break;
+                case '>':
+                    buf.append("&gt;");
+                    break;
+                case '"':
+                    buf.append("&quot;");
+                    break;
+                case '\'':
+                    buf.append("&apos;");
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                case 0x85:
+                    buf.append(c);
+                    break;
+                case 0x0:
+                case 0xFFFE:
+                case 0xFFFF:
+                    // not allowed in XML 1.1, dropped
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x7F && c <= 0x9F)) {
+                        buf.append("&#").append((int) c).append(';');
+                    } else if (Character.isHighSurrogate(c)) {
+                        if (i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                            buf.append(c).append(str.charAt(++i));
+                        }
+                    } else if (!Character.isLowSurrogate(c)) {
+                        buf.append(c);
+                    }
+            }
+        }
+        String res = buf.toString();
+        if (buf.capacity() > 16 * INIT_CAPACITY) {
+            // do not pin a huge buffer to the thread after an odd cell
+            BUFFER.remove();
+        }
+        return res;
+    }
+
+}
@@ -0,0 +1,290 @@
+package uk.ac.man.cs.rdb2rdf.map;
+
+import org.semanticweb.owlapi.model.*;
+import uk.ac.man.cs.rdb2rdf.io.Row;
+import uk.ac.man.cs.rdb2rdf.io.TimestampDecoder;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+
+import static uk.ac.man.cs.rdb2rdf.io.CSV.processCell;
+import static uk.ac.man.cs.rdb2rdf.poc.CSV2OWLConverter.isDiagnosis;
+import static uk.ac.man.cs.rdb2rdf.poc.Vocabulary.PREFIX;
+
+/**
+ * Node of a compiled mapping plan. Nodes shared by several axioms are
+ * evaluated once per row: the value is kept in the row's slot array
+ * under the node's id. A null value means the row is to be skipped,
+ * e.g. because a code has no ICD9 class.
+ */
+abstract class Expr {
+
+    final int id;
+
+
+    Expr(int id) {
+        this.id = id;
+    }
+
+
+    final Object get(Row row, Object[] slots) {
+        Object value = slots[id];
+        if (value == null) {
+            value = eval(row, slots);
+            slots[id] = value;
+        }
+        return value;
+    }
+
+
+    abstract Object eval(Row row, Object[] slots);
+
+
+    /**
+     * @return the value if it does not depend on the row, otherwise null
+     */
+    Object constant() {
+        return null;
+    }
+
+
+
+    static class Const extends Expr {
+        final Object value;
+
+        Const(int id, Object value) {
+            super(id);
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            return value;
+        }
+
+        @Override
+        Object constant() {
+            return value;
+        }
+    }
+
+
+    static class Cell extends Expr {
+        final int column;
+        final boolean raw;
+
+        Cell(int id, int column, boolean raw) {
+            super(id);
+            this.column = column;
+            this.raw = raw;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            String cell = row.get(column);
+            return raw ? cell : processCell(cell);
+        }
+    }
+
+
+    /**
+     * Text with cell values substituted; constant parts are kept as is
+     */
+    static class Template extends Expr {
+        final Object[] parts;
+
+        // parts are Strings or cell nodes
+        Template(int id, Object[] parts) {
+            super(id);
+            this.parts = parts;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            if (parts.length == 1) {
+                return text(parts[0], row, slots);
+            }
+            StringBuilder buf = new StringBuilder();
+            for (Object part : parts) {
+                buf.append(text(part, row, slots));
+            }
+            return buf.toString();
+        }
+
+        private static String text(Object part, Row row, Object[] slots) {
+            return part instanceof String ? (String) part : (String) ((Expr) part).get(row, slots);
+        }
+    }
+
+
+    static class Entity extends Expr {
+        final EntityType<?> type;
+        final Expr name;
+        final OWLDataFactory factory;
+
+        Entity(int id, EntityType<?> type, Expr name, OWLDataFactory factory) {
+            super(id);
+            this.type = type;
+            this.name = name;
+            this.factory = factory;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            return factory.getOWLEntity(type, IRI.create(PREFIX + name.get(row, slots)));
+        }
+    }
+
+
+    static class ICD9Class extends Expr {
+        final Expr code;
+        final ICD9CodeTrie<OWLClass> icd9Codes;
+
+        ICD9Class(int id, Expr code, ICD9CodeTrie<OWLClass> icd9Codes) {
+            super(id);
+            this.code = code;
+            this.icd9Codes = icd9Codes;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            return icd9Codes.get((String) code.get(row, slots));
+        }
+    }
+
+
+    static class ConditionProperty extends Expr {
+        final Expr code;
+        final OWLObjectProperty diagnosed;
+        final OWLObjectProperty experienced;
+
+        ConditionProperty(int id, Expr code, OWLObjectProperty diagnosed, OWLObjectProperty experienced) {
+            super(id);
+            this.code = code;
+            this.diagnosed = diagnosed;
+            this.experienced = experienced;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            return isDiagnosis((String) code.get(row, slots)) ? diagnosed : experienced;
+        }
+    }
+
+
+    static class AgeClass extends Expr {
+        static final int[] BOUNDS = {10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+
+        final Expr age;
+        // one class per range, the last one for >100
+        final OWLClass[] classes;
+
+        AgeClass(int id, Expr age, OWLDataFactory factory) {
+            super(id);
+            this.age = age;
+            classes = new OWLClass[BOUNDS.length + 1];
+            for (int i = 0; i <= BOUNDS.length; i++) {
+                String range;
+                if (i == 0) {
+                    range = "<=" + BOUNDS[0];
+                } else if (i == BOUNDS.length) {
+                    range = ">" + BOUNDS[i - 1];
+                } else {
+                    range = "(" + BOUNDS[i - 1] + "-" + BOUNDS[i] + "]";
+                }
+                classes[i] = factory.getOWLClass(IRI.create(PREFIX + "Age" + range));
+            }
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            String ageStr = (String) age.get(row, slots);
+            int years;
+            try {
+                years = Integer.parseInt(ageStr);
+            } catch (NumberFormatException e) {
+                // months
+                years = (int) Math.round(Double.parseDouble(ageStr) / 12);
+            }
+            int i = 0;
+            while (i < BOUNDS.length && years > BOUNDS[i]) {
+                i++;
+            }
+            return classes[i];
+        }
+    }
+
+
+    static class Number extends Expr {
+        final Expr text;
+        final boolean round;
+
+        Number(int id, Expr text, boolean round) {
+            super(id);
+            this.text = text;
+            this.round = round;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            double value = Double.parseDouble((String) text.get(row, slots));
+            return round ? (double) Math.round(value) : value;
+        }
+    }
+
+
+    static class Date extends Expr {
+        final Expr text;
+
+        Date(int id, Expr text) {
+            super(id);
+            this.text = text;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            // packed, see TimestampDecoder
+            return TimestampDecoder.decode((String) text.get(row, slots));
+        }
+    }
+
+
+    enum DatePart { YEAR, MONTH, DAY }
+
+
+    static class Literal extends Expr {
+        final Expr value;
+        // for date values
+        final DatePart part;
+        final OWLDataFactory factory;
+
+        Literal(int id, Expr value, DatePart part, OWLDataFactory factory) {
+            super(id);
+            this.value = value;
+            this.part = part;
+            this.factory = factory;
+        }
+
+        @Override
+        Object eval(Row row, Object[] slots) {
+            Object v = value.get(row, slots);
+            if (v == null) {
+                return null;
+            }
+            if (part != null) {
+                long date = (Long) v;
+                switch (part) {
+                    case YEAR:
+                        return factory.getOWLLiteral(TimestampDecoder.year(date));
+                    case MONTH:
+                        return factory.getOWLLiteral(TimestampDecoder.month(date));
+                    default:
+                        return factory.getOWLLiteral(TimestampDecoder.day(date));
+                }
+            }
+            if (v instanceof Double) {
+                return factory.getOWLLiteral((Double) v);
+            }
+            return factory.getOWLLiteral((String) v);
+        }
+    }
+
+}
@@ -0,0 +1,590 @@
+package uk.ac.man.cs.rdb2rdf.map;
+
+import org.semanticweb.owlapi.model.*;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.function.IntFunction;
+
+import static uk.ac.man.cs.rdb2rdf.poc.Vocabulary.PREFIX;
+
+/**
+ * Compiles a mapping file into a {@link MappingPlan}. A mapping has one
+ * statement per line in a syntax close to OWL functional syntax:
+ * <pre>
+ * # comment
+ * encounter = Individual({0})
+ * drug = Class({3})
+ * skip if double({2}) = 0
+ * ClassAssertion(:Encounter encounter)
+ * ObjectPropertyAssertion(Annotation(:year year({6:raw})) :prescribedDrug encounter Individual({1}))
+ * AnnotationAssertion(rdfs:label drug "{2:raw}")
+ * </pre>
+ * {n} is the escaped cell of column n, {n:raw} the cell as read; other
+ * text is copied. Names are IRIs in the healthefacts namespace; :Name,
+ * rdfs:label and &lt;full-iri&gt; are constants. Functions:
+ * Class, Individual, ObjectProperty, DataProperty, AnnotationProperty,
+ * icd9 (class of an ICD9 code, the row is skipped if there is none),
+ * conditionProperty (diagnosed or experienced), ageClass, double,
+ * round, year, month, day; "text" is a string literal.
+ * Skip conditions compare a number with =, !=, &lt;, &lt;=, &gt;, &gt;=
+ * or text with startsWith.
+ */
+public class MappingCompiler {
+
+    private static final String SKIP = "skip";
+
+    private OWLDataFactory factory;
+    private ICD9CodeTrie<OWLClass> icd9Codes;
+
+    // shared nodes by structure
+    private Map<String, Expr> nodes;
+    private Map<Expr, String> keys;
+    private Map<String, Typed> definitions;
+    private List<MappingPlan.Condition> skips;
+    private List<MappingPlan.AxiomTemplate> axioms;
+    private int lineNo;
+
+
+    /**
+     * @param icd9Codes ICD9 code to class, may be null if icd9() is not used
+     */
+    public MappingCompiler(OWLDataFactory factory, ICD9CodeTrie<OWLClass> icd9Codes) {
+        this.factory = factory;
+        this.icd9Codes = icd9Codes;
+    }
+
+
+    public MappingPlan compile(String name, Reader source) throws IOException {
+        nodes = new HashMap<>();
+        keys = new HashMap<>();
+        definitions = new HashMap<>();
+        skips = new ArrayList<>();
+        axioms = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(source);
+        lineNo = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNo++;
+            List<Token> tokens = tokenize(line);
+            if (!tokens.isEmpty()) {
+                compileStatement(tokens);
+            }
+        }
+        if (axioms.isEmpty()) {
+            throw new IOException("Mapping " + name + " has no axioms");
+        }
+        return new MappingPlan(name, nodes.size(),
+                skips.toArray(new MappingPlan.Condition[skips.size()]),
+                axioms.toArray(new MappingPlan.AxiomTemplate[axioms.size()]));
+    }
+
+
+
+    // tokens
+
+    private enum TokenType { WORD, STRING, OPEN, CLOSE }
+
+
+    private static class Token {
+        final TokenType type;
+        final String text;
+
+        Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+
+    private List<Token> tokenize(String line) throws IOException {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == '#') {
+                break;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                tokens.add(new Token(TokenType.OPEN, "("));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(TokenType.CLOSE, ")"));
+                i++;
+            } else if (c == '"') {
+                StringBuilder buf = new StringBuilder();
+                i++;
+                while (i < line.length() && line.charAt(i) != '"') {
+                    if (line.charAt(i) == '\\' && i + 1 < line.length()) {
+                        i++;
+                    }
+                    buf.append(line.charAt(i++));
+                }
+                if (i == line.length()) {
+                    throw error("unterminated string");
+                }
+                i++;
+                tokens.add(new Token(TokenType.STRING, buf.toString()));
+            } else if (c == '<' && i + 1 < line.length() && Character.isLetter(line.charAt(i + 1))) {
+                int end = line.indexOf('>', i);
+                if (end < 0) {
+                    throw error("unterminated IRI");
+                }
+                tokens.add(new Token(TokenType.WORD, line.substring(i, end + 1)));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))
+                        && line.charAt(i) != '(' && line.charAt(i) != ')') {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.WORD, line.substring(start, i)));
+            }
+        }
+        return tokens;
+    }
+
+
+
+    // syntax tree
+
+    private static class Term {
+        String word;
+        String string;
+        String function;
+        List<Term> args;
+    }
+
+
+    private Term parseTerm(List<Token> tokens, int[] pos) throws IOException {
+        if (pos[0] >= tokens.size()) {
+            throw error("unexpected end of line");
+        }
+        Token token = tokens.get(pos[0]++);
+        Term term = new Term();
+        if (token.type == TokenType.STRING) {
+            term.string = token.text;
+        } else if (token.type == TokenType.WORD) {
+            if (pos[0] < tokens.size() && tokens.get(pos[0]).type == TokenType.OPEN) {
+                pos[0]++;
+                term.function = token.text;
+                term.args = new ArrayList<>();
+                while (pos[0] < tokens.size() && tokens.get(pos[0]).type != TokenType.CLOSE) {
+                    term.args.add(parseTerm(tokens, pos));
+                }
+                if (pos[0] == tokens.size()) {
+                    throw error("missing ) after " + token.text);
+                }
+                pos[0]++;
+            } else {
+                term.word = token.text;
+            }
+        } else {
+            throw error("unexpected " + token.text);
+        }
+        return term;
+    }
+
+
+
+    // statements
+
+    private void compileStatement(List<Token> tokens) throws IOException {
+        int[] pos = {0};
+        Token first = tokens.get(0);
+        if (first.type == TokenType.WORD && first.text.equals(SKIP)) {
+            compileSkip(tokens);
+            return;
+        }
+        if (tokens.size() > 2 && first.type == TokenType.WORD
+                && tokens.get(1).type == TokenType.WORD && tokens.get(1).text.equals("=")) {
+            pos[0] = 2;
+            Term term = parseTerm(tokens, pos);
+            checkEnd(tokens, pos);
+            if (definitions.containsKey(first.text)) {
+                throw error(first.text + " is already defined");
+            }
+            definitions.put(first.text, compile(term, Kind.ANY));
+            return;
+        }
+        Term term = parseTerm(tokens, pos);
+        checkEnd(tokens, pos);
+        compileAxiom(term);
+    }
+
+
+    private void checkEnd(List<Token> tokens, int[] pos) throws IOException {
+        if (pos[0] < tokens.size()) {
+            throw error("unexpected " + tokens.get(pos[0]).text);
+        }
+    }
+
+
+    private void compileSkip(List<Token> tokens) throws IOException {
+        int[] pos = {1};
+        if (pos[0] >= tokens.size() || !tokens.get(pos[0]).text.equals("if")) {
+            throw error("expected: skip if <value> <op> <value>");
+        }
+        pos[0]++;
+        Term left = parseTerm(tokens, pos);
+        if (pos[0] >= tokens.size()) {
+            throw error("missing comparison");
+        }
+        String opStr = tokens.get(pos[0]++).text;
+        Term right = parseTerm(tokens, pos);
+        checkEnd(tokens, pos);
+        MappingPlan.Op op = parseOp(opStr);
+        if (op == MappingPlan.Op.STARTS_WITH) {
+            Expr text = compile(left, Kind.TEXT).expr;
+            Object prefix = compile(right, Kind.TEXT).expr.constant();
+            if (prefix == null) {
+                throw error("startsWith needs constant text");
+            }
+            skips.add(new MappingPlan.Condition(text, op, prefix));
+        } else {
+            Expr number = compile(left, Kind.NUMBER).expr;
+            Object bound = compile(right, Kind.NUMBER).expr.constant();
+            if (bound == null) {
+                throw error(opStr + " needs a constant number");
+            }
+            skips.add(new MappingPlan.Condition(number, op, bound));
+        }
+    }
+
+
+    private MappingPlan.Op parseOp(String op) throws IOException {
+        switch (op) {
+            case "=":
+                return MappingPlan.Op.EQ;
+            case "!=":
+                return MappingPlan.Op.NE;
+            case "<":
+                return MappingPlan.Op.LT;
+            case "<=":
+                return MappingPlan.Op.LE;
+            case ">":
+                return MappingPlan.Op.GT;
+            case ">=":
+                return MappingPlan.Op.GE;
+            case "startsWith":
+                return MappingPlan.Op.STARTS_WITH;
+            default:
+                throw error("unknown comparison " + op);
+        }
+    }
+
+
+    private void compileAxiom(Term term) throws IOException {
+        if (term.function == null) {
+            throw error("expected an axiom");
+        }
+        MappingPlan.AxiomKind kind;
+        Kind[] signature;
+        switch (term.function) {
+            case "ClassAssertion":
+                kind = MappingPlan.AxiomKind.CLASS_ASSERTION;
+                signature = new Kind[] {Kind.CLASS, Kind.INDIVIDUAL};
+                break;
+            case "SubClassOf":
+                kind = MappingPlan.AxiomKind.SUBCLASS;
+                signature = new Kind[] {Kind.CLASS, Kind.CLASS};
+                break;
+            case "ObjectPropertyAssertion":
+                kind = MappingPlan.AxiomKind.OBJECT_PROPERTY_ASSERTION;
+                signature = new Kind[] {Kind.OBJECT_PROPERTY, Kind.INDIVIDUAL, Kind.INDIVIDUAL};
+                break;
+            case "DataPropertyAssertion":
+                kind = MappingPlan.AxiomKind.DATA_PROPERTY_ASSERTION;
+                signature = new Kind[] {Kind.DATA_PROPERTY, Kind.INDIVIDUAL, Kind.LITERAL};
+                break;
+            case "AnnotationAssertion":
+                kind = MappingPlan.AxiomKind.ANNOTATION_ASSERTION;
+                signature = new Kind[] {Kind.ANNOTATION_PROPERTY, Kind.ENTITY, Kind.LITERAL};
+                break;
+            default:
+                throw error("unknown axiom " + term.function);
+        }
+        List<Expr> annotations = new ArrayList<>();
+        int i = 0;
+        while (i < term.args.size() && "Annotation".equals(term.args.get(i).function)) {
+            Term annotation = term.args.get(i++);
+            checkArity(annotation, 2);
+            annotations.add(compile(annotation.args.get(0), Kind.ANNOTATION_PROPERTY).expr);
+            annotations.add(compile(annotation.args.get(1), Kind.LITERAL).expr);
+        }
+        if (term.args.size() - i != signature.length) {
+            throw error(term.function + " takes " + signature.length + " arguments");
+        }
+        Expr[] args = new Expr[signature.length];
+        for (int j = 0; j < signature.length; j++) {
+            args[j] = compile(term.args.get(i + j), signature[j]).expr;
+        }
+        axioms.add(new MappingPlan.AxiomTemplate(kind, args,
+                annotations.toArray(new Expr[annotations.size()]), factory));
+    }
+
+
+
+    // expressions
+
+    private enum Kind {
+        CLASS(EntityType.CLASS), INDIVIDUAL(EntityType.NAMED_INDIVIDUAL),
+        OBJECT_PROPERTY(EntityType.OBJECT_PROPERTY), DATA_PROPERTY(EntityType.DATA_PROPERTY),
+        ANNOTATION_PROPERTY(EntityType.ANNOTATION_PROPERTY),
+        // any entity
+        ENTITY(null), LITERAL(null), TEXT(null), NUMBER(null), DATE(null), ANY(null);
+
+        final EntityType<?> entityType;
+
+        Kind(EntityType<?> entityType) {
+            this.entityType = entityType;
+        }
+
+        boolean accepts(Kind kind) {
+            return this == kind || this == ANY
+                    || (this == ENTITY && kind.entityType != null);
+        }
+    }
+
+
+    private static class Typed {
+        final Expr expr;
+        final Kind kind;
+
+        Typed(Expr expr, Kind kind) {
+            this.expr = expr;
+            this.kind = kind;
+        }
+    }
+
+
+    private Typed compile(Term term, Kind expected) throws IOException {
+        Typed typed;
+        if (term.string != null) {
+            Expr text = template(term.string);
+            typed = expected == Kind.TEXT
+                    ? new Typed(text, Kind.TEXT)
+                    : new Typed(literal(text, null), Kind.LITERAL);
+        } else if (term.word != null) {
+            typed = compileWord(term.word, expected);
+        } else {
+            typed = compileFunction(term);
+        }
+        if (expected == Kind.LITERAL && typed.kind == Kind.NUMBER) {
+            typed = new Typed(literal(typed.expr, null), Kind.LITERAL);
+        }
+        if (!expected.accepts(typed.kind)) {
+            throw error("expected " + name(expected) + " but got " + name(typed.kind));
+        }
+        return typed;
+    }
+
+
+    private Typed compileWord(String word, Kind expected) throws IOException {
+        Typed defined = definitions.get(word);
+        if (defined != null) {
+            return defined;
+        }
+        if (word.equals("rdfs:label")) {
+            return new Typed(constant(factory.getRDFSLabel()), Kind.ANNOTATION_PROPERTY);
+        }
+        if (word.startsWith(":") || (word.startsWith("<") && word.endsWith(">"))) {
+            if (expected.entityType == null) {
+                throw error("cannot tell the entity type of " + word);
+            }
+            IRI iri = word.startsWith(":")
+                    ? IRI.create(PREFIX + word.substring(1))
+                    : IRI.create(word.substring(1, word.length() - 1));
+            return new Typed(constant(factory.getOWLEntity(expected.entityType, iri)), expected);
+        }
+        if (expected == Kind.NUMBER) {
+            try {
+                return new Typed(constant(Double.parseDouble(word)), Kind.NUMBER);
+            } catch (NumberFormatException e) {
+                throw error("not a number: " + word);
+            }
+        }
+        if (expected == Kind.TEXT) {
+            return new Typed(template(word), Kind.TEXT);
+        }
+        throw error("undefined name " + word);
+    }
+
+
+    private Typed compileFunction(Term term) throws IOException {
+        String function = term.function;
+        switch (function) {
+            case "Class":
+                return entity(term, Kind.CLASS);
+            case "Individual":
+                return entity(term, Kind.INDIVIDUAL);
+            case "ObjectProperty":
+                return entity(term, Kind.OBJECT_PROPERTY);
+            case "DataProperty":
+                return entity(term, Kind.DATA_PROPERTY);
+            case "AnnotationProperty":
+                return entity(term, Kind.ANNOTATION_PROPERTY);
+            case "icd9": {
+                if (icd9Codes == null) {
+                    throw error("icd9() needs the ICD9 terminology");
+                }
+                Expr code = text(term);
+                return new Typed(node("icd9(" + keys.get(code) + ")",
+                        id -> new Expr.ICD9Class(id, code, icd9Codes)), Kind.CLASS);
+            }
+            case "conditionProperty": {
+                Expr code = text(term);
+                OWLObjectProperty diagnosed = factory.getOWLObjectProperty(IRI.create(PREFIX + "diagnosed"));
+                OWLObjectProperty experienced = factory.getOWLObjectProperty(IRI.create(PREFIX + "experienced"));
+                return new Typed(node("condprop(" + keys.get(code) + ")",
+                        id -> new Expr.ConditionProperty(id, code, diagnosed, experienced)),
+                        Kind.OBJECT_PROPERTY);
+            }
+            case "ageClass": {
+                Expr age = text(term);
+                return new Typed(node("age(" + keys.get(age) + ")",
+                        id -> new Expr.AgeClass(id, age, factory)), Kind.CLASS);
+            }
+            case "double":
+            case "round": {
+                Expr text = text(term);
+                boolean round = function.equals("round");
+                Expr number = node(function + "(" + keys.get(text) + ")",
+                        id -> new Expr.Number(id, text, round));
+                return new Typed(number, Kind.NUMBER);
+            }
+            case "year":
+            case "month":
+            case "day": {
+                Expr text = text(term);
+                Expr date = node("date(" + keys.get(text) + ")", id -> new Expr.Date(id, text));
+                Expr.DatePart part = Expr.DatePart.valueOf(function.toUpperCase());
+                return new Typed(literal(date, part), Kind.LITERAL);
+            }
+            default:
+                throw error("unknown function " + function);
+        }
+    }
+
+
+    private Typed entity(Term term, Kind kind) throws IOException {
+        Expr name = text(term);
+        Object constName = name.constant();
+        if (constName != null) {
+            // pre-built once
+            return new Typed(constant(factory.getOWLEntity(kind.entityType,
+                    IRI.create(PREFIX + constName))), kind);
+        }
+        return new Typed(node(kind + "(" + keys.get(name) + ")",
+                id -> new Expr.Entity(id, kind.entityType, name, factory)), kind);
+    }
+
+
+    private Expr text(Term term) throws IOException {
+        checkArity(term, 1);
+        return compile(term.args.get(0), Kind.TEXT).expr;
+    }
+
+
+    /**
+     * Literal of a text, number or date part. Numbers in literal positions
+     * are turned into literals here.
+     */
+    private Expr literal(Expr value, Expr.DatePart part) {
+        Object constValue = value.constant();
+        if (constValue != null && part == null) {
+            return constant(constValue instanceof Double
+                    ? factory.getOWLLiteral((Double) constValue)
+                    : factory.getOWLLiteral((String) constValue));
+        }
+        String key = "lit(" + keys.get(value) + (part == null ? "" : "," + part) + ")";
+        return node(key, id -> new Expr.Literal(id, value, part, factory));
+    }
+
+
+    private Expr template(String text) throws IOException {
+        List<Object> parts = new ArrayList<>();
+        StringBuilder key = new StringBuilder("tmpl(");
+        int i = 0;
+        while (i < text.length()) {
+            int open = text.indexOf('{', i);
+            if (open < 0) {
+                parts.add(text.substring(i));
+                break;
+            }
+            if (open > i) {
+                parts.add(text.substring(i, open));
+            }
+            int close = text.indexOf('}', open);
+            if (close < 0) {
+                throw error("missing } in " + text);
+            }
+            String spec = text.substring(open + 1, close);
+            boolean raw = spec.endsWith(":raw");
+            if (raw) {
+                spec = spec.substring(0, spec.length() - 4);
+            }
+            int column;
+            try {
+                column = Integer.parseInt(spec);
+            } catch (NumberFormatException e) {
+                throw error("bad column {" + spec + "}");
+            }
+            parts.add(node("cell(" + column + "," + raw + ")", id -> new Expr.Cell(id, column, raw)));
+            i = close + 1;
+        }
+        boolean constant = true;
+        StringBuilder constText = new StringBuilder();
+        for (Object part : parts) {
+            constant &= part instanceof String;
+            constText.append(part instanceof String ? part : "");
+            key.append(part instanceof String ? "'" + part + "'" : keys.get(part)).append(',');
+        }
+        if (constant) {
+            return constant(constText.toString());
+        }
+        if (parts.size() == 1) {
+            // a single cell
+            return (Expr) parts.get(0);
+        }
+        return node(key.append(')').toString(), id -> new Expr.Template(id, parts.toArray()));
+    }
+
+
+    private Expr constant(Object value) {
+        return node("const(" + value.getClass().getSimpleName() + ":" + value + ")",
+                id -> new Expr.Const(id, value));
+    }
+
+
+    private Expr node(String key, IntFunction<Expr> make) {
+        Expr expr = nodes.get(key);
+        if (expr == null) {
+            expr = make.apply(nodes.size());
+            nodes.put(key, expr);
+            keys.put(expr, key);
+        }
+        return expr;
+    }
+
+
+    private void checkArity(Term term, int arity) throws IOException {
+        if (term.args.size() != arity) {
+            throw error(term.function + " takes " + arity + " argument" + (arity == 1 ? "" : "s"));
+        }
+    }
+
+
+    private static String name(Kind kind) {
+        return kind.toString().toLowerCase().replace('_', ' ');
+    }
+
+
+    private IOException error(String message) {
+        return new IOException("Mapping line " + lineNo + ": " + message);
+    }
+
+}
@@ -0,0 +1,40 @@
+package uk.ac.man.cs.rdb2rdf.map;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads mapping plans from a file or, by name, from the mappings
+ * bundled with the converter (e.g. medicine_lab).
+ */
+public abstract class MappingLoader {
+
+    public static final String RESOURCE_DIR = "/mappings/";
+    public static final String EXTENSION = ".map";
+
+
+    /**
+     * @param location mapping file or the name of a bundled mapping
+     * @param icd9Codes ICD9 code to class, may be null if the mapping does not use icd9()
+     * @return compiled plan
+     */
+    public static MappingPlan initPlan(String location, OWLDataFactory factory,
+                                       ICD9CodeTrie<OWLClass> icd9Codes) throws IOException {
+        MappingCompiler compiler = new MappingCompiler(factory, icd9Codes);
+        File file = new File(location);
+        InputStream in = file.isFile()
+                ? new FileInputStream(file)
+                : MappingLoader.class.getResourceAsStream(RESOURCE_DIR + location + EXTENSION);
+        if (in == null) {
+            throw new IOException("Unknown mapping: " + location);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return compiler.compile(file.getName().replace(EXTENSION, ""), reader);
+        }
+    }
+
+}
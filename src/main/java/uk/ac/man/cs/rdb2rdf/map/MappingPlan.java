@@ -0,0 +1,152 @@
+package uk.ac.man.cs.rdb2rdf.map;
+
+import org.semanticweb.owlapi.model.*;
+import uk.ac.man.cs.rdb2rdf.io.AxiomSink;
+import uk.ac.man.cs.rdb2rdf.io.Row;
+import uk.ac.man.cs.rdb2rdf.io.RowProcessor;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compiled mapping: skip conditions and axiom templates over a fixed set
+ * of expression nodes with resolved columns and pre-built constants.
+ * Plans are immutable and can be shared by the pipeline workers.
+ */
+public class MappingPlan implements RowProcessor {
+
+    private final String name;
+    private final int slots;
+    private final Condition[] skips;
+    private final AxiomTemplate[] axioms;
+
+
+    MappingPlan(String name, int slots, Condition[] skips, AxiomTemplate[] axioms) {
+        this.name = name;
+        this.slots = slots;
+        this.skips = skips;
+        this.axioms = axioms;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    @Override
+    public void process(Row row, AxiomSink sink) throws IOException {
+        Object[] values = new Object[slots];
+        for (Condition skip : skips) {
+            if (skip.test(row, values)) {
+                return;
+            }
+        }
+        Set<OWLAxiom> rowAxioms = new HashSet<>();
+        for (AxiomTemplate template : axioms) {
+            OWLAxiom axiom = template.build(row, values);
+            if (axiom == null) {
+                return;
+            }
+            rowAxioms.add(axiom);
+        }
+        sink.add(rowAxioms);
+    }
+
+
+
+    enum Op { EQ, NE, LT, LE, GT, GE, STARTS_WITH }
+
+
+    static class Condition {
+        final Expr left;
+        final Op op;
+        final Object right;
+
+        Condition(Expr left, Op op, Object right) {
+            this.left = left;
+            this.op = op;
+            this.right = right;
+        }
+
+        boolean test(Row row, Object[] values) {
+            Object value = left.get(row, values);
+            if (op == Op.STARTS_WITH) {
+                return ((String) value).startsWith((String) right);
+            }
+            int cmp = Double.compare((Double) value, (Double) right);
+            switch (op) {
+                case EQ:
+                    return cmp == 0;
+                case NE:
+                    return cmp != 0;
+                case LT:
+                    return cmp < 0;
+                case LE:
+                    return cmp <= 0;
+                case GT:
+                    return cmp > 0;
+                default:
+                    return cmp >= 0;
+            }
+        }
+    }
+
+
+    enum AxiomKind { CLASS_ASSERTION, SUBCLASS, OBJECT_PROPERTY_ASSERTION,
+        DATA_PROPERTY_ASSERTION, ANNOTATION_ASSERTION }
+
+
+    static class AxiomTemplate {
+        final AxiomKind kind;
+        final Expr[] args;
+        // pairs of annotation property and literal
+        final Expr[] annotations;
+        final OWLDataFactory factory;
+
+        AxiomTemplate(AxiomKind kind, Expr[] args, Expr[] annotations, OWLDataFactory factory) {
+            this.kind = kind;
+            this.args = args;
+            this.annotations = annotations;
+            this.factory = factory;
+        }
+
+        OWLAxiom build(Row row, Object[] values) {
+            Object[] v = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                v[i] = args[i].get(row, values);
+                if (v[i] == null) {
+                    return null;
+                }
+            }
+            Set<OWLAnnotation> annots = new HashSet<>();
+            for (int i = 0; i < annotations.length; i += 2) {
+                OWLAnnotationProperty prop = (OWLAnnotationProperty) annotations[i].get(row, values);
+                OWLLiteral value = (OWLLiteral) annotations[i + 1].get(row, values);
+                if (prop == null || value == null) {
+                    return null;
+                }
+                annots.add(factory.getOWLAnnotation(prop, value));
+            }
+            switch (kind) {
+                case CLASS_ASSERTION:
+                    return factory.getOWLClassAssertionAxiom((OWLClass) v[0],
+                            (OWLIndividual) v[1], annots);
+                case SUBCLASS:
+                    return factory.getOWLSubClassOfAxiom((OWLClass) v[0], (OWLClass) v[1], annots);
+                case OBJECT_PROPERTY_ASSERTION:
+                    return factory.getOWLObjectPropertyAssertionAxiom((OWLObjectProperty) v[0],
+                            (OWLIndividual) v[1], (OWLIndividual) v[2], annots);
+                case DATA_PROPERTY_ASSERTION:
+                    return factory.getOWLDataPropertyAssertionAxiom((OWLDataProperty) v[0],
+                            (OWLIndividual) v[1], (OWLLiteral) v[2], annots);
+                default:
+                    // the subject is the IRI of an entity
+                    return factory.getOWLAnnotationAssertionAxiom((OWLAnnotationProperty) v[0],
+                            ((OWLEntity) v[1]).getIRI(), (OWLLiteral) v[2], annots);
+            }
+        }
+    }
+
+}
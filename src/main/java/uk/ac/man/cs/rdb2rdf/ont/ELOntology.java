@@ -0,0 +1,625 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Axioms of an OWL 2 EL ontology in the normal form of the completion
+ * rules, indexed by concept for {@link ELSaturation}. Concepts are ints:
+ * the named classes, owl:Thing, owl:Nothing, then fresh concepts that name
+ * the class expressions of the axioms. With -> for subsumption, the normal
+ * forms are A -> B, A1 and A2 -> B, A -> some r.B and some r.A -> B, and
+ * the role inclusions r -> s and r o s -> t (transitivity is r o r -> r).
+ *
+ * The normal forms cover a subset of OWL 2 EL: intersections and
+ * existential restrictions on named roles in subclass, equivalent and
+ * disjoint classes axioms, domains, and role inclusions, equivalences,
+ * transitivity and chains. All other axioms are dropped and counted, the
+ * rest of EL (ranges, HasValue, HasSelf, reflexive roles, data properties,
+ * assertions, ...) as well as those outside EL, so the subsumptions found
+ * are sound but may miss the ones that need the dropped axioms.
+ */
+class ELOntology {
+
+    private OWLDataFactory factory;
+    private OWLClass[] classes;
+    private Map<OWLClass, Integer> ids;
+    private int top;
+    private int bottom;
+    // concepts so far
+    private int size;
+
+    private Map<OWLObjectProperty, Integer> roleIds = new HashMap<>();
+    private int roleCount;
+
+    // class expressions of the axioms to their fresh concepts, by the side they occur on
+    private Map<OWLClassExpression, Integer> negatives = new HashMap<>();
+    private Map<OWLClassExpression, Integer> positives = new HashMap<>();
+
+    // normal forms while adding, as triples of ints
+    private Triples told = new Triples();
+    private Triples conjunctions = new Triples();
+    private Triples existentials = new Triples();
+    private Triples negExistentials = new Triples();
+    private Triples subRoles = new Triples();
+    private Triples chains = new Triples();
+
+    // A -> B: toldSupers[toldStart[A] .. toldStart[A + 1])
+    private int[] toldStart;
+    private int[] toldSupers;
+    // A and B -> C, by A and by B: conjOthers and conjSupers from conjStart[A]
+    private int[] conjStart;
+    private int[] conjOthers;
+    private int[] conjSupers;
+    // A -> some r.B: existRoles and existFillers from existStart[A]
+    private int[] existStart;
+    private int[] existRoles;
+    private int[] existFillers;
+    // some r.A -> B: negRoles and negSupers from negStart[A]
+    private int[] negStart;
+    private int[] negRoles;
+    private int[] negSupers;
+
+    // reflexive and transitive closure of the role inclusions
+    private BitSet[] superRoles;
+    // r1 o r2 -> t as triples, and the roles that are below an r2
+    private int[] chainTriples;
+    private boolean[] chainRight;
+    private Map<Long, int[]> compositions = new ConcurrentHashMap<>();
+
+    private List<OWLAxiom> ignored = new ArrayList<>();
+
+
+    /**
+     * @param classes the named classes, without owl:Thing and owl:Nothing
+     * @param axioms logical axioms, the ones outside the normal forms are dropped
+     */
+    ELOntology(Collection<OWLClass> classes, Collection<OWLAxiom> axioms, OWLDataFactory factory) {
+        this.factory = factory;
+        this.classes = classes.toArray(new OWLClass[classes.size()]);
+        ids = new HashMap<>((int) (this.classes.length / 0.75f) + 1);
+        for (int i = 0; i < this.classes.length; i++) {
+            ids.put(this.classes[i], i);
+        }
+        top = this.classes.length;
+        bottom = top + 1;
+        size = bottom + 1;
+        for (OWLAxiom axiom : axioms) {
+            if (!add(axiom)) {
+                ignored.add(axiom);
+            }
+        }
+        index();
+    }
+
+
+    // adds the normal forms of an axiom, false if it is not in EL
+    private boolean add(OWLAxiom axiom) {
+        if (axiom.isOfType(AxiomType.SUBCLASS_OF)) {
+            OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+            if (!isEL(subClassOf.getSubClass()) || !isEL(subClassOf.getSuperClass())) {
+                return false;
+            }
+            addSubClassOf(subClassOf.getSubClass(), subClassOf.getSuperClass());
+            return true;
+        }
+        if (axiom.isOfType(AxiomType.EQUIVALENT_CLASSES)) {
+            List<OWLClassExpression> ces = ((OWLEquivalentClassesAxiom) axiom).getClassExpressionsAsList();
+            for (OWLClassExpression ce : ces) {
+                if (!isEL(ce)) {
+                    return false;
+                }
+            }
+            for (int k = 1; k < ces.size(); k++) {
+                addSubClassOf(ces.get(0), ces.get(k));
+                addSubClassOf(ces.get(k), ces.get(0));
+            }
+            return true;
+        }
+        if (axiom.isOfType(AxiomType.DISJOINT_CLASSES)) {
+            List<OWLClassExpression> ces = ((OWLDisjointClassesAxiom) axiom).getClassExpressionsAsList();
+            for (OWLClassExpression ce : ces) {
+                if (!isEL(ce)) {
+                    return false;
+                }
+            }
+            int[] concepts = new int[ces.size()];
+            for (int k = 0; k < concepts.length; k++) {
+                concepts[k] = negative(ces.get(k));
+            }
+            for (int k = 0; k < concepts.length; k++) {
+                for (int l = k + 1; l < concepts.length; l++) {
+                    addConjunction(concepts[k], concepts[l], bottom);
+                }
+            }
+            return true;
+        }
+        if (axiom.isOfType(AxiomType.OBJECT_PROPERTY_DOMAIN)) {
+            OWLObjectPropertyDomainAxiom domain = (OWLObjectPropertyDomainAxiom) axiom;
+            if (!isRole(domain.getProperty()) || !isEL(domain.getDomain())) {
+                return false;
+            }
+            // some r.Thing -> C
+            addSubClassOf(factory.getOWLObjectSomeValuesFrom(domain.getProperty(), factory.getOWLThing()),
+                    domain.getDomain());
+            return true;
+        }
+        if (axiom.isOfType(AxiomType.SUB_OBJECT_PROPERTY)) {
+            OWLSubObjectPropertyOfAxiom subPropertyOf = (OWLSubObjectPropertyOfAxiom) axiom;
+            if (!isRole(subPropertyOf.getSubProperty()) || !isRole(subPropertyOf.getSuperProperty())) {
+                return false;
+            }
+            subRoles.add(role(subPropertyOf.getSubProperty()), role(subPropertyOf.getSuperProperty()), 0);
+            return true;
+        }
+        if (axiom.isOfType(AxiomType.EQUIVALENT_OBJECT_PROPERTIES)) {
+            List<OWLObjectPropertyExpression> pes =
+                    new ArrayList<>(((OWLEquivalentObjectPropertiesAxiom) axiom).getProperties());
+            for (OWLObjectPropertyExpression pe : pes) {
+                if (!isRole(pe)) {
+                    return false;
+                }
+            }
+            for (int k = 1; k < pes.size(); k++) {
+                subRoles.add(role(pes.get(0)), role(pes.get(k)), 0);
+                subRoles.add(role(pes.get(k)), role(pes.get(0)), 0);
+            }
+            return true;
+        }
+        if (axiom.isOfType(AxiomType.TRANSITIVE_OBJECT_PROPERTY)) {
+            OWLObjectPropertyExpression pe = ((OWLTransitiveObjectPropertyAxiom) axiom).getProperty();
+            if (!isRole(pe)) {
+                return false;
+            }
+            chains.add(role(pe), role(pe), role(pe));
+            return true;
+        }
+        if (axiom.isOfType(AxiomType.SUB_PROPERTY_CHAIN_OF)) {
+            OWLSubPropertyChainOfAxiom chainOf = (OWLSubPropertyChainOfAxiom) axiom;
+            List<OWLObjectPropertyExpression> chain = chainOf.getPropertyChain();
+            for (OWLObjectPropertyExpression pe : chain) {
+                if (!isRole(pe)) {
+                    return false;
+                }
+            }
+            if (!isRole(chainOf.getSuperProperty())) {
+                return false;
+            }
+            int sup = role(chainOf.getSuperProperty());
+            if (chain.size() == 1) {
+                subRoles.add(role(chain.get(0)), sup, 0);
+                return true;
+            }
+            // r1 o r2 o r3 -> t is r1 o r2 -> u and u o r3 -> t with a fresh role u
+            int left = role(chain.get(0));
+            for (int k = 1; k < chain.size(); k++) {
+                int composed = k == chain.size() - 1 ? sup : roleCount++;
+                chains.add(left, role(chain.get(k)), composed);
+                left = composed;
+            }
+            return true;
+        }
+        return !axiom.isLogicalAxiom();
+    }
+
+
+    private static boolean isEL(OWLClassExpression ce) {
+        switch (ce.getClassExpressionType()) {
+            case OWL_CLASS:
+                return true;
+            case OBJECT_INTERSECTION_OF:
+                for (OWLClassExpression conjunct : ((OWLObjectIntersectionOf) ce).getOperands()) {
+                    if (!isEL(conjunct)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OBJECT_SOME_VALUES_FROM:
+                OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) ce;
+                return isRole(some.getProperty()) && isEL(some.getFiller());
+            default:
+                return false;
+        }
+    }
+
+
+    // named roles, except the top and bottom roles, whose semantics the rules do not have
+    private static boolean isRole(OWLObjectPropertyExpression pe) {
+        return !pe.isAnonymous() && !pe.isOWLTopObjectProperty() && !pe.isOWLBottomObjectProperty();
+    }
+
+
+    private int role(OWLObjectPropertyExpression pe) {
+        Integer id = roleIds.get(pe.asOWLObjectProperty());
+        if (id == null) {
+            id = roleCount++;
+            roleIds.put(pe.asOWLObjectProperty(), id);
+        }
+        return id;
+    }
+
+
+    private void addSubClassOf(OWLClassExpression sub, OWLClassExpression sup) {
+        if (sub.isOWLNothing() || sup.isOWLThing()) {
+            return;
+        }
+        addSuper(negative(sub), sup);
+    }
+
+
+    // A -> sup, split into normal forms by the conjuncts of sup
+    private void addSuper(int concept, OWLClassExpression sup) {
+        switch (sup.getClassExpressionType()) {
+            case OBJECT_INTERSECTION_OF:
+                for (OWLClassExpression conjunct : ((OWLObjectIntersectionOf) sup).getOperands()) {
+                    addSuper(concept, conjunct);
+                }
+                break;
+            case OBJECT_SOME_VALUES_FROM:
+                OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) sup;
+                existentials.add(concept, role(some.getProperty()), positive(some.getFiller()));
+                break;
+            default:
+                if (!sup.isOWLThing()) {
+                    told.add(concept, concept(sup.asOWLClass()), 0);
+                }
+        }
+    }
+
+
+    private int concept(OWLClass cl) {
+        if (cl.isOWLThing()) {
+            return top;
+        }
+        if (cl.isOWLNothing()) {
+            return bottom;
+        }
+        return ids.get(cl);
+    }
+
+
+    /**
+     * @return concept of the class expression on the left of ->, i.e. with
+     *         the normal forms of ce -> concept
+     */
+    private int negative(OWLClassExpression ce) {
+        if (!ce.isAnonymous()) {
+            return concept(ce.asOWLClass());
+        }
+        Integer id = negatives.get(ce);
+        if (id != null) {
+            return id;
+        }
+        int fresh = size++;
+        negatives.put(ce, fresh);
+        if (ce.getClassExpressionType() == ClassExpressionType.OBJECT_SOME_VALUES_FROM) {
+            OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) ce;
+            negExistentials.add(negative(some.getFiller()), role(some.getProperty()), fresh);
+            return fresh;
+        }
+        // A1 and A2 and A3 -> C is A1 and A2 -> F and F and A3 -> C with a fresh F
+        int[] conjuncts = new int[((OWLObjectIntersectionOf) ce).getOperands().size()];
+        int count = 0;
+        for (OWLClassExpression conjunct : ((OWLObjectIntersectionOf) ce).getOperands()) {
+            int concept = negative(conjunct);
+            if (concept != top) {
+                conjuncts[count++] = concept;
+            }
+        }
+        if (count == 0) {
+            told.add(top, fresh, 0);
+        } else if (count == 1) {
+            told.add(conjuncts[0], fresh, 0);
+        } else {
+            int left = conjuncts[0];
+            for (int k = 1; k < count; k++) {
+                int conjunction = k == count - 1 ? fresh : size++;
+                addConjunction(left, conjuncts[k], conjunction);
+                left = conjunction;
+            }
+        }
+        return fresh;
+    }
+
+
+    /**
+     * @return concept of the class expression on the right of ->, i.e. with
+     *         the normal forms of concept -> ce
+     */
+    private int positive(OWLClassExpression ce) {
+        if (!ce.isAnonymous()) {
+            return concept(ce.asOWLClass());
+        }
+        Integer id = positives.get(ce);
+        if (id == null) {
+            id = size++;
+            positives.put(ce, id);
+            addSuper(id, ce);
+        }
+        return id;
+    }
+
+
+    private void addConjunction(int first, int second, int sup) {
+        if (first == second) {
+            told.add(first, sup, 0);
+        } else {
+            conjunctions.add(first, second, sup);
+            conjunctions.add(second, first, sup);
+        }
+    }
+
+
+    // normal forms to the arrays by concept, and the role closure
+    private void index() {
+        toldStart = told.start(size);
+        toldSupers = told.column(toldStart, 1);
+        conjStart = conjunctions.start(size);
+        conjOthers = conjunctions.column(conjStart, 1);
+        conjSupers = conjunctions.column(conjStart, 2);
+        existStart = existentials.start(size);
+        existRoles = existentials.column(existStart, 1);
+        existFillers = existentials.column(existStart, 2);
+        negStart = negExistentials.start(size);
+        negRoles = negExistentials.column(negStart, 1);
+        negSupers = negExistentials.column(negStart, 2);
+        int[] subRoleStart = subRoles.start(roleCount);
+        int[] subRoleSupers = subRoles.column(subRoleStart, 1);
+        superRoles = new BitSet[roleCount];
+        int[] queue = new int[roleCount];
+        for (int r = 0; r < roleCount; r++) {
+            BitSet supers = new BitSet(roleCount);
+            supers.set(r);
+            int count = 0;
+            queue[count++] = r;
+            for (int head = 0; head < count; head++) {
+                int s = queue[head];
+                for (int k = subRoleStart[s]; k < subRoleStart[s + 1]; k++) {
+                    if (!supers.get(subRoleSupers[k])) {
+                        supers.set(subRoleSupers[k]);
+                        queue[count++] = subRoleSupers[k];
+                    }
+                }
+            }
+            superRoles[r] = supers;
+        }
+        chainTriples = chains.toArray();
+        chainRight = new boolean[roleCount];
+        for (int r = 0; r < roleCount; r++) {
+            for (int k = 0; k < chainTriples.length; k += 3) {
+                if (superRoles[r].get(chainTriples[k + 1])) {
+                    chainRight[r] = true;
+                }
+            }
+        }
+        told = conjunctions = existentials = negExistentials = subRoles = chains = null;
+        negatives = positives = null;
+    }
+
+
+    /**
+     * @return number of concepts, including the fresh ones
+     */
+    int size() {
+        return size;
+    }
+
+
+    int getTop() {
+        return top;
+    }
+
+
+    int getBottom() {
+        return bottom;
+    }
+
+
+    /**
+     * @return number of named classes, they are the concepts 0 .. count - 1
+     */
+    int getClassCount() {
+        return classes.length;
+    }
+
+
+    OWLClass getClass(int concept) {
+        return classes[concept];
+    }
+
+
+    /**
+     * @return concept of the named class, owl:Thing or owl:Nothing, -1 for a class not in the ontology
+     */
+    int getConcept(OWLClass cl) {
+        if (cl.isOWLThing() || cl.isOWLNothing()) {
+            return concept(cl);
+        }
+        Integer id = ids.get(cl);
+        return id == null ? -1 : id;
+    }
+
+
+    /**
+     * @return axioms dropped as they have no normal forms here
+     */
+    List<OWLAxiom> getIgnoredAxioms() {
+        return ignored;
+    }
+
+
+    int getToldStart(int concept) {
+        return toldStart[concept];
+    }
+
+
+    int getToldEnd(int concept) {
+        return toldStart[concept + 1];
+    }
+
+
+    int getToldSuper(int k) {
+        return toldSupers[k];
+    }
+
+
+    int getConjunctionStart(int concept) {
+        return conjStart[concept];
+    }
+
+
+    int getConjunctionEnd(int concept) {
+        return conjStart[concept + 1];
+    }
+
+
+    /**
+     * @return the other conjunct of the k-th conjunction
+     */
+    int getConjunctionOther(int k) {
+        return conjOthers[k];
+    }
+
+
+    int getConjunctionSuper(int k) {
+        return conjSupers[k];
+    }
+
+
+    int getExistentialStart(int concept) {
+        return existStart[concept];
+    }
+
+
+    int getExistentialEnd(int concept) {
+        return existStart[concept + 1];
+    }
+
+
+    int getExistentialRole(int k) {
+        return existRoles[k];
+    }
+
+
+    int getExistentialFiller(int k) {
+        return existFillers[k];
+    }
+
+
+    /**
+     * @return true if the concept is the filler of some r.A -> B
+     */
+    boolean hasNegativeExistentials(int concept) {
+        return negStart[concept + 1] > negStart[concept];
+    }
+
+
+    int getNegativeExistentialStart(int concept) {
+        return negStart[concept];
+    }
+
+
+    int getNegativeExistentialEnd(int concept) {
+        return negStart[concept + 1];
+    }
+
+
+    int getNegativeExistentialRole(int k) {
+        return negRoles[k];
+    }
+
+
+    int getNegativeExistentialSuper(int k) {
+        return negSupers[k];
+    }
+
+
+    boolean isSubRole(int role, int superRole) {
+        return superRoles[role].get(superRole);
+    }
+
+
+    boolean hasChains() {
+        return chainTriples.length > 0;
+    }
+
+
+    /**
+     * @return true if the role is below the second role of a chain, so its
+     *         links can compose with links into their source
+     */
+    boolean isChainRight(int role) {
+        return chainRight[role];
+    }
+
+
+    /**
+     * @return the roles t of the chains r1 o r2 -> t with the first role below
+     *         r1 and the second below r2
+     */
+    int[] compose(int first, int second) {
+        return compositions.computeIfAbsent((long) first << 32 | second, key -> {
+            int[] composed = new int[chainTriples.length / 3];
+            int count = 0;
+            for (int k = 0; k < chainTriples.length; k += 3) {
+                if (superRoles[first].get(chainTriples[k]) && superRoles[second].get(chainTriples[k + 1])) {
+                    composed[count++] = chainTriples[k + 2];
+                }
+            }
+            return Arrays.copyOf(composed, count);
+        });
+    }
+
+
+    /**
+     * Growable table of int triples, grouped by the first column at the end
+     */
+    private static class Triples {
+
+        private int[] values = new int[48];
+        private int size;
+
+
+        void add(int key, int first, int second) {
+            if (size + 3 > values.length) {
+                values = Arrays.copyOf(values, 2 * values.length);
+            }
+            values[size++] = key;
+            values[size++] = first;
+            values[size++] = second;
+        }
+
+
+        // rows of key k are start[k] .. start[k + 1]
+        int[] start(int keys) {
+            int[] start = new int[keys + 1];
+            for (int i = 0; i < size; i += 3) {
+                start[values[i] + 1]++;
+            }
+            for (int k = 0; k < keys; k++) {
+                start[k + 1] += start[k];
+            }
+            return start;
+        }
+
+
+        // the column of the rows, ordered as the start arrays give them
+        int[] column(int[] start, int column) {
+            int[] result = new int[size / 3];
+            int[] next = Arrays.copyOf(start, start.length - 1);
+            for (int i = 0; i < size; i += 3) {
+                result[next[values[i]]++] = values[i + column];
+            }
+            return result;
+        }
+
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+    }
+
+}
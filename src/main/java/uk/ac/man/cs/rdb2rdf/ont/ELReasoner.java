@@ -0,0 +1,248 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.*;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNode;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNodeSet;
+import uk.ac.man.cs.rdb2rdf.io.Out;
+
+import java.util.*;
+
+/**
+ * Classifies OWL 2 EL ontologies, e.g. the Mekon ontologies with their
+ * intersections and existential restrictions, by saturation with the EL
+ * completion rules on several threads ({@link ELSaturation}), in
+ * polynomial time. The subsumptions go to a {@link Taxonomy}, so the class
+ * hierarchy queries are those of the {@link TaxonomyReasoner}.
+ *
+ * It supports the subset of EL in {@link ELOntology}, the other axioms are
+ * dropped with a message, as ELK does, so the hierarchy is the one of the
+ * supported axioms. The Mekon patient classes have universal restrictions,
+ * which do not change the subsumptions between named classes there.
+ * Disjoint classes come from the saturation as well. The queries about
+ * properties and individuals go to a reasoner of the DL factory, e.g.
+ * HermiT, created on the first such query; without one they throw a
+ * {@link ReasonerInternalException}.
+ */
+public class ELReasoner extends TaxonomyReasoner {
+
+    private int threads;
+    private OWLReasonerFactory dlFactory;
+    // for the queries about properties and individuals
+    private OWLReasoner dl;
+    private boolean consistent = true;
+    private ELOntology el;
+    // kept for the disjoint classes, and for interrupt()
+    private volatile ELSaturation saturation;
+
+
+    public ELReasoner(OWLOntology ontology, OWLReasonerConfiguration config, BufferingMode mode) {
+        this(ontology, config, mode, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    public ELReasoner(OWLOntology ontology, OWLReasonerConfiguration config, BufferingMode mode, int threads) {
+        this(ontology, config, mode, threads, null);
+    }
+
+
+    /**
+     * @param dlFactory creates the reasoner for the queries about properties
+     *                  and individuals, or null to fail on them
+     */
+    public ELReasoner(OWLOntology ontology, OWLReasonerConfiguration config, BufferingMode mode,
+                      OWLReasonerFactory dlFactory) {
+        this(ontology, config, mode, Runtime.getRuntime().availableProcessors(), dlFactory);
+    }
+
+
+    public ELReasoner(OWLOntology ontology, OWLReasonerConfiguration config, BufferingMode mode, int threads,
+                      OWLReasonerFactory dlFactory) {
+        super(ontology, config, mode);
+        this.threads = threads;
+        this.dlFactory = dlFactory;
+    }
+
+
+    /**
+     * @return taxonomy of the subsumptions between the named classes
+     */
+    @Override
+    protected Taxonomy classify() {
+        Set<OWLClass> signature = new LinkedHashSet<>(getRootOntology().getClassesInSignature(Imports.INCLUDED));
+        for (OWLAxiom axiom : getReasonerAxioms()) {
+            signature.addAll(axiom.getClassesInSignature());
+        }
+        OWLDataFactory factory = getOWLDataFactory();
+        signature.remove(factory.getOWLThing());
+        signature.remove(factory.getOWLNothing());
+        ELOntology el = new ELOntology(signature, getReasonerAxioms(), factory);
+        if (!el.getIgnoredAxioms().isEmpty()) {
+            Out.p("Dropped " + el.getIgnoredAxioms().size() + " axioms the EL reasoner does not support, e.g. "
+                    + el.getIgnoredAxioms().get(0));
+        }
+        ELSaturation running = new ELSaturation(el, threads, getTimeOut());
+        this.el = el;
+        saturation = running;
+        running.run();
+        return toTaxonomy(el, running);
+    }
+
+
+    private Taxonomy toTaxonomy(ELOntology el, ELSaturation done) {
+        OWLDataFactory factory = getOWLDataFactory();
+        int n = el.getClassCount();
+        int top = el.getTop();
+        int bottom = el.getBottom();
+        Set<OWLClass> topClasses = new HashSet<>();
+        topClasses.add(factory.getOWLThing());
+        Set<OWLClass> bottomClasses = new HashSet<>();
+        bottomClasses.add(factory.getOWLNothing());
+        consistent = !done.isSubsumer(top, bottom);
+        // the classes between owl:Nothing and owl:Thing get ids in the taxonomy
+        int[] ids = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!consistent || done.isSubsumer(i, bottom)) {
+                bottomClasses.add(el.getClass(i));
+                ids[i] = -1;
+            } else if (done.isSubsumer(top, i)) {
+                topClasses.add(el.getClass(i));
+                ids[i] = -1;
+            } else {
+                ids[i] = count++;
+            }
+        }
+        if (!consistent) {
+            bottomClasses.add(factory.getOWLThing());
+        }
+        OWLClass[] classes = new OWLClass[count];
+        int[] superStart = new int[count + 1];
+        int[][] supers = new int[count][];
+        for (int i = 0; i < n; i++) {
+            if (ids[i] < 0) {
+                continue;
+            }
+            classes[ids[i]] = el.getClass(i);
+            int[] subsumers = done.getSubsumers(i);
+            int size = 0;
+            for (int s : subsumers) {
+                if (s < n && s != i && ids[s] >= 0) {
+                    subsumers[size++] = ids[s];
+                }
+            }
+            supers[ids[i]] = Arrays.copyOf(subsumers, size);
+            superStart[ids[i] + 1] = superStart[ids[i]] + size;
+        }
+        int[] superIds = new int[superStart[count]];
+        for (int c = 0; c < count; c++) {
+            System.arraycopy(supers[c], 0, superIds, superStart[c], supers[c].length);
+        }
+        return new Taxonomy(classes, superStart, superIds,
+                consistent ? new OWLClassNode(topClasses) : OWLClassNode.getTopNode(),
+                new OWLClassNode(bottomClasses));
+    }
+
+
+    @Override
+    protected synchronized void handleChanges(Set<OWLAxiom> addAxioms, Set<OWLAxiom> removeAxioms) {
+        super.handleChanges(addAxioms, removeAxioms);
+        el = null;
+        saturation = null;
+        if (dl != null) {
+            dl.flush();
+        }
+    }
+
+
+    @Override
+    public String getReasonerName() {
+        return "EL";
+    }
+
+
+    @Override
+    public void interrupt() {
+        ELSaturation running = saturation;
+        if (running != null) {
+            running.interrupt();
+        }
+        OWLReasoner other = dl;
+        if (other != null) {
+            other.interrupt();
+        }
+    }
+
+
+    @Override
+    public boolean isConsistent() {
+        getTaxonomy();
+        return consistent;
+    }
+
+
+    /**
+     * @return nodes of the classes B with ce and B -> owl:Nothing
+     */
+    @Override
+    public synchronized NodeSet<OWLClass> getDisjointClasses(OWLClassExpression ce) {
+        OWLClass cl = named(ce);
+        Taxonomy taxonomy = getTaxonomy();
+        if (!isSatisfiable(cl)) {
+            // disjoint with every class
+            return super.getDisjointClasses(cl);
+        }
+        OWLClassNodeSet nodes = new OWLClassNodeSet(getBottomClassNode());
+        int concept = el.getConcept(cl);
+        if (concept < 0) {
+            // not in the ontology
+            return nodes;
+        }
+        for (int c = 0; c < taxonomy.size(); c++) {
+            Node<OWLClass> node = taxonomy.getClassNode(c);
+            if (saturation.isDisjoint(concept, el.getConcept(node.getRepresentativeElement()))) {
+                nodes.addNode(node);
+            }
+        }
+        return nodes;
+    }
+
+
+    /**
+     * The told answers of a structural reasoner miss the inferences from
+     * the EL axioms, e.g. the types of individuals, so these queries go to
+     * the DL reasoner
+     */
+    @Override
+    protected synchronized OWLReasoner getOtherReasoner() {
+        if (dl == null) {
+            if (dlFactory == null) {
+                throw new ReasonerInternalException("The EL reasoner answers queries about classes only, "
+                        + "create it with a DL reasoner factory for properties and individuals");
+            }
+            // sees the axioms of this reasoner, which are those of the ontology after a flush
+            dl = getBufferingMode() == BufferingMode.BUFFERING
+                    ? dlFactory.createReasoner(getRootOntology(), getReasonerConfiguration())
+                    : dlFactory.createNonBufferingReasoner(getRootOntology(), getReasonerConfiguration());
+        }
+        return dl;
+    }
+
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        // of any class expression
+        return getOtherReasoner().getInstances(ce, direct);
+    }
+
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        if (dl != null) {
+            dl.dispose();
+        }
+    }
+
+}
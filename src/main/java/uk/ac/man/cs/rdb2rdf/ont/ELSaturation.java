@@ -0,0 +1,602 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.reasoner.ReasonerInternalException;
+import org.semanticweb.owlapi.reasoner.ReasonerInterruptedException;
+import org.semanticweb.owlapi.reasoner.TimeOutException;
+
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subsumers of the concepts of an {@link ELOntology} by the EL completion
+ * rules, on several threads. Each concept has a context with its subsumers
+ * and its links: backward links (W, r) for the derived W -> some r.X into the
+ * context X, and forward links for the role chains. The rules only read
+ * and write the context the conclusion is in, so a context is saturated by
+ * one thread at a time and the contexts need no other locks. Conclusions
+ * for other contexts go to their queues, and a context with work is queued
+ * for the threads, as in ELK.
+ *
+ * Polynomial in the size of the normal forms, each conclusion is derived
+ * once per context. After {@link #run()}, a query saturates the contexts
+ * it reaches and have not been saturated yet.
+ */
+class ELSaturation {
+
+    // kinds of conclusions, in the top bits of a long
+    private static final long SUBSUMER = 0L;
+    private static final long BACKWARD = 1L << 62;
+    private static final long FORWARD = 2L << 62;
+    private static final long KIND = 3L << 62;
+
+    private static final Context END = new Context(-1);
+
+    // conclusions of a context between checks of the deadline and interrupts
+    private static final int CHECK_INTERVAL = 1024;
+
+    private ELOntology ontology;
+    private Context[] contexts;
+    private int threads;
+    private long timeout;
+    private long deadline;
+
+    private BlockingQueue<Context> active = new LinkedBlockingQueue<>();
+    // conclusions queued and not yet processed
+    private AtomicLong pending = new AtomicLong();
+    private volatile boolean interrupted;
+    private volatile boolean timedOut;
+    // conclusions were dropped by a stop, so the contexts are not saturated
+    private boolean incomplete;
+
+
+    /**
+     * @param timeout milliseconds for {@link #run()} and for each query, Long.MAX_VALUE for none
+     */
+    ELSaturation(ELOntology ontology, int threads, long timeout) {
+        this.ontology = ontology;
+        this.threads = threads;
+        this.timeout = timeout;
+        contexts = new Context[ontology.size()];
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = new Context(i);
+        }
+    }
+
+
+    /**
+     * Saturates the named classes and owl:Thing, and the fillers they need
+     */
+    void run() {
+        for (int i = 0; i < ontology.getClassCount(); i++) {
+            push(contexts[i], i);
+        }
+        push(contexts[ontology.getTop()], ontology.getTop());
+        drain();
+    }
+
+
+    // saturates the queued contexts on the threads
+    private void drain() {
+        if (incomplete) {
+            throw new ReasonerInternalException("The saturation stopped before, classify again");
+        }
+        interrupted = false;
+        long now = System.nanoTime();
+        deadline = timeout < (Long.MAX_VALUE - now) / 1000000 ? now + timeout * 1000000 : Long.MAX_VALUE;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "el-saturation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < threads; i++) {
+            completion.submit(this::work);
+        }
+        try {
+            for (int i = 0; i < threads; i++) {
+                completion.take().get();
+            }
+        } catch (ExecutionException e) {
+            throw new ReasonerInternalException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReasonerInterruptedException(e);
+        } finally {
+            executor.shutdownNow();
+            incomplete = timedOut || interrupted;
+        }
+        if (timedOut) {
+            throw new TimeOutException();
+        }
+        if (interrupted) {
+            throw new ReasonerInterruptedException();
+        }
+    }
+
+
+    /**
+     * Stops the threads, {@link #run()} or the query then throws a
+     * ReasonerInterruptedException
+     */
+    void interrupt() {
+        interrupted = true;
+    }
+
+
+    // takes contexts with work until the saturation is done
+    private Void work() throws InterruptedException {
+        LongList local = new LongList();
+        try {
+            while (true) {
+                Context context = active.take();
+                if (context == END) {
+                    return null;
+                }
+                if (isStopped()) {
+                    stop();
+                    return null;
+                }
+                long done = saturate(context, local);
+                if (pending.addAndGet(-done) == 0) {
+                    stop();
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            interrupted = true;
+            stop();
+            throw e;
+        }
+    }
+
+
+    // checks the deadline as well, so every context taken and every CHECK_INTERVAL conclusions
+    private boolean isStopped() {
+        if (!timedOut && System.nanoTime() > deadline) {
+            timedOut = true;
+        }
+        return interrupted || timedOut;
+    }
+
+
+    // ends all threads, as they may wait for contexts
+    private void stop() {
+        for (int i = 0; i < threads; i++) {
+            active.add(END);
+        }
+    }
+
+
+    /**
+     * Processes the queue of the context until it is empty, with the
+     * conclusions in the context itself kept in the local list
+     *
+     * @return number of conclusions taken from the queue
+     */
+    private long saturate(Context context, LongList local) {
+        long done = 0;
+        int applied = 0;
+        if (!context.initialized) {
+            context.initialized = true;
+            local.add(SUBSUMER | context.id);
+            local.add(SUBSUMER | ontology.getTop());
+        }
+        while (true) {
+            while (local.size > 0) {
+                apply(context, local.values[--local.size], local);
+                if (++applied % CHECK_INTERVAL == 0 && isStopped()) {
+                    // the rest is dropped, the threads stop
+                    local.size = 0;
+                    return done;
+                }
+            }
+            long conclusion;
+            synchronized (context) {
+                if (context.queueSize == 0) {
+                    context.active = false;
+                    return done;
+                }
+                conclusion = context.poll();
+            }
+            done++;
+            local.add(conclusion);
+        }
+    }
+
+
+    private void push(Context context, long conclusion) {
+        pending.incrementAndGet();
+        boolean activate;
+        synchronized (context) {
+            context.offer(conclusion);
+            activate = !context.active;
+            context.active = true;
+        }
+        if (activate) {
+            active.add(context);
+        }
+    }
+
+
+    private void emit(Context from, int to, long conclusion, LongList local) {
+        if (to == from.id) {
+            local.add(conclusion);
+        } else {
+            push(contexts[to], conclusion);
+        }
+    }
+
+
+    // the completion rules for a conclusion in the context
+    private void apply(Context context, long conclusion, LongList local) {
+        int value = (int) conclusion;
+        int role = (int) ((conclusion & ~KIND) >>> 32);
+        long kind = conclusion & KIND;
+        int bottom = ontology.getBottom();
+        if (kind == SUBSUMER) {
+            if (!context.subsumers.add(value)) {
+                return;
+            }
+            if (value == bottom) {
+                // W -> some r.Nothing is W -> Nothing
+                for (int l = 0; l < context.backwardCount; l++) {
+                    IntSet sources = context.backwardSources[l];
+                    for (int k = 0; k < sources.size; k++) {
+                        emit(context, sources.values[k], SUBSUMER | bottom, local);
+                    }
+                }
+                return;
+            }
+            for (int k = ontology.getToldStart(value); k < ontology.getToldEnd(value); k++) {
+                if (!context.subsumers.contains(ontology.getToldSuper(k))) {
+                    local.add(SUBSUMER | ontology.getToldSuper(k));
+                }
+            }
+            for (int k = ontology.getConjunctionStart(value); k < ontology.getConjunctionEnd(value); k++) {
+                if (context.subsumers.contains(ontology.getConjunctionOther(k))) {
+                    local.add(SUBSUMER | ontology.getConjunctionSuper(k));
+                }
+            }
+            for (int k = ontology.getExistentialStart(value); k < ontology.getExistentialEnd(value); k++) {
+                link(context.id, ontology.getExistentialFiller(k), ontology.getExistentialRole(k), context, local);
+            }
+            if (ontology.hasNegativeExistentials(value)) {
+                context.negativeSubsumers.add(value);
+                for (int l = 0; l < context.backwardCount; l++) {
+                    applyNegativeExistentials(context, value, context.backwardRoles[l],
+                            context.backwardSources[l], local);
+                }
+            }
+        } else if (kind == BACKWARD) {
+            if (!context.addBackward(role, value)) {
+                return;
+            }
+            if (context.subsumers.contains(bottom)) {
+                emit(context, value, SUBSUMER | bottom, local);
+                return;
+            }
+            for (int k = 0; k < context.negativeSubsumers.size; k++) {
+                int filler = context.negativeSubsumers.values[k];
+                for (int n = ontology.getNegativeExistentialStart(filler);
+                     n < ontology.getNegativeExistentialEnd(filler); n++) {
+                    if (ontology.isSubRole(role, ontology.getNegativeExistentialRole(n))) {
+                        emit(context, value, SUBSUMER | ontology.getNegativeExistentialSuper(n), local);
+                    }
+                }
+            }
+            // W -r-> X -s-> Z
+            for (int l = 0; l < context.forwardCount; l++) {
+                int[] composed = ontology.compose(role, context.forwardRoles[l]);
+                IntSet targets = context.forwardTargets[l];
+                for (int t : composed) {
+                    for (int k = 0; k < targets.size; k++) {
+                        link(value, targets.values[k], t, context, local);
+                    }
+                }
+            }
+        } else {
+            if (!context.addForward(role, value)) {
+                return;
+            }
+            for (int l = 0; l < context.backwardCount; l++) {
+                int[] composed = ontology.compose(context.backwardRoles[l], role);
+                IntSet sources = context.backwardSources[l];
+                for (int t : composed) {
+                    for (int k = 0; k < sources.size; k++) {
+                        link(sources.values[k], value, t, context, local);
+                    }
+                }
+            }
+        }
+    }
+
+
+    // some s.A -> B with A the subsumer, for the sources of the backward links by a role below s
+    private void applyNegativeExistentials(Context context, int filler, int role, IntSet sources,
+                                           LongList local) {
+        for (int n = ontology.getNegativeExistentialStart(filler);
+             n < ontology.getNegativeExistentialEnd(filler); n++) {
+            if (ontology.isSubRole(role, ontology.getNegativeExistentialRole(n))) {
+                long conclusion = SUBSUMER | ontology.getNegativeExistentialSuper(n);
+                for (int k = 0; k < sources.size; k++) {
+                    emit(context, sources.values[k], conclusion, local);
+                }
+            }
+        }
+    }
+
+
+    // source -> some role.target, derived in the context
+    private void link(int source, int target, int role, Context context, LongList local) {
+        emit(context, target, BACKWARD | (long) role << 32 | source, local);
+        if (ontology.isChainRight(role)) {
+            emit(context, source, FORWARD | (long) role << 32 | target, local);
+        }
+    }
+
+
+    /**
+     * @return true if first and second -> Nothing, after {@link #run()}. The
+     *         context of the query has the subsumers of both, so only the
+     *         conclusions from a subsumer of each are new, and no context
+     *         links to it, so its links only bring subsumers from their targets
+     */
+    boolean isDisjoint(int first, int second) {
+        int bottom = ontology.getBottom();
+        IntSet firstSubsumers = contexts[first].subsumers;
+        IntSet secondSubsumers = contexts[second].subsumers;
+        if (firstSubsumers.contains(bottom) || secondSubsumers.contains(bottom)) {
+            return true;
+        }
+        Context query = new Context(-1);
+        for (int k = 0; k < firstSubsumers.size; k++) {
+            query.subsumers.add(firstSubsumers.values[k]);
+        }
+        for (int k = 0; k < secondSubsumers.size; k++) {
+            query.subsumers.add(secondSubsumers.values[k]);
+        }
+        LongList todo = new LongList();
+        // A1 and A2 -> B, with the conjunctions indexed by both
+        for (int k = 0; k < firstSubsumers.size; k++) {
+            int value = firstSubsumers.values[k];
+            for (int c = ontology.getConjunctionStart(value); c < ontology.getConjunctionEnd(value); c++) {
+                if (secondSubsumers.contains(ontology.getConjunctionOther(c))) {
+                    todo.add(SUBSUMER | ontology.getConjunctionSuper(c));
+                }
+            }
+        }
+        while (todo.size > 0) {
+            long conclusion = todo.values[--todo.size];
+            int value = (int) conclusion;
+            if ((conclusion & KIND) == SUBSUMER) {
+                if (!query.subsumers.add(value)) {
+                    continue;
+                }
+                if (value == bottom) {
+                    return true;
+                }
+                for (int k = ontology.getToldStart(value); k < ontology.getToldEnd(value); k++) {
+                    todo.add(SUBSUMER | ontology.getToldSuper(k));
+                }
+                for (int k = ontology.getConjunctionStart(value); k < ontology.getConjunctionEnd(value); k++) {
+                    if (query.subsumers.contains(ontology.getConjunctionOther(k))) {
+                        todo.add(SUBSUMER | ontology.getConjunctionSuper(k));
+                    }
+                }
+                for (int k = ontology.getExistentialStart(value); k < ontology.getExistentialEnd(value); k++) {
+                    todo.add(FORWARD | (long) ontology.getExistentialRole(k) << 32 | ontology.getExistentialFiller(k));
+                }
+            } else {
+                // the links of the query are its forward links, for all roles
+                int role = (int) ((conclusion & ~KIND) >>> 32);
+                if (!query.addForward(role, value)) {
+                    continue;
+                }
+                Context target = contexts[value];
+                if (!target.initialized) {
+                    push(target, value);
+                    drain();
+                }
+                if (target.subsumers.contains(bottom)) {
+                    return true;
+                }
+                for (int k = 0; k < target.negativeSubsumers.size; k++) {
+                    int filler = target.negativeSubsumers.values[k];
+                    for (int n = ontology.getNegativeExistentialStart(filler);
+                         n < ontology.getNegativeExistentialEnd(filler); n++) {
+                        if (ontology.isSubRole(role, ontology.getNegativeExistentialRole(n))) {
+                            todo.add(SUBSUMER | ontology.getNegativeExistentialSuper(n));
+                        }
+                    }
+                }
+                for (int l = 0; l < target.forwardCount; l++) {
+                    IntSet targets = target.forwardTargets[l];
+                    for (int t : ontology.compose(role, target.forwardRoles[l])) {
+                        for (int k = 0; k < targets.size; k++) {
+                            todo.add(FORWARD | (long) t << 32 | targets.values[k]);
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @return subsumers of the concept, including itself and owl:Thing, after {@link #run()}
+     */
+    int[] getSubsumers(int concept) {
+        IntSet subsumers = contexts[concept].subsumers;
+        return Arrays.copyOf(subsumers.values, subsumers.size);
+    }
+
+
+    boolean isSubsumer(int concept, int subsumer) {
+        return contexts[concept].subsumers.contains(subsumer);
+    }
+
+
+    /**
+     * Subsumers, links and queued conclusions of a concept
+     */
+    private static class Context {
+
+        final int id;
+        boolean initialized;
+        IntSet subsumers = new IntSet();
+        // subsumers that are fillers of some r.A -> B
+        IntSet negativeSubsumers = new IntSet();
+        // sources of the backward links, by role
+        int backwardCount;
+        int[] backwardRoles = new int[0];
+        IntSet[] backwardSources = new IntSet[0];
+        // targets of the forward links, by role
+        int forwardCount;
+        int[] forwardRoles = new int[0];
+        IntSet[] forwardTargets = new IntSet[0];
+        // queued conclusions, a ring buffer
+        boolean active;
+        long[] queue = new long[4];
+        int queueHead;
+        int queueSize;
+
+
+        Context(int id) {
+            this.id = id;
+        }
+
+
+        boolean addBackward(int role, int source) {
+            for (int l = 0; l < backwardCount; l++) {
+                if (backwardRoles[l] == role) {
+                    return backwardSources[l].add(source);
+                }
+            }
+            backwardRoles = Arrays.copyOf(backwardRoles, backwardCount + 1);
+            backwardSources = Arrays.copyOf(backwardSources, backwardCount + 1);
+            backwardRoles[backwardCount] = role;
+            backwardSources[backwardCount] = new IntSet();
+            return backwardSources[backwardCount++].add(source);
+        }
+
+
+        boolean addForward(int role, int target) {
+            for (int l = 0; l < forwardCount; l++) {
+                if (forwardRoles[l] == role) {
+                    return forwardTargets[l].add(target);
+                }
+            }
+            forwardRoles = Arrays.copyOf(forwardRoles, forwardCount + 1);
+            forwardTargets = Arrays.copyOf(forwardTargets, forwardCount + 1);
+            forwardRoles[forwardCount] = role;
+            forwardTargets[forwardCount] = new IntSet();
+            return forwardTargets[forwardCount++].add(target);
+        }
+
+
+        void offer(long conclusion) {
+            if (queueSize == queue.length) {
+                long[] grown = new long[2 * queue.length];
+                for (int i = 0; i < queueSize; i++) {
+                    grown[i] = queue[(queueHead + i) % queue.length];
+                }
+                queue = grown;
+                queueHead = 0;
+            }
+            queue[(queueHead + queueSize++) % queue.length] = conclusion;
+        }
+
+
+        long poll() {
+            long conclusion = queue[queueHead];
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+            return conclusion;
+        }
+
+    }
+
+
+    /**
+     * Set of non-negative ints in insertion order, with a hash table of
+     * positions for lookups
+     */
+    private static class IntSet {
+
+        int[] values = new int[4];
+        int size;
+        // position + 1 of each value, 0 for an empty slot
+        private int[] table = new int[8];
+
+
+        boolean add(int value) {
+            int mask = table.length - 1;
+            int slot = hash(value) & mask;
+            while (table[slot] != 0) {
+                if (values[table[slot] - 1] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+            table[slot] = size;
+            if (2 * size > table.length) {
+                rehash();
+            }
+            return true;
+        }
+
+
+        boolean contains(int value) {
+            int mask = table.length - 1;
+            int slot = hash(value) & mask;
+            while (table[slot] != 0) {
+                if (values[table[slot] - 1] == value) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+
+        private void rehash() {
+            table = new int[2 * table.length];
+            int mask = table.length - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(values[i]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+            }
+        }
+
+
+        private static int hash(int value) {
+            return value * 0x9E3779B9;
+        }
+
+    }
+
+
+    private static class LongList {
+
+        long[] values = new long[16];
+        int size;
+
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,277 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Transitive closure of a class hierarchy given as parent arrays, e.g. of
+ * the {@link ICD9Terminology}, as intervals of postorder numbers. The
+ * classes are numbered in postorder of a spanning tree (each class under
+ * its first parent), so the descendants of a class in the tree are the
+ * interval of numbers up to its own. A class with more parents adds its
+ * intervals to those of the other parents as well, merged where they touch.
+ *
+ * In a tree every class has one interval: checking a descendant is two
+ * comparisons and the descendants are one contiguous range of
+ * {@link #getClassAt(int)}. Built once, in linear time for a tree.
+ */
+public class HierarchyIndex {
+
+    // postorder number of each class, and class of each number
+    private int[] post;
+    private int[] order;
+    // intervals of class i are [intervalLow[k], intervalHigh[k]] for k in intervalStart[i] .. intervalStart[i + 1]
+    private int[] intervalStart;
+    private int[] intervalLow;
+    private int[] intervalHigh;
+
+
+    /**
+     * @param parentStart parents of class i are parents[parentStart[i] .. parentStart[i + 1])
+     * @throws IllegalArgumentException if the hierarchy has a cycle
+     */
+    public HierarchyIndex(int[] parentStart, int[] parents) {
+        int n = parentStart.length - 1;
+        // children by parent, in the order of the parent arrays
+        int[] childStart = new int[n + 1];
+        for (int parent : parents) {
+            childStart[parent + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[parents.length];
+        int[] next = Arrays.copyOf(childStart, n);
+        for (int i = 0; i < n; i++) {
+            for (int k = parentStart[i]; k < parentStart[i + 1]; k++) {
+                children[next[parents[k]]++] = i;
+            }
+        }
+        int[] topological = topologicalOrder(parentStart, childStart, children);
+        int[] low = numberSpanningTree(parentStart, parents, childStart, children);
+        collectIntervals(topological, low, childStart, children);
+    }
+
+
+    // parents before children
+    private static int[] topologicalOrder(int[] parentStart, int[] childStart, int[] children) {
+        int n = parentStart.length - 1;
+        int[] waiting = new int[n];
+        int[] sorted = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            waiting[i] = parentStart[i + 1] - parentStart[i];
+            if (waiting[i] == 0) {
+                sorted[count++] = i;
+            }
+        }
+        for (int head = 0; head < count; head++) {
+            int node = sorted[head];
+            for (int k = childStart[node]; k < childStart[node + 1]; k++) {
+                if (--waiting[children[k]] == 0) {
+                    sorted[count++] = children[k];
+                }
+            }
+        }
+        if (count < n) {
+            for (int i = 0; i < n; i++) {
+                if (waiting[i] > 0) {
+                    throw new IllegalArgumentException("The hierarchy has a cycle through class " + i);
+                }
+            }
+        }
+        return sorted;
+    }
+
+
+    /**
+     * Numbers the classes in postorder over the tree of first parents,
+     * without recursion. Returns the first number in the tree under each class.
+     */
+    private int[] numberSpanningTree(int[] parentStart, int[] parents, int[] childStart, int[] children) {
+        int n = parentStart.length - 1;
+        post = new int[n];
+        order = new int[n];
+        int[] low = new int[n];
+        int[] stack = new int[n];
+        // next child to visit of each class on the stack
+        int[] cursor = new int[n];
+        boolean[] visited = new boolean[n];
+        int number = 0;
+        for (int root = 0; root < n; root++) {
+            if (parentStart[root + 1] > parentStart[root]) {
+                continue;
+            }
+            int depth = 0;
+            stack[0] = root;
+            cursor[root] = childStart[root];
+            low[root] = number;
+            while (depth >= 0) {
+                int node = stack[depth];
+                if (cursor[node] < childStart[node + 1]) {
+                    int child = children[cursor[node]++];
+                    // the tree edge is the first parent's, which may be given twice
+                    if (parents[parentStart[child]] == node && !visited[child]) {
+                        visited[child] = true;
+                        stack[++depth] = child;
+                        cursor[child] = childStart[child];
+                        low[child] = number;
+                    }
+                } else {
+                    post[node] = number;
+                    order[number++] = node;
+                    depth--;
+                }
+            }
+        }
+        return low;
+    }
+
+
+    // own tree interval merged with the intervals of the children, children first
+    private void collectIntervals(int[] topological, int[] low, int[] childStart, int[] children) {
+        int n = post.length;
+        long[][] intervals = new long[n][];
+        long[] buf = new long[16];
+        int total = 0;
+        for (int t = n - 1; t >= 0; t--) {
+            int node = topological[t];
+            int size = 1;
+            buf[0] = interval(low[node], post[node]);
+            for (int k = childStart[node]; k < childStart[node + 1]; k++) {
+                long[] childIntervals = intervals[children[k]];
+                if (size + childIntervals.length > buf.length) {
+                    buf = Arrays.copyOf(buf, 2 * (size + childIntervals.length));
+                }
+                System.arraycopy(childIntervals, 0, buf, size, childIntervals.length);
+                size += childIntervals.length;
+            }
+            intervals[node] = merge(buf, size);
+            total += intervals[node].length;
+        }
+        intervalStart = new int[n + 1];
+        intervalLow = new int[total];
+        intervalHigh = new int[total];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            intervalStart[i] = k;
+            for (long interval : intervals[i]) {
+                intervalLow[k] = (int) (interval >>> 32);
+                intervalHigh[k++] = (int) interval;
+            }
+        }
+        intervalStart[n] = k;
+    }
+
+
+    private static long interval(int low, int high) {
+        return (long) low << 32 | high;
+    }
+
+
+    // sorted, disjoint and not adjacent
+    private static long[] merge(long[] buf, int size) {
+        Arrays.sort(buf, 0, size);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int low = (int) (buf[i] >>> 32);
+            int high = (int) buf[i];
+            int last = count > 0 ? (int) buf[count - 1] : -2;
+            if (low <= last + 1) {
+                if (high > last) {
+                    buf[count - 1] = interval((int) (buf[count - 1] >>> 32), high);
+                }
+            } else {
+                buf[count++] = buf[i];
+            }
+        }
+        return Arrays.copyOf(buf, count);
+    }
+
+
+    public int size() {
+        return post.length;
+    }
+
+
+    /**
+     * @return true if the class is a descendant (not itself) of the ancestor
+     */
+    public boolean isDescendant(int id, int ancestor) {
+        if (id == ancestor) {
+            return false;
+        }
+        int number = post[id];
+        int lo = intervalStart[ancestor];
+        int hi = intervalStart[ancestor + 1] - 1;
+        // binary search of the last interval starting at or before the number, usually the only one
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (intervalLow[mid] <= number) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return intervalLow[lo] <= number && number <= intervalHigh[lo];
+    }
+
+
+    /**
+     * @return number of descendants, not counting the class itself
+     */
+    public int getDescendantCount(int id) {
+        int count = -1;
+        for (int k = intervalStart[id]; k < intervalStart[id + 1]; k++) {
+            count += intervalHigh[k] - intervalLow[k] + 1;
+        }
+        return count;
+    }
+
+
+    /**
+     * Passes the descendants of the class, not the class itself
+     */
+    public void forEachDescendant(int id, IntConsumer action) {
+        for (int k = intervalStart[id]; k < intervalStart[id + 1]; k++) {
+            for (int number = intervalLow[k]; number <= intervalHigh[k]; number++) {
+                if (order[number] != id) {
+                    action.accept(order[number]);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return number of ranges of the class and its descendants, 1 in a tree
+     */
+    public int getRangeCount(int id) {
+        return intervalStart[id + 1] - intervalStart[id];
+    }
+
+
+    /**
+     * @return first position of the k-th range of the class, see {@link #getClassAt(int)}
+     */
+    public int getRangeStart(int id, int k) {
+        return intervalLow[intervalStart[id] + k];
+    }
+
+
+    /**
+     * @return position after the k-th range of the class
+     */
+    public int getRangeEnd(int id, int k) {
+        return intervalHigh[intervalStart[id] + k] + 1;
+    }
+
+
+    /**
+     * @return class at the position in postorder
+     */
+    public int getClassAt(int position) {
+        return order[position];
+    }
+
+}
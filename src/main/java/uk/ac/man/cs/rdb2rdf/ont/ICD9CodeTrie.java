@@ -0,0 +1,305 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntConsumer;
+
+/**
+ * ICD9 codes to values (the classes of the terminology) as a char trie in
+ * arrays. The nodes are in preorder with children sorted by char, so the
+ * codes under a node are the contiguous nodes up to its end, and the codes
+ * between two bounds are a contiguous range as well. The children of each
+ * node are also packed next to each other, for lookups.
+ *
+ * Codes are looked up with the formatting of CSV cells normalized: spaces
+ * are ignored and letters are upper case. Otherwise a code must match as
+ * it is in the terminology, in particular a code without a dot is not
+ * given one: 8151 could be the procedure 81.51 as well as the diagnosis
+ * 815.1, and the cell does not tell which. A range without its end, e.g.
+ * 001-139, is the range class 001-139.99. Lookups walk the code once and
+ * allocate nothing.
+ */
+public class ICD9CodeTrie<T> {
+
+    // modes of walk()
+    private static final int FIND = 0;
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+
+    // node after the last node of each subtree
+    private int[] end;
+    // children of node i are childNodes[childStart[i] .. childStart[i + 1]), with their chars
+    private int[] childStart;
+    private char[] childChars;
+    private int[] childNodes;
+    // id of the code ending at each node, or -1
+    private int[] ids;
+
+    // chars before the dot of each code, by id
+    private byte[] categories;
+
+    // codes as given, by id
+    private String[] codes;
+    private T[] values;
+
+
+    /**
+     * @param codes codes by id, a later code replaces an earlier equal one
+     * @param values values by id
+     */
+    public ICD9CodeTrie(String[] codes, T[] values) {
+        this.codes = codes;
+        this.values = values;
+        String[] keys = new String[codes.length];
+        Integer[] order = new Integer[codes.length];
+        categories = new byte[codes.length];
+        int size = 1;
+        for (int i = 0; i < codes.length; i++) {
+            keys[i] = normalize(codes[i]);
+            categories[i] = (byte) Math.min(categoryLength(keys[i]), Byte.MAX_VALUE);
+            order[i] = i;
+            size += keys[i].length();
+        }
+        // stable, so equal codes stay by id
+        Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+        char[] chars = new char[size];
+        end = new int[size];
+        ids = new int[size];
+        int count = build(keys, order, 0, order.length, 0, 0, chars);
+        end = Arrays.copyOf(end, count);
+        ids = Arrays.copyOf(ids, count);
+        // each node but the root is a child
+        childStart = new int[count + 1];
+        childChars = new char[count - 1];
+        childNodes = new int[count - 1];
+        int k = 0;
+        for (int node = 0; node < count; node++) {
+            childStart[node] = k;
+            for (int child = node + 1; child < end[node]; child = end[child]) {
+                childChars[k] = chars[child];
+                childNodes[k++] = child;
+            }
+        }
+        childStart[count] = k;
+    }
+
+
+    // adds the node of the keys [lo, hi) sharing their first depth chars, returns the next free node
+    private int build(String[] keys, Integer[] order, int lo, int hi, int depth, int node, char[] chars) {
+        ids[node] = -1;
+        while (lo < hi && keys[order[lo]].length() == depth) {
+            ids[node] = order[lo++];
+        }
+        int next = node + 1;
+        while (lo < hi) {
+            char c = keys[order[lo]].charAt(depth);
+            int mid = lo;
+            while (mid < hi && keys[order[mid]].charAt(depth) == c) {
+                mid++;
+            }
+            chars[next] = c;
+            next = build(keys, order, lo, mid, depth + 1, next, chars);
+            lo = mid;
+        }
+        end[node] = next;
+        return next;
+    }
+
+
+    private static String normalize(String code) {
+        StringBuilder sb = new StringBuilder(code.length());
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c > ' ') {
+                sb.append(upper(c));
+            }
+        }
+        return sb.toString();
+    }
+
+
+    public int size() {
+        return values.length;
+    }
+
+
+    public T getValue(int id) {
+        return values[id];
+    }
+
+
+    /**
+     * @return code of the id as given, e.g. E800.1 for a cell e800.1
+     */
+    public String getCode(int id) {
+        return codes[id];
+    }
+
+
+    /**
+     * @return value of the code, or null if there is none
+     */
+    public T get(CharSequence code) {
+        int id = find(code);
+        return id < 0 ? null : values[id];
+    }
+
+
+    /**
+     * @return id of the code, or -1 if there is none
+     */
+    public int find(CharSequence code) {
+        int node = walk(code, FIND);
+        if (node < 0) {
+            return -1;
+        }
+        if (ids[node] >= 0) {
+            return ids[node];
+        }
+        if (isRange(code)) {
+            // the first code of 001-139.*, i.e. 001-139.99
+            int range = child(node, '.');
+            for (int i = range + 1; range >= 0 && i < end[range]; i++) {
+                if (ids[i] >= 0) {
+                    return ids[i];
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Passes the ids of the prefix and the codes under it in code order,
+     * e.g. 250, 250.0, 250.00, ... for 250
+     */
+    public void forEachWithPrefix(CharSequence prefix, IntConsumer action) {
+        int node = walk(prefix, FIND);
+        if (node >= 0) {
+            forEach(node, end[node], action);
+        }
+    }
+
+
+    /**
+     * Passes the ids of the codes from the first to the last code in code
+     * order, including the codes under the last, e.g. 001, ..., 139.99 for
+     * 001 and 139. Only codes with a category as long as the first's are
+     * passed, so procedures (01.0) are not in a range of diagnoses.
+     */
+    public void forEachInRange(CharSequence first, CharSequence last, IntConsumer action) {
+        int category = categoryLength(first);
+        int from = walk(first, LOWER);
+        int to = walk(last, UPPER);
+        for (int i = from; i < to; i++) {
+            if (ids[i] >= 0 && categories[ids[i]] == category) {
+                action.accept(ids[i]);
+            }
+        }
+    }
+
+
+    private void forEach(int from, int to, IntConsumer action) {
+        for (int i = from; i < to; i++) {
+            if (ids[i] >= 0) {
+                action.accept(ids[i]);
+            }
+        }
+    }
+
+
+    /**
+     * Diagnosis codes have a category of three digits, unlike procedures
+     * (two digits) and E and V codes, e.g. 250, 250.01, 240-279.99. A
+     * code without a dot is a diagnosis only if it is a category, so 8151
+     * is not one
+     */
+    public static boolean isDiagnosis(CharSequence code) {
+        int digits = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' || c == '-') {
+                return digits == 3;
+            } else if (c > ' ') {
+                return false;
+            }
+        }
+        return digits == 3;
+    }
+
+
+    /**
+     * Walks the normalized code. With FIND, returns the node of the code
+     * or -1. With LOWER and UPPER, returns the first node not before the
+     * code, or not under it.
+     */
+    private int walk(CharSequence code, int mode) {
+        int node = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c <= ' ') {
+                continue;
+            }
+            node = child(node, upper(c));
+            if (node < 0) {
+                return mode == FIND ? -1 : -node - 1;
+            }
+        }
+        return mode == UPPER ? end[node] : node;
+    }
+
+
+    // child of the node with the char, or -(first node after it) - 1
+    private int child(int node, char c) {
+        int start = childStart[node];
+        int stop = childStart[node + 1];
+        // children are mostly runs of digits, where the char gives the position
+        int guess = start + c - (start < stop ? childChars[start] : c);
+        if (guess >= start && guess < stop && childChars[guess] == c) {
+            return childNodes[guess];
+        }
+        for (int k = start; k < stop; k++) {
+            if (childChars[k] == c) {
+                return childNodes[k];
+            }
+            if (childChars[k] > c) {
+                return -childNodes[k] - 1;
+            }
+        }
+        return -end[node] - 1;
+    }
+
+
+    private static char upper(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - 'a' + 'A') : c;
+    }
+
+
+    // non-space chars before the dot or dash of the code
+    private static int categoryLength(CharSequence code) {
+        int n = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '.' || c == '-') {
+                break;
+            }
+            if (c > ' ') {
+                n++;
+            }
+        }
+        return n;
+    }
+
+
+    private static boolean isRange(CharSequence code) {
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '-') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
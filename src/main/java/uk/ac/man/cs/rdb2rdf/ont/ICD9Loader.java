@@ -0,0 +1,64 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import uk.ac.man.cs.rdb2rdf.io.Out;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads the ICD9 terminology from the snapshot next to the ontology file
+ * (icd9.owl.snapshot) if it was compiled from the same file, see
+ * {@link ICD9Snapshot}. Otherwise the ontology is parsed and the snapshot
+ * (re)written for the next run.
+ */
+public abstract class ICD9Loader {
+
+
+    /**
+     * @param file ICD9 ontology
+     * @return terminology of the ontology
+     */
+    public static ICD9Terminology initTerminology(File file) throws IOException {
+        File snapshotFile = ICD9Snapshot.snapshotOf(file);
+        if (snapshotFile.exists()) {
+            try {
+                ICD9Terminology terminology = ICD9Snapshot.read(snapshotFile, file);
+                if (terminology != null) {
+                    Out.p("Loaded ICD9 terminology from " + snapshotFile);
+                    return terminology;
+                }
+                Out.p(snapshotFile + " is out of date");
+            } catch (IOException e) {
+                Out.p("Ignoring " + snapshotFile + ": " + e.getMessage());
+            }
+        }
+        ICD9Terminology terminology = parseTerminology(file);
+        try {
+            ICD9Snapshot.write(terminology, file, snapshotFile);
+        } catch (IOException e) {
+            // e.g. a read-only directory, the next run parses again
+            Out.p("Cannot write " + snapshotFile + ": " + e.getMessage());
+        }
+        return terminology;
+    }
+
+
+    /**
+     * @param file ICD9 ontology
+     * @return terminology of the ontology, parsed with the OWL API
+     */
+    public static ICD9Terminology parseTerminology(File file) throws IOException {
+        Out.p("Loading ICD9 terminology");
+        try {
+            OWLOntology icd9Ontology = OWLManager.createOWLOntologyManager()
+                    .loadOntologyFromOntologyDocument(file);
+            return ICD9Terminology.fromOntology(icd9Ontology);
+        } catch (OWLOntologyCreationException e) {
+            throw new IOException("Cannot load " + file, e);
+        }
+    }
+
+}
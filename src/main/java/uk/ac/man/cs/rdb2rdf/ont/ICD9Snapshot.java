@@ -0,0 +1,328 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.model.*;
+import uk.ac.man.cs.rdb2rdf.io.FunctionalSyntaxWriter;
+import uk.ac.man.cs.rdb2rdf.io.Out;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary snapshot of an {@link ICD9Terminology}, compiled once from the
+ * ICD9 ontology and read by later runs without parsing it. The arrays of
+ * the terminology are copied from the mapped file onto the heap. The
+ * header holds the size, modification time and SHA-256 of the source
+ * file, so a snapshot of another version of the source is not used; the
+ * source is only hashed if its size or time differ, e.g. after a copy, and
+ * if the hash matches the header takes the new size and time, so later
+ * runs do not hash it again. All strings are in one table, referenced by index:
+ *
+ *   magic, version, size, mtime, hash[32], ontology IRI,
+ *   counts of strings, classes, parent links and labels,
+ *   string offsets[strings + 1], string bytes (UTF-8),
+ *   class IRIs[classes], codes[classes],
+ *   parent starts[classes + 1], parents[links],
+ *   label classes, properties, values, languages, datatypes[labels],
+ *   other axioms in functional syntax
+ *
+ * Usage: ICD9Snapshot icd9.owl writes icd9.owl.snapshot.
+ */
+public abstract class ICD9Snapshot {
+
+    public static final byte[] MAGIC = "RDB2ICD9".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 2;
+
+    public static final String SNAPSHOT_EXT = ".snapshot";
+
+    // of size and mtime in the header
+    private static final int TIME_OFFSET = MAGIC.length + 4;
+    private static final int HASH_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+
+    public static void main(String[] args) throws IOException {
+        File file = new File(args[0]);
+        File snapshotFile = args.length > 1 ? new File(args[1]) : snapshotOf(file);
+        ICD9Terminology terminology = ICD9Loader.parseTerminology(file);
+        write(terminology, file, snapshotFile);
+        Out.p("Compiled " + terminology.size() + " classes to " + snapshotFile);
+    }
+
+
+    /**
+     * @return snapshot file of the source file
+     */
+    public static File snapshotOf(File file) {
+        return new File(file.getPath() + SNAPSHOT_EXT);
+    }
+
+
+    /**
+     * @return SHA-256 of the file's content
+     */
+    public static byte[] hashOf(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+            while (in.read(buf) >= 0) {
+                // the stream updates the digest
+            }
+        }
+        return digest.digest();
+    }
+
+
+    /**
+     * @param source file the terminology was parsed from
+     */
+    public static void write(ICD9Terminology terminology, File source, File file) throws IOException {
+        // before hashing, so a change while hashing makes the snapshot out of date
+        long size = source.length();
+        long time = source.lastModified();
+        byte[] hash = hashOf(source);
+        StringTable strings = new StringTable();
+        int ontologyIRI = terminology.getOntologyIRI() == null ? -1 : strings.add(terminology.getOntologyIRI());
+        int n = terminology.size();
+        int[] iris = new int[n];
+        int[] codes = new int[n];
+        for (int i = 0; i < n; i++) {
+            iris[i] = strings.add(terminology.getIRI(i));
+            codes[i] = strings.add(terminology.getCode(i));
+        }
+        int[] properties = strings.addAll(terminology.getLabelProperties());
+        int[] values = strings.addAll(terminology.getLabelValues());
+        int[] langs = strings.addAll(terminology.getLabelLangs());
+        int[] datatypes = strings.addAll(terminology.getLabelDatatypes());
+        byte[] other = renderAxioms(terminology.getOtherAxioms());
+        // written to a temporary file first, so a run never maps half a snapshot
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(time);
+            out.write(hash);
+            out.writeInt(ontologyIRI);
+            out.writeInt(strings.size());
+            out.writeInt(n);
+            out.writeInt(terminology.getParents().length);
+            out.writeInt(terminology.getLabelCount());
+            strings.write(out);
+            writeInts(out, iris);
+            writeInts(out, codes);
+            writeInts(out, terminology.getParentStart());
+            writeInts(out, terminology.getParents());
+            writeInts(out, terminology.getLabelClasses());
+            writeInts(out, properties);
+            writeInts(out, values);
+            writeInts(out, langs);
+            writeInts(out, datatypes);
+            out.writeInt(other.length);
+            out.write(other);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmpFile + " to " + file);
+        }
+    }
+
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+
+    private static byte[] renderAxioms(Set<OWLAxiom> axioms) throws IOException {
+        if (axioms.isEmpty()) {
+            return new byte[0];
+        }
+        try {
+            OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+            OWLOntology ontology = manager.createOntology(axioms);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            manager.saveOntology(ontology, new FunctionalSyntaxDocumentFormat(), out);
+            return out.toByteArray();
+        } catch (OWLOntologyCreationException | OWLOntologyStorageException e) {
+            throw new IOException("Cannot render the other ICD9 axioms", e);
+        }
+    }
+
+
+    /**
+     * @param source file the snapshot should be compiled from
+     * @return the terminology, or null if the snapshot was compiled from
+     *         another source or by another version
+     */
+    public static ICD9Terminology read(File file, File source) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not an ICD9 snapshot");
+            }
+            if (buf.getInt() != VERSION) {
+                return null;
+            }
+            long size = buf.getLong();
+            long time = buf.getLong();
+            byte[] hash = new byte[HASH_SIZE];
+            buf.get(hash);
+            // before hashing, as in write()
+            long sourceSize = source.length();
+            long sourceTime = source.lastModified();
+            boolean moved = size != sourceSize || time != sourceTime;
+            if (moved && !Arrays.equals(hash, hashOf(source))) {
+                return null;
+            }
+            int ontologyIRI = buf.getInt();
+            int stringCount = buf.getInt();
+            int n = buf.getInt();
+            int links = buf.getInt();
+            int labels = buf.getInt();
+            String[] strings = readStrings(buf, stringCount);
+            String[] iris = lookup(strings, readInts(buf, n));
+            String[] codes = lookup(strings, readInts(buf, n));
+            int[] parentStart = readInts(buf, n + 1);
+            int[] parents = readInts(buf, links);
+            int[] labelClasses = readInts(buf, labels);
+            String[] labelProperties = lookup(strings, readInts(buf, labels));
+            String[] labelValues = lookup(strings, readInts(buf, labels));
+            String[] labelLangs = lookup(strings, readInts(buf, labels));
+            String[] labelDatatypes = lookup(strings, readInts(buf, labels));
+            byte[] other = new byte[buf.getInt()];
+            buf.get(other);
+            Set<OWLAxiom> otherAxioms = other.length == 0 ? new HashSet<>()
+                    : FunctionalSyntaxWriter.readAxioms(new ByteArrayInputStream(other), file.toString());
+            // declarations are added when the axioms are rendered, the parsed terminology has none
+            otherAxioms.removeIf(axiom -> axiom.isOfType(AxiomType.DECLARATION));
+            ICD9Terminology terminology = new ICD9Terminology(ontologyIRI < 0 ? null : strings[ontologyIRI],
+                    iris, codes, parentStart, parents, labelClasses, labelProperties, labelValues, labelLangs,
+                    labelDatatypes, otherAxioms);
+            if (moved) {
+                updateTime(file, sourceSize, sourceTime);
+            }
+            return terminology;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException or a bad index of a truncated file
+            throw new IOException("Corrupt ICD9 snapshot " + file, e);
+        }
+    }
+
+
+    // the source has the same content at a new size and time, which the header takes in place
+    private static void updateTime(File file, long size, long time) {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putLong(size).putLong(time).flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(header, TIME_OFFSET);
+        } catch (IOException e) {
+            // e.g. a read-only directory, the next run hashes again
+            Out.p("Cannot update " + file + ": " + e.getMessage());
+        }
+    }
+
+
+    private static int[] readInts(ByteBuffer buf, int n) {
+        int[] values = new int[n];
+        IntBuffer ints = buf.asIntBuffer();
+        ints.get(values);
+        buf.position(buf.position() + 4 * n);
+        return values;
+    }
+
+
+    private static String[] readStrings(ByteBuffer buf, int n) {
+        int[] offsets = readInts(buf, n + 1);
+        byte[] bytes = new byte[offsets[n]];
+        buf.get(bytes);
+        String[] strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            strings[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+
+    private static String[] lookup(String[] strings, int[] ids) {
+        String[] values = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = strings[ids[i]];
+        }
+        return values;
+    }
+
+
+
+    // distinct strings by first use
+    private static class StringTable {
+
+        private Map<String, Integer> ids = new HashMap<>();
+        private List<String> strings = new ArrayList<>();
+
+
+        int add(String str) {
+            Integer id = ids.get(str);
+            if (id == null) {
+                id = strings.size();
+                ids.put(str, id);
+                strings.add(str);
+            }
+            return id;
+        }
+
+
+        int[] addAll(String[] strs) {
+            int[] res = new int[strs.length];
+            for (int i = 0; i < strs.length; i++) {
+                res[i] = add(strs[i]);
+            }
+            return res;
+        }
+
+
+        int size() {
+            return strings.size();
+        }
+
+
+        void write(DataOutputStream out) throws IOException {
+            byte[][] bytes = new byte[strings.size()][];
+            int offset = 0;
+            out.writeInt(0);
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                offset += bytes[i].length;
+                out.writeInt(offset);
+            }
+            for (byte[] str : bytes) {
+                out.write(str);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,328 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+
+/**
+ * The parts of the ICD9 ontology the converters use: the classes with
+ * their codes, the subclass hierarchy as parent arrays and the prefLabel
+ * annotations. Axioms that do not fit these arrays (class expressions,
+ * axiom annotations) are kept as they are in {@link #getOtherAxioms()}.
+ * Built from the ontology or read from a snapshot, see {@link ICD9Loader}.
+ */
+public class ICD9Terminology {
+
+    public static final String ICD9_PREFIX = "http://purl.bioontology.org/ontology/ICD9CM/";
+
+    public static final String LABEL_NAME = "prefLabel";
+
+    private String ontologyIRI;
+    // class id to IRI and code
+    private String[] iris;
+    private String[] codes;
+    // parents of class i are parents[parentStart[i] .. parentStart[i + 1])
+    private int[] parentStart;
+    private int[] parents;
+    // labels, each of a class
+    private int[] labelClasses;
+    private String[] labelProperties;
+    private String[] labelValues;
+    // language tag, or "" with a datatype
+    private String[] labelLangs;
+    private String[] labelDatatypes;
+
+    private Set<OWLAxiom> otherAxioms;
+
+
+    ICD9Terminology(String ontologyIRI, String[] iris, String[] codes,
+                    int[] parentStart, int[] parents,
+                    int[] labelClasses, String[] labelProperties, String[] labelValues,
+                    String[] labelLangs, String[] labelDatatypes, Set<OWLAxiom> otherAxioms) {
+        this.ontologyIRI = ontologyIRI;
+        this.iris = iris;
+        this.codes = codes;
+        this.parentStart = parentStart;
+        this.parents = parents;
+        this.labelClasses = labelClasses;
+        this.labelProperties = labelProperties;
+        this.labelValues = labelValues;
+        this.labelLangs = labelLangs;
+        this.labelDatatypes = labelDatatypes;
+        this.otherAxioms = otherAxioms;
+    }
+
+
+    /**
+     * Collects the classes, subclass axioms and prefLabel annotations of the
+     * ICD9 ontology in one pass over its axioms. The label properties are
+     * resolved up front, so each annotation is matched by identity.
+     */
+    public static ICD9Terminology fromOntology(OWLOntology icd9Ontology) {
+        List<OWLClass> cls = new ArrayList<>(icd9Ontology.getClassesInSignature());
+        Collections.sort(cls);
+        int n = cls.size();
+        Map<IRI, Integer> ids = new HashMap<>(capacity(n));
+        String[] iris = new String[n];
+        String[] codes = new String[n];
+        for (int i = 0; i < n; i++) {
+            IRI iri = cls.get(i).getIRI();
+            ids.put(iri, i);
+            iris[i] = iri.toString();
+            codes[i] = codeOf(iris[i]);
+        }
+        Set<OWLAnnotationProperty> prefLabels = new HashSet<>();
+        for (OWLAnnotationProperty property : icd9Ontology.getAnnotationPropertiesInSignature()) {
+            if (property.getIRI().toString().contains(LABEL_NAME)) {
+                prefLabels.add(property);
+            }
+        }
+        Set<OWLAxiom> otherAxioms = new HashSet<>();
+        // subclass and superclass ids of the subclass axioms between classes
+        int[] edges = new int[2 * n];
+        int edgeCount = 0;
+        List<OWLAnnotationAssertionAxiom> labels = new ArrayList<>(n);
+        int[] labelIds = new int[n];
+        for (OWLAxiom axiom : icd9Ontology.getAxioms()) {
+            if (axiom.isOfType(AxiomType.SUBCLASS_OF)) {
+                OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+                Integer sub = idOf(subClassOf.getSubClass(), ids);
+                Integer sup = idOf(subClassOf.getSuperClass(), ids);
+                if (sub == null || sup == null || axiom.isAnnotated()) {
+                    otherAxioms.add(axiom);
+                    continue;
+                }
+                if (2 * edgeCount == edges.length) {
+                    edges = Arrays.copyOf(edges, 2 * edges.length);
+                }
+                edges[2 * edgeCount] = sub;
+                edges[2 * edgeCount + 1] = sup;
+                edgeCount++;
+            } else if (axiom.isOfType(AxiomType.ANNOTATION_ASSERTION)) {
+                OWLAnnotationAssertionAxiom annot = (OWLAnnotationAssertionAxiom) axiom;
+                if (!prefLabels.contains(annot.getProperty())) {
+                    continue;
+                }
+                // labels of classes only
+                Integer id = annot.getSubject() instanceof IRI ? ids.get(annot.getSubject()) : null;
+                if (id == null) {
+                    continue;
+                }
+                if (annot.isAnnotated() || !(annot.getValue() instanceof OWLLiteral)) {
+                    otherAxioms.add(annot);
+                    continue;
+                }
+                if (labels.size() == labelIds.length) {
+                    labelIds = Arrays.copyOf(labelIds, 2 * labelIds.length + 1);
+                }
+                labelIds[labels.size()] = id;
+                labels.add(annot);
+            }
+        }
+        // parents grouped by subclass, by counting sort
+        int[] parentStart = new int[n + 1];
+        for (int k = 0; k < edgeCount; k++) {
+            parentStart[edges[2 * k] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            parentStart[i + 1] += parentStart[i];
+        }
+        int[] parents = new int[edgeCount];
+        int[] next = Arrays.copyOf(parentStart, n);
+        for (int k = 0; k < edgeCount; k++) {
+            parents[next[edges[2 * k]]++] = edges[2 * k + 1];
+        }
+        int m = labels.size();
+        int[] labelClasses = Arrays.copyOf(labelIds, m);
+        String[] labelProperties = new String[m];
+        String[] labelValues = new String[m];
+        String[] labelLangs = new String[m];
+        String[] labelDatatypes = new String[m];
+        for (int i = 0; i < m; i++) {
+            OWLAnnotationAssertionAxiom annot = labels.get(i);
+            OWLLiteral literal = (OWLLiteral) annot.getValue();
+            labelProperties[i] = annot.getProperty().getIRI().toString();
+            labelValues[i] = literal.getLiteral();
+            labelLangs[i] = literal.getLang();
+            labelDatatypes[i] = literal.getDatatype().getIRI().toString();
+        }
+        String ontologyIRI = icd9Ontology.isAnonymous()
+                ? null : icd9Ontology.getOntologyID().getOntologyIRI().get().toString();
+        return new ICD9Terminology(ontologyIRI, iris, codes, parentStart, parents,
+                labelClasses, labelProperties, labelValues, labelLangs, labelDatatypes, otherAxioms);
+    }
+
+
+    private static Integer idOf(OWLClassExpression ce, Map<IRI, Integer> ids) {
+        return ce.isAnonymous() ? null : ids.get(ce.asOWLClass().getIRI());
+    }
+
+
+    /**
+     * @return code of an ICD9 class IRI, or the IRI if it is not in the ICD9 namespace
+     */
+    public static String codeOf(String iri) {
+        return iri.startsWith(ICD9_PREFIX) ? iri.substring(ICD9_PREFIX.length()) : iri;
+    }
+
+
+    // initial capacity of a hash map holding n entries without rehashing
+    private static int capacity(int n) {
+        return (int) (n / 0.75f) + 1;
+    }
+
+
+    /**
+     * @return IRI of the ICD9 ontology, or null
+     */
+    public String getOntologyIRI() {
+        return ontologyIRI;
+    }
+
+
+    /**
+     * @return number of classes, the ids are 0 .. size - 1
+     */
+    public int size() {
+        return iris.length;
+    }
+
+
+    public String getIRI(int id) {
+        return iris[id];
+    }
+
+
+    public String getCode(int id) {
+        return codes[id];
+    }
+
+
+    /**
+     * @return number of direct parents of the class
+     */
+    public int getParentCount(int id) {
+        return parentStart[id + 1] - parentStart[id];
+    }
+
+
+    /**
+     * @return id of the k-th direct parent of the class
+     */
+    public int getParent(int id, int k) {
+        return parents[parentStart[id] + k];
+    }
+
+
+    public int getLabelCount() {
+        return labelClasses.length;
+    }
+
+
+    /**
+     * @return axioms of the ontology that are not in the arrays
+     */
+    public Set<OWLAxiom> getOtherAxioms() {
+        return otherAxioms;
+    }
+
+
+    /**
+     * @return classes by id
+     */
+    public OWLClass[] getClasses(OWLDataFactory factory) {
+        OWLClass[] cls = new OWLClass[iris.length];
+        for (int i = 0; i < cls.length; i++) {
+            cls[i] = factory.getOWLClass(IRI.create(iris[i]));
+        }
+        return cls;
+    }
+
+
+    /**
+     * @return code to class
+     */
+    public ICD9CodeTrie<OWLClass> getCodeTrie(OWLClass[] cls) {
+        return new ICD9CodeTrie<>(codes, cls);
+    }
+
+
+    /**
+     * @return transitive closure of the subclass arrays, by class id
+     */
+    public HierarchyIndex getHierarchy() {
+        return new HierarchyIndex(parentStart, parents);
+    }
+
+
+    public Set<OWLSubClassOfAxiom> getSubClassAxioms(OWLClass[] cls, OWLDataFactory factory) {
+        Set<OWLSubClassOfAxiom> axioms = new HashSet<>(2 * parents.length);
+        for (int i = 0; i < cls.length; i++) {
+            for (int k = parentStart[i]; k < parentStart[i + 1]; k++) {
+                axioms.add(factory.getOWLSubClassOfAxiom(cls[i], cls[parents[k]]));
+            }
+        }
+        for (OWLAxiom axiom : otherAxioms) {
+            if (axiom instanceof OWLSubClassOfAxiom) {
+                axioms.add((OWLSubClassOfAxiom) axiom);
+            }
+        }
+        return axioms;
+    }
+
+
+    public Set<OWLAnnotationAssertionAxiom> getLabelAxioms(OWLClass[] cls, OWLDataFactory factory) {
+        Set<OWLAnnotationAssertionAxiom> axioms = new HashSet<>(2 * labelClasses.length);
+        Map<String, OWLAnnotationProperty> properties = new HashMap<>();
+        for (int i = 0; i < labelClasses.length; i++) {
+            OWLAnnotationProperty property = properties.computeIfAbsent(labelProperties[i],
+                    iri -> factory.getOWLAnnotationProperty(IRI.create(iri)));
+            OWLLiteral literal = labelLangs[i].isEmpty()
+                    ? factory.getOWLLiteral(labelValues[i], factory.getOWLDatatype(IRI.create(labelDatatypes[i])))
+                    : factory.getOWLLiteral(labelValues[i], labelLangs[i]);
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(property, cls[labelClasses[i]].getIRI(), literal));
+        }
+        for (OWLAxiom axiom : otherAxioms) {
+            if (axiom instanceof OWLAnnotationAssertionAxiom) {
+                axioms.add((OWLAnnotationAssertionAxiom) axiom);
+            }
+        }
+        return axioms;
+    }
+
+
+    int[] getParentStart() {
+        return parentStart;
+    }
+
+
+    int[] getParents() {
+        return parents;
+    }
+
+
+    int[] getLabelClasses() {
+        return labelClasses;
+    }
+
+
+    String[] getLabelProperties() {
+        return labelProperties;
+    }
+
+
+    String[] getLabelValues() {
+        return labelValues;
+    }
+
+
+    String[] getLabelLangs() {
+        return labelLangs;
+    }
+
+
+    String[] getLabelDatatypes() {
+        return labelDatatypes;
+    }
+
+}
@@ -2,17 +2,19 @@ package uk.ac.man.cs.rdb2rdf.ont;
 
 import org.semanticweb.HermiT.ReasonerFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.BufferingMode;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerConfiguration;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+import uk.ac.man.cs.rdb2rdf.io.Out;
 
 /**
  * Created by slava on 06/09/17.
  */
 public abstract class ReasonerLoader {
 
-    public static final String INVALID_REASONER_ERR = "Valid reasoners: Hermit";
+    public static final String INVALID_REASONER_ERR = "Valid reasoners: Hermit | Taxonomy | EL";
 //			+ " | Pellet | Fact | JFact | Pellet | TrOWL ";
 
 
@@ -67,6 +69,14 @@ public abstract class ReasonerLoader {
 
 
 
+    /**
+     * A taxonomy (only subsumptions and equivalences between named classes)
+     * gets a {@link TaxonomyReasoner} instead of HermiT, which would classify
+     * it with the same result, only slower. A later change beyond a taxonomy
+     * hands it over to HermiT on flush. The EL reasoner classifies its
+     * subset of EL and hands the queries about properties and individuals
+     * to HermiT
+     */
     private static OWLReasoner initReasonerConfigured(ReasonerName reasonerName, OWLOntology ontology,
                                                       OWLReasonerConfiguration config)
             throws Exception {
@@ -83,7 +93,21 @@ public abstract class ReasonerLoader {
 //			reasoner = reasonerFactory.createReasoner(ontology, config);
 //		}
 //		else
-        if (reasonerName.equals(ReasonerName.HERMIT)) {
+        if (reasonerName.equals(ReasonerName.TAXONOMY)) {
+            if (!TaxonomyReasoner.isTaxonomy(ontology)) {
+                throw new Exception("Not a taxonomy, the ontology has other logical axioms. " +
+                        INVALID_REASONER_ERR);
+            }
+            reasoner = new TaxonomyReasoner(ontology, config, BufferingMode.BUFFERING);
+        }
+        else if (reasonerName.equals(ReasonerName.EL)) {
+            reasoner = new ELReasoner(ontology, config, BufferingMode.BUFFERING, new ReasonerFactory());
+        }
+        else if (reasonerName.equals(ReasonerName.HERMIT) && TaxonomyReasoner.isTaxonomy(ontology)) {
+            Out.p("The ontology is a taxonomy, classifying it without HermiT");
+            reasoner = new TaxonomyReasoner(ontology, config, BufferingMode.BUFFERING, new ReasonerFactory());
+        }
+        else if (reasonerName.equals(ReasonerName.HERMIT)) {
             reasonerFactory = new ReasonerFactory();
             reasoner = reasonerFactory.createReasoner(ontology, config);
         }
@@ -9,7 +9,9 @@ public enum ReasonerName {
     FACT("FACT"),
     PELLET("PELLET"),
     JFACT("JFACT"),
-    TROWL("TROWL");
+    TROWL("TROWL"),
+    TAXONOMY("TAXONOMY"),
+    EL("EL");
 
     private final String name;
 
@@ -0,0 +1,298 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNode;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Class hierarchy of named classes, from subsumptions between them (told,
+ * or all inferred ones). Classes on a cycle of subsumptions are equivalent
+ * and share a node. The nodes keep their direct parents and children only,
+ * i.e. the transitive reduction, which is computed in parallel over the
+ * nodes with a {@link HierarchyIndex} of the nodes for reachability.
+ * Classes equivalent to owl:Thing or owl:Nothing are in the top and bottom
+ * nodes instead.
+ */
+class Taxonomy {
+
+    private Map<OWLClass, Integer> nodeOf;
+    private OWLClassNode[] nodes;
+    // direct parents and children of each node
+    private int[][] parents;
+    private int[][] children;
+    private HierarchyIndex index;
+    private Node<OWLClass> top;
+    private Node<OWLClass> bottom;
+
+
+    /**
+     * @param superStart superclasses of class i are supers[superStart[i] .. superStart[i + 1])
+     */
+    Taxonomy(OWLClass[] classes, int[] superStart, int[] supers) {
+        this(classes, superStart, supers, OWLClassNode.getTopNode(), OWLClassNode.getBottomNode());
+    }
+
+
+    /**
+     * @param top owl:Thing and the classes equivalent to it, not in the classes
+     * @param bottom owl:Nothing and the unsatisfiable classes, not in the classes
+     */
+    Taxonomy(OWLClass[] classes, int[] superStart, int[] supers, Node<OWLClass> top, Node<OWLClass> bottom) {
+        this.top = top;
+        this.bottom = bottom;
+        int n = classes.length;
+        int[] component = new int[n];
+        int m = findComponents(superStart, supers, component);
+        // classes of node c are memberIds[memberStart[c] .. memberStart[c + 1])
+        int[] memberStart = new int[m + 1];
+        for (int i = 0; i < n; i++) {
+            memberStart[component[i] + 1]++;
+        }
+        for (int c = 0; c < m; c++) {
+            memberStart[c + 1] += memberStart[c];
+        }
+        int[] memberIds = new int[n];
+        int[] next = Arrays.copyOf(memberStart, m);
+        for (int i = 0; i < n; i++) {
+            memberIds[next[component[i]]++] = i;
+        }
+        nodeOf = new HashMap<>((int) (n / 0.75f) + 1);
+        for (int i = 0; i < n; i++) {
+            nodeOf.put(classes[i], component[i]);
+        }
+        nodes = new OWLClassNode[m];
+        for (int c = 0; c < m; c++) {
+            Set<OWLClass> members = new HashSet<>(2);
+            for (int k = memberStart[c]; k < memberStart[c + 1]; k++) {
+                members.add(classes[memberIds[k]]);
+            }
+            nodes[c] = new OWLClassNode(members);
+        }
+        // parents of the nodes, not yet reduced
+        int[][] up = new int[m][];
+        IntStream.range(0, m).parallel().forEach(c -> {
+            int count = 0;
+            for (int k = memberStart[c]; k < memberStart[c + 1]; k++) {
+                int i = memberIds[k];
+                count += superStart[i + 1] - superStart[i];
+            }
+            int[] ps = new int[count];
+            count = 0;
+            for (int k = memberStart[c]; k < memberStart[c + 1]; k++) {
+                int i = memberIds[k];
+                for (int s = superStart[i]; s < superStart[i + 1]; s++) {
+                    if (component[supers[s]] != c) {
+                        ps[count++] = component[supers[s]];
+                    }
+                }
+            }
+            up[c] = distinct(ps, count);
+        });
+        int[] parentStart = new int[m + 1];
+        for (int c = 0; c < m; c++) {
+            parentStart[c + 1] = parentStart[c] + up[c].length;
+        }
+        int[] parentIds = new int[parentStart[m]];
+        for (int c = 0; c < m; c++) {
+            System.arraycopy(up[c], 0, parentIds, parentStart[c], up[c].length);
+        }
+        index = new HierarchyIndex(parentStart, parentIds);
+        // a parent below another parent is not direct
+        parents = new int[m][];
+        IntStream.range(0, m).parallel().forEach(c -> parents[c] = reduce(up[c]));
+        int[] childCount = new int[m];
+        for (int[] ps : parents) {
+            for (int p : ps) {
+                childCount[p]++;
+            }
+        }
+        children = new int[m][];
+        for (int c = 0; c < m; c++) {
+            children[c] = new int[childCount[c]];
+            childCount[c] = 0;
+        }
+        for (int c = 0; c < m; c++) {
+            for (int p : parents[c]) {
+                children[p][childCount[p]++] = c;
+            }
+        }
+    }
+
+
+    /**
+     * Strongly connected components of the subsumptions (Tarjan's, without
+     * recursion). Sets the component of each class, returns their number.
+     */
+    private static int findComponents(int[] superStart, int[] supers, int[] component) {
+        int n = superStart.length - 1;
+        int[] order = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(order, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int top = 0;
+        int[] calls = new int[n];
+        int[] cursor = new int[n];
+        int counter = 0;
+        int components = 0;
+        for (int root = 0; root < n; root++) {
+            if (order[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            calls[0] = root;
+            order[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+            cursor[root] = superStart[root];
+            while (depth >= 0) {
+                int v = calls[depth];
+                if (cursor[v] < superStart[v + 1]) {
+                    int w = supers[cursor[v]++];
+                    if (order[w] < 0) {
+                        order[w] = low[w] = counter++;
+                        stack[top++] = w;
+                        onStack[w] = true;
+                        cursor[w] = superStart[w];
+                        calls[++depth] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                } else {
+                    if (low[v] == order[v]) {
+                        int w;
+                        do {
+                            w = stack[--top];
+                            onStack[w] = false;
+                            component[w] = components;
+                        } while (w != v);
+                        components++;
+                    }
+                    if (--depth >= 0) {
+                        int u = calls[depth];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                }
+            }
+        }
+        return components;
+    }
+
+
+    private static int[] distinct(int[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || values[size - 1] != values[i]) {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+
+    private int[] reduce(int[] ps) {
+        int[] direct = new int[ps.length];
+        int size = 0;
+        for (int p : ps) {
+            boolean isDirect = true;
+            for (int q : ps) {
+                if (q != p && index.isDescendant(q, p)) {
+                    isDirect = false;
+                    break;
+                }
+            }
+            if (isDirect) {
+                direct[size++] = p;
+            }
+        }
+        return size == ps.length ? ps : Arrays.copyOf(direct, size);
+    }
+
+
+    public int size() {
+        return nodes.length;
+    }
+
+
+    /**
+     * @return node of the class, or -1 if the class is not in the taxonomy
+     */
+    public int getNode(OWLClass cl) {
+        Integer node = nodeOf.get(cl);
+        return node == null ? -1 : node;
+    }
+
+
+    public Node<OWLClass> getTopNode() {
+        return top;
+    }
+
+
+    public Node<OWLClass> getBottomNode() {
+        return bottom;
+    }
+
+
+    public Node<OWLClass> getClassNode(int node) {
+        return nodes[node];
+    }
+
+
+    public int[] getParents(int node) {
+        return parents[node];
+    }
+
+
+    public int[] getChildren(int node) {
+        return children[node];
+    }
+
+
+    /**
+     * @return true if the first node is the second or below it
+     */
+    public boolean isSubNode(int node, int ancestor) {
+        return node == ancestor || index.isDescendant(node, ancestor);
+    }
+
+
+    public void forEachDescendant(int node, IntConsumer action) {
+        index.forEachDescendant(node, action);
+    }
+
+
+    public void forEachAncestor(int node, IntConsumer action) {
+        BitSet visited = new BitSet(nodes.length);
+        int[] queue = new int[16];
+        int size = 0;
+        for (int p : parents[node]) {
+            visited.set(p);
+            queue = push(queue, size++, p);
+        }
+        for (int head = 0; head < size; head++) {
+            int c = queue[head];
+            action.accept(c);
+            for (int p : parents[c]) {
+                if (!visited.get(p)) {
+                    visited.set(p);
+                    queue = push(queue, size++, p);
+                }
+            }
+        }
+    }
+
+
+    private static int[] push(int[] queue, int size, int value) {
+        if (size == queue.length) {
+            queue = Arrays.copyOf(queue, 2 * size);
+        }
+        queue[size] = value;
+        return queue;
+    }
+
+}
@@ -0,0 +1,682 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.*;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNode;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNodeSet;
+import org.semanticweb.owlapi.reasoner.impl.OWLReasonerBase;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasoner;
+import org.semanticweb.owlapi.util.Version;
+import uk.ac.man.cs.rdb2rdf.io.Out;
+
+import java.util.*;
+
+/**
+ * Reasoner for ontologies whose logical axioms are subsumptions and
+ * equivalences between named classes, e.g. the ICD9 hierarchy. These
+ * entail no more than their transitive closure, so the class hierarchy is
+ * the {@link Taxonomy} of the axioms, without a DL reasoner. Such an
+ * ontology has no property or individual axioms either, so the told
+ * answers of a {@link StructuralReasoner} to those queries are complete.
+ *
+ * See {@link ReasonerLoader}, which picks it for such ontologies. A change
+ * that adds other logical axioms hands all queries from then on to a
+ * reasoner of the fallback factory, e.g. HermiT, if there is one.
+ */
+public class TaxonomyReasoner extends OWLReasonerBase {
+
+    private static final Set<InferenceType> PRECOMPUTABLE = Collections.singleton(InferenceType.CLASS_HIERARCHY);
+
+    private Taxonomy taxonomy;
+    // for the queries other than about classes
+    private OWLReasoner structural;
+    private OWLReasonerFactory fallbackFactory;
+    // for all queries once the axioms are no longer those of a taxonomy
+    private volatile OWLReasoner fallback;
+    private volatile boolean interrupted;
+
+
+    public TaxonomyReasoner(OWLOntology ontology, OWLReasonerConfiguration config, BufferingMode mode) {
+        this(ontology, config, mode, null);
+    }
+
+
+    /**
+     * @param fallbackFactory creates the reasoner for a change that adds
+     *                        other logical axioms, or null to fail then
+     */
+    public TaxonomyReasoner(OWLOntology ontology, OWLReasonerConfiguration config, BufferingMode mode,
+                            OWLReasonerFactory fallbackFactory) {
+        super(ontology, config, mode);
+        this.fallbackFactory = fallbackFactory;
+    }
+
+
+    /**
+     * @return true if the logical axioms of the ontology and its imports
+     *         are subsumptions and equivalences between named classes
+     */
+    public static boolean isTaxonomy(OWLOntology ontology) {
+        for (OWLOntology ont : ontology.getImportsClosure()) {
+            if (!isTaxonomy(ont.getLogicalAxioms())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static boolean isTaxonomy(Collection<? extends OWLAxiom> axioms) {
+        for (OWLAxiom axiom : axioms) {
+            if (!isTaxonomyAxiom(axiom)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // owl:Thing and owl:Nothing only as a superclass and never, to keep every class satisfiable and distinct from owl:Thing
+    private static boolean isTaxonomyAxiom(OWLAxiom axiom) {
+        if (axiom.isOfType(AxiomType.SUBCLASS_OF)) {
+            OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+            OWLClassExpression sub = subClassOf.getSubClass();
+            OWLClassExpression sup = subClassOf.getSuperClass();
+            return !sub.isAnonymous() && !sup.isAnonymous()
+                    && !sub.isOWLThing() && !sub.isOWLNothing() && !sup.isOWLNothing();
+        }
+        if (axiom.isOfType(AxiomType.EQUIVALENT_CLASSES)) {
+            for (OWLClassExpression ce : ((OWLEquivalentClassesAxiom) axiom).getClassExpressions()) {
+                if (ce.isAnonymous() || ce.isOWLThing() || ce.isOWLNothing()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return !axiom.isLogicalAxiom();
+    }
+
+
+    /**
+     * @return the taxonomy of the axioms the reasoner has been given
+     */
+    protected synchronized Taxonomy getTaxonomy() {
+        if (taxonomy == null) {
+            interrupted = false;
+            taxonomy = classify();
+        }
+        return taxonomy;
+    }
+
+
+    /**
+     * @return the taxonomy of the axioms, which are those of a taxonomy;
+     *         {@link ELReasoner} saturates other axioms instead
+     */
+    protected Taxonomy classify() {
+        Set<OWLClass> signature = new LinkedHashSet<>(getRootOntology().getClassesInSignature(Imports.INCLUDED));
+        for (OWLAxiom axiom : getReasonerAxioms()) {
+            checkInterrupted();
+            if (!isTaxonomyAxiom(axiom)) {
+                throw new ReasonerInternalException("Not an axiom of a taxonomy: " + axiom
+                        + ". Use a DL reasoner, see ReasonerLoader");
+            }
+            signature.addAll(axiom.getClassesInSignature());
+        }
+        signature.remove(getOWLDataFactory().getOWLThing());
+        signature.remove(getOWLDataFactory().getOWLNothing());
+        OWLClass[] classes = signature.toArray(new OWLClass[signature.size()]);
+        Map<OWLClass, Integer> ids = new HashMap<>((int) (classes.length / 0.75f) + 1);
+        for (int i = 0; i < classes.length; i++) {
+            ids.put(classes[i], i);
+        }
+        // subclass, superclass
+        List<int[]> edges = new ArrayList<>();
+        for (OWLAxiom axiom : getReasonerAxioms()) {
+            checkInterrupted();
+            if (axiom instanceof OWLSubClassOfAxiom) {
+                OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+                if (!subClassOf.getSuperClass().isOWLThing()) {
+                    edges.add(new int[]{ids.get(subClassOf.getSubClass().asOWLClass()),
+                            ids.get(subClassOf.getSuperClass().asOWLClass())});
+                }
+            } else if (axiom instanceof OWLEquivalentClassesAxiom) {
+                // a cycle through the classes
+                List<OWLClass> cls = new ArrayList<>(((OWLEquivalentClassesAxiom) axiom).getNamedClasses());
+                for (int k = 0; k < cls.size(); k++) {
+                    edges.add(new int[]{ids.get(cls.get(k)), ids.get(cls.get((k + 1) % cls.size()))});
+                }
+            }
+        }
+        Taxonomy taxonomy = newTaxonomy(classes, edges);
+        checkInterrupted();
+        return taxonomy;
+    }
+
+
+    /**
+     * @throws ReasonerInterruptedException after {@link #interrupt()}
+     */
+    protected void checkInterrupted() {
+        if (interrupted) {
+            interrupted = false;
+            throw new ReasonerInterruptedException();
+        }
+    }
+
+
+    /**
+     * @param edges subclass and superclass ids of the subsumptions
+     */
+    protected static Taxonomy newTaxonomy(OWLClass[] classes, List<int[]> edges) {
+        int[] superStart = new int[classes.length + 1];
+        for (int[] edge : edges) {
+            superStart[edge[0] + 1]++;
+        }
+        for (int i = 0; i < classes.length; i++) {
+            superStart[i + 1] += superStart[i];
+        }
+        int[] supers = new int[edges.size()];
+        int[] next = Arrays.copyOf(superStart, classes.length);
+        for (int[] edge : edges) {
+            supers[next[edge[0]]++] = edge[1];
+        }
+        return new Taxonomy(classes, superStart, supers);
+    }
+
+
+    @Override
+    protected synchronized void handleChanges(Set<OWLAxiom> addAxioms, Set<OWLAxiom> removeAxioms) {
+        taxonomy = null;
+        if (structural != null) {
+            structural.flush();
+        }
+        if (fallback != null) {
+            fallback.flush();
+        } else if (fallbackFactory != null && !isTaxonomy(addAxioms)) {
+            // sees the axioms of the reasoner, which are those of the ontology after a flush
+            fallback = getBufferingMode() == BufferingMode.BUFFERING
+                    ? fallbackFactory.createReasoner(getRootOntology(), getReasonerConfiguration())
+                    : fallbackFactory.createNonBufferingReasoner(getRootOntology(), getReasonerConfiguration());
+            Out.p("The ontology is no longer a taxonomy, handing the queries to the fallback reasoner");
+        }
+    }
+
+
+    // the reasoner for all queries after a change beyond a taxonomy
+    private OWLReasoner fallback() {
+        return fallback;
+    }
+
+
+    /**
+     * @return reasoner for the queries other than about classes
+     */
+    protected synchronized OWLReasoner getOtherReasoner() {
+        if (fallback != null) {
+            return fallback;
+        }
+        if (structural == null) {
+            structural = new StructuralReasoner(getRootOntology(), getReasonerConfiguration(), getBufferingMode());
+        }
+        return structural;
+    }
+
+
+    @Override
+    public String getReasonerName() {
+        return "Taxonomy";
+    }
+
+
+    @Override
+    public Version getReasonerVersion() {
+        return new Version(1, 0, 0, 0);
+    }
+
+
+    @Override
+    public void interrupt() {
+        interrupted = true;
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            fallback.interrupt();
+        }
+    }
+
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            fallback.precomputeInferences(inferenceTypes);
+            return;
+        }
+        if (Arrays.asList(inferenceTypes).contains(InferenceType.CLASS_HIERARCHY)) {
+            getTaxonomy();
+        }
+    }
+
+
+    @Override
+    public synchronized boolean isPrecomputed(InferenceType inferenceType) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.isPrecomputed(inferenceType);
+        }
+        return inferenceType == InferenceType.CLASS_HIERARCHY && taxonomy != null;
+    }
+
+
+    @Override
+    public Set<InferenceType> getPrecomputableInferenceTypes() {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getPrecomputableInferenceTypes();
+        }
+        return PRECOMPUTABLE;
+    }
+
+
+    @Override
+    public boolean isConsistent() {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.isConsistent();
+        }
+        return true;
+    }
+
+
+    @Override
+    public boolean isSatisfiable(OWLClassExpression ce) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.isSatisfiable(ce);
+        }
+        return !getBottomClassNode().contains(named(ce));
+    }
+
+
+    @Override
+    public Node<OWLClass> getUnsatisfiableClasses() {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getUnsatisfiableClasses();
+        }
+        return getBottomClassNode();
+    }
+
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.isEntailed(axiom);
+        }
+        if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+            if (!subClassOf.getSubClass().isAnonymous() && !subClassOf.getSuperClass().isAnonymous()) {
+                return isSubClass(subClassOf.getSubClass().asOWLClass(), subClassOf.getSuperClass().asOWLClass());
+            }
+        } else if (axiom instanceof OWLEquivalentClassesAxiom) {
+            OWLEquivalentClassesAxiom equivalent = (OWLEquivalentClassesAxiom) axiom;
+            if (equivalent.getNamedClasses().size() == equivalent.getClassExpressions().size()) {
+                List<OWLClass> cls = new ArrayList<>(equivalent.getNamedClasses());
+                for (int k = 1; k < cls.size(); k++) {
+                    if (!isSubClass(cls.get(0), cls.get(k)) || !isSubClass(cls.get(k), cls.get(0))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        throw new UnsupportedEntailmentTypeException(axiom);
+    }
+
+
+    private boolean isSubClass(OWLClass subClass, OWLClass superClass) {
+        OWLClass sub = representative(subClass);
+        OWLClass sup = representative(superClass);
+        if (sub.equals(sup) || sup.isOWLThing() || sub.isOWLNothing()) {
+            return true;
+        }
+        if (sub.isOWLThing() || sup.isOWLNothing()) {
+            return false;
+        }
+        Taxonomy taxonomy = getTaxonomy();
+        int subNode = taxonomy.getNode(sub);
+        int supNode = taxonomy.getNode(sup);
+        return subNode >= 0 && supNode >= 0 && taxonomy.isSubNode(subNode, supNode);
+    }
+
+
+    @Override
+    public boolean isEntailed(Set<? extends OWLAxiom> axioms) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.isEntailed(axioms);
+        }
+        for (OWLAxiom axiom : axioms) {
+            if (!isEntailed(axiom)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    @Override
+    public boolean isEntailmentCheckingSupported(AxiomType<?> axiomType) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.isEntailmentCheckingSupported(axiomType);
+        }
+        return axiomType == AxiomType.SUBCLASS_OF || axiomType == AxiomType.EQUIVALENT_CLASSES;
+    }
+
+
+    @Override
+    public Node<OWLClass> getTopClassNode() {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getTopClassNode();
+        }
+        return getTaxonomy().getTopNode();
+    }
+
+
+    @Override
+    public Node<OWLClass> getBottomClassNode() {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getBottomClassNode();
+        }
+        return getTaxonomy().getBottomNode();
+    }
+
+
+    /**
+     * @return the class of a query, class expressions need a DL reasoner
+     */
+    protected static OWLClass named(OWLClassExpression ce) {
+        if (ce.isAnonymous()) {
+            // named classes only, which is no OWL 2 profile
+            throw new ClassExpressionNotInProfileException(ce, null);
+        }
+        return ce.asOWLClass();
+    }
+
+
+    // owl:Thing and owl:Nothing for the classes equivalent to them
+    private OWLClass representative(OWLClassExpression ce) {
+        OWLClass cl = named(ce);
+        if (getTopClassNode().contains(cl)) {
+            return getOWLDataFactory().getOWLThing();
+        }
+        if (getBottomClassNode().contains(cl)) {
+            return getOWLDataFactory().getOWLNothing();
+        }
+        return cl;
+    }
+
+
+    @Override
+    public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getSubClasses(ce, direct);
+        }
+        OWLClass cl = representative(ce);
+        OWLClassNodeSet nodes = new OWLClassNodeSet();
+        if (cl.isOWLNothing()) {
+            return nodes;
+        }
+        Taxonomy taxonomy = getTaxonomy();
+        if (cl.isOWLThing()) {
+            for (int c = 0; c < taxonomy.size(); c++) {
+                if (!direct || taxonomy.getParents(c).length == 0) {
+                    nodes.addNode(taxonomy.getClassNode(c));
+                }
+            }
+        } else {
+            int node = taxonomy.getNode(cl);
+            if (node >= 0 && direct) {
+                for (int c : taxonomy.getChildren(node)) {
+                    nodes.addNode(taxonomy.getClassNode(c));
+                }
+            } else if (node >= 0) {
+                taxonomy.forEachDescendant(node, c -> nodes.addNode(taxonomy.getClassNode(c)));
+            }
+        }
+        if (!direct || nodes.isEmpty()) {
+            nodes.addNode(getBottomClassNode());
+        }
+        return nodes;
+    }
+
+
+    @Override
+    public NodeSet<OWLClass> getSuperClasses(OWLClassExpression ce, boolean direct) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getSuperClasses(ce, direct);
+        }
+        OWLClass cl = representative(ce);
+        OWLClassNodeSet nodes = new OWLClassNodeSet();
+        if (cl.isOWLThing()) {
+            return nodes;
+        }
+        Taxonomy taxonomy = getTaxonomy();
+        if (cl.isOWLNothing()) {
+            for (int c = 0; c < taxonomy.size(); c++) {
+                if (!direct || taxonomy.getChildren(c).length == 0) {
+                    nodes.addNode(taxonomy.getClassNode(c));
+                }
+            }
+        } else {
+            int node = taxonomy.getNode(cl);
+            if (node >= 0 && direct) {
+                for (int c : taxonomy.getParents(node)) {
+                    nodes.addNode(taxonomy.getClassNode(c));
+                }
+            } else if (node >= 0) {
+                taxonomy.forEachAncestor(node, c -> nodes.addNode(taxonomy.getClassNode(c)));
+            }
+        }
+        if (!direct || nodes.isEmpty()) {
+            nodes.addNode(getTopClassNode());
+        }
+        return nodes;
+    }
+
+
+    @Override
+    public Node<OWLClass> getEquivalentClasses(OWLClassExpression ce) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getEquivalentClasses(ce);
+        }
+        OWLClass cl = representative(ce);
+        if (cl.isOWLThing()) {
+            return getTopClassNode();
+        }
+        if (cl.isOWLNothing()) {
+            return getBottomClassNode();
+        }
+        Taxonomy taxonomy = getTaxonomy();
+        int node = taxonomy.getNode(cl);
+        return node >= 0 ? taxonomy.getClassNode(node) : new OWLClassNode(cl);
+    }
+
+
+    @Override
+    public NodeSet<OWLClass> getDisjointClasses(OWLClassExpression ce) {
+        OWLReasoner fallback = fallback();
+        if (fallback != null) {
+            return fallback.getDisjointClasses(ce);
+        }
+        // all classes are satisfiable and there are no disjointness axioms
+        if (!representative(ce).isOWLNothing()) {
+            return new OWLClassNodeSet(getBottomClassNode());
+        }
+        // owl:Nothing is disjoint with every class, owl:Thing included
+        OWLClassNodeSet nodes = new OWLClassNodeSet(getTopClassNode());
+        nodes.addAllNodes(getSubClasses(getOWLDataFactory().getOWLThing(), false).getNodes());
+        return nodes;
+    }
+
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getTopObjectPropertyNode() {
+        return getOtherReasoner().getTopObjectPropertyNode();
+    }
+
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getBottomObjectPropertyNode() {
+        return getOtherReasoner().getBottomObjectPropertyNode();
+    }
+
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSubObjectProperties(OWLObjectPropertyExpression pe,
+                                                                      boolean direct) {
+        return getOtherReasoner().getSubObjectProperties(pe, direct);
+    }
+
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSuperObjectProperties(OWLObjectPropertyExpression pe,
+                                                                        boolean direct) {
+        return getOtherReasoner().getSuperObjectProperties(pe, direct);
+    }
+
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getEquivalentObjectProperties(OWLObjectPropertyExpression pe) {
+        return getOtherReasoner().getEquivalentObjectProperties(pe);
+    }
+
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getDisjointObjectProperties(OWLObjectPropertyExpression pe) {
+        return getOtherReasoner().getDisjointObjectProperties(pe);
+    }
+
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getInverseObjectProperties(OWLObjectPropertyExpression pe) {
+        return getOtherReasoner().getInverseObjectProperties(pe);
+    }
+
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyDomains(OWLObjectPropertyExpression pe, boolean direct) {
+        return getOtherReasoner().getObjectPropertyDomains(pe, direct);
+    }
+
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyRanges(OWLObjectPropertyExpression pe, boolean direct) {
+        return getOtherReasoner().getObjectPropertyRanges(pe, direct);
+    }
+
+
+    @Override
+    public Node<OWLDataProperty> getTopDataPropertyNode() {
+        return getOtherReasoner().getTopDataPropertyNode();
+    }
+
+
+    @Override
+    public Node<OWLDataProperty> getBottomDataPropertyNode() {
+        return getOtherReasoner().getBottomDataPropertyNode();
+    }
+
+
+    @Override
+    public NodeSet<OWLDataProperty> getSubDataProperties(OWLDataProperty pe, boolean direct) {
+        return getOtherReasoner().getSubDataProperties(pe, direct);
+    }
+
+
+    @Override
+    public NodeSet<OWLDataProperty> getSuperDataProperties(OWLDataProperty pe, boolean direct) {
+        return getOtherReasoner().getSuperDataProperties(pe, direct);
+    }
+
+
+    @Override
+    public Node<OWLDataProperty> getEquivalentDataProperties(OWLDataProperty pe) {
+        return getOtherReasoner().getEquivalentDataProperties(pe);
+    }
+
+
+    @Override
+    public NodeSet<OWLDataProperty> getDisjointDataProperties(OWLDataPropertyExpression pe) {
+        return getOtherReasoner().getDisjointDataProperties(pe);
+    }
+
+
+    @Override
+    public NodeSet<OWLClass> getDataPropertyDomains(OWLDataProperty pe, boolean direct) {
+        return getOtherReasoner().getDataPropertyDomains(pe, direct);
+    }
+
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        return getOtherReasoner().getTypes(ind, direct);
+    }
+
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        OWLReasoner other = getOtherReasoner();
+        if (other != fallback()) {
+            // no class assertions
+            named(ce);
+        }
+        return other.getInstances(ce, direct);
+    }
+
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind,
+                                                               OWLObjectPropertyExpression pe) {
+        return getOtherReasoner().getObjectPropertyValues(ind, pe);
+    }
+
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        return getOtherReasoner().getDataPropertyValues(ind, pe);
+    }
+
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        return getOtherReasoner().getSameIndividuals(ind);
+    }
+
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getDifferentIndividuals(OWLNamedIndividual ind) {
+        return getOtherReasoner().getDifferentIndividuals(ind);
+    }
+
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        if (structural != null) {
+            structural.dispose();
+        }
+        if (fallback != null) {
+            fallback.dispose();
+        }
+    }
+
+}
@@ -1,14 +1,15 @@
 package uk.ac.man.cs.rdb2rdf.poc;
 
-import com.opencsv.CSVReader;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
-import uk.ac.man.cs.rdb2rdf.io.Out;
+import uk.ac.man.cs.rdb2rdf.io.*;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9Loader;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9Terminology;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 import static uk.ac.man.cs.rdb2rdf.io.CSV.processCell;
@@ -23,8 +24,15 @@ public class ABoxBuilder {
     private OWLOntologyManager manager;
     private OWLOntology ontology;
     private OWLDataFactory factory;
+    private Vocabulary vocab;
+    private EscapeCache classCache = new EscapeCache();
 
-    private Map<String, OWLClass> icd9Map;
+    private ICD9CodeTrie<OWLClass> icd9Codes;
+
+    // periodic, resumed or incremental runs, see Checkpoint
+    private Checkpoint checkpoint;
+    // counters and stage timings, see PipelineMetrics
+    private PipelineMetrics metrics = new PipelineMetrics();
 
     public ABoxBuilder() throws OWLOntologyCreationException {
         // create an ontology
@@ -32,6 +40,7 @@ public class ABoxBuilder {
         manager = OWLManager.createOWLOntologyManager();
         ontology = manager.createOntology(iri);
         factory = manager.getOWLDataFactory();
+        vocab = new Vocabulary(factory);
     }
 
 
@@ -39,141 +48,95 @@ public class ABoxBuilder {
             throws OWLOntologyCreationException,
             IOException, OWLOntologyStorageException {
         createUsingICD9(new File(args[0]), new File(args[1]), new File(args[2]),
-                new File(args[3]), new File(args[4]));
+                new File(args[3]), new File(args[4]), args);
     }
 
-    private static void createUsingICD9(File file0, File file1, File file2, File file3, File file4)
+    private static void createUsingICD9(File file0, File file1, File file2, File file3, File file4,
+                                        String[] args)
             throws OWLOntologyCreationException, IOException, OWLOntologyStorageException {
         ABoxBuilder builder = new ABoxBuilder();
+        builder.checkpoint = Checkpoint.initCheckpoint(file3, args);
+        builder.metrics = PipelineMetrics.initMetrics(file3.getName(), args);
         builder.addICD9Ontology(file4);
-        builder.createOntology(file0, file1, file2, file3);
+        // CSV files or, with --db, SQL queries split into --partitions
+        builder.createOntology(
+                SourceLoader.initSources(file0, false, args, builder.checkpoint),
+                SourceLoader.initSources(file1, false, args, builder.checkpoint),
+                SourceLoader.initSources(file2, false, args, builder.checkpoint),
+                file3, args);
     }
 
-    private void createOntology(File diagCSV, File medCSV, File labCSV, File ontFile)
+    private void createOntology(List<RowSource> diagRows, List<RowSource> medRows, List<RowSource> labRows,
+                                File ontFile, String[] args)
             throws OWLOntologyStorageException, IOException {
-
-        readConditions(diagCSV);
-        readMedicines(medCSV);
-        readLabs(labCSV);
-
-        FileOutputStream outputStream = new FileOutputStream(ontFile);
-        BufferedOutputStream buffOutputStream = new BufferedOutputStream(outputStream);
-        manager.saveOntology(ontology, buffOutputStream);
-    }
-
-
-
-
-    private void readConditions(File csvFile) throws IOException {
-        CSVReader reader = new CSVReader(new FileReader(csvFile));
-        String[] row = reader.readNext();
-        int count = 0;
-        while (row != null) {
-            processConditionLine(row);
-            row = reader.readNext();
-            if (++count % 10000 == 0) {
-                Out.p("Reading conditions: " + count + " lines");
-            }
-        }
-    }
-
-
-    private void readMedicines(File csvFile) throws IOException {
-        CSVReader reader = new CSVReader(new FileReader(csvFile));
-        String[] row = reader.readNext();
-        int count = 0;
-        while (row != null) {
-            processMedicineLine(row);
-            row = reader.readNext();
-            if (++count % 10000 == 0) {
-                Out.p("Reading medicines: " + count + " lines");
-            }
-        }
-    }
-
-
-
-
-    private void readLabs(File csvFile) throws IOException {
-        CSVReader reader = new CSVReader(new FileReader(csvFile));
-        String[] row = reader.readNext();
-        int count = 0;
-        while (row != null) {
-            processLabLine(row);
-            row = reader.readNext();
-            if (++count % 10000 == 0) {
-                Out.p("Reading labs: " + count + " lines");
-            }
-        }
+        RowPipeline pipeline = PipelineLoader.initPipeline(manager, ontology, ontFile, checkpoint, metrics,
+                args);
+        pipeline.addSources("conditions", diagRows, this::processConditionLine, ENCOUNTER_COLUMN);
+        pipeline.addSources("medicines", medRows, this::processMedicineLine, ENCOUNTER_COLUMN);
+        pipeline.addSources("labs", labRows, this::processLabLine, ENCOUNTER_COLUMN);
+        pipeline.run();
+
+        // save the ontology
+        pipeline.close();
     }
 
 
 
 
-    private void processConditionLine(String[] row) {
+    private void processConditionLine(Row row, AxiomSink sink) throws IOException {
         Set<OWLAxiom> axioms = new HashSet<>();
 
         // top encounter
-        IRI encTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_ENCOUNTER);
-        OWLClass encTopClass = factory.getOWLClass(encTopIRI);
+        OWLClass encTopClass = vocab.encounterTop;
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         axioms.add(factory.getOWLClassAssertionAxiom(encTopClass, encInd));
 
         // condition
-        String condStr = processCell(row[1]);
-        OWLClass condClass = findICD9Class(condStr);
-        if (condClass == null) {
+        int condId = icd9Codes.find(processCell(row.get(1)));
+        if (condId < 0) {
             return;
         }
+        String condStr = icd9Codes.getCode(condId);
+        OWLClass condClass = icd9Codes.getValue(condId);
         IRI condIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr + IND_SUFFIX);
         OWLNamedIndividual condInd = factory.getOWLNamedIndividual(condIndIRI);
 
 
         // determine whether it is a diagnosis or procedure
-        OWLObjectProperty diagnosedExperiencedProp;
-        if (isDiagnosis(condStr)) {
-            IRI diagnosedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "diagnosed");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(diagnosedIRI);
-        } else {
-            IRI experiencedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "experienced");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(experiencedIRI);
-        }
+        OWLObjectProperty diagnosedExperiencedProp = vocab.conditionProperty(condStr);
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, condInd));
         OWLAxiom condAxiom = factory.getOWLObjectPropertyAssertionAxiom(diagnosedExperiencedProp, encInd, condInd);
         axioms.add(condAxiom);
 
         // axioms
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
 
-    private void processMedicineLine(String[] row) {
-        OWLAnnotationProperty labelProp = factory.getRDFSLabel();
-        IRI prescribedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "prescribedDrug");
-        OWLObjectProperty prescribedProp = factory.getOWLObjectProperty(prescribedIRI);
+    void processMedicineLine(Row row, AxiomSink sink) throws IOException {
+        OWLAnnotationProperty labelProp = vocab.label;
+        OWLObjectProperty prescribedProp = vocab.prescribedDrug;
 
         Set<OWLAxiom> axioms = new HashSet<>();
 
         // top encounter
-        IRI encTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_ENCOUNTER);
-        OWLClass encTopClass = factory.getOWLClass(encTopIRI);
+        OWLClass encTopClass = vocab.encounterTop;
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         axioms.add(factory.getOWLClassAssertionAxiom(encTopClass, encInd));
 
         // top medicine
-        IRI medicineTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_MEDICINE);
-        OWLClass medicineTopClass = factory.getOWLClass(medicineTopIRI);
+        OWLClass medicineTopClass = vocab.medicineTop;
         // medicine
-        String medicineCodeStr = processCell(row[1]);
-        String medicineBrandStr = processCell(row[2]);
-        String medicineClassStr = processCell(row[3]);
+        String medicineCodeStr = processCell(row.get(1));
+        String medicineBrandStr = processCell(row.get(2));
+        String medicineClassStr = classCache.processCell(row.get(3));
         IRI medicineCodeIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineCodeStr);
         OWLNamedIndividual medicineInd = factory.getOWLNamedIndividual(medicineCodeIRI);
         IRI medicineClassIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineClassStr);
@@ -188,38 +151,35 @@ public class ABoxBuilder {
         axioms.add(prescrAxiom);
 
         // axioms
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
 
-    private void processLabLine(String[] row) {
-        OWLAnnotationProperty labelProp = factory.getRDFSLabel();
-        IRI orderedLabIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "orderedLab");
-        OWLObjectProperty orderedLabProp = factory.getOWLObjectProperty(orderedLabIRI);
+    private void processLabLine(Row row, AxiomSink sink) throws IOException {
+        OWLAnnotationProperty labelProp = vocab.label;
+        OWLObjectProperty orderedLabProp = vocab.orderedLab;
 
         Set<OWLAxiom> axioms = new HashSet<>();
 
         // top encounter
-        IRI encTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_ENCOUNTER);
-        OWLClass encTopClass = factory.getOWLClass(encTopIRI);
+        OWLClass encTopClass = vocab.encounterTop;
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         axioms.add(factory.getOWLClassAssertionAxiom(encTopClass, encInd));
 
         // top lab
-        IRI labTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_LAB);
-        OWLClass labTopClass = factory.getOWLClass(labTopIRI);
+        OWLClass labTopClass = vocab.labTop;
         // lab
-        String labStr = processCell(row[1]);
+        String labStr = processCell(row.get(1));
         IRI labIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + labStr);
         OWLNamedIndividual labInd = factory.getOWLNamedIndividual(labIndIRI);
         IRI labIRI = IRI.create(IRI_NAME + IRI_DELIMITER + labStr + IND_SUFFIX);
         OWLClass labClass = factory.getOWLClass(labIRI);
         // lab name
-        String labNameStr = processCell(row[2]);
+        String labNameStr = processCell(row.get(2));
         axioms.add(factory.getOWLAnnotationAssertionAxiom(labelProp, labInd.getIRI(),
                 factory.getOWLLiteral(labNameStr)));
         axioms.add(factory.getOWLAnnotationAssertionAxiom(labelProp, labClass.getIRI(),
@@ -230,62 +190,35 @@ public class ABoxBuilder {
         axioms.add(labAxiom);
 
         // axioms
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
 
 
-
-    private OWLClass findICD9Class(String code) {
-        return icd9Map.get(code);
-    }
-
-
-
-
-
-    private void addICD9Ontology(File file) throws OWLOntologyCreationException {
-        Out.p("Loading ICD9 terminology");
-        OWLOntology icd9Ontology = manager.loadOntologyFromOntologyDocument(file);
+    private void addICD9Ontology(File file) throws IOException {
+        // parsed, or mapped from the snapshot of a previous run
+        ICD9Terminology icd9 = ICD9Loader.initTerminology(file);
+        OWLClass[] cls = icd9.getClasses(factory);
         // get class hierarchy
         Out.p("Adding class hierarchy");
-        Set<OWLSubClassOfAxiom> classAxioms = new HashSet<>();
-        for (OWLAxiom axiom : icd9Ontology.getAxioms()) {
-            if (axiom instanceof OWLSubClassOfAxiom) {
-                OWLSubClassOfAxiom clAxiom = (OWLSubClassOfAxiom) axiom;
-                classAxioms.add(clAxiom);
-            }
-        }
+        Set<OWLSubClassOfAxiom> classAxioms = icd9.getSubClassAxioms(cls, factory);
         manager.addAxioms(ontology, classAxioms);
         Out.p("Class axioms are added: " + classAxioms.size());
         // adding annotations
-        addAnnotations(icd9Ontology);
+        addAnnotations(icd9, cls);
     }
 
 
-    private void addAnnotations(OWLOntology icd9Ontology) {
+    private void addAnnotations(ICD9Terminology icd9, OWLClass[] cls) {
         // get annotations
         Out.p("Adding annotations");
-        Set<OWLClass> cls = icd9Ontology.getClassesInSignature();
-        Set<OWLAnnotationAssertionAxiom> labelAnnots = new HashSet<>();
-        for (OWLClass cl : cls) {
-            Set<OWLAnnotationAssertionAxiom> annots = icd9Ontology.getAnnotationAssertionAxioms(cl.getIRI());
-            for (OWLAnnotationAssertionAxiom annot : annots) {
-                if (annot.getProperty().getIRI().toString().contains("prefLabel")) {
-                    labelAnnots.add(annot);
-                }
-            }
-        }
+        Set<OWLAnnotationAssertionAxiom> labelAnnots = icd9.getLabelAxioms(cls, factory);
         Out.p("Annotations are added: " + labelAnnots.size());
         manager.addAxioms(ontology, labelAnnots);
         // create mapping
-        icd9Map = new HashMap<>();
         Out.p("Creating ICD9 code-class mappings");
-        for (OWLClass cl : cls) {
-            String clCode = cl.getIRI().toString().replace("http://purl.bioontology.org/ontology/ICD9CM/", "");
-            icd9Map.put(clCode, cl);
-        }
+        icd9Codes = icd9.getCodeTrie(cls);
     }
 
 }
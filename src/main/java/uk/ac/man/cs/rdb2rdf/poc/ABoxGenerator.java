@@ -1,46 +1,457 @@
 package uk.ac.man.cs.rdb2rdf.poc;
 
-import org.semanticweb.owlapi.model.OWLClass;
-import org.semanticweb.owlapi.model.OWLNamedIndividual;
-import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import uk.ac.man.cs.rdb2rdf.io.Args;
+import uk.ac.man.cs.rdb2rdf.io.FunctionalSyntaxWriter;
+import uk.ac.man.cs.rdb2rdf.io.Out;
+import uk.ac.man.cs.rdb2rdf.io.TimestampDecoder;
 
-import java.util.List;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
 
+import static uk.ac.man.cs.rdb2rdf.io.CSV.DELIMITER;
+import static uk.ac.man.cs.rdb2rdf.io.CSV.NEW_LINE_SEPARATOR;
+
+/**
+ * Generates synthetic input for the converters: an ICD9-like terminology
+ * and the CSV files of patients, their encounters, and the conditions,
+ * medicines and labs of each encounter. Codes, drugs and labs are drawn
+ * from Zipf distributions, so a few are very frequent and most are rare.
+ *
+ * The output is a function of the options only: one seeded generator is
+ * used throughout and rows are written as they are generated, so any
+ * --scale runs in constant memory.
+ *
+ * Usage: ABoxGenerator output-dir [--seed=42] [--scale=1] [--patients=10000]
+ *        [--encounters=3] [--conditions=5000] [--drugs=1000] [--drug-classes=50]
+ *        [--labs=300] [--skew=1.0]
+ *
+ * Files, in the layouts the converters read:
+ *   icd9.ofn        hierarchy of chapters, categories and sub-codes, with prefLabels
+ *   conditions.csv  encounter, code                     (ABoxBuilder)
+ *   medicines.csv   encounter, drug, brand, class       (ABoxBuilder)
+ *   labs.csv        encounter, lab, lab name            (ABoxBuilder)
+ *   medlab.csv      see join_medicine_lab.sql, with a header (CSV2OWLConverter)
+ *   population.csv  see join_population_diagnosis.sql, with a header (CSV2OWLConverter)
+ */
 public class ABoxGenerator {
 
-    public static void main(String[] args) {
+    public static final String ICD9_IRI = "http://purl.bioontology.org/ontology/ICD9CM";
+    public static final String PREF_LABEL_IRI = "http://www.w3.org/2004/02/skos/core#prefLabel";
+
+    public static final String ICD9_FILE = "icd9.ofn";
+    public static final String CONDITIONS_FILE = "conditions.csv";
+    public static final String MEDICINES_FILE = "medicines.csv";
+    public static final String LABS_FILE = "labs.csv";
+    public static final String MEDLAB_FILE = "medlab.csv";
+    public static final String POPULATION_FILE = "population.csv";
+
+    public static final String MEDLAB_HEADER = "enc,med,brand,class,lab,labname,meddate,labdate";
+    public static final String POPULATION_HEADER = "enc,age,gender,race,code";
+
+    // mean numbers per encounter
+    private static final double CONDITIONS_PER_ENCOUNTER = 2;
+    private static final double MEDICINES_PER_ENCOUNTER = 3;
+    private static final double LABS_PER_ENCOUNTER = 4;
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2010, 1, 1);
+    private static final int DAYS = 8 * 365;
+
+    // diagnosis chapters of ICD9
+    private static final int[][] CHAPTERS = {
+            {1, 139}, {140, 239}, {240, 279}, {280, 289}, {290, 319}, {320, 389},
+            {390, 459}, {460, 519}, {520, 579}, {580, 629}, {630, 679}, {680, 709},
+            {710, 739}, {740, 759}, {760, 779}, {780, 799}, {800, 999}
+    };
+    // procedure chapters
+    private static final int[][] PROCEDURE_CHAPTERS = {
+            {0, 0}, {1, 5}, {6, 7}, {8, 16}, {17, 17}, {18, 20}, {21, 29}, {30, 34}, {35, 39},
+            {40, 41}, {42, 54}, {55, 59}, {60, 64}, {65, 71}, {72, 75}, {76, 84}, {85, 86}, {87, 99}
+    };
+    private static final String V_CHAPTER = "V01-V91.99";
+    private static final String E_CHAPTER = "E000-E999.9";
+
+    private static final String[] QUALIFIERS = {
+            "Acute", "Chronic", "Other", "Unspecified", "Recurrent", "Congenital", "Secondary", "Primary"
+    };
+    private static final String[] DISORDERS = {
+            "infection", "disorder", "neoplasm", "injury", "deficiency", "syndrome", "inflammation"
+    };
+    private static final String[] PROCEDURES = {
+            "Excision", "Repair", "Biopsy", "Incision", "Replacement", "Injection", "Imaging"
+    };
+    private static final String[] SITES = {
+            "heart", "kidney", "liver", "lung", "skin", "bone", "blood", "stomach", "brain", "eye"
+    };
+    private static final String[] TESTS = {"panel", "count", "level", "culture", "screen", "ratio"};
+    private static final String[] SYLLABLES = {"za", "lo", "pri", "ven", "tor", "mex", "cal", "dil", "fen", "ro"};
+    private static final String[] GENDERS = {"Male", "Female", "Unknown"};
+    private static final String[] RACES = {"Caucasian", "AfricanAmerican", "Hispanic", "Asian", "Other"};
+
+    private Random random;
+    private double skew;
+
+    private List<String> codes;
+    private String[] drugBrands;
+    private String[] drugClasses;
+    private String[] labNames;
+
+    private Zipf codeDist;
+    private Zipf drugDist;
+    private Zipf labDist;
+
+
+    public ABoxGenerator(long seed, double skew) {
+        random = new Random(seed);
+        this.skew = skew;
+    }
+
+
+    public static void main(String[] args) throws IOException, OWLOntologyCreationException {
+        File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        int scale = Args.getInt(args, "scale", 1);
+        ABoxGenerator generator = new ABoxGenerator(
+                Args.getInt(args, "seed", 42), Args.getDouble(args, "skew", 1.0));
+        generator.generateConditions(new File(dir, ICD9_FILE), Args.getInt(args, "conditions", 5000));
+        generator.generateDrugs(Args.getInt(args, "drugs", 1000), Args.getInt(args, "drug-classes", 50));
+        generator.generateLabs(Args.getInt(args, "labs", 300));
+        generator.generatePatients(dir, scale * Args.getInt(args, "patients", 10000),
+                Args.getDouble(args, "encounters", 3));
+    }
+
+
+    /**
+     * Writes an ICD9-like hierarchy with at least the given number of codes
+     * below the chapters: 3-digit diagnosis categories, V, E and 2-digit
+     * procedure categories, and their 4th and 5th digit sub-codes.
+     */
+    public void generateConditions(File ontFile, int number)
+            throws IOException, OWLOntologyCreationException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create(ICD9_IRI));
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLAnnotationProperty prefLabel = factory.getOWLAnnotationProperty(IRI.create(PREF_LABEL_IRI));
+
+        // categories in random order, until there are enough codes
+        List<String> categories = new ArrayList<>();
+        for (int i = 1; i <= 999; i++) {
+            categories.add(String.format("%03d", i));
+        }
+        for (int i = 1; i <= 91; i++) {
+            categories.add(String.format("V%02d", i));
+        }
+        for (int i = 800; i <= 999; i++) {
+            categories.add("E" + i);
+        }
+        for (int i = 0; i <= 99; i++) {
+            categories.add(String.format("%02d", i));
+        }
+        Collections.shuffle(categories, random);
+
+        codes = new ArrayList<>();
+        Set<String> chapters = new HashSet<>();
+        try (FunctionalSyntaxWriter writer = new FunctionalSyntaxWriter(ontology, ontFile)) {
+            for (String category : categories) {
+                if (codes.size() >= number) {
+                    break;
+                }
+                Set<OWLAxiom> axioms = new HashSet<>();
+                String chapter = chapterOf(category);
+                if (chapters.add(chapter)) {
+                    axioms.add(label(factory, prefLabel, chapter, chapterLabel(category)));
+                }
+                addCode(factory, prefLabel, category, chapter, axioms);
+                // E codes have a 4th digit only
+                int levels = category.startsWith("E") ? 1 : 2;
+                int subs = random.nextInt(10);
+                for (int i = 0; i < subs; i++) {
+                    String sub = category + "." + i;
+                    addCode(factory, prefLabel, sub, category, axioms);
+                    if (levels > 1 && random.nextBoolean()) {
+                        int subsubs = 1 + random.nextInt(9);
+                        for (int j = 0; j < subsubs; j++) {
+                            addCode(factory, prefLabel, sub + j, sub, axioms);
+                        }
+                    }
+                }
+                writer.add(axioms);
+            }
+        }
+        codeDist = new Zipf(codes.size(), skew, random);
+        Out.p("ICD9 codes: " + codes.size() + " in " + chapters.size() + " chapters");
+    }
+
+
+    private void addCode(OWLDataFactory factory, OWLAnnotationProperty prefLabel,
+                         String code, String parent, Set<OWLAxiom> axioms) {
+        codes.add(code);
+        axioms.add(factory.getOWLSubClassOfAxiom(icd9Class(factory, code), icd9Class(factory, parent)));
+        axioms.add(label(factory, prefLabel, code, conditionLabel(code)));
+    }
+
+
+    private static OWLClass icd9Class(OWLDataFactory factory, String code) {
+        return factory.getOWLClass(IRI.create(ICD9_IRI + "/" + code));
+    }
+
+
+    private static OWLAxiom label(OWLDataFactory factory, OWLAnnotationProperty prefLabel,
+                                  String code, String label) {
+        return factory.getOWLAnnotationAssertionAxiom(prefLabel, IRI.create(ICD9_IRI + "/" + code),
+                factory.getOWLLiteral(label));
+    }
+
 
-        int condNumber = 10;
-        int drugNumber = 10;
-        int patientNumber = 100;
+    /**
+     * @return chapter of a category, e.g. 001-139.99 for 003
+     */
+    private static String chapterOf(String category) {
+        if (category.startsWith("V")) {
+            return V_CHAPTER;
+        }
+        if (category.startsWith("E")) {
+            return E_CHAPTER;
+        }
+        int code = Integer.parseInt(category);
+        if (category.length() == 2) {
+            for (int[] chapter : PROCEDURE_CHAPTERS) {
+                if (code <= chapter[1]) {
+                    return String.format("%02d-%02d.99", chapter[0], chapter[1]);
+                }
+            }
+        }
+        for (int[] chapter : CHAPTERS) {
+            if (code <= chapter[1]) {
+                return String.format("%03d-%03d.99", chapter[0], chapter[1]);
+            }
+        }
+        throw new IllegalArgumentException("Not an ICD9 category: " + category);
+    }
+
+
+    private static String chapterLabel(String category) {
+        if (category.startsWith("V")) {
+            return "Supplementary classification of factors influencing health status";
+        }
+        if (category.startsWith("E")) {
+            return "Supplementary classification of external causes of injury";
+        }
+        return category.length() == 2 ? "Procedures" : "Diseases";
+    }
 
-        List<OWLClass> conditionCls = generateConditionClasses(condNumber, "D");
-        List<OWLClass> drugCls = generateDrugClasses(drugNumber, "M");
-        List<OWLNamedIndividual> drugInds = generateDrugIndividuals(drugNumber, "m");
 
-        List<OWLNamedIndividual> patientInds = generatePatientIndividuals(patientNumber, "p");
+    private String conditionLabel(String code) {
+        String site = pick(SITES);
+        // procedures have a dot at position 2 or no dot and 2 digits
+        int dot = code.indexOf('.');
+        if (dot == 2 || (dot < 0 && code.length() == 2)) {
+            return pick(PROCEDURES) + " of " + site;
+        }
+        return pick(QUALIFIERS) + " " + pick(DISORDERS) + " of " + site;
+    }
 
-        OWLObjectProperty prop;
 
+    public void generateDrugs(int number, int classes) {
+        drugBrands = new String[number];
+        drugClasses = new String[number];
+        Zipf classDist = new Zipf(classes, skew, random);
+        for (int i = 0; i < number; i++) {
+            String brand = capitalise(pick(SYLLABLES) + pick(SYLLABLES) + pick(SYLLABLES));
+            // some brands need quoting and escaping
+            if (random.nextInt(20) == 0) {
+                brand += ", " + capitalise(pick(SYLLABLES) + pick(SYLLABLES)) + " & Co";
+            }
+            drugBrands[i] = brand;
+            drugClasses[i] = "Class" + classDist.next(random);
+        }
+        drugDist = new Zipf(number, skew, random);
+    }
 
 
+    public void generateLabs(int number) {
+        labNames = new String[number];
+        for (int i = 0; i < number; i++) {
+            labNames[i] = capitalise(pick(SITES)) + " " + pick(TESTS) + " " + i;
+        }
+        labDist = new Zipf(number, skew, random);
     }
 
-    private static List<OWLNamedIndividual> generatePatientIndividuals(int patientNumber, String p) {
-        return null;
+
+    /**
+     * Writes the CSV files, one patient at a time
+     * @param encounters mean number of encounters per patient
+     */
+    public void generatePatients(File dir, int patients, double encounters) throws IOException {
+        long[] rows = new long[5];
+        int encounterId = 0;
+        try (Writer conditions = open(new File(dir, CONDITIONS_FILE));
+             Writer medicines = open(new File(dir, MEDICINES_FILE));
+             Writer labs = open(new File(dir, LABS_FILE));
+             Writer medlab = open(new File(dir, MEDLAB_FILE));
+             Writer population = open(new File(dir, POPULATION_FILE))) {
+            medlab.write(MEDLAB_HEADER + NEW_LINE_SEPARATOR);
+            population.write(POPULATION_HEADER + NEW_LINE_SEPARATOR);
+            for (int p = 0; p < patients; p++) {
+                String gender = pick(GENDERS);
+                String race = pick(RACES);
+                int age = random.nextInt(95);
+                LocalDate day = FIRST_DAY.plusDays(random.nextInt(DAYS));
+                int encs = count(encounters);
+                for (int e = 0; e < encs; e++) {
+                    String enc = "E" + (++encounterId);
+                    // ages of infants are in months
+                    String ageStr = age < 2 ? (age * 12 + random.nextInt(12)) + ".0" : Integer.toString(age);
+
+                    int conds = count(CONDITIONS_PER_ENCOUNTER);
+                    for (int i = 0; i < conds; i++) {
+                        String code = codes.get(codeDist.next(random));
+                        writeRow(conditions, enc, code);
+                        writeRow(population, enc, ageStr, gender, race, code);
+                    }
+                    rows[0] += conds;
+                    rows[4] += conds;
+
+                    int meds = count(MEDICINES_PER_ENCOUNTER);
+                    String[][] medRows = new String[meds][];
+                    for (int i = 0; i < meds; i++) {
+                        int drug = drugDist.next(random);
+                        medRows[i] = new String[]{"M" + drug, drugBrands[drug], drugClasses[drug], time(day)};
+                        writeRow(medicines, enc, medRows[i][0], medRows[i][1], medRows[i][2]);
+                    }
+                    rows[1] += meds;
+
+                    int labCount = count(LABS_PER_ENCOUNTER);
+                    String[][] labRows = new String[labCount][];
+                    for (int i = 0; i < labCount; i++) {
+                        int lab = labDist.next(random);
+                        labRows[i] = new String[]{"L" + lab, labNames[lab], time(day)};
+                        writeRow(labs, enc, labRows[i][0], labRows[i][1]);
+                    }
+                    rows[2] += labCount;
+
+                    // the join of the medicines and labs of the encounter
+                    for (String[] med : medRows) {
+                        for (String[] lab : labRows) {
+                            writeRow(medlab, enc, med[0], med[1], med[2], lab[0], lab[1], med[3], lab[2]);
+                        }
+                    }
+                    rows[3] += meds * labCount;
+
+                    // the next encounter is weeks to months later
+                    day = day.plusDays(7 + random.nextInt(120));
+                }
+                if ((p + 1) % 100000 == 0) {
+                    Out.p("Patients: " + (p + 1));
+                }
+            }
+        }
+        Out.p("Encounters: " + encounterId + ", rows: " + rows[0] + " conditions, " + rows[1]
+                + " medicines, " + rows[2] + " labs, " + rows[3] + " medicine-lab, "
+                + rows[4] + " population");
     }
 
-    private static List<OWLNamedIndividual> generateDrugIndividuals(int drugNumber, String m) {
-        return null;
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                FunctionalSyntaxWriter.BUFFER_SIZE);
     }
 
-    private static List<OWLClass> generateDrugClasses(int drugNumber, String m) {
-        return null;
+
+    private static void writeRow(Writer out, String... cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                out.write(DELIMITER);
+            }
+            String cell = cells[i];
+            if (cell.contains(DELIMITER) || cell.indexOf('"') >= 0) {
+                out.write('"');
+                out.write(cell.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(cell);
+            }
+        }
+        out.write(NEW_LINE_SEPARATOR);
     }
 
-    private static List<OWLClass> generateConditionClasses(int condNumber, String d) {
-        return null;
+
+    /**
+     * @return a time within three days of the encounter day
+     */
+    private String time(LocalDate day) {
+        LocalDateTime time = day.plusDays(random.nextInt(3))
+                .atTime(random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        return TimestampDecoder.DATE_FORMAT.format(time);
     }
 
 
+    /**
+     * @return a geometrically distributed count of at least 1 with the given mean
+     */
+    private int count(double mean) {
+        double p = 1 / mean;
+        int n = 1;
+        while (random.nextDouble() >= p) {
+            n++;
+        }
+        return n;
+    }
+
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+
+    private static String capitalise(String str) {
+        return Character.toUpperCase(str.charAt(0)) + str.substring(1);
+    }
+
+
+
+    /**
+     * Zipf distribution over 0..n-1; the ranks are shuffled, so the most
+     * frequent values are spread over the range
+     */
+    private static class Zipf {
+
+        private double[] cdf;
+        private int[] values;
+
+        Zipf(int n, double skew, Random random) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, skew);
+                cdf[i] = sum;
+            }
+            values = new int[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int v = values[i];
+                values[i] = values[j];
+                values[j] = v;
+            }
+        }
+
+        int next(Random random) {
+            int i = Arrays.binarySearch(cdf, random.nextDouble() * cdf[cdf.length - 1]);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return values[Math.min(i, values.length - 1)];
+        }
+
+    }
+
 }
@@ -1,15 +1,17 @@
 package uk.ac.man.cs.rdb2rdf.poc;
 
-import com.opencsv.CSVReader;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
-import uk.ac.man.cs.rdb2rdf.io.Out;
+import uk.ac.man.cs.rdb2rdf.io.*;
+import uk.ac.man.cs.rdb2rdf.map.MappingLoader;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9Loader;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9Terminology;
 
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,6 +39,9 @@ public class CSV2OWLConverter {
     public static final String TOP_LAB = "Lab";
     public static final String TOP_ENCOUNTER = "Encounter";
 
+    // the rows start with the encounter, which keys the shards
+    public static final int ENCOUNTER_COLUMN = 0;
+
     public static final String TOP_PLAUSIBILITY = "Plausibility";
     public static final String LOW_PLAUSIBILITY = "Low";
     public static final String MEDIUM_PLAUSIBILITY = "Medium";
@@ -54,8 +59,18 @@ public class CSV2OWLConverter {
     private OWLOntologyManager manager;
     private OWLOntology ontology;
     private OWLDataFactory factory;
+    private Vocabulary vocab;
+    private EscapeCache classCache = new EscapeCache();
+
+    // code to class, package-private for the row benchmarks
+    ICD9CodeTrie<OWLClass> icd9Codes;
 
-    private Map<String, OWLClass> icd9Map;
+    // periodic, resumed or incremental runs, see Checkpoint
+    private Checkpoint checkpoint;
+    // counters and stage timings, see PipelineMetrics
+    private PipelineMetrics metrics = new PipelineMetrics();
+    // mapping file or bundled mapping, see MappingCompiler
+    private String mapping;
 
 
     public CSV2OWLConverter() throws OWLOntologyCreationException {
@@ -64,60 +79,61 @@ public class CSV2OWLConverter {
         manager = OWLManager.createOWLOntologyManager();
         ontology = manager.createOntology(iri);
         factory = manager.getOWLDataFactory();
+        vocab = new Vocabulary(factory);
     }
 
 
     public static void main(String args[])
             throws OWLOntologyCreationException,
             IOException, OWLOntologyStorageException {
-        createUsingICD9(new File(args[0]), new File(args[1]), new File(args[2]));
-//        create(new File(args[0]), new File(args[1]));
+        createUsingICD9(new File(args[0]), new File(args[1]), new File(args[2]), args);
+//        create(new File(args[0]), new File(args[1]), args);
     }
 
 
-    private static void create(File file0, File file1)
+    private static void create(File file0, File file1, String[] args)
             throws OWLOntologyCreationException, OWLOntologyStorageException, IOException {
         CSV2OWLConverter converter = new CSV2OWLConverter();
-        converter.createOntology(file0, file1);
+        converter.checkpoint = Checkpoint.initCheckpoint(file1, args);
+        converter.metrics = PipelineMetrics.initMetrics(file1.getName(), args);
+        converter.mapping = Args.get(args, "mapping", null);
+        converter.createOntology(SourceLoader.initSources(file0, true, args, converter.checkpoint),
+                file1, args);
     }
 
 
-    private static void createUsingICD9(File file0, File file1, File file2)
+    private static void createUsingICD9(File file0, File file1, File file2, String[] args)
             throws OWLOntologyCreationException, IOException, OWLOntologyStorageException {
         CSV2OWLConverter converter = new CSV2OWLConverter();
+        converter.checkpoint = Checkpoint.initCheckpoint(file1, args);
+        converter.metrics = PipelineMetrics.initMetrics(file1.getName(), args);
+        converter.mapping = Args.get(args, "mapping", null);
         converter.addICD9Ontology(file2);
-        converter.createOntology(file0, file1);
+        // a CSV file or, with --db, an SQL query split into --partitions
+        converter.createOntology(SourceLoader.initSources(file0, true, args, converter.checkpoint),
+                file1, args);
     }
 
 
-    private void createOntology(File csvFile, File ontFile)
+    private void createOntology(List<RowSource> sources, File ontFile, String[] args)
             throws OWLOntologyCreationException,
             IOException, OWLOntologyStorageException {
+        // the TBox is written first
+        RowPipeline pipeline = PipelineLoader.initPipeline(manager, ontology, ontFile, checkpoint, metrics,
+                args);
         // populate the ontology
-        CSVReader reader = new CSVReader(new FileReader(csvFile));
-        reader.readNext();
-        String[] row = reader.readNext();
-        int count = 0;
-        while (row != null) {
-            processRowAsMedicineLabTime(row);
-//            processRowAsMedicineLabDiagnosisTime(row);
-            row = reader.readNext();
-            if (++count % 10000 == 0) {
-                Out.p("Reading CSV: " + count + " lines");
-            }
-        }
-
-        // save the ontology
-        if (!ontFile.exists()) {
-            ontFile.createNewFile();
-        }
-
-        // filter temporal information
+        RowProcessor processor = mapping == null
+                ? this::processRowAsMedicineLabTime
+                : MappingLoader.initPlan(mapping, factory, icd9Codes);
+//        processor = this::processRowAsMedicineLabDiagnosisTime;
+        pipeline.addSources("rows", sources, processor, ENCOUNTER_COLUMN);
+        pipeline.run();
+
+        // filter temporal information (in-memory output only)
 //        removeMultipleAge();
 
-        FileOutputStream outputStream = new FileOutputStream(ontFile);
-        BufferedOutputStream buffOutputStream = new BufferedOutputStream(outputStream);
-        manager.saveOntology(ontology, buffOutputStream);
+        // save the ontology
+        pipeline.close();
     }
 
 
@@ -158,105 +174,98 @@ public class CSV2OWLConverter {
 
 
     // see join_vitals_diagnosis.sql
-    private void processRowAsVitalsDiagnosisICD9(String[] row) {
+    void processRowAsVitalsDiagnosisICD9(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         // measurements
-        String measStr = processCell(row[1]);
+        String measStr = processCell(row.get(1));
         IRI measIRI = IRI.create(IRI_NAME + IRI_DELIMITER + measStr);
         OWLDataProperty measProp = factory.getOWLDataProperty(measIRI);
         // numeric results of measurements
-        String measResStr = processCell(row[2]);
+        String measResStr = processCell(row.get(2));
         double measRes = Double.parseDouble(measResStr);
         if (measRes == 0) {
             return;
         }
         OWLLiteral measResLit = factory.getOWLLiteral(measRes);
         // medical conditions
-        String condStr = processCell(row[3]);
+        String condStr = processCell(row.get(3));
         OWLClass condClass = findICD9Class(condStr);
         // axioms
         Set<OWLAxiom> axioms = new HashSet<>();
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, encInd));
         axioms.add(factory.getOWLDataPropertyAssertionAxiom(measProp, encInd, measResLit));
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
     private OWLClass findICD9Class(String code) {
-        return icd9Map.get(code);
+        return icd9Codes.get(code);
     }
 
 
     // see join_vitals_diagnosis.sql
-    private void processRowAsVitalsDiagnosis(String[] row) {
+    void processRowAsVitalsDiagnosis(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         // measurements
-        String measStr = processCell(row[1]);
+        String measStr = processCell(row.get(1));
         IRI measIRI = IRI.create(IRI_NAME + IRI_DELIMITER + measStr);
 //        if (measIRI.toString().contains("http://owl.cs.manchester.ac.uk/healthefacts#Temperature")) {
 //            return;
 //        }
         OWLDataProperty measProp = factory.getOWLDataProperty(measIRI);
         // numeric results of measurements
-        String measResStr = processCell(row[2]);
+        String measResStr = processCell(row.get(2));
         double measRes = Double.parseDouble(measResStr);
         if (measRes == 0) {
             return;
         }
         OWLLiteral measResLit = factory.getOWLLiteral(measRes);
         // medical conditions
-        String condStr = processCell(row[3]);
+        String condStr = processCell(row.get(3));
         IRI condIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr);
         OWLClass condClass = factory.getOWLClass(condIRI);
         // axioms
         Set<OWLAxiom> axioms = new HashSet<>();
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, encInd));
         axioms.add(factory.getOWLDataPropertyAssertionAxiom(measProp, encInd, measResLit));
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
     // see join_medicine_lab_diagnosis.sql
-    private void processRowAsMedicineLabDiagnosisTime(String[] row) {
+    void processRowAsMedicineLabDiagnosisTime(Row row, AxiomSink sink) throws IOException {
         // object properties
-        IRI prescribedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "prescribedDrug");
-        OWLObjectProperty prescribedProp = factory.getOWLObjectProperty(prescribedIRI);
-        IRI orderedLabIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "orderedLab");
-        OWLObjectProperty orderedLabProp = factory.getOWLObjectProperty(orderedLabIRI);
+        OWLObjectProperty prescribedProp = vocab.prescribedDrug;
+        OWLObjectProperty orderedLabProp = vocab.orderedLab;
 
         // annotation properties
-        OWLAnnotationProperty labelProp = factory.getRDFSLabel();
-        IRI yearPropIRI = IRI.create(IRI_NAME + IRI_DELIMITER + YEAR);
-        OWLAnnotationProperty yearProp = factory.getOWLAnnotationProperty(yearPropIRI);
-        IRI monthPropIRI = IRI.create(IRI_NAME + IRI_DELIMITER + MONTH);
-        OWLAnnotationProperty monthProp = factory.getOWLAnnotationProperty(monthPropIRI);
-        IRI dayPropIRI = IRI.create(IRI_NAME + IRI_DELIMITER + DAY);
-        OWLAnnotationProperty dayProp = factory.getOWLAnnotationProperty(dayPropIRI);
+        OWLAnnotationProperty labelProp = vocab.label;
+        OWLAnnotationProperty yearProp = vocab.year;
+        OWLAnnotationProperty monthProp = vocab.month;
+        OWLAnnotationProperty dayProp = vocab.day;
 
         Set<OWLAxiom> axioms = new HashSet<>();
 
         // top encounter
-        IRI encTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_ENCOUNTER);
-        OWLClass encTopClass = factory.getOWLClass(encTopIRI);
+        OWLClass encTopClass = vocab.encounterTop;
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         axioms.add(factory.getOWLClassAssertionAxiom(encTopClass, encInd));
 
         // top medicine
-        IRI medicineTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_MEDICINE);
-        OWLClass medicineTopClass = factory.getOWLClass(medicineTopIRI);
+        OWLClass medicineTopClass = vocab.medicineTop;
         // medicine
-        String medicineCodeStr = processCell(row[1]);
-        String medicineBrandStr = row[2];
-        String medicineClassStr = processCell(row[3]);
+        String medicineCodeStr = processCell(row.get(1));
+        String medicineBrandStr = row.get(2);
+        String medicineClassStr = classCache.processCell(row.get(3));
         IRI medicineCodeIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineCodeStr);
         OWLNamedIndividual medicineInd = factory.getOWLNamedIndividual(medicineCodeIRI);
         IRI medicineClassIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineClassStr);
@@ -268,27 +277,25 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLSubClassOfAxiom(medicineClass, medicineTopClass));
         OWLAxiom prescrAxiom = factory.getOWLObjectPropertyAssertionAxiom(prescribedProp, encInd, medicineInd);
         // time
-        String medDateStr = row[6];
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        LocalDateTime medDateTime = LocalDateTime.from(dtf.parse(medDateStr));
+        String medDateStr = row.get(6);
+        long medDateTime = TimestampDecoder.decode(medDateStr);
         Set<OWLAnnotation> medAnnots = new HashSet<>();
-        medAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(medDateTime.getYear())));
-        medAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(medDateTime.getMonthValue())));
-        medAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(medDateTime.getDayOfMonth())));
+        medAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(TimestampDecoder.year(medDateTime))));
+        medAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(TimestampDecoder.month(medDateTime))));
+        medAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(TimestampDecoder.day(medDateTime))));
         OWLAxiom annPrescrAxiom = prescrAxiom.getAnnotatedAxiom(medAnnots);
         axioms.add(annPrescrAxiom);
 
         // top lab
-        IRI labTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_LAB);
-        OWLClass labTopClass = factory.getOWLClass(labTopIRI);
+        OWLClass labTopClass = vocab.labTop;
         // lab
-        String labStr = processCell(row[4]);
+        String labStr = processCell(row.get(4));
         IRI labIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + labStr);
         OWLNamedIndividual labInd = factory.getOWLNamedIndividual(labIndIRI);
         IRI labIRI = IRI.create(IRI_NAME + IRI_DELIMITER + labStr + IND_SUFFIX);
         OWLClass labClass = factory.getOWLClass(labIRI);
         // lab name
-        String labNameStr = row[5];
+        String labNameStr = row.get(5);
         axioms.add(factory.getOWLAnnotationAssertionAxiom(labelProp, labInd.getIRI(),
                 factory.getOWLLiteral(labNameStr)));
         axioms.add(factory.getOWLAnnotationAssertionAxiom(labelProp, labClass.getIRI(),
@@ -297,87 +304,74 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLSubClassOfAxiom(labClass, labTopClass));
         OWLAxiom labAxiom = factory.getOWLObjectPropertyAssertionAxiom(orderedLabProp, encInd, labInd);
         // time
-        String labDateStr = row[7];
-        LocalDateTime labDateTime = LocalDateTime.from(dtf.parse(labDateStr));
+        String labDateStr = row.get(7);
+        long labDateTime = TimestampDecoder.decode(labDateStr);
         Set<OWLAnnotation> labAnnots = new HashSet<>();
-        labAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(labDateTime.getYear())));
-        labAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(labDateTime.getMonthValue())));
-        labAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(labDateTime.getDayOfMonth())));
+        labAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(TimestampDecoder.year(labDateTime))));
+        labAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(TimestampDecoder.month(labDateTime))));
+        labAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(TimestampDecoder.day(labDateTime))));
         OWLAxiom annLabAxiom = labAxiom.getAnnotatedAxiom(labAnnots);
         axioms.add(annLabAxiom);
 
         // condition
-        String condStr = processCell(row[8]);
-        OWLClass condClass = findICD9Class(condStr);
-        if (condClass == null) {
+        int condId = icd9Codes.find(processCell(row.get(8)));
+        if (condId < 0) {
             return;
         }
+        String condStr = icd9Codes.getCode(condId);
+        OWLClass condClass = icd9Codes.getValue(condId);
         IRI condIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr + IND_SUFFIX);
         OWLNamedIndividual condInd = factory.getOWLNamedIndividual(condIndIRI);
-        String condNameStr = row[9];
+        String condNameStr = row.get(9);
         axioms.add(factory.getOWLAnnotationAssertionAxiom(labelProp, condInd.getIRI(),
                 factory.getOWLLiteral(condNameStr)));
         // determine whether it is a diagnosis or procedure
-        OWLObjectProperty diagnosedExperiencedProp;
-        if (isDiagnosis(condStr)) {
-            IRI diagnosedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "diagnosed");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(diagnosedIRI);
-        } else {
-            IRI experiencedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "experienced");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(experiencedIRI);
-        }
+        OWLObjectProperty diagnosedExperiencedProp = vocab.conditionProperty(condStr);
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, condInd));
         OWLAxiom condAxiom = factory.getOWLObjectPropertyAssertionAxiom(diagnosedExperiencedProp, encInd, condInd);
         // time
-        String condDateStr = row[10];
-        LocalDateTime condDateTime = LocalDateTime.from(dtf.parse(condDateStr));
+        String condDateStr = row.get(10);
+        long condDateTime = TimestampDecoder.decode(condDateStr);
         Set<OWLAnnotation> condAnnots = new HashSet<>();
-        condAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(condDateTime.getYear())));
-        condAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(condDateTime.getMonthValue())));
-        condAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(condDateTime.getDayOfMonth())));
+        condAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(TimestampDecoder.year(condDateTime))));
+        condAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(TimestampDecoder.month(condDateTime))));
+        condAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(TimestampDecoder.day(condDateTime))));
         OWLAxiom annCondAxiom = condAxiom.getAnnotatedAxiom(condAnnots);
         axioms.add(annCondAxiom);
 
         // axioms
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
     // see join_medicine_lab.sql
-    private void processRowAsMedicineLabTime(String[] row) {
+    void processRowAsMedicineLabTime(Row row, AxiomSink sink) throws IOException {
         // object properties
-        IRI prescribedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "prescribedDrug");
-        OWLObjectProperty prescribedProp = factory.getOWLObjectProperty(prescribedIRI);
-        IRI orderedLabIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "orderedLab");
-        OWLObjectProperty orderedLabProp = factory.getOWLObjectProperty(orderedLabIRI);
+        OWLObjectProperty prescribedProp = vocab.prescribedDrug;
+        OWLObjectProperty orderedLabProp = vocab.orderedLab;
 
         // annotation properties
-        OWLAnnotationProperty labelProp = factory.getRDFSLabel();
-        IRI yearPropIRI = IRI.create(IRI_NAME + IRI_DELIMITER + YEAR);
-        OWLAnnotationProperty yearProp = factory.getOWLAnnotationProperty(yearPropIRI);
-        IRI monthPropIRI = IRI.create(IRI_NAME + IRI_DELIMITER + MONTH);
-        OWLAnnotationProperty monthProp = factory.getOWLAnnotationProperty(monthPropIRI);
-        IRI dayPropIRI = IRI.create(IRI_NAME + IRI_DELIMITER + DAY);
-        OWLAnnotationProperty dayProp = factory.getOWLAnnotationProperty(dayPropIRI);
+        OWLAnnotationProperty labelProp = vocab.label;
+        OWLAnnotationProperty yearProp = vocab.year;
+        OWLAnnotationProperty monthProp = vocab.month;
+        OWLAnnotationProperty dayProp = vocab.day;
 
         Set<OWLAxiom> axioms = new HashSet<>();
 
         // top encounter
-        IRI encTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_ENCOUNTER);
-        OWLClass encTopClass = factory.getOWLClass(encTopIRI);
+        OWLClass encTopClass = vocab.encounterTop;
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         axioms.add(factory.getOWLClassAssertionAxiom(encTopClass, encInd));
 
         // top medicine
-        IRI medicineTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_MEDICINE);
-        OWLClass medicineTopClass = factory.getOWLClass(medicineTopIRI);
+        OWLClass medicineTopClass = vocab.medicineTop;
         // medicine
-        String medicineCodeStr = processCell(row[1]);
-        String medicineBrandStr = processCell(row[2]);
-        String medicineClassStr = processCell(row[3]);
+        String medicineCodeStr = processCell(row.get(1));
+        String medicineBrandStr = processCell(row.get(2));
+        String medicineClassStr = classCache.processCell(row.get(3));
         IRI medicineCodeIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineCodeStr);
         OWLNamedIndividual medicineInd = factory.getOWLNamedIndividual(medicineCodeIRI);
         IRI medicineClassIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineClassStr);
@@ -389,27 +383,25 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLSubClassOfAxiom(medicineClass, medicineTopClass));
         OWLAxiom prescrAxiom = factory.getOWLObjectPropertyAssertionAxiom(prescribedProp, encInd, medicineInd);
         // annotation
-        String medDateStr = row[6];
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        LocalDateTime medDateTime = LocalDateTime.from(dtf.parse(medDateStr));
+        String medDateStr = row.get(6);
+        long medDateTime = TimestampDecoder.decode(medDateStr);
         Set<OWLAnnotation> medAnnots = new HashSet<>();
-        medAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(medDateTime.getYear())));
-        medAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(medDateTime.getMonthValue())));
-        medAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(medDateTime.getDayOfMonth())));
+        medAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(TimestampDecoder.year(medDateTime))));
+        medAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(TimestampDecoder.month(medDateTime))));
+        medAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(TimestampDecoder.day(medDateTime))));
         OWLAxiom annPrescrAxiom = prescrAxiom.getAnnotatedAxiom(medAnnots);
         axioms.add(annPrescrAxiom);
 
         // top lab
-        IRI labTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_LAB);
-        OWLClass labTopClass = factory.getOWLClass(labTopIRI);
+        OWLClass labTopClass = vocab.labTop;
         // lab
-        String labStr = processCell(row[4]);
+        String labStr = processCell(row.get(4));
         IRI labIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + labStr);
         OWLNamedIndividual labInd = factory.getOWLNamedIndividual(labIndIRI);
         IRI labIRI = IRI.create(IRI_NAME + IRI_DELIMITER + labStr + ENTITY_DELIMITER + IND_SUFFIX);
         OWLClass labClass = factory.getOWLClass(labIRI);
         // lab name
-        String labNameStr = processCell(row[5]);
+        String labNameStr = processCell(row.get(5));
         axioms.add(factory.getOWLAnnotationAssertionAxiom(labelProp, labInd.getIRI(),
                 factory.getOWLLiteral(labNameStr)));
         axioms.add(factory.getOWLAnnotationAssertionAxiom(labelProp, labClass.getIRI(),
@@ -418,83 +410,74 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLSubClassOfAxiom(labClass, labTopClass));
         OWLAxiom labAxiom = factory.getOWLObjectPropertyAssertionAxiom(orderedLabProp, encInd, labInd);
         // annotation
-        String labDateStr = row[7];
-        LocalDateTime labDateTime = LocalDateTime.from(dtf.parse(labDateStr));
+        String labDateStr = row.get(7);
+        long labDateTime = TimestampDecoder.decode(labDateStr);
         Set<OWLAnnotation> labAnnots = new HashSet<>();
-        labAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(labDateTime.getYear())));
-        labAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(labDateTime.getMonthValue())));
-        labAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(labDateTime.getDayOfMonth())));
+        labAnnots.add(factory.getOWLAnnotation(yearProp, factory.getOWLLiteral(TimestampDecoder.year(labDateTime))));
+        labAnnots.add(factory.getOWLAnnotation(monthProp, factory.getOWLLiteral(TimestampDecoder.month(labDateTime))));
+        labAnnots.add(factory.getOWLAnnotation(dayProp, factory.getOWLLiteral(TimestampDecoder.day(labDateTime))));
         OWLAxiom annLabAxiom = labAxiom.getAnnotatedAxiom(labAnnots);
         axioms.add(annLabAxiom);
 
         // axioms
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
     // see join_medicine_diagnosis.sql
-    private void processRowAsMedicineDiagnosisICD9(String[] row) {
+    void processRowAsMedicineDiagnosisICD9(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         // top medicine
-        IRI medicineTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_MEDICINE);
-        OWLClass medicineTopClass = factory.getOWLClass(medicineTopIRI);
+        OWLClass medicineTopClass = vocab.medicineTop;
         // medicine
-        String medicineStr = processCell(row[1]);
+        String medicineStr = processCell(row.get(1));
         IRI medicineIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineStr);
         OWLClass medicineClass = factory.getOWLClass(medicineIRI);
         // medical conditions
-        String condStr = processCell(row[2]);
+        String condStr = processCell(row.get(2));
         OWLClass condClass = findICD9Class(condStr);
         // axioms
         Set<OWLAxiom> axioms = new HashSet<>();
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, encInd));
         axioms.add(factory.getOWLClassAssertionAxiom(medicineClass, encInd));
         axioms.add(factory.getOWLSubClassOfAxiom(medicineClass, medicineTopClass));
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
     // see join_medicine_diagnosis.sql
-    private void processRowAsMedicineDiagnosisICD9Rich(String[] row) {
+    void processRowAsMedicineDiagnosisICD9Rich(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
 
         // top medicine
-        IRI medicineTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_MEDICINE);
-        OWLClass medicineTopClass = factory.getOWLClass(medicineTopIRI);
+        OWLClass medicineTopClass = vocab.medicineTop;
 
         // medicine
-        String medicineStr = processCell(row[1]);
+        String medicineStr = processCell(row.get(1));
         IRI medicineIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineStr);
         OWLClass medicineClass = factory.getOWLClass(medicineIRI);
         IRI medicineIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineStr + IND_SUFFIX);
         OWLNamedIndividual medicineInd = factory.getOWLNamedIndividual(medicineIndIRI);
-        IRI prescribedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "prescribed");
-        OWLObjectProperty prescribedProp = factory.getOWLObjectProperty(prescribedIRI);
+        OWLObjectProperty prescribedProp = vocab.prescribed;
 
 
         // diagnoses
-        String condStr = processCell(row[2]);
-        OWLClass condClass = findICD9Class(condStr);
-        if (condClass == null) {
+        int condId = icd9Codes.find(processCell(row.get(2)));
+        if (condId < 0) {
             return;
         }
+        String condStr = icd9Codes.getCode(condId);
+        OWLClass condClass = icd9Codes.getValue(condId);
         IRI condIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr + IND_SUFFIX);
         OWLNamedIndividual condInd = factory.getOWLNamedIndividual(condIndIRI);
         // determine whether it is a diagnosis or procedure
-        OWLObjectProperty diagnosedExperiencedProp;
-        if (isDiagnosis(condStr)) {
-            IRI diagnosedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "diagnosed");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(diagnosedIRI);
-        } else {
-            IRI experiencedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "experienced");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(experiencedIRI);
-        }
+        OWLObjectProperty diagnosedExperiencedProp = vocab.conditionProperty(condStr);
 
 
         // axioms
@@ -505,94 +488,80 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLObjectPropertyAssertionAxiom(prescribedProp, encInd, medicineInd));
         axioms.add(factory.getOWLObjectPropertyAssertionAxiom(diagnosedExperiencedProp, encInd, condInd));
 
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
     // see diagnosis.sql
-    private void processRowAsDiagnosisICD9Rich(String[] row) {
+    void processRowAsDiagnosisICD9Rich(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[1]);
+        String encStr = processCell(row.get(1));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
 
         // diagnoses
-        String condStr = processCell(row[2]);
-        OWLClass condClass = findICD9Class(condStr);
-        if (condClass == null) {
+        int condId = icd9Codes.find(processCell(row.get(2)));
+        if (condId < 0) {
             return;
         }
+        String condStr = icd9Codes.getCode(condId);
+        OWLClass condClass = icd9Codes.getValue(condId);
         IRI condIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr + IND_SUFFIX);
         OWLNamedIndividual condInd = factory.getOWLNamedIndividual(condIndIRI);
         // determine whether it is a diagnosis or procedure
-        OWLObjectProperty diagnosedExperiencedProp;
-        if (isDiagnosis(condStr)) {
-            IRI diagnosedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "diagnosed");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(diagnosedIRI);
-        } else {
-            IRI experiencedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "experienced");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(experiencedIRI);
-        }
+        OWLObjectProperty diagnosedExperiencedProp = vocab.conditionProperty(condStr);
 
         // axioms
         Set<OWLAxiom> axioms = new HashSet<>();
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, condInd));
         axioms.add(factory.getOWLObjectPropertyAssertionAxiom(diagnosedExperiencedProp, encInd, condInd));
 
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
 
 
     // see join_medicine_diagnosis_demographics.sql
-    private void processRowAsMedicineDiagnosisICD9DemographicsRich(String[] row) {
+    void processRowAsMedicineDiagnosisICD9DemographicsRich(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
 
         // top medicine
-        IRI medicineTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_MEDICINE);
-        OWLClass medicineTopClass = factory.getOWLClass(medicineTopIRI);
+        OWLClass medicineTopClass = vocab.medicineTop;
 
         // medicine
-        String medicineStr = processCell(row[1]);
+        String medicineStr = processCell(row.get(1));
         IRI medicineIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineStr);
         OWLClass medicineClass = factory.getOWLClass(medicineIRI);
         IRI medicineIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineStr + IND_SUFFIX);
         OWLNamedIndividual medicineInd = factory.getOWLNamedIndividual(medicineIndIRI);
-        IRI prescribedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "prescribed");
-        OWLObjectProperty prescribedProp = factory.getOWLObjectProperty(prescribedIRI);
+        OWLObjectProperty prescribedProp = vocab.prescribed;
 
         // diagnoses
-        String condStr = processCell(row[2]);
-        OWLClass condClass = findICD9Class(condStr);
-        if (condClass == null) {
+        int condId = icd9Codes.find(processCell(row.get(2)));
+        if (condId < 0) {
             return;
         }
+        String condStr = icd9Codes.getCode(condId);
+        OWLClass condClass = icd9Codes.getValue(condId);
         IRI condIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr + IND_SUFFIX);
         OWLNamedIndividual condInd = factory.getOWLNamedIndividual(condIndIRI);
         // determine whether it is a diagnosis or procedure
-        OWLObjectProperty diagnosedExperiencedProp;
-        if (isDiagnosis(condStr)) {
-            IRI diagnosedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "diagnosed");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(diagnosedIRI);
-        } else {
-            IRI experiencedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "experienced");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(experiencedIRI);
-        }
+        OWLObjectProperty diagnosedExperiencedProp = vocab.conditionProperty(condStr);
 
         // demographics
         // age
-        String ageStr = processCell(row[3]);
+        String ageStr = processCell(row.get(3));
         OWLClass ageClass = getAgeClass(ageStr);
         // gender
-        String genderStr = processCell(row[4]);
+        String genderStr = processCell(row.get(4));
         IRI genderIRI = IRI.create(IRI_NAME + IRI_DELIMITER + genderStr);
         OWLClass genderClass = factory.getOWLClass(genderIRI);
         // race
-        String raceStr = processCell(row[5]);
+        String raceStr = processCell(row.get(5));
         IRI raceIRI = IRI.create(IRI_NAME + IRI_DELIMITER + raceStr);
         OWLClass raceClass = factory.getOWLClass(raceIRI);
 
@@ -608,25 +577,16 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLClassAssertionAxiom(raceClass, encInd));
         axioms.add(factory.getOWLClassAssertionAxiom(ageClass, encInd));
 
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
     public static boolean isDiagnosis(String condStr) {
-        if (condStr.indexOf("E") > -1 || condStr.indexOf("V") > -1) {
-            return false;
-        }
-        if (condStr.indexOf("-") == 3 || condStr.indexOf(".") == 3) {
-            return true;
-        }
-        if (condStr.indexOf("-") == -1 && condStr.indexOf(".") == -1 && condStr.length() == 3) {
-            return true;
-        }
-        return false;
+        return ICD9CodeTrie.isDiagnosis(condStr);
     }
 
 
-    private OWLClass getAgeClass(String ageStr) {
+    OWLClass getAgeClass(String ageStr) {
         int age;
         try {
             // years
@@ -666,30 +626,29 @@ public class CSV2OWLConverter {
 
 
     // see join_population_diagnosis.sql
-    private void processRowAsPopulationDiagnosisICD9PatientID(String[] row) {
+    void processRowAsPopulationDiagnosisICD9PatientID(Row row, AxiomSink sink) throws IOException {
         // patient id
-        String patId = processCell(row[0]);
+        String patId = processCell(row.get(0));
         IRI patIRI = IRI.create(IRI_NAME + IRI_DELIMITER + patId);
         OWLNamedIndividual patInd = factory.getOWLNamedIndividual(patIRI);
         // age
-        IRI ageIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "hasAge");
-        OWLDataProperty ageProp = factory.getOWLDataProperty(ageIRI);
-        String ageStr = processCell(row[1]);
+        OWLDataProperty ageProp = vocab.hasAge;
+        String ageStr = processCell(row.get(1));
         double age = Math.round(Double.parseDouble(ageStr));
         if (age > 100) {
             return;
         }
         OWLLiteral ageLit = factory.getOWLLiteral(age);
         // gender
-        String genderStr = processCell(row[2]);
+        String genderStr = processCell(row.get(2));
         IRI genderIRI = IRI.create(IRI_NAME + IRI_DELIMITER + genderStr);
         OWLClass genderClass = factory.getOWLClass(genderIRI);
         // race
-        String raceStr = processCell(row[3]);
+        String raceStr = processCell(row.get(3));
         IRI raceIRI = IRI.create(IRI_NAME + IRI_DELIMITER + raceStr);
         OWLClass raceClass = factory.getOWLClass(raceIRI);
         // medical conditions
-        String condStr = processCell(row[4]);
+        String condStr = processCell(row.get(4));
         OWLClass condClass = findICD9Class(condStr);
         // axioms
         Set<OWLAxiom> axioms = new HashSet<>();
@@ -697,37 +656,36 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLClassAssertionAxiom(raceClass, patInd));
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, patInd));
         axioms.add(factory.getOWLDataPropertyAssertionAxiom(ageProp, patInd, ageLit));
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
 
 
     // see join_population_diagnosis.sql
-    private void processRowAsPopulationDiagnosisICD9(String[] row) {
+    void processRowAsPopulationDiagnosisICD9(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         // age
-        IRI ageIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "hasAge");
-        OWLDataProperty ageProp = factory.getOWLDataProperty(ageIRI);
-        String ageStr = processCell(row[1]);
+        OWLDataProperty ageProp = vocab.hasAge;
+        String ageStr = processCell(row.get(1));
         double age = Math.round(Double.parseDouble(ageStr));
         if (age > 100) {
             return;
         }
         OWLLiteral ageLit = factory.getOWLLiteral(age);
         // gender
-        String genderStr = processCell(row[2]);
+        String genderStr = processCell(row.get(2));
         IRI genderIRI = IRI.create(IRI_NAME + IRI_DELIMITER + genderStr);
         OWLClass genderClass = factory.getOWLClass(genderIRI);
         // race
-        String raceStr = processCell(row[3]);
+        String raceStr = processCell(row.get(3));
         IRI raceIRI = IRI.create(IRI_NAME + IRI_DELIMITER + raceStr);
         OWLClass raceClass = factory.getOWLClass(raceIRI);
         // medical conditions
-        String condStr = processCell(row[4]);
+        String condStr = processCell(row.get(4));
         OWLClass condClass = findICD9Class(condStr);
         // axioms
         Set<OWLAxiom> axioms = new HashSet<>();
@@ -735,36 +693,35 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLClassAssertionAxiom(raceClass, encInd));
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, encInd));
         axioms.add(factory.getOWLDataPropertyAssertionAxiom(ageProp, encInd, ageLit));
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
 
     // see join_population_diagnosis.sql
-    private void processRowAsPopulationDiagnosis(String[] row) {
+    void processRowAsPopulationDiagnosis(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         // age
-        IRI ageIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "hasAge");
-        OWLDataProperty ageProp = factory.getOWLDataProperty(ageIRI);
-        String ageStr = processCell(row[1]);
+        OWLDataProperty ageProp = vocab.hasAge;
+        String ageStr = processCell(row.get(1));
         double age = Math.round(Double.parseDouble(ageStr));
         if (age > 100) {
             return;
         }
         OWLLiteral ageLit = factory.getOWLLiteral(age);
         // gender
-        String genderStr = processCell(row[2]);
+        String genderStr = processCell(row.get(2));
         IRI genderIRI = IRI.create(IRI_NAME + IRI_DELIMITER + genderStr);
         OWLClass genderClass = factory.getOWLClass(genderIRI);
         // race
-        String raceStr = processCell(row[3]);
+        String raceStr = processCell(row.get(3));
         IRI raceIRI = IRI.create(IRI_NAME + IRI_DELIMITER + raceStr);
         OWLClass raceClass = factory.getOWLClass(raceIRI);
         // medical conditions
-        String condStr = processCell(row[4]);
+        String condStr = processCell(row.get(4));
         IRI condIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr);
         OWLClass condClass = factory.getOWLClass(condIRI);
         // axioms
@@ -773,40 +730,40 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLClassAssertionAxiom(raceClass, encInd));
         axioms.add(factory.getOWLClassAssertionAxiom(condClass, encInd));
         axioms.add(factory.getOWLDataPropertyAssertionAxiom(ageProp, encInd, ageLit));
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
 
     // see join_population_diagnosis.sql
-    private void processRowAsNonNumericVitalDiagnosisMedicine(String[] row) {
+    void processRowAsNonNumericVitalDiagnosisMedicine(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encId = processCell(row[0]);
+        String encId = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encId);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
         // measurements
-        String meas = processCell(row[1]);
+        String meas = processCell(row.get(1));
         IRI measIRI = IRI.create(IRI_NAME + IRI_DELIMITER + meas);
         if (measIRI.toString().contains("http://owl.cs.manchester.ac.uk/healthefacts#Temperature")) {
             return;
         }
         OWLObjectProperty measProp = factory.getOWLObjectProperty(measIRI);
         // results of measurements
-        String measRes = processCell(row[2]);
+        String measRes = processCell(row.get(2));
         IRI measResIRI = IRI.create(IRI_NAME + IRI_DELIMITER + measRes);
         OWLClass measResClass = factory.getOWLClass(measResIRI);
         IRI measResIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + measRes + ENTITY_DELIMITER + "i");
         OWLNamedIndividual measResInd = factory.getOWLNamedIndividual(measResIndIRI);
         // medical conditions
-        String cond = processCell(row[3]);
+        String cond = processCell(row.get(3));
         IRI condIRI = IRI.create(IRI_NAME + IRI_DELIMITER + cond);
         OWLClass condClass = factory.getOWLClass(condIRI);
         // patient types
-        String ptype = processCell(row[4]);
+        String ptype = processCell(row.get(4));
         IRI ptypeIRI = IRI.create(IRI_NAME + IRI_DELIMITER + ptype);
         OWLClass ptypeClass = factory.getOWLClass(ptypeIRI);
         // medications
-        String med = processCell(row[5]);
+        String med = processCell(row.get(5));
         IRI medIRI = IRI.create(IRI_NAME + IRI_DELIMITER + med);
         OWLClass medClass = factory.getOWLClass(medIRI);
         // axioms
@@ -816,7 +773,7 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLObjectPropertyAssertionAxiom(measProp, encInd, measResInd));
         axioms.add(factory.getOWLClassAssertionAxiom(ptypeClass, encInd));
         axioms.add(factory.getOWLClassAssertionAxiom(medClass, encInd));
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
@@ -824,61 +781,49 @@ public class CSV2OWLConverter {
 
 
     // see orders.sql
-    private void processRowAsOrders(String[] row) {
+    void processRowAsOrders(Row row, AxiomSink sink) throws IOException {
         // encounter
-        String encStr = processCell(row[0]);
+        String encStr = processCell(row.get(0));
         IRI encIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr);
         OWLNamedIndividual encInd = factory.getOWLNamedIndividual(encIRI);
 
         // diagnoses
-        String condStr = processCell(row[1]);
-        OWLClass condClass = findICD9Class(condStr);
-        if (condClass == null) {
+        int condId = icd9Codes.find(processCell(row.get(1)));
+        if (condId < 0) {
             return;
         }
+        String condStr = icd9Codes.getCode(condId);
+        OWLClass condClass = icd9Codes.getValue(condId);
         IRI condIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + condStr);
         OWLNamedIndividual condInd = factory.getOWLNamedIndividual(condIndIRI);
         // determine whether it is a diagnosis or procedure
-        OWLObjectProperty diagnosedExperiencedProp;
-        if (isDiagnosis(condStr)) {
-            IRI diagnosedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "diagnosed");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(diagnosedIRI);
-        } else {
-            IRI experiencedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "experienced");
-            diagnosedExperiencedProp = factory.getOWLObjectProperty(experiencedIRI);
-        }
+        OWLObjectProperty diagnosedExperiencedProp = vocab.conditionProperty(condStr);
 
 
 
         // top medicine
-        IRI medicineTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_MEDICINE);
-        OWLClass medicineTopClass = factory.getOWLClass(medicineTopIRI);
+        OWLClass medicineTopClass = vocab.medicineTop;
 
         // medicine
-        String medicineStr = processCell(row[5]);
-        String startTimeStr = processCell(row[7]);
+        String medicineStr = processCell(row.get(5));
+        String startTimeStr = processCell(row.get(7));
         IRI medicineIRI = IRI.create(IRI_NAME + IRI_DELIMITER + medicineStr);
         OWLClass medicineClass = factory.getOWLClass(medicineIRI);
         IRI medicineIndIRI = IRI.create(IRI_NAME + IRI_DELIMITER + encStr
                 + ENTITY_DELIMITER + medicineStr
                 + ENTITY_DELIMITER + startTimeStr);
         OWLNamedIndividual medicineInd = factory.getOWLNamedIndividual(medicineIndIRI);
-        IRI prescribedIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "orders");
-        OWLObjectProperty prescribedProp = factory.getOWLObjectProperty(prescribedIRI);
+        OWLObjectProperty prescribedProp = vocab.orders;
 
-        String strengthStr = processCell(row[6]);
-        IRI strengthIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "strength");
-        OWLDataProperty strengthProp = factory.getOWLDataProperty(strengthIRI);
+        String strengthStr = processCell(row.get(6));
+        OWLDataProperty strengthProp = vocab.strength;
 
-        IRI startIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "start");
-        OWLDataProperty startProp = factory.getOWLDataProperty(startIRI);
+        OWLDataProperty startProp = vocab.start;
 
-        String endTimeStr = processCell(row[8]);
-        IRI endIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "end");
-        OWLDataProperty endProp = factory.getOWLDataProperty(endIRI);
+        String endTimeStr = processCell(row.get(8));
+        OWLDataProperty endProp = vocab.end;
 
-        IRI ndcIRI = IRI.create(IRI_NAME + IRI_DELIMITER + "ndc");
-        OWLDataProperty ndcProp = factory.getOWLDataProperty(ndcIRI);
+        OWLDataProperty ndcProp = vocab.ndc;
 
 
         // axioms
@@ -894,7 +839,7 @@ public class CSV2OWLConverter {
         axioms.add(factory.getOWLDataPropertyAssertionAxiom(ndcProp, medicineInd, medicineStr));
 
 
-        manager.addAxioms(ontology, axioms);
+        sink.add(axioms);
     }
 
 
@@ -902,55 +847,36 @@ public class CSV2OWLConverter {
 
 
 
-    private void addICD9Classes(File file) throws OWLOntologyCreationException {
-        Out.p("Loading ICD9 terminology");
-        OWLOntology icd9Ontology = manager.loadOntologyFromOntologyDocument(file);
+    private void addICD9Classes(File file) throws IOException {
+        ICD9Terminology icd9 = ICD9Loader.initTerminology(file);
         // adding annotations
-        addAnnotations(icd9Ontology);
+        addAnnotations(icd9, icd9.getClasses(factory));
     }
 
 
-    private void addICD9Ontology(File file) throws OWLOntologyCreationException {
-        Out.p("Loading ICD9 terminology");
-        OWLOntology icd9Ontology = manager.loadOntologyFromOntologyDocument(file);
+    private void addICD9Ontology(File file) throws IOException {
+        // parsed, or mapped from the snapshot of a previous run
+        ICD9Terminology icd9 = ICD9Loader.initTerminology(file);
+        OWLClass[] cls = icd9.getClasses(factory);
         // get class hierarchy
         Out.p("Adding class hierarchy");
-        Set<OWLSubClassOfAxiom> classAxioms = new HashSet<>();
-        for (OWLAxiom axiom : icd9Ontology.getAxioms()) {
-            if (axiom instanceof OWLSubClassOfAxiom) {
-                OWLSubClassOfAxiom clAxiom = (OWLSubClassOfAxiom) axiom;
-                classAxioms.add(clAxiom);
-            }
-        }
+        Set<OWLSubClassOfAxiom> classAxioms = icd9.getSubClassAxioms(cls, factory);
         manager.addAxioms(ontology, classAxioms);
         Out.p("Class axioms are added: " + classAxioms.size());
         // adding annotations
-        addAnnotations(icd9Ontology);
+        addAnnotations(icd9, cls);
     }
 
 
-    private void addAnnotations(OWLOntology icd9Ontology) {
+    private void addAnnotations(ICD9Terminology icd9, OWLClass[] cls) {
         // get annotations
         Out.p("Adding annotations");
-        Set<OWLClass> cls = icd9Ontology.getClassesInSignature();
-        Set<OWLAnnotationAssertionAxiom> labelAnnots = new HashSet<>();
-        for (OWLClass cl : cls) {
-            Set<OWLAnnotationAssertionAxiom> annots = icd9Ontology.getAnnotationAssertionAxioms(cl.getIRI());
-            for (OWLAnnotationAssertionAxiom annot : annots) {
-                if (annot.getProperty().getIRI().toString().contains("prefLabel")) {
-                    labelAnnots.add(annot);
-                }
-            }
-        }
+        Set<OWLAnnotationAssertionAxiom> labelAnnots = icd9.getLabelAxioms(cls, factory);
         Out.p("Annotations are added: " + labelAnnots.size());
         manager.addAxioms(ontology, labelAnnots);
         // create mapping
-        icd9Map = new HashMap<>();
         Out.p("Creating ICD9 code-class mappings");
-        for (OWLClass cl : cls) {
-            String clCode = cl.getIRI().toString().replace("http://purl.bioontology.org/ontology/ICD9CM/", "");
-            icd9Map.put(clCode, cl);
-        }
+        icd9Codes = icd9.getCodeTrie(cls);
     }
 
 
@@ -1,12 +1,15 @@
 package uk.ac.man.cs.rdb2rdf.poc;
 
-import com.opencsv.CSVReader;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
-import org.semanticweb.owlapi.reasoner.InferenceType;
-import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import uk.ac.man.cs.rdb2rdf.io.MappedCSVReader;
 import uk.ac.man.cs.rdb2rdf.io.Out;
-import uk.ac.man.cs.rdb2rdf.ont.ReasonerLoader;
+import uk.ac.man.cs.rdb2rdf.io.PipelineMetrics;
+import uk.ac.man.cs.rdb2rdf.io.Row;
+import uk.ac.man.cs.rdb2rdf.ont.HierarchyIndex;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9Loader;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9Terminology;
 
 import java.io.*;
 import java.util.*;
@@ -30,9 +33,12 @@ public class ContraindicationMapper {
     private OWLOntologyManager manager;
     private OWLOntology ontology;
     private OWLDataFactory factory;
-    private OWLReasoner reasoner;
 
-    private Map<String, OWLClass> icd9Map;
+    private ICD9Terminology icd9;
+    private OWLClass[] icd9Classes;
+    private ICD9CodeTrie<OWLClass> icd9Codes;
+    // subclasses of the ICD9 classes, instead of asking a reasoner
+    private HierarchyIndex icd9Hierarchy;
 
     private Map<String, Contraindication> drug2ContrMap;
 
@@ -40,6 +46,9 @@ public class ContraindicationMapper {
 
     private double scaleFactor = 1.0;
 
+    // counters and stage timings, see PipelineMetrics
+    private PipelineMetrics metrics = new PipelineMetrics();
+
 
 
     public ContraindicationMapper(File drug2contrcond, File cond2ICD, File drug2cat,
@@ -59,40 +68,37 @@ public class ContraindicationMapper {
         Map<String, String> mcode2codeMap = new HashMap<>();
         Map<String, String> mcode2nameMap = new HashMap<>();
         Map<String, String> mcode2orderMap = new HashMap<>();
-        CSVReader reader = new CSVReader(new FileReader(drug2id));
-        List<String[]> drug2codeRows = reader.readAll();
-        reader.close();
-        drug2codeRows.remove(0);
-        for (String[] row : drug2codeRows) {
-            String code = processCell(row[1]);
-            String multumCode = processCell(row[3]);
-            String name = processCell(row[4]);
+        MappedCSVReader reader = new MappedCSVReader(drug2id);
+        reader.next();
+        for (Row row = reader.next(); row != null; row = reader.next()) {
+            String code = processCell(row.get(1));
+            String multumCode = processCell(row.get(3));
+            String name = processCell(row.get(4));
             mcode2codeMap.put(multumCode, code);
             mcode2nameMap.put(multumCode, name);
             // order
-            String order = (row[5].isEmpty() ? "" : "form=" + row[5]);
-            order += (row[7].isEmpty() ? "" : " | dose=" + row[7]);
-            order += row[8];
-            order +=(row[11].isEmpty() ? "" : " | quan=" + row[11]);
-            order += row[12];
-            order += (row[15].isEmpty() ? "" : " | route=" + row[15]);
-            order += (row[16].isEmpty() ? "" : " | freq=" + row[16]);
-            order += (row[17].isEmpty() ? "" : " | dur=" + row[17]);
-            order += row[18];
+            String order = (row.get(5).isEmpty() ? "" : "form=" + row.get(5));
+            order += (row.get(7).isEmpty() ? "" : " | dose=" + row.get(7));
+            order += row.get(8);
+            order +=(row.get(11).isEmpty() ? "" : " | quan=" + row.get(11));
+            order += row.get(12);
+            order += (row.get(15).isEmpty() ? "" : " | route=" + row.get(15));
+            order += (row.get(16).isEmpty() ? "" : " | freq=" + row.get(16));
+            order += (row.get(17).isEmpty() ? "" : " | dur=" + row.get(17));
+            order += row.get(18);
             mcode2orderMap.put(multumCode, order);
         }
-
-        reader = new CSVReader(new FileReader(drug2indiccond));
-        List<String[]> drug2condRows = reader.readAll();
         reader.close();
-        drug2condRows.remove(0);
+
+        reader = new MappedCSVReader(drug2indiccond);
+        reader.next();
 
         drug2IndicMap = new HashMap<>();
-        for (String[] row : drug2condRows) {
+        for (Row row = reader.next(); row != null; row = reader.next()) {
             if (Math.random() > scaleFactor) {
                 continue;
             }
-            String multumCode = processCell(row[2]);
+            String multumCode = processCell(row.get(2));
             String code = mcode2codeMap.get(multumCode);
             if (code == null) {
                 continue;
@@ -108,69 +114,66 @@ public class ContraindicationMapper {
                 indic.orders = new HashSet<>();
                 drug2IndicMap.put(indic.drugCode, indic);
             }
-            String conditionId = processCell(row[0]);
+            String conditionId = processCell(row.get(0));
             indic.conditions.add(conditionId);
             indic.orders.add(mcode2orderMap.get(multumCode));
         }
+        reader.close();
 
         // map drugs to categories
-        reader = new CSVReader(new FileReader(drug2cat));
-        List<String[]> drug2catRows = reader.readAll();
-        reader.close();
-        drug2catRows.remove(0);
-        for (String[] row : drug2catRows) {
-            String drugCode = processCell(row[0]);
+        reader = new MappedCSVReader(drug2cat);
+        reader.next();
+        for (Row row = reader.next(); row != null; row = reader.next()) {
+            String drugCode = processCell(row.get(0));
             Indication indic = drug2IndicMap.get(drugCode);
             if (indic != null) {
-                indic.drugCategory = processCell(row[3]);
+                indic.drugCategory = processCell(row.get(3));
             }
         }
+        reader.close();
     }
 
     private void initContraindications(File drug2contrcondFile, File cond2ICDFile, File drug2catFile) throws IOException {
         // map conditions to ICD
         Map<String, Set<String>> cond2ICDMap = new HashMap<>();
-        CSVReader reader = new CSVReader(new FileReader(cond2ICDFile));
-        List<String[]> cond2ICDRows = reader.readAll();
-        reader.close();
-        cond2ICDRows.remove(0);
-        for (String[] row : cond2ICDRows) {
-            String condID = processCell(row[2]);
+        MappedCSVReader reader = new MappedCSVReader(cond2ICDFile);
+        reader.next();
+        for (Row row = reader.next(); row != null; row = reader.next()) {
+            String condID = processCell(row.get(2));
             Set<String> codes = cond2ICDMap.get(condID);
             if (codes == null) {
                 codes = new HashSet<>();
                 cond2ICDMap.put(condID, codes);
             }
-            String code = processCell(row[0]);
+            String code = processCell(row.get(0));
             codes.add(code);
         }
+        reader.close();
 
         // map drugs to ICD codes
-        reader = new CSVReader(new FileReader(drug2contrcondFile));
-        List<String[]> drug2condRows = reader.readAll();
-        reader.close();
-        drug2condRows.remove(0);
+        reader = new MappedCSVReader(drug2contrcondFile);
+        reader.next();
         drug2ContrMap = new HashMap<>();
-        for (String[] row : drug2condRows) {
+        for (Row row = reader.next(); row != null; row = reader.next()) {
             if (Math.random() > scaleFactor) {
                 continue;
             }
-            String drugCode = processCell(row[1]);
+            String drugCode = processCell(row.get(1));
             Contraindication contr;
             if (drug2ContrMap.containsKey(drugCode)) {
                 contr = drug2ContrMap.get(drugCode);
             } else {
                 contr = new Contraindication();
                 contr.drugCode = drugCode;
-                contr.drugName = processCell(row[2]);
+                contr.drugName = processCell(row.get(2));
                 contr.conditions = new HashSet<>();
                 drug2ContrMap.put(contr.drugCode, contr);
             }
-            String conditionId = processCell(row[3]);
+            String conditionId = processCell(row.get(3));
             if (cond2ICDMap.containsKey(conditionId)) {
                 contr.conditions.addAll(cond2ICDMap.get(conditionId));
             }
-            String severity = processCell(row[7]);
+            String severity = processCell(row.get(7));
             if (severity.contains("Minimal")) {
                 contr.severity = "Minimal";
             } else if (severity.contains("Moderate")) {
@@ -181,19 +184,19 @@ public class ContraindicationMapper {
                 contr.severity = severity;
             }
         }
+        reader.close();
 
         // map drugs to categories
-        reader = new CSVReader(new FileReader(drug2catFile));
-        List<String[]> drug2catRows = reader.readAll();
-        reader.close();
-        drug2catRows.remove(0);
-        for (String[] row : drug2catRows) {
-            String drugCode = processCell(row[0]);
+        reader = new MappedCSVReader(drug2catFile);
+        reader.next();
+        for (Row row = reader.next(); row != null; row = reader.next()) {
+            String drugCode = processCell(row.get(0));
             Contraindication contr = drug2ContrMap.get(drugCode);
             if (contr != null) {
-                contr.drugCategory = processCell(row[3]);
+                contr.drugCategory = processCell(row.get(3));
             }
         }
+        reader.close();
 
     }
 
@@ -206,57 +209,59 @@ public class ContraindicationMapper {
 
 
 
-    private void addICD9Ontology(File file) throws OWLOntologyCreationException {
-        Out.p("Loading ICD9 terminology");
-        OWLOntology icd9Ontology = manager.loadOntologyFromOntologyDocument(file);
+    private void addICD9Ontology(File file) throws IOException {
+        // parsed, or mapped from the snapshot of a previous run
+        icd9 = ICD9Loader.initTerminology(file);
+        OWLClass[] cls = icd9.getClasses(factory);
+        icd9Classes = cls;
         // get class hierarchy
         Out.p("Adding class hierarchy");
         Set<OWLSubClassOfAxiom> classAxioms = new HashSet<>();
-        for (OWLAxiom axiom : icd9Ontology.getAxioms()) {
-            if (axiom instanceof OWLSubClassOfAxiom) {
-                OWLSubClassOfAxiom clAxiom = (OWLSubClassOfAxiom) axiom;
-                if (!clAxiom.getSuperClass().equals(factory.getOWLThing())) {
-                    classAxioms.add(clAxiom);
-                }
+        for (OWLSubClassOfAxiom clAxiom : icd9.getSubClassAxioms(cls, factory)) {
+            if (!clAxiom.getSuperClass().equals(factory.getOWLThing())) {
+                classAxioms.add(clAxiom);
             }
         }
         manager.addAxioms(ontology, classAxioms);
         Out.p("Class axioms are added: " + classAxioms.size());
         // adding annotations
-        addAnnotations(icd9Ontology);
+        addAnnotations(icd9, cls);
     }
 
 
-    private void addAnnotations(OWLOntology icd9Ontology) {
+    private void addAnnotations(ICD9Terminology icd9, OWLClass[] cls) {
         // get annotations
         Out.p("Adding annotations");
-        Set<OWLClass> cls = icd9Ontology.getClassesInSignature();
-        Set<OWLAnnotationAssertionAxiom> labelAnnots = new HashSet<>();
-        for (OWLClass cl : cls) {
-            Set<OWLAnnotationAssertionAxiom> annots = icd9Ontology.getAnnotationAssertionAxioms(cl.getIRI());
-            for (OWLAnnotationAssertionAxiom annot : annots) {
-                if (annot.getProperty().getIRI().toString().contains("prefLabel")) {
-                    labelAnnots.add(annot);
-                }
-            }
-        }
+        Set<OWLAnnotationAssertionAxiom> labelAnnots = icd9.getLabelAxioms(cls, factory);
         Out.p("Annotations are added: " + labelAnnots.size());
         manager.addAxioms(ontology, labelAnnots);
         // create mapping
-        icd9Map = new HashMap<>();
         Out.p("Creating ICD9 code-class mappings");
-        for (OWLClass cl : cls) {
-            String clCode = cl.getIRI().toString().replace("http://purl.bioontology.org/ontology/ICD9CM/", "");
-            icd9Map.put(clCode, cl);
-        }
+        icd9Codes = icd9.getCodeTrie(cls);
+    }
+
+
+    private void computeClassHierarchy() {
+        // the ontology is the ICD9 hierarchy of named classes, so its taxonomy is the told one
+        Out.p("\nIndexing the class hierarchy");
+        long start = System.nanoTime();
+        icd9Hierarchy = icd9.getHierarchy();
+        metrics.record(PipelineMetrics.Stage.REASON, start);
     }
 
 
-    private void computeClassHierarchy() throws Exception {
-        // process the ontology by the reasoner
-        Out.p("\nInitialising the reasoner");
-        reasoner = ReasonerLoader.initReasoner(ontology);
-        reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+    // direct subclass of owl:Thing in the ontology, whose axioms to owl:Thing are left out
+    private boolean isTopClass(int id) {
+        OWLClass thing = factory.getOWLThing();
+        if (icd9Classes[id].equals(thing)) {
+            return false;
+        }
+        for (int k = 0; k < icd9.getParentCount(id); k++) {
+            if (!icd9Classes[icd9.getParent(id, k)].equals(thing)) {
+                return false;
+            }
+        }
+        return ontology.containsClassInSignature(icd9Classes[id].getIRI());
     }
 
 
@@ -276,8 +281,12 @@ public class ContraindicationMapper {
         manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(topCondClass, topClass));
         manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(topPatientClass, topClass));
 
-        Set<OWLClass> topCondClasses = reasoner.getSubClasses(
-                factory.getOWLThing(), true).getFlattened();
+        Set<OWLClass> topCondClasses = new HashSet<>();
+        for (int id = 0; id < icd9Classes.length; id++) {
+            if (isTopClass(id)) {
+                topCondClasses.add(icd9Classes[id]);
+            }
+        }
         for (OWLClass cl : topCondClasses) {
             manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(cl, topCondClass));
         }
@@ -325,9 +334,11 @@ public class ContraindicationMapper {
             ontFile.createNewFile();
         }
 
+        long start = System.nanoTime();
         FileOutputStream outputStream = new FileOutputStream(ontFile);
         BufferedOutputStream buffOutputStream = new BufferedOutputStream(outputStream);
         manager.saveOntology(ontology, buffOutputStream);
+        metrics.record(PipelineMetrics.Stage.SAVE, start);
     }
 
 
@@ -582,15 +593,14 @@ public class ContraindicationMapper {
             // conditions
             Set<String> condIDs = contr.conditions;
             for (String condID : condIDs) {
-                OWLClass condClass = findICD9Class(condID);
-                if (condClass == null) {
+                int condId = icd9Codes.find(condID);
+                if (condId < 0) {
                     continue;
                 }
+                OWLClass condClass = icd9Classes[condId];
                 cls1.add(condClass);
-                Set<OWLClass> condClasses = new HashSet<>(
-                        reasoner.getSubClasses(condClass, false).getFlattened()
-                );
-                condClasses.remove(factory.getOWLNothing());
+                Set<OWLClass> condClasses = new HashSet<>();
+                icd9Hierarchy.forEachDescendant(condId, id -> condClasses.add(icd9Classes[id]));
                 condClasses.add(condClass);
 
                 for (OWLClass subCl : condClasses) {
@@ -650,9 +660,11 @@ public class ContraindicationMapper {
             ontFile.createNewFile();
         }
 
+        long start = System.nanoTime();
         FileOutputStream outputStream = new FileOutputStream(ontFile);
         BufferedOutputStream buffOutputStream = new BufferedOutputStream(outputStream);
         manager.saveOntology(ontology, buffOutputStream);
+        metrics.record(PipelineMetrics.Stage.SAVE, start);
     }
 
 
@@ -660,7 +672,7 @@ public class ContraindicationMapper {
 
 
     private OWLClass findICD9Class(String code) {
-        return icd9Map.get(code);
+        return icd9Codes.get(code);
     }
 
 
@@ -669,9 +681,11 @@ public class ContraindicationMapper {
         ContraindicationMapper converter = new ContraindicationMapper(
                 new File(args[0]), new File(args[1]), new File(args[2]),
                 new File(args[3]), new File(args[4]), 1.0);
+        converter.metrics = PipelineMetrics.initMetrics(new File(args[6]).getName(), args);
         converter.addICD9Ontology(new File(args[5]));
         converter.computeClassHierarchy();
         converter.createMekonOntology(new File(args[6]));
+        converter.metrics.close();
     }
 
 
@@ -3,11 +3,12 @@ package uk.ac.man.cs.rdb2rdf.poc;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.Imports;
+import uk.ac.man.cs.rdb2rdf.io.BinaryTripleReader;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 import static uk.ac.man.cs.rdb2rdf.poc.CSV2OWLConverter.*;
@@ -19,15 +20,17 @@ public class TimeScaleConverter {
 
 
     public static void main(String args[]) throws OWLOntologyCreationException,
-            FileNotFoundException, OWLOntologyStorageException {
+            IOException, OWLOntologyStorageException {
         convertToTimeScale(new File(args[0]), new File(args[1]));
     }
 
     private static void convertToTimeScale(File inputFile, File outputFile)
-            throws OWLOntologyCreationException, FileNotFoundException, OWLOntologyStorageException {
-        // load
+            throws OWLOntologyCreationException, IOException, OWLOntologyStorageException {
+        // load, --format=BIN output without parsing
         OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-        OWLOntology inOnt = manager.loadOntologyFromOntologyDocument(inputFile);
+        OWLOntology inOnt = BinaryTripleReader.isBinary(inputFile)
+                ? BinaryTripleReader.loadOntology(manager, inputFile)
+                : manager.loadOntologyFromOntologyDocument(inputFile);
         OWLDataFactory factory = manager.getOWLDataFactory();
 
         IRI encTopIRI = IRI.create(IRI_NAME + IRI_DELIMITER + TOP_ENCOUNTER);
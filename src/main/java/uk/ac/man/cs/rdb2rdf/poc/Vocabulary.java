@@ -0,0 +1,76 @@
+package uk.ac.man.cs.rdb2rdf.poc;
+
+import org.semanticweb.owlapi.model.*;
+
+import static uk.ac.man.cs.rdb2rdf.poc.CSV2OWLConverter.*;
+
+/**
+ * Fixed classes and properties of the healthefacts mapping, built once per
+ * converter and shared read-only by all row processors.
+ */
+public class Vocabulary {
+
+    public static final String PREFIX = IRI_NAME + IRI_DELIMITER;
+
+    // classes
+    public final OWLClass encounterTop;
+    public final OWLClass medicineTop;
+    public final OWLClass labTop;
+
+    // object properties
+    public final OWLObjectProperty prescribedDrug;
+    public final OWLObjectProperty prescribed;
+    public final OWLObjectProperty orderedLab;
+    public final OWLObjectProperty orders;
+    public final OWLObjectProperty diagnosed;
+    public final OWLObjectProperty experienced;
+
+    // data properties
+    public final OWLDataProperty hasAge;
+    public final OWLDataProperty strength;
+    public final OWLDataProperty start;
+    public final OWLDataProperty end;
+    public final OWLDataProperty ndc;
+
+    // annotation properties
+    public final OWLAnnotationProperty label;
+    public final OWLAnnotationProperty year;
+    public final OWLAnnotationProperty month;
+    public final OWLAnnotationProperty day;
+
+
+    public Vocabulary(OWLDataFactory factory) {
+        encounterTop = factory.getOWLClass(iri(TOP_ENCOUNTER));
+        medicineTop = factory.getOWLClass(iri(TOP_MEDICINE));
+        labTop = factory.getOWLClass(iri(TOP_LAB));
+
+        prescribedDrug = factory.getOWLObjectProperty(iri("prescribedDrug"));
+        prescribed = factory.getOWLObjectProperty(iri("prescribed"));
+        orderedLab = factory.getOWLObjectProperty(iri("orderedLab"));
+        orders = factory.getOWLObjectProperty(iri("orders"));
+        diagnosed = factory.getOWLObjectProperty(iri("diagnosed"));
+        experienced = factory.getOWLObjectProperty(iri("experienced"));
+
+        hasAge = factory.getOWLDataProperty(iri("hasAge"));
+        strength = factory.getOWLDataProperty(iri("strength"));
+        start = factory.getOWLDataProperty(iri("start"));
+        end = factory.getOWLDataProperty(iri("end"));
+        ndc = factory.getOWLDataProperty(iri("ndc"));
+
+        label = factory.getRDFSLabel();
+        year = factory.getOWLAnnotationProperty(iri(YEAR));
+        month = factory.getOWLAnnotationProperty(iri(MONTH));
+        day = factory.getOWLAnnotationProperty(iri(DAY));
+    }
+
+
+    public static IRI iri(String name) {
+        return IRI.create(PREFIX + name);
+    }
+
+
+    public OWLObjectProperty conditionProperty(String condStr) {
+        return isDiagnosis(condStr) ? diagnosed : experienced;
+    }
+
+}
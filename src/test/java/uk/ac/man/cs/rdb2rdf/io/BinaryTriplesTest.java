@@ -0,0 +1,178 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BinaryTriplesTest {
+
+    private static final String NS = "urn:test#";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    private OWLOntology ontology;
+    // the ABox written on top of the ontology
+    private Set<OWLAxiom> axioms;
+
+
+    private OWLClass cls(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+
+    @Before
+    public void setUp() throws OWLOntologyCreationException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        ontology = manager.createOntology(IRI.create("urn:test"));
+        OWLObjectProperty hasDrug = factory.getOWLObjectProperty(IRI.create(NS + "hasDrug"));
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(cls("Diagnosis")));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(cls("250.00"), cls("Diagnosis")));
+        // not a triple, stored as functional syntax
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(cls("Treated"),
+                factory.getOWLObjectSomeValuesFrom(hasDrug, cls("Drug"))));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(cls("Treated"),
+                factory.getOWLObjectSomeValuesFrom(hasDrug, factory.getOWLThing())));
+
+        OWLDataProperty hasAge = factory.getOWLDataProperty(IRI.create(NS + "hasAge"));
+        OWLDataProperty note = factory.getOWLDataProperty(IRI.create(NS + "note"));
+        OWLAnnotationProperty source = factory.getOWLAnnotationProperty(IRI.create(NS + "source"));
+        axioms = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            OWLNamedIndividual enc = individual("E" + i);
+            axioms.add(factory.getOWLClassAssertionAxiom(cls(i % 2 == 0 ? "250.00" : "401"), enc));
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(hasDrug, enc, individual("M" + i % 7)));
+            axioms.add(factory.getOWLDataPropertyAssertionAxiom(hasAge, enc,
+                    factory.getOWLLiteral(Integer.toString(i), OWL2Datatype.XSD_INTEGER)));
+        }
+        axioms.add(factory.getOWLDataPropertyAssertionAxiom(note, individual("E1"),
+                factory.getOWLLiteral("Caf\u00e9 \"au\" lait\n<b> & co", "")));
+        axioms.add(factory.getOWLDataPropertyAssertionAxiom(note, individual("E2"),
+                factory.getOWLLiteral("Fi\u00e8vre", "fr")));
+        axioms.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), IRI.create(NS + "M1"),
+                factory.getOWLLiteral("Metformin")));
+        axioms.add(factory.getOWLClassAssertionAxiom(cls("401"), individual("E3"),
+                Collections.singleton(factory.getOWLAnnotation(source, factory.getOWLLiteral("orders.csv")))));
+    }
+
+
+    private File write(Set<OWLAxiom> axioms) throws IOException {
+        File file = new File(tmp.getRoot(), "out.bin");
+        BinaryTripleWriter writer = new BinaryTripleWriter(ontology, file);
+        writer.add(axioms);
+        writer.close();
+        return file;
+    }
+
+
+    private Set<OWLAxiom> expected() {
+        Set<OWLAxiom> expected = new HashSet<>(ontology.getAxioms());
+        expected.addAll(axioms);
+        return expected;
+    }
+
+
+    @Test
+    public void loadsAxiomsWritten() throws Exception {
+        File file = write(axioms);
+        OWLOntology loaded = BinaryTripleReader.loadOntology(OWLManager.createOWLOntologyManager(), file);
+        assertEquals(ontology.getOntologyID(), loaded.getOntologyID());
+        assertEquals(expected(), loaded.getAxioms());
+    }
+
+
+    @Test
+    public void walksTriplesById() throws Exception {
+        BinaryTripleReader reader = new BinaryTripleReader(write(axioms));
+        assertEquals("urn:test", reader.getOntologyIRI());
+        assertEquals(101, reader.getTripleCount(AxiomType.CLASS_ASSERTION));
+        assertEquals(100, reader.getTripleCount(AxiomType.OBJECT_PROPERTY_ASSERTION));
+        assertEquals(0, reader.getTripleCount(AxiomType.EQUIVALENT_CLASSES));
+
+        String[] terms = reader.getTerms();
+        assertEquals(reader.getTermCount(), terms.length);
+        for (int i = 0; i < terms.length; i++) {
+            assertEquals(terms[i], reader.getTerm(i));
+            assertEquals(i, reader.lookup(terms[i]));
+            if (i > 0) {
+                assertTrue(terms[i - 1].compareTo(terms[i]) < 0);
+            }
+        }
+        assertEquals(-1, reader.lookup(NS + "missing"));
+
+        int type = reader.lookup(BinaryTriples.RDF_TYPE.toString());
+        int annotated = 0;
+        BinaryTripleReader.TripleCursor cursor = reader.cursor(AxiomType.CLASS_ASSERTION);
+        int count = 0;
+        while (cursor.next()) {
+            assertEquals(AxiomType.CLASS_ASSERTION, cursor.getType());
+            assertEquals(type, cursor.predicate());
+            assertTrue(reader.getTerm(cursor.subject()).startsWith(NS + "E"));
+            if (cursor.annotations() >= 0) {
+                annotated++;
+                int[] pairs = reader.getAnnotations(cursor.annotations());
+                assertEquals(NS + "source", reader.getTerm(pairs[0]));
+            }
+            count++;
+        }
+        assertEquals(101, count);
+        assertEquals(1, annotated);
+    }
+
+
+    @Test
+    public void recognisesFormat() throws Exception {
+        assertTrue(BinaryTripleReader.isBinary(write(axioms)));
+        File text = tmp.newFile("out.ofn");
+        Files.write(text.toPath(), "Ontology(<urn:test>)\n".getBytes("UTF-8"));
+        assertFalse(BinaryTripleReader.isBinary(text));
+        assertFalse(BinaryTripleReader.isBinary(tmp.newFile("empty.bin")));
+    }
+
+
+    @Test
+    public void restoresAxiomsFromJournal() throws Exception {
+        File file = new File(tmp.getRoot(), "out.bin");
+        Checkpoint checkpoint = Checkpoint.initCheckpoint(file, new String[] {"--checkpoint=60"});
+        BinaryTripleWriter writer = new BinaryTripleWriter(ontology, file, checkpoint);
+        Set<OWLAxiom> first = new HashSet<>();
+        Set<OWLAxiom> second = new HashSet<>();
+        for (OWLAxiom axiom : axioms) {
+            (first.size() < axioms.size() / 2 ? first : second).add(axiom);
+        }
+        writer.add(first);
+        writer.checkpoint(checkpoint);
+        checkpoint.save();
+        // axioms after the checkpoint are lost with the run, and no
+        // declarations are added by the journal
+        writer.add(second);
+
+        Checkpoint resumed = Checkpoint.initCheckpoint(file, new String[] {"--resume"});
+        writer = new BinaryTripleWriter(ontology, file, resumed);
+        writer.add(second);
+        writer.close();
+        OWLOntology loaded = BinaryTripleReader.loadOntology(OWLManager.createOWLOntologyManager(), file);
+        assertEquals(expected(), loaded.getAxioms());
+    }
+
+}
@@ -0,0 +1,46 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps every axiom it gets, in order, with the part it was sent to
+ */
+class CollectingSink implements AxiomSink {
+
+    final List<OWLAxiom> axioms = new ArrayList<>();
+    final List<Integer> parts = new ArrayList<>();
+    int checkpoints;
+    boolean closed;
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> batch) {
+        add(batch, -1);
+    }
+
+
+    @Override
+    public void add(Set<? extends OWLAxiom> batch, int part) {
+        for (OWLAxiom axiom : batch) {
+            axioms.add(axiom);
+            parts.add(part);
+        }
+    }
+
+
+    @Override
+    public void checkpoint(Checkpoint checkpoint) {
+        checkpoints++;
+    }
+
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+}
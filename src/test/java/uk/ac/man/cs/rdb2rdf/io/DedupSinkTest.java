@@ -0,0 +1,108 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DedupSinkTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+
+    private OWLAxiom axiom(int cls, int ind) {
+        return factory.getOWLClassAssertionAxiom(factory.getOWLClass(IRI.create("urn:c" + cls)),
+                factory.getOWLNamedIndividual(IRI.create("urn:i" + ind)));
+    }
+
+
+    private Set<OWLAxiom> batch(int from, int to) {
+        Set<OWLAxiom> batch = new LinkedHashSet<>();
+        for (int i = from; i < to; i++) {
+            batch.add(axiom(i % 7, i));
+        }
+        return batch;
+    }
+
+
+    @Test
+    public void dropsAxiomsSeenBefore() throws IOException {
+        CollectingSink target = new CollectingSink();
+        DedupSink dedup = new DedupSink(target, false);
+        dedup.add(batch(0, 10));
+        dedup.add(batch(5, 15));
+        dedup.add(batch(0, 15));
+        assertEquals(new ArrayList<>(batch(0, 15)), target.axioms);
+        assertEquals(35, dedup.getAxiomCount());
+        assertEquals(20, dedup.getDuplicateCount());
+        dedup.close();
+        assertTrue(target.closed);
+    }
+
+
+    @Test
+    public void bloomFilterKeepsSameAxioms() throws IOException {
+        // more than the initial table holds, so both sinks resize
+        Random random = new Random(42);
+        CollectingSink plain = new CollectingSink();
+        CollectingSink bloom = new CollectingSink();
+        DedupSink plainDedup = new DedupSink(plain, false);
+        DedupSink bloomDedup = new DedupSink(bloom, true);
+        Set<OWLAxiom> distinct = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(60000);
+            Set<OWLAxiom> batch = batch(from, from + 500);
+            distinct.addAll(batch);
+            plainDedup.add(batch);
+            bloomDedup.add(batch);
+        }
+        assertEquals(plain.axioms, bloom.axioms);
+        assertEquals(distinct.size(), plain.axioms.size());
+        assertEquals(distinct, new HashSet<>(plain.axioms));
+        assertEquals(plainDedup.getDuplicateCount(), bloomDedup.getDuplicateCount());
+    }
+
+
+    @Test
+    public void keepsPartOfBatch() throws IOException {
+        CollectingSink target = new CollectingSink();
+        DedupSink dedup = new DedupSink(target, false);
+        dedup.add(batch(0, 2), 3);
+        dedup.add(batch(0, 3), 1);
+        assertEquals(Arrays.asList(3, 3, 1), target.parts);
+    }
+
+
+    @Test
+    public void restoresSeenAxiomsFromCheckpoint() throws IOException {
+        File ontFile = new File(tmp.getRoot(), "out.ofn");
+        Checkpoint checkpoint = Checkpoint.initCheckpoint(ontFile, new String[] {"--checkpoint=60"});
+        DedupSink dedup = new DedupSink(new CollectingSink(), true, checkpoint);
+        dedup.add(batch(0, 100));
+        dedup.add(batch(50, 60));
+        dedup.checkpoint(checkpoint);
+        checkpoint.save();
+
+        Checkpoint resumed = Checkpoint.initCheckpoint(ontFile, new String[] {"--resume"});
+        assertTrue(resumed.isResumed());
+        CollectingSink target = new CollectingSink();
+        DedupSink restored = new DedupSink(target, true, resumed);
+        assertEquals(110, restored.getAxiomCount());
+        assertEquals(10, restored.getDuplicateCount());
+        restored.add(batch(90, 110));
+        assertEquals(new ArrayList<>(batch(100, 110)), target.axioms);
+    }
+
+}
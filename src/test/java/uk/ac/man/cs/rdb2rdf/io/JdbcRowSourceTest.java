@@ -0,0 +1,132 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class JdbcRowSourceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private StubDriver driver = StubDriver.INSTANCE;
+
+
+    @Before
+    public void setUp() {
+        driver.reset(new String[] {"E1", "250.00"}, new String[] {"E2", null});
+    }
+
+
+    @Test
+    public void streamsRowsThroughCursor() throws IOException {
+        try (JdbcRowSource source = new JdbcRowSource(StubDriver.URL, null, null,
+                " SELECT enc, code FROM diagnosis ;\n", 500)) {
+            Row row = source.next();
+            assertEquals("E1", row.get(0));
+            assertEquals("250.00", row.get(1));
+            row = source.next();
+            assertEquals("E2", row.get(0));
+            // NULL as in a COPY export
+            assertEquals("", row.get(1));
+            assertNull(source.next());
+        }
+        // no semicolon, or the driver would not use a cursor
+        assertEquals("SELECT enc, code FROM diagnosis", driver.queries.get(0));
+        assertEquals(500, driver.fetchSize);
+        assertEquals(1, driver.cursors);
+        assertEquals(1, driver.rollbacks);
+        assertEquals(1, driver.closed);
+    }
+
+
+    @Test
+    public void readsQueryFileWithDbOption() throws IOException {
+        File input = tmp.newFile("diagnosis.sql");
+        Files.write(input.toPath(), "SELECT enc, code FROM diagnosis;".getBytes(StandardCharsets.UTF_8));
+        String[] args = {"--db=" + StubDriver.URL, "--fetch=100"};
+        try (RowSource source = SourceLoader.initSource(input, true, args)) {
+            assertTrue(source instanceof JdbcRowSource);
+            // no header to skip in a query result
+            assertEquals("E1", source.next().get(0));
+        }
+        assertEquals(100, driver.fetchSize);
+    }
+
+
+    @Test
+    public void readsCsvWithoutDbOption() throws IOException {
+        File input = tmp.newFile("diagnosis.csv");
+        Files.write(input.toPath(), "enc,code\nE1,250.00\n".getBytes(StandardCharsets.UTF_8));
+        try (RowSource source = SourceLoader.initSource(input, true, new String[0])) {
+            assertEquals("E1", source.next().get(0));
+            assertNull(source.next());
+        }
+        assertEquals(0, driver.connections);
+    }
+
+
+    @Test
+    public void restrictsQueryToWatermarks() {
+        String sql = "SELECT enc, code FROM diagnosis;";
+        assertEquals("SELECT * FROM (SELECT enc, code FROM diagnosis) AS wm"
+                        + " WHERE wm.enc <= CAST('E9' AS text)",
+                JdbcRowSource.watermarkQuery(sql, "enc", null, "E9", "text"));
+        assertEquals("SELECT * FROM (SELECT enc, code FROM diagnosis) AS wm"
+                        + " WHERE wm.enc > CAST('E9' AS text) AND wm.enc <= CAST('E''12' AS text)",
+                JdbcRowSource.watermarkQuery(sql, "enc", "E9", "E'12", "text"));
+        // no rows yet
+        assertEquals("SELECT * FROM (SELECT enc, code FROM diagnosis) AS wm WHERE false",
+                JdbcRowSource.watermarkQuery(sql, "enc", null, null, null));
+    }
+
+
+    @Test
+    public void readsRowsAboveLastWatermark() throws IOException {
+        File input = tmp.newFile("diagnosis.sql");
+        Files.write(input.toPath(), "SELECT enc, code FROM diagnosis;".getBytes(StandardCharsets.UTF_8));
+        File ontFile = new File(tmp.getRoot(), "out.ofn");
+        String[] args = {"--db=" + StubDriver.URL, "--incremental", "--watermark=enc"};
+
+        // the maximum of the column is the only row of every query
+        driver.reset(new String[] {"E9", "text"});
+        Checkpoint checkpoint = Checkpoint.initCheckpoint(ontFile, args);
+        SourceLoader.initSource(input, false, args, checkpoint).close();
+        assertEquals(JdbcRowSource.watermarkQuery("SELECT enc, code FROM diagnosis", "enc", null, "E9", "text"),
+                driver.queries.get(driver.queries.size() - 1));
+        checkpoint.complete();
+        checkpoint.save();
+
+        driver.reset(new String[] {"E12", "text"});
+        checkpoint = Checkpoint.initCheckpoint(ontFile, args);
+        assertTrue(checkpoint.isResumed());
+        SourceLoader.initSource(input, false, args, checkpoint).close();
+        assertEquals(JdbcRowSource.watermarkQuery("SELECT enc, code FROM diagnosis", "enc", "E9", "E12", "text"),
+                driver.queries.get(driver.queries.size() - 1));
+    }
+
+
+    @Test(expected = IOException.class)
+    public void needsWatermarkColumnForIncrementalQuery() throws IOException {
+        File input = tmp.newFile("diagnosis.sql");
+        Files.write(input.toPath(), "SELECT enc, code FROM diagnosis;".getBytes(StandardCharsets.UTF_8));
+        String[] args = {"--db=" + StubDriver.URL, "--incremental"};
+        Checkpoint checkpoint = Checkpoint.initCheckpoint(new File(tmp.getRoot(), "out.ofn"), args);
+        SourceLoader.initSource(input, false, args, checkpoint);
+    }
+
+
+    @Test(expected = IOException.class)
+    public void reportsFailedConnection() throws IOException {
+        new JdbcRowSource("jdbc:none:test", null, null, "SELECT 1", 10);
+    }
+
+}
@@ -0,0 +1,118 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import com.opencsv.CSVReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedCSVReaderTest {
+
+    // rows CSVReader reads without losing any
+    private static final String EDGE_CASES = "id,name,note\n"
+            + "1,GAUZE 4\"X4\" PAD,plain\n"
+            + "2,\"doubled \"\"quote\"\"\",x\n"
+            + "3,\"escaped \\\"quote\\\"\",x\n"
+            + "4,\"multi\nline, with separator\",x\n"
+            + "5,\"crlf\r\ninside\",x\r\n"
+            + "6,lone cr\r"
+            + "7,\"cr\rinside\",x\n"
+            + "8,back\\slash,x\\\\y\n"
+            + "9,\"closed\"tail,x\n"
+            + "10,  \"spaces before\",  spaces kept \n"
+            + "11,\"\",,\n"
+            + "12,x\\\"y,\"a\\\\b\"\n"
+            + "13,Caf\u00e9,\"na\u00efve, \"\"\u00fcber\"\"\"\n"
+            + "\n"
+            + "15,last row,without terminator";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+
+    private File write(String csv) throws IOException {
+        File file = tmp.newFile();
+        Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+
+    private static List<List<String>> readOpenCsv(File file) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                rows.add(Arrays.asList(row));
+            }
+        }
+        return rows;
+    }
+
+
+    private static List<List<String>> readMapped(File file) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (MappedCSVReader reader = new MappedCSVReader(file)) {
+            Row row;
+            while ((row = reader.next()) != null) {
+                List<String> cells = new ArrayList<>();
+                for (int i = 0; i < row.size(); i++) {
+                    cells.add(row.get(i));
+                    assertEquals(row.get(i), row.getChars(i).toString());
+                }
+                rows.add(cells);
+            }
+        }
+        return rows;
+    }
+
+
+    @Test
+    public void readsRowsAsCSVReader() throws IOException {
+        File file = write(EDGE_CASES);
+        List<List<String>> expected = readOpenCsv(file);
+        assertEquals(16, expected.size());
+        assertEquals(expected, readMapped(file));
+    }
+
+
+    @Test
+    public void keepsQuoteInsideUnquotedCell() throws IOException {
+        // CSVReader reads the rest of the file into the quoted cell and loses it
+        File file = write("1,5\" GAUZE,x\n2,y,z\n3,\"ok\",w\n");
+        List<List<String>> expected = Arrays.asList(
+                Arrays.asList("1", "5\" GAUZE", "x"),
+                Arrays.asList("2", "y", "z"),
+                Arrays.asList("3", "ok", "w"));
+        assertEquals(expected, readMapped(file));
+    }
+
+
+    @Test
+    public void seeksToRow() throws IOException {
+        File file = write(EDGE_CASES);
+        List<Long> positions = new ArrayList<>();
+        List<List<String>> rows = readMapped(file);
+        try (MappedCSVReader reader = new MappedCSVReader(file)) {
+            while (reader.next() != null) {
+                positions.add(reader.getPosition());
+            }
+            for (int i = positions.size() - 2; i >= 0; i--) {
+                reader.seek(positions.get(i));
+                assertEquals(rows.get(i + 1).get(0), reader.next().get(0));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class NTriplesWriterTest {
+
+    private static final String NS = "urn:test#";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    private OWLOntology ontology;
+    // the ABox written on top of the ontology
+    private Set<OWLAxiom> axioms;
+
+
+    private OWLClass cls(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+
+    @Before
+    public void setUp() throws OWLOntologyCreationException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        ontology = manager.createOntology(IRI.create("urn:test"));
+        OWLObjectProperty hasDrug = factory.getOWLObjectProperty(IRI.create(NS + "hasDrug"));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(cls("250.00"), cls("Diagnosis")));
+        // through the RDF translator
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(cls("Treated"),
+                factory.getOWLObjectSomeValuesFrom(hasDrug, cls("Drug"))));
+
+        OWLDataProperty hasAge = factory.getOWLDataProperty(IRI.create(NS + "hasAge"));
+        OWLDataProperty note = factory.getOWLDataProperty(IRI.create(NS + "note"));
+        OWLAnnotationProperty source = factory.getOWLAnnotationProperty(IRI.create(NS + "source"));
+        axioms = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            OWLNamedIndividual enc = individual("E" + i);
+            axioms.add(factory.getOWLClassAssertionAxiom(cls(i % 2 == 0 ? "250.00" : "401"), enc));
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(hasDrug, enc, individual("M" + i % 7)));
+            axioms.add(factory.getOWLDataPropertyAssertionAxiom(hasAge, enc,
+                    factory.getOWLLiteral(Integer.toString(i), OWL2Datatype.XSD_INTEGER)));
+        }
+        axioms.add(factory.getOWLDataPropertyAssertionAxiom(note, individual("E1"),
+                factory.getOWLLiteral("Caf\u00e9 \"au\" lait\n<b> & co\\", "")));
+        axioms.add(factory.getOWLDataPropertyAssertionAxiom(note, individual("E2"),
+                factory.getOWLLiteral("Fi\u00e8vre", "fr")));
+        axioms.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), IRI.create(NS + "M1"),
+                factory.getOWLLiteral("Metformin")));
+        // reified, so not also asserted without the annotation, which would be the same triple
+        axioms.add(factory.getOWLClassAssertionAxiom(cls("401"), individual("E100"),
+                Collections.singleton(factory.getOWLAnnotation(source, factory.getOWLLiteral("orders.csv")))));
+    }
+
+
+    private File write(String name, boolean turtle, Set<OWLAxiom> axioms) throws IOException {
+        File file = new File(tmp.getRoot(), name);
+        NTriplesWriter writer = new NTriplesWriter(ontology, file, turtle);
+        writer.add(axioms);
+        writer.close();
+        return file;
+    }
+
+
+    /**
+     * @return the axioms written and the declarations the writer adds for them
+     */
+    private Set<OWLAxiom> expected() {
+        Set<OWLAxiom> expected = new HashSet<>(ontology.getAxioms());
+        expected.addAll(axioms);
+        for (OWLAxiom axiom : new HashSet<>(expected)) {
+            for (OWLEntity entity : axiom.getSignature()) {
+                if (!entity.isOWLNamedIndividual() && !entity.isBuiltIn()) {
+                    expected.add(factory.getOWLDeclarationAxiom(entity));
+                }
+            }
+        }
+        return expected;
+    }
+
+
+    private static Set<OWLAxiom> load(File file) throws OWLOntologyCreationException {
+        return OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(file).getAxioms();
+    }
+
+
+    private static byte[] gunzip(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+
+    @Test
+    public void loadsNTriplesWritten() throws Exception {
+        assertEquals(expected(), load(write("out.nt", false, axioms)));
+    }
+
+
+    @Test
+    public void loadsTurtleWritten() throws Exception {
+        File file = write("out.ttl", true, axioms);
+        assertTrue(new String(Files.readAllBytes(file.toPath()), "UTF-8").startsWith("@prefix rdf: "));
+        assertEquals(expected(), load(file));
+    }
+
+
+    @Test
+    public void writesOneTriplePerLine() throws Exception {
+        for (String line : Files.readAllLines(write("out.nt", false, axioms).toPath())) {
+            assertTrue(line, line.endsWith(" ."));
+        }
+    }
+
+
+    @Test
+    public void compressesSameDocument() throws Exception {
+        // more than one block of the compressor
+        Set<OWLAxiom> many = new HashSet<>(axioms);
+        for (int i = 0; many.size() * 60 < 3 * ParallelGzipOutputStream.BLOCK_SIZE; i++) {
+            many.add(factory.getOWLClassAssertionAxiom(cls("C" + i % 50), individual("I" + i)));
+        }
+        byte[] plain = Files.readAllBytes(write("out.nt", false, many).toPath());
+        File gzip = write("out.nt.gz", false, many);
+        assertTrue(gzip.length() < plain.length);
+        assertArrayEquals(plain, gunzip(gzip));
+        assertArrayEquals(Files.readAllBytes(write("out.ttl", true, many).toPath()),
+                gunzip(write("out.ttl.gz", true, many)));
+    }
+
+}
@@ -0,0 +1,106 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class OntologySinkTest {
+
+    private static final String NS = "urn:test#";
+
+    // the first batch is more than the spillable axioms between checks of the heap
+    private static final int[] ROWS = {22000, 1000};
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+
+    private OWLClass cls(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+
+    /**
+     * Writes a TBox and an ABox in two batches through a new sink
+     */
+    private File convert(String name, long heapBudget) throws Exception {
+        File ontFile = new File(tmp.newFolder(name), "out.owl");
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("urn:test"));
+        OWLObjectProperty hasDrug = factory.getOWLObjectProperty(IRI.create(NS + "hasDrug"));
+        OWLDataProperty hasAge = factory.getOWLDataProperty(IRI.create(NS + "hasAge"));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(cls("250.00"), cls("Diagnosis")));
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(cls("Treated"),
+                factory.getOWLObjectSomeValuesFrom(hasDrug, cls("Drug"))));
+        // in the ontology before the sink, spilled with the rest
+        manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(cls("Drug"), individual("M0")));
+
+        OntologySink sink = new OntologySink(manager, ontology, ontFile, null, heapBudget);
+        int start = 0;
+        for (int batch = 0; batch < ROWS.length; batch++) {
+            Set<OWLAxiom> axioms = new HashSet<>();
+            for (int i = start; i < start + ROWS[batch]; i++) {
+                OWLNamedIndividual enc = individual("E" + i);
+                axioms.add(factory.getOWLClassAssertionAxiom(cls("C" + i % 97), enc));
+                axioms.add(factory.getOWLObjectPropertyAssertionAxiom(hasDrug, enc, individual("M" + i % 7)));
+                axioms.add(factory.getOWLDataPropertyAssertionAxiom(hasAge, enc,
+                        factory.getOWLLiteral(Integer.toString(i % 100), OWL2Datatype.XSD_INTEGER)));
+            }
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), IRI.create(NS + "M" + batch),
+                    factory.getOWLLiteral("Drug & <" + batch + ">")));
+            sink.add(axioms);
+            start += ROWS[batch];
+        }
+        sink.close();
+        return ontFile;
+    }
+
+
+    private static Set<OWLAxiom> load(File file) throws OWLOntologyCreationException {
+        return OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(file).getAxioms();
+    }
+
+
+    @Test
+    public void spilledOutputHasSameAxioms() throws Exception {
+        File inMemory = convert("memory", 0);
+        // any used heap is over the budget
+        File spilled = convert("spilled", 1);
+        assertEquals(load(inMemory), load(spilled));
+        // the runs are merged and removed
+        assertEquals(Arrays.asList("out.owl"), Arrays.asList(spilled.getParentFile().list()));
+    }
+
+
+    @Test
+    public void parsesHeapBudget() throws IOException {
+        assertEquals(512L << 20, OntologySink.parseHeapBudget("512"));
+        assertEquals(Runtime.getRuntime().maxMemory() / 2, OntologySink.parseHeapBudget("50%"));
+        assertEquals(0, OntologySink.parseHeapBudget("0"));
+    }
+
+
+    @Test(expected = IOException.class)
+    public void rejectsInvalidHeapBudget() throws IOException {
+        OntologySink.parseHeapBudget("lots");
+    }
+
+}
@@ -0,0 +1,97 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PartitionedSourceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private StubDriver driver = StubDriver.INSTANCE;
+
+    private File input;
+
+
+    @Before
+    public void setUp() throws IOException {
+        driver.reset(new String[] {"E1", "250.00"});
+        input = tmp.newFile("orders.sql");
+        Files.write(input.toPath(), "SELECT * FROM orders ORDER BY enc;".getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    public void hashesKeyColumn() {
+        assertEquals("SELECT * FROM (SELECT * FROM orders) AS part"
+                        + " WHERE (hashtext(part.enc::text) & 2147483647) % 4 = 1",
+                JdbcRowSource.partitionQuery("SELECT * FROM orders;", "enc", 4, 1));
+    }
+
+
+    @Test
+    public void hashesWholeRowsWithoutKey() {
+        assertEquals("SELECT * FROM (SELECT * FROM orders) AS part"
+                        + " WHERE (hashtext(part::text) & 2147483647) % 2 = 0",
+                JdbcRowSource.partitionQuery("SELECT * FROM orders", null, 2, 0));
+    }
+
+
+    @Test
+    public void opensConnectionPerPartition() throws IOException {
+        String[] args = {"--db=" + StubDriver.URL, "--partitions=3", "--partition-key=enc"};
+        List<RowSource> sources = SourceLoader.initSources(input, false, args);
+        try {
+            assertEquals(3, sources.size());
+            assertEquals(3, driver.connections);
+            for (RowSource source : sources) {
+                assertEquals("E1", source.next().get(0));
+            }
+        } finally {
+            for (RowSource source : sources) {
+                source.close();
+            }
+        }
+        List<String> queries = new ArrayList<>(driver.queries);
+        Collections.sort(queries);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(JdbcRowSource.partitionQuery("SELECT * FROM orders ORDER BY enc", "enc", 3, i),
+                    queries.get(i));
+        }
+        assertEquals(3, driver.closed);
+    }
+
+
+    @Test
+    public void keepsSingleSourceForOnePartition() throws IOException {
+        String[] args = {"--db=" + StubDriver.URL, "--partitions=1"};
+        List<RowSource> sources = SourceLoader.initSources(input, false, args);
+        assertEquals(1, sources.size());
+        sources.get(0).close();
+        assertEquals(Collections.singletonList("SELECT * FROM orders ORDER BY enc"), driver.queries);
+    }
+
+
+    @Test
+    public void ignoresPartitionsOfCsvFile() throws IOException {
+        File csv = tmp.newFile("orders.csv");
+        Files.write(csv.toPath(), "E1,250.00\n".getBytes(StandardCharsets.UTF_8));
+        List<RowSource> sources = SourceLoader.initSources(csv, false, new String[] {"--partitions=4"});
+        assertEquals(1, sources.size());
+        sources.get(0).close();
+        assertEquals(0, driver.connections);
+    }
+
+}
@@ -0,0 +1,242 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.*;
+
+public class RowPipelineTest {
+
+    private static final int ROWS = 5000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    private File csv;
+
+    // encounters of the rows processed, in order
+    private List<String> encounters = new ArrayList<>();
+
+
+    @Before
+    public void setUp() throws IOException {
+        csv = tmp.newFile("rows.csv");
+        try (PrintWriter out = new PrintWriter(csv, "UTF-8")) {
+            out.println("enc,code");
+            for (int i = 0; i < ROWS; i++) {
+                out.println("E" + i + ",C" + (i % 13));
+            }
+        }
+    }
+
+
+    private void process(Row row, AxiomSink sink) throws IOException {
+        encounters.add(row.get(0));
+        sink.add(Collections.singleton(factory.getOWLClassAssertionAxiom(
+                factory.getOWLClass(IRI.create("urn:test#" + row.get(1))),
+                factory.getOWLNamedIndividual(IRI.create("urn:test#" + row.get(0))))));
+    }
+
+
+    /**
+     * Converts the CSV file
+     * @param source wraps the CSV source, e.g. to fail
+     */
+    private void convert(OutputFormat format, File ontFile, UnaryOperator<RowSource> source,
+                         String... args) throws IOException, OWLOntologyCreationException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("urn:test"));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(
+                factory.getOWLClass(IRI.create("urn:test#C0")), factory.getOWLThing()));
+        Checkpoint checkpoint = Checkpoint.initCheckpoint(ontFile, args);
+        AxiomSink sink = SinkLoader.initSink(format, manager, ontology, ontFile, checkpoint);
+        // one worker, so the axioms are written in the order of the rows
+        RowPipeline pipeline = new RowPipeline(sink, 1);
+        pipeline.addSource("rows", source.apply(SourceLoader.initSource(csv, true, args, checkpoint)),
+                this::process);
+        pipeline.setCheckpoint(checkpoint);
+        pipeline.run();
+        pipeline.close();
+    }
+
+
+    /**
+     * The buffers of the workers are hash sets, so the lines are compared
+     * in sorted order; a line written twice or lost on resume still shows
+     */
+    private static void assertSameOutput(File expected, File actual) throws Exception {
+        List<String> expectedLines = Files.readAllLines(expected.toPath());
+        List<String> actualLines = Files.readAllLines(actual.toPath());
+        Collections.sort(expectedLines);
+        Collections.sort(actualLines);
+        assertEquals(expectedLines, actualLines);
+        assertEquals(load(expected).getAxioms(), load(actual).getAxioms());
+    }
+
+
+    private static OWLOntology load(File file) throws OWLOntologyCreationException {
+        return OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(file);
+    }
+
+
+    private void assertResumedRunSame(OutputFormat format) throws Exception {
+        String name = "out." + format.toString().toLowerCase();
+        File expected = new File(tmp.newFolder("full"), name);
+        convert(format, expected, rows -> rows);
+
+        File ontFile = new File(tmp.newFolder("run"), name);
+        File checkpointFile = new File(ontFile.getPath() + Checkpoint.SUFFIX);
+        try {
+            convert(format, ontFile, rows -> new FailingSource(rows, checkpointFile), "--checkpoint=1");
+            fail("The input should have failed");
+        } catch (IOException e) {
+            assertEquals(FailingSource.ERROR, e.getMessage());
+        }
+        assertTrue(checkpointFile.exists());
+
+        convert(format, ontFile, rows -> rows, "--resume");
+        assertSameOutput(expected, ontFile);
+        assertFalse(checkpointFile.exists());
+    }
+
+
+    @Test
+    public void resumesFunctionalSyntax() throws Exception {
+        assertResumedRunSame(OutputFormat.OFN);
+    }
+
+
+    @Test
+    public void resumesNTriples() throws Exception {
+        assertResumedRunSame(OutputFormat.NT);
+    }
+
+
+    @Test
+    public void resumesRdfXml() throws Exception {
+        assertResumedRunSame(OutputFormat.RDFXML);
+    }
+
+
+    @Test
+    public void resumesWithoutCheckpointFromStart() throws Exception {
+        File expected = new File(tmp.newFolder("full"), "out.ofn");
+        convert(OutputFormat.OFN, expected, rows -> rows);
+        File ontFile = new File(tmp.newFolder("run"), "out.ofn");
+        convert(OutputFormat.OFN, ontFile, rows -> rows, "--resume");
+        assertSameOutput(expected, ontFile);
+    }
+
+    private void assertAppendsNewRows(OutputFormat format) throws Exception {
+        File ontFile = new File(tmp.getRoot(), "out." + format.toString().toLowerCase());
+        convert(format, ontFile, rows -> rows, "--incremental");
+        byte[] first = Files.readAllBytes(ontFile.toPath());
+        Set<OWLAxiom> firstAxioms = load(ontFile).getAxioms();
+
+        try (PrintWriter out = new PrintWriter(new FileOutputStream(csv, true))) {
+            for (int i = ROWS; i < ROWS + 100; i++) {
+                out.println("E" + i + ",C" + (i % 13));
+            }
+        }
+        encounters.clear();
+        convert(format, ontFile, rows -> rows, "--incremental");
+
+        // only the new rows are read, and the output up to them is kept
+        assertEquals(100, encounters.size());
+        assertEquals("E" + ROWS, encounters.get(0));
+        byte[] second = Files.readAllBytes(ontFile.toPath());
+        int kept = format.equals(OutputFormat.OFN) ? first.length - ")\n".length() : first.length;
+        assertArrayEquals(Arrays.copyOf(first, kept), Arrays.copyOf(second, kept));
+        Set<OWLAxiom> axioms = load(ontFile).getAxioms();
+        assertTrue(axioms.containsAll(firstAxioms));
+        assertEquals(firstAxioms.size() + 100, axioms.size());
+        assertTrue(new File(ontFile.getPath() + Checkpoint.SUFFIX).exists());
+    }
+
+
+    @Test
+    public void appendsNewRowsToFunctionalSyntax() throws Exception {
+        assertAppendsNewRows(OutputFormat.OFN);
+    }
+
+
+    @Test
+    public void appendsNewRowsToNTriples() throws Exception {
+        assertAppendsNewRows(OutputFormat.NT);
+    }
+
+
+    @Test(expected = IOException.class)
+    public void cannotAppendToRdfXml() throws Exception {
+        convert(OutputFormat.RDFXML, new File(tmp.getRoot(), "out.rdf"), rows -> rows, "--incremental");
+    }
+
+
+
+    /**
+     * Stalls after two batches, so the next one waits for a checkpoint,
+     * and fails once the checkpoint is saved, as after a crash
+     */
+    private static class FailingSource implements RowSource {
+
+        static final String ERROR = "Input failed";
+
+        private RowSource rows;
+        private File checkpointFile;
+        private int count;
+
+        FailingSource(RowSource rows, File checkpointFile) {
+            this.rows = rows;
+            this.checkpointFile = checkpointFile;
+        }
+
+        @Override
+        public Row next() throws IOException {
+            count++;
+            if (count == 2 * RowPipeline.ROW_BATCH_SIZE + 1) {
+                try {
+                    // longer than the checkpoint interval
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (count == 3 * RowPipeline.ROW_BATCH_SIZE + 100) {
+                assertTrue(checkpointFile.exists());
+                throw new IOException(ERROR);
+            }
+            return rows.next();
+        }
+
+        @Override
+        public long getPosition() {
+            return rows.getPosition();
+        }
+
+        @Override
+        public void seek(long position) throws IOException {
+            rows.seek(position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            rows.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for jdbc:stub: URLs, so the JDBC sources are tested without
+ * a database. Every query returns the same rows; the queries, fetch sizes
+ * and transaction calls are recorded.
+ */
+class StubDriver implements Driver {
+
+    static final String URL = "jdbc:stub:test";
+
+    static final StubDriver INSTANCE = new StubDriver();
+
+    static {
+        try {
+            DriverManager.registerDriver(INSTANCE);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // rows of every query, null cells are SQL NULLs
+    volatile String[][] rows = new String[0][];
+
+    final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+    volatile int fetchSize;
+    volatile int connections;
+    volatile int cursors;
+    volatile int rollbacks;
+    volatile int closed;
+
+
+    /**
+     * Forgets the calls recorded so far and sets the rows of the next queries
+     */
+    void reset(String[]... rows) {
+        this.rows = rows;
+        queries.clear();
+        fetchSize = 0;
+        connections = 0;
+        cursors = 0;
+        rollbacks = 0;
+        closed = 0;
+    }
+
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        synchronized (this) {
+            connections++;
+        }
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setAutoCommit":
+                    if (!(Boolean) args[0]) {
+                        synchronized (this) {
+                            cursors++;
+                        }
+                    }
+                    return null;
+                case "prepareStatement":
+                case "createStatement":
+                    return statement(args == null ? null : (String) args[0]);
+                case "rollback":
+                    synchronized (this) {
+                        rollbacks++;
+                    }
+                    return null;
+                case "close":
+                    synchronized (this) {
+                        closed++;
+                    }
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+
+    private PreparedStatement statement(String prepared) {
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setFetchSize":
+                    fetchSize = (Integer) args[0];
+                    return null;
+                case "executeQuery":
+                    queries.add(args == null ? prepared : (String) args[0]);
+                    return resultSet(rows);
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+
+    private static ResultSet resultSet(String[][] rows) {
+        int columns = rows.length == 0 ? 0 : rows[0].length;
+        ResultSetMetaData meta = proxy(ResultSetMetaData.class, (proxy, method, args) ->
+                method.getName().equals("getColumnCount") ? columns : defaultValue(method.getReturnType()));
+        int[] row = {-1};
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    return ++row[0] < rows.length;
+                case "getString":
+                    return rows[row[0]][(Integer) args[0] - 1];
+                case "getMetaData":
+                    return meta;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url.startsWith(URL);
+    }
+
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+}
@@ -0,0 +1,89 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static uk.ac.man.cs.rdb2rdf.io.TimestampDecoder.DATE_FORMAT;
+
+public class TimestampDecoderTest {
+
+    private static final String[] VALID = {"2017-10-06 13:45:00", "2000-02-29 00:00:00", "1999-12-31 23:59:59",
+            "0001-01-01 00:00:00", "2016-01-09 07:05:09",
+            // the formatter moves these to a valid date or time
+            "2017-02-29 10:00:00", "2017-04-31 10:00:00", "2017-01-01 24:00:00"};
+
+    private static final String[] MALFORMED = {"2017-10-06", "2017-10-06T13:45:00", "2017-10-06 13:45",
+            "2017-10-06 13:45:00.5", "2017-10-06 13:45:00.123", "2017-10-06 13:45:00 ", " 2017-10-06 13:45:00",
+            "2017/10/06 13:45:00", "2017-13-06 13:45:00", "2017-00-06 13:45:00", "2017-10-32 13:45:00",
+            "2017-10-00 13:45:00", "2017-10-06 25:45:00", "2017-10-06 13:60:00", "2017-10-06 13:45:60",
+            "0000-01-01 00:00:00", "2017-1O-06 13:45:00", "2017-10-06 13-45-00", "17-10-06 13:45:00",
+            "12017-10-06 13:45:00", ""};
+
+
+    // packed as the general formatter reads it, or null if it rejects the string
+    private static Long parse(String str) {
+        try {
+            LocalDateTime dateTime = LocalDateTime.from(DATE_FORMAT.parse(str));
+            return TimestampDecoder.pack(dateTime.getYear(), dateTime.getMonthValue(), dateTime.getDayOfMonth(),
+                    dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond(), 0);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+
+    private static Long decode(String str) {
+        try {
+            return TimestampDecoder.decode(str);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+
+    @Test
+    public void decodesAsFormatter() {
+        for (String str : VALID) {
+            assertNotNull(str, parse(str));
+            assertEquals(str, parse(str), decode(str));
+        }
+        for (String str : MALFORMED) {
+            assertNull(str, parse(str));
+            assertNull(str, decode(str));
+        }
+    }
+
+
+    @Test
+    public void decodesRandomTimestamps() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(random.nextInt(Integer.MAX_VALUE), 0,
+                    ZoneOffset.UTC);
+            String str = DATE_FORMAT.format(dateTime);
+            long packed = TimestampDecoder.decode(str);
+            assertEquals(str, (long) parse(str), packed);
+            assertEquals(str, dateTime.toInstant(ZoneOffset.UTC).toEpochMilli(),
+                    TimestampDecoder.toEpochMilli(packed));
+        }
+    }
+
+
+    @Test
+    public void unpacksFields() {
+        long packed = TimestampDecoder.decode("2017-10-06 13:45:07");
+        assertEquals(2017, TimestampDecoder.year(packed));
+        assertEquals(10, TimestampDecoder.month(packed));
+        assertEquals(6, TimestampDecoder.day(packed));
+        assertEquals(13, TimestampDecoder.hour(packed));
+        assertEquals(45, TimestampDecoder.minute(packed));
+        assertEquals(7, TimestampDecoder.second(packed));
+        assertTrue(packed < TimestampDecoder.decode("2017-10-06 13:45:08"));
+    }
+
+}
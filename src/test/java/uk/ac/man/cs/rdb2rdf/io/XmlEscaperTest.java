@@ -0,0 +1,69 @@
+package uk.ac.man.cs.rdb2rdf.io;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * XmlEscaper against the StringEscapeUtils.escapeXml11 it replaces
+ */
+public class XmlEscaperTest {
+
+    private static final String[] CELLS = {
+            "", "250.00", "E800.1", "Brand & Co", "<b>", "\"quoted\"", "it's",
+            "tab\tnew\nline\r", "nul\u0000", "bell\u0007", "del\u007f", "nel\u0085", "c1\u0090",
+            "\ufffe\uffff", "pair \ud83d\ude00", "lone \ud83d", "lone \ude00 low", "\ude00\ud83d",
+            "caf\u00e9", "a&b<c>d\"e'f"
+    };
+
+
+    @Test
+    public void escapesAsCommonsText() {
+        for (String cell : CELLS) {
+            assertEquals(cell, StringEscapeUtils.escapeXml11(cell), XmlEscaper.escape(cell));
+        }
+    }
+
+
+    @Test
+    public void escapesRandomCellsAsCommonsText() {
+        Random random = new Random(42);
+        char[] alphabet = "aZ9 .,&<>\"'\t\n\r\u0000\u0001\u007f\u0085\u0090\u00e9\ud83d\ude00\ufffe".toCharArray();
+        for (int i = 0; i < 10000; i++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int k = 0; k < chars.length; k++) {
+                chars[k] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String cell = new String(chars);
+            assertEquals(StringEscapeUtils.escapeXml11(cell), XmlEscaper.escape(cell));
+        }
+    }
+
+
+    @Test
+    public void returnsCleanCellsAsTheyAre() {
+        String cell = new String("401.9");
+        assertSame(cell, XmlEscaper.escape(cell));
+        assertSame(cell, CSV.processCell(cell));
+        assertNull(XmlEscaper.escape(null));
+    }
+
+
+    @Test
+    public void escapesLongCells() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            buf.append("a&b");
+        }
+        String cell = buf.toString();
+        assertEquals(StringEscapeUtils.escapeXml11(cell), XmlEscaper.escape(cell));
+        // the per-thread buffer is dropped after a long cell
+        assertEquals("x&amp;y", XmlEscaper.escape("x&y"));
+    }
+
+}
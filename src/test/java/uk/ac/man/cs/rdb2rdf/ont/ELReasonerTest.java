@@ -0,0 +1,230 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.BufferingMode;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.ReasonerInternalException;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the class hierarchy of the EL reasoner with the one of HermiT
+ */
+public class ELReasonerTest {
+
+    private static final String NS = "urn:test#";
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    private OWLOntologyManager manager;
+    private OWLOntology ontology;
+
+
+    private OWLClass cls(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+
+    private OWLObjectProperty role(String name) {
+        return factory.getOWLObjectProperty(IRI.create(NS + name));
+    }
+
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+
+    private OWLClassExpression some(String role, String filler) {
+        return factory.getOWLObjectSomeValuesFrom(role(role), cls(filler));
+    }
+
+
+    private OWLClassExpression and(OWLClassExpression... conjuncts) {
+        return factory.getOWLObjectIntersectionOf(conjuncts);
+    }
+
+
+    private void add(OWLAxiom axiom) {
+        manager.addAxiom(ontology, axiom);
+    }
+
+
+    private void subClass(OWLClassExpression sub, OWLClassExpression sup) {
+        add(factory.getOWLSubClassOfAxiom(sub, sup));
+    }
+
+
+    @Before
+    public void setUp() throws OWLOntologyCreationException {
+        manager = OWLManager.createOWLOntologyManager();
+        ontology = manager.createOntology(IRI.create("urn:test"));
+        // a chain of subclasses and an equivalent of one of them
+        subClass(cls("Diabetes"), cls("Endocrine"));
+        subClass(cls("Endocrine"), cls("Diagnosis"));
+        add(factory.getOWLEquivalentClassesAxiom(cls("Metabolic"), cls("Endocrine")));
+        // intersections and existential restrictions on both sides
+        add(factory.getOWLEquivalentClassesAxiom(cls("DiabeticPatient"),
+                and(cls("Patient"), some("hasDiagnosis", "Diabetes"))));
+        add(factory.getOWLEquivalentClassesAxiom(cls("EndocrinePatient"),
+                and(cls("Patient"), some("hasDiagnosis", "Endocrine"))));
+        subClass(cls("Inpatient"), and(cls("Patient"), some("hasDiagnosis", "Diabetes")));
+        subClass(some("hasDrug", "Insulin"), cls("Treated"));
+        subClass(cls("Insulin"), cls("Drug"));
+        subClass(cls("InsulinUser"), some("takes", "Insulin"));
+        // role inclusions, transitivity and a chain
+        add(factory.getOWLSubObjectPropertyOfAxiom(role("takes"), role("hasDrug")));
+        add(factory.getOWLTransitiveObjectPropertyAxiom(role("partOf")));
+        subClass(cls("Ward"), some("partOf", "Hospital"));
+        subClass(cls("Bed"), some("partOf", "Ward"));
+        subClass(some("partOf", "Hospital"), cls("HospitalPart"));
+        add(factory.getOWLSubPropertyChainOfAxiom(Arrays.asList(role("locatedIn"), role("partOf")),
+                role("locatedIn")));
+        subClass(cls("Admitted"), some("locatedIn", "Bed"));
+        subClass(some("locatedIn", "Hospital"), cls("InHospital"));
+        // disjoint classes, one of them unsatisfiable, and the empty existentials it leads to
+        add(factory.getOWLDisjointClassesAxiom(cls("Diagnosis"), cls("Drug")));
+        add(factory.getOWLDisjointClassesAxiom(cls("Patient"), cls("Hospital"), cls("Ward")));
+        subClass(cls("Placebo"), and(cls("Drug"), cls("Diabetes")));
+        subClass(cls("PlaceboUser"), some("takes", "Placebo"));
+        subClass(cls("Treated"), factory.getOWLThing());
+    }
+
+
+    private static Set<Set<OWLClass>> nodes(NodeSet<OWLClass> nodeSet) {
+        Set<Set<OWLClass>> nodes = new HashSet<>();
+        for (Node<OWLClass> node : nodeSet) {
+            nodes.add(node.getEntities());
+        }
+        return nodes;
+    }
+
+
+    private void assertSameHierarchy(OWLReasoner expected, OWLReasoner actual) {
+        assertEquals(expected.isConsistent(), actual.isConsistent());
+        assertEquals(expected.getTopClassNode().getEntities(), actual.getTopClassNode().getEntities());
+        assertEquals(expected.getUnsatisfiableClasses().getEntities(),
+                actual.getUnsatisfiableClasses().getEntities());
+        Set<OWLClass> classes = new HashSet<>(ontology.getClassesInSignature(Imports.INCLUDED));
+        classes.add(factory.getOWLThing());
+        classes.add(factory.getOWLNothing());
+        for (OWLClass cl : classes) {
+            String message = cl.getIRI().getShortForm();
+            assertEquals(message, expected.getEquivalentClasses(cl).getEntities(),
+                    actual.getEquivalentClasses(cl).getEntities());
+            for (boolean direct : new boolean[] {true, false}) {
+                assertEquals(message, nodes(expected.getSuperClasses(cl, direct)),
+                        nodes(actual.getSuperClasses(cl, direct)));
+                assertEquals(message, nodes(expected.getSubClasses(cl, direct)),
+                        nodes(actual.getSubClasses(cl, direct)));
+            }
+            if (!cl.isOWLThing() && !cl.isOWLNothing()) {
+                assertEquals(message, nodes(expected.getDisjointClasses(cl)), nodes(actual.getDisjointClasses(cl)));
+            }
+        }
+    }
+
+
+    private void assertSameAsHermit() throws Exception {
+        OWLReasoner hermit = ReasonerLoader.initReasoner(ReasonerName.HERMIT, ontology);
+        OWLReasoner el = ReasonerLoader.initReasoner(ReasonerName.EL, ontology);
+        try {
+            assertEquals("EL", el.getReasonerName());
+            assertSameHierarchy(hermit, el);
+        } finally {
+            hermit.dispose();
+            el.dispose();
+        }
+    }
+
+
+    @Test
+    public void classifiesAsHermit() throws Exception {
+        assertSameAsHermit();
+    }
+
+
+    @Test
+    public void findsInferredSubsumptions() throws Exception {
+        OWLReasoner el = ReasonerLoader.initReasoner(ReasonerName.EL, ontology);
+        assertTrue(el.getSuperClasses(cls("DiabeticPatient"), false).containsEntity(cls("EndocrinePatient")));
+        assertTrue(el.getSuperClasses(cls("InsulinUser"), true).containsEntity(cls("Treated")));
+        assertTrue(el.getSuperClasses(cls("Bed"), false).containsEntity(cls("HospitalPart")));
+        assertTrue(el.getSuperClasses(cls("Admitted"), false).containsEntity(cls("InHospital")));
+        assertTrue(el.getUnsatisfiableClasses().contains(cls("PlaceboUser")));
+        assertTrue(el.getDisjointClasses(cls("Diabetes")).containsEntity(cls("Insulin")));
+        el.dispose();
+    }
+
+
+    @Test
+    public void classifiesChangesAsHermit() throws Exception {
+        OWLReasoner el = ReasonerLoader.initReasoner(ReasonerName.EL, ontology);
+        assertFalse(el.getSuperClasses(cls("Ward"), false).containsEntity(cls("Diagnosis")));
+        subClass(cls("Ward"), cls("Endocrine"));
+        subClass(cls("Diagnosis"), cls("Finding"));
+        el.flush();
+        assertTrue(el.getSuperClasses(cls("Ward"), false).containsEntity(cls("Finding")));
+        el.dispose();
+        assertSameAsHermit();
+    }
+
+
+    @Test
+    public void findsInconsistency() throws Exception {
+        add(factory.getOWLSubClassOfAxiom(factory.getOWLThing(), cls("Placebo")));
+        OWLReasoner hermit = ReasonerLoader.initReasoner(ReasonerName.HERMIT, ontology);
+        OWLReasoner el = ReasonerLoader.initReasoner(ReasonerName.EL, ontology);
+        assertFalse(hermit.isConsistent());
+        assertFalse(el.isConsistent());
+        hermit.dispose();
+        el.dispose();
+    }
+
+
+    @Test
+    public void answersIndividualsAsHermit() throws Exception {
+        add(factory.getOWLClassAssertionAxiom(cls("Inpatient"), individual("P1")));
+        add(factory.getOWLObjectPropertyAssertionAxiom(role("takes"), individual("P2"), individual("I1")));
+        add(factory.getOWLClassAssertionAxiom(cls("Insulin"), individual("I1")));
+        OWLReasoner hermit = ReasonerLoader.initReasoner(ReasonerName.HERMIT, ontology);
+        OWLReasoner el = ReasonerLoader.initReasoner(ReasonerName.EL, ontology);
+        for (String name : new String[] {"P1", "P2", "I1"}) {
+            assertEquals(name, nodes(hermit.getTypes(individual(name), false)),
+                    nodes(el.getTypes(individual(name), false)));
+        }
+        assertTrue(el.getTypes(individual("P2"), true).containsEntity(cls("Treated")));
+        OWLClassExpression endocrinePatient = and(cls("Patient"), some("hasDiagnosis", "Endocrine"));
+        assertEquals(hermit.getInstances(endocrinePatient, false).getFlattened(),
+                el.getInstances(endocrinePatient, false).getFlattened());
+        assertEquals(hermit.getObjectPropertyValues(individual("P2"), role("hasDrug")).getFlattened(),
+                el.getObjectPropertyValues(individual("P2"), role("hasDrug")).getFlattened());
+        assertEquals(hermit.getSuperObjectProperties(role("takes"), false).getFlattened(),
+                el.getSuperObjectProperties(role("takes"), false).getFlattened());
+        // a change reaches the DL reasoner as well
+        add(factory.getOWLClassAssertionAxiom(cls("Diabetes"), individual("D1")));
+        el.flush();
+        assertTrue(el.getTypes(individual("D1"), false).containsEntity(cls("Diagnosis")));
+        hermit.dispose();
+        el.dispose();
+    }
+
+
+    @Test(expected = ReasonerInternalException.class)
+    public void needsDLReasonerForIndividuals() {
+        OWLReasoner el = new ELReasoner(ontology, new SimpleConfiguration(), BufferingMode.BUFFERING, 1);
+        el.getTypes(individual("P1"), false);
+    }
+
+}
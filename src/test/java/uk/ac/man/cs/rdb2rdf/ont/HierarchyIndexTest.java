@@ -0,0 +1,142 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class HierarchyIndexTest {
+
+    // 0 with children 1 and 2, 1 with 3 and 4, 2 with 5, 5 with 6
+    private static final int[][] TREE = {{}, {0}, {0}, {1}, {1}, {2}, {5}};
+
+    // 5 under 1 and 2, 6 under 3 and 5 so in both subtrees, 7 under 6, 4 a second root
+    private static final int[][] DAG = {{}, {0}, {0}, {1}, {}, {1, 2}, {3, 5}, {6}, {4, 2}, {2, 2}};
+
+
+    private static HierarchyIndex index(int[][] parentsOf) {
+        int[] parentStart = new int[parentsOf.length + 1];
+        for (int i = 0; i < parentsOf.length; i++) {
+            parentStart[i + 1] = parentStart[i] + parentsOf[i].length;
+        }
+        int[] parents = new int[parentStart[parentsOf.length]];
+        for (int i = 0; i < parentsOf.length; i++) {
+            System.arraycopy(parentsOf[i], 0, parents, parentStart[i], parentsOf[i].length);
+        }
+        return new HierarchyIndex(parentStart, parents);
+    }
+
+
+    // by a search over the children
+    private static Set<Integer> descendants(int[][] parentsOf, int ancestor) {
+        Set<Integer> found = new HashSet<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(ancestor);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < parentsOf.length; i++) {
+                for (int parent : parentsOf[i]) {
+                    if (parent == node && found.add(i)) {
+                        queue.add(i);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+
+    private static void assertClosure(int[][] parentsOf) {
+        HierarchyIndex index = index(parentsOf);
+        assertEquals(parentsOf.length, index.size());
+        for (int a = 0; a < parentsOf.length; a++) {
+            Set<Integer> expected = descendants(parentsOf, a);
+            for (int d = 0; d < parentsOf.length; d++) {
+                assertEquals(d + " under " + a, expected.contains(d), index.isDescendant(d, a));
+            }
+            Set<Integer> passed = new HashSet<>();
+            index.forEachDescendant(a, id -> assertTrue(passed.add(id)));
+            assertEquals(expected, passed);
+            assertEquals(expected.size(), index.getDescendantCount(a));
+            // the ranges hold the class and its descendants
+            Set<Integer> ranged = new HashSet<>();
+            for (int k = 0; k < index.getRangeCount(a); k++) {
+                for (int p = index.getRangeStart(a, k); p < index.getRangeEnd(a, k); p++) {
+                    ranged.add(index.getClassAt(p));
+                }
+            }
+            expected.add(a);
+            assertEquals(expected, ranged);
+        }
+    }
+
+
+    @Test
+    public void indexesTree() {
+        assertClosure(TREE);
+        HierarchyIndex index = index(TREE);
+        for (int i = 0; i < TREE.length; i++) {
+            assertEquals(1, index.getRangeCount(i));
+        }
+        assertEquals(6, index.getDescendantCount(0));
+        assertEquals(0, index.getDescendantCount(6));
+        assertFalse(index.isDescendant(0, 0));
+        assertFalse(index.isDescendant(0, 6));
+    }
+
+
+    @Test
+    public void indexesSharedChildren() {
+        assertClosure(DAG);
+        HierarchyIndex index = index(DAG);
+        assertTrue(index.isDescendant(7, 1));
+        assertTrue(index.isDescendant(7, 2));
+        assertTrue(index.isDescendant(8, 4));
+        assertTrue(index.isDescendant(8, 2));
+        assertFalse(index.isDescendant(8, 1));
+    }
+
+
+    @Test
+    public void indexesRandomHierarchies() {
+        Random random = new Random(7);
+        for (int run = 0; run < 50; run++) {
+            int n = 1 + random.nextInt(40);
+            // parents are earlier in a random order of the classes
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                int j = random.nextInt(i + 1);
+                order[i] = order[j];
+                order[j] = i;
+            }
+            int[][] parentsOf = new int[n][];
+            for (int i = 0; i < n; i++) {
+                int count = i == 0 ? 0 : random.nextInt(Math.min(i, 3) + 1);
+                parentsOf[order[i]] = new int[count];
+                for (int k = 0; k < count; k++) {
+                    parentsOf[order[i]][k] = order[random.nextInt(i)];
+                }
+            }
+            assertClosure(parentsOf);
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCycle() {
+        // 1, 2 and 3 under each other, below the root 0
+        index(new int[][] {{}, {0, 3}, {1}, {2}});
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSelfParent() {
+        index(new int[][] {{}, {1}});
+    }
+
+}
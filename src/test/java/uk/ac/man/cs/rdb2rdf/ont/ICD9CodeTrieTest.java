@@ -0,0 +1,124 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ICD9CodeTrieTest {
+
+    private static final String[] CODES = {"001-139.99", "001", "038", "038.9", "139", "139.8",
+            "240-279.99", "250", "250.0", "250.00", "250.01", "401", "815.1", "81.51", "01.0",
+            "E800-E807.9", "E800.1", "V45.8"};
+
+    private ICD9CodeTrie<String> trie;
+
+
+    @Before
+    public void setUp() {
+        String[] values = new String[CODES.length];
+        for (int i = 0; i < CODES.length; i++) {
+            values[i] = "class " + CODES[i];
+        }
+        trie = new ICD9CodeTrie<>(CODES, values);
+    }
+
+
+    private List<String> codes(List<Integer> ids) {
+        List<String> codes = new ArrayList<>();
+        for (int id : ids) {
+            codes.add(trie.getCode(id));
+        }
+        return codes;
+    }
+
+
+    private List<String> withPrefix(String prefix) {
+        List<Integer> ids = new ArrayList<>();
+        trie.forEachWithPrefix(prefix, ids::add);
+        return codes(ids);
+    }
+
+
+    private List<String> inRange(String first, String last) {
+        List<Integer> ids = new ArrayList<>();
+        trie.forEachInRange(first, last, ids::add);
+        return codes(ids);
+    }
+
+
+    @Test
+    public void findsCodes() {
+        assertEquals(CODES.length, trie.size());
+        for (int i = 0; i < CODES.length; i++) {
+            assertEquals(i, trie.find(CODES[i]));
+            assertEquals(CODES[i], trie.getCode(i));
+            assertEquals("class " + CODES[i], trie.getValue(i));
+        }
+        assertEquals("class V45.8", trie.get(" v45.8 "));
+        assertEquals("class E800.1", trie.get("e800.1"));
+        assertEquals(-1, trie.find("250.1"));
+        assertEquals(-1, trie.find("25"));
+        assertEquals(-1, trie.find(""));
+        assertNull(trie.get("999.99"));
+    }
+
+
+    @Test
+    public void doesNotDotCodesWithoutDot() {
+        // could be the procedure 81.51 or the diagnosis 815.1
+        assertEquals(-1, trie.find("8151"));
+        assertEquals(-1, trie.find("2500"));
+        assertEquals(-1, trie.find("E8001"));
+        assertFalse(ICD9CodeTrie.isDiagnosis("8151"));
+        assertFalse(ICD9CodeTrie.isDiagnosis("2500"));
+    }
+
+
+    @Test
+    public void findsRangeWithoutEnd() {
+        assertEquals("001-139.99", trie.getCode(trie.find("001-139")));
+        assertEquals("240-279.99", trie.getCode(trie.find("240-279")));
+        assertEquals("E800-E807.9", trie.getCode(trie.find("E800-E807")));
+        assertEquals(-1, trie.find("001-"));
+        assertEquals(-1, trie.find("280-289"));
+    }
+
+
+    @Test
+    public void recognisesDiagnoses() {
+        for (String code : new String[] {"250", "250.01", "001-139.99", " 401 "}) {
+            assertTrue(code, ICD9CodeTrie.isDiagnosis(code));
+        }
+        for (String code : new String[] {"81.51", "01.0", "E800.1", "V45.8", "25", ""}) {
+            assertFalse(code, ICD9CodeTrie.isDiagnosis(code));
+        }
+    }
+
+
+    @Test
+    public void passesCodesWithPrefix() {
+        assertEquals(Arrays.asList("250", "250.0", "250.00", "250.01"), withPrefix("250"));
+        assertEquals(Arrays.asList("250.0", "250.00", "250.01"), withPrefix("250.0"));
+        assertEquals(Arrays.asList("038", "038.9"), withPrefix("03"));
+        assertEquals(Arrays.asList("E800-E807.9", "E800.1"), withPrefix("e800"));
+        assertEquals(Arrays.asList(), withPrefix("999"));
+    }
+
+
+    @Test
+    public void passesCodesInRange() {
+        assertEquals(Arrays.asList("001", "001-139.99", "038", "038.9", "139", "139.8"), inRange("001", "139"));
+        // procedures have a shorter category
+        assertEquals(Arrays.asList("240-279.99", "250", "250.0", "250.00", "250.01", "401", "815.1"),
+                inRange("240", "999"));
+        assertEquals(Arrays.asList("250.0", "250.00"), inRange("250.0", "250.00"));
+        assertEquals(Arrays.asList("01.0", "81.51"), inRange("00.0", "99.99"));
+        assertEquals(Arrays.asList(), inRange("500", "599"));
+    }
+
+}
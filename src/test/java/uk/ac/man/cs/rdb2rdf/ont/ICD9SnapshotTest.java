@@ -0,0 +1,123 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ICD9SnapshotTest {
+
+    private static final String ICD9 = ICD9Terminology.ICD9_PREFIX;
+
+    private static final String ONTOLOGY = "Prefix(skos:=<http://www.w3.org/2004/02/skos/core#>)\n"
+            + "Prefix(rdfs:=<http://www.w3.org/2000/01/rdf-schema#>)\n"
+            + "Ontology(<" + ICD9 + ">\n"
+            + "SubClassOf(<" + ICD9 + "250> <" + ICD9 + "240-279.99>)\n"
+            + "SubClassOf(<" + ICD9 + "250.0> <" + ICD9 + "250>)\n"
+            + "SubClassOf(<" + ICD9 + "250.01> <" + ICD9 + "250.0>)\n"
+            + "SubClassOf(<" + ICD9 + "250.01> <" + ICD9 + "Type1>)\n"
+            + "AnnotationAssertion(skos:prefLabel <" + ICD9 + "250> \"Diabetes mellitus\")\n"
+            + "AnnotationAssertion(skos:prefLabel <" + ICD9 + "250.0> \"Diab\u00e8te\"@fr)\n"
+            + "AnnotationAssertion(rdfs:comment <" + ICD9 + "250> \"not a label\")\n"
+            // kept as other axioms
+            + "SubClassOf(Annotation(rdfs:comment \"from 2015\") <" + ICD9 + "401> <" + ICD9 + "390-459.99>)\n"
+            + "SubClassOf(<" + ICD9 + "401> ObjectSomeValuesFrom(<urn:test#with> <" + ICD9 + "250>))\n"
+            + ")\n";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File source;
+    private File snapshot;
+
+
+    @Before
+    public void setUp() throws IOException {
+        source = tmp.newFile("icd9.ofn");
+        Files.write(source.toPath(), ONTOLOGY.getBytes(StandardCharsets.UTF_8));
+        snapshot = ICD9Snapshot.snapshotOf(source);
+    }
+
+
+    private static void assertSameTerminology(ICD9Terminology expected, ICD9Terminology actual) {
+        assertEquals(expected.getOntologyIRI(), actual.getOntologyIRI());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getIRI(i), actual.getIRI(i));
+            assertEquals(expected.getCode(i), actual.getCode(i));
+        }
+        assertArrayEquals(expected.getParentStart(), actual.getParentStart());
+        assertArrayEquals(expected.getParents(), actual.getParents());
+        assertArrayEquals(expected.getLabelClasses(), actual.getLabelClasses());
+        assertArrayEquals(expected.getLabelProperties(), actual.getLabelProperties());
+        assertArrayEquals(expected.getLabelValues(), actual.getLabelValues());
+        assertArrayEquals(expected.getLabelLangs(), actual.getLabelLangs());
+        assertArrayEquals(expected.getLabelDatatypes(), actual.getLabelDatatypes());
+        assertEquals(expected.getOtherAxioms(), actual.getOtherAxioms());
+    }
+
+
+    // modification time in the header of the snapshot
+    private long snapshotTime() throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(snapshot))) {
+            in.skipBytes(ICD9Snapshot.MAGIC.length + 4 + 8);
+            return in.readLong();
+        }
+    }
+
+
+    @Test
+    public void readsTerminologyWritten() throws IOException {
+        ICD9Terminology terminology = ICD9Loader.parseTerminology(source);
+        assertEquals(2, terminology.getLabelCount());
+        assertEquals(2, terminology.getOtherAxioms().size());
+        ICD9Snapshot.write(terminology, source, snapshot);
+        assertSameTerminology(terminology, ICD9Snapshot.read(snapshot, source));
+    }
+
+
+    @Test
+    public void acceptsTouchedSource() throws IOException {
+        ICD9Terminology terminology = ICD9Loader.parseTerminology(source);
+        ICD9Snapshot.write(terminology, source, snapshot);
+        // as after a copy
+        assertTrue(source.setLastModified(source.lastModified() - 60000));
+        assertNotEquals(source.lastModified(), snapshotTime());
+        assertSameTerminology(terminology, ICD9Snapshot.read(snapshot, source));
+        // so the next run does not hash the source again
+        assertEquals(source.lastModified(), snapshotTime());
+        assertSameTerminology(terminology, ICD9Snapshot.read(snapshot, source));
+    }
+
+
+    @Test
+    public void rejectsChangedSource() throws IOException {
+        ICD9Snapshot.write(ICD9Loader.parseTerminology(source), source, snapshot);
+        long time = source.lastModified();
+        // same size, other content
+        Files.write(source.toPath(), ONTOLOGY.replace("Diabetes", "Diabetis").getBytes(StandardCharsets.UTF_8));
+        assertTrue(source.setLastModified(time - 60000));
+        assertNull(ICD9Snapshot.read(snapshot, source));
+        // and the header is left as it was
+        assertEquals(time, snapshotTime());
+    }
+
+
+    @Test
+    public void loadsFromSnapshotOnceWritten() throws IOException {
+        assertFalse(snapshot.exists());
+        ICD9Terminology parsed = ICD9Loader.initTerminology(source);
+        assertTrue(snapshot.exists());
+        assertSameTerminology(parsed, ICD9Loader.initTerminology(source));
+    }
+
+}
@@ -0,0 +1,155 @@
+package uk.ac.man.cs.rdb2rdf.ont;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.HermiT.ReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the class hierarchy of the taxonomy reasoner with the one of HermiT
+ */
+public class TaxonomyReasonerTest {
+
+    private static final String NS = "urn:test#";
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    private OWLOntologyManager manager;
+    private OWLOntology ontology;
+
+
+    private OWLClass cls(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+
+    private void add(OWLAxiom axiom) {
+        manager.addAxiom(ontology, axiom);
+    }
+
+
+    private void subClass(String sub, String sup) {
+        add(factory.getOWLSubClassOfAxiom(cls(sub), cls(sup)));
+    }
+
+
+    @Before
+    public void setUp() throws OWLOntologyCreationException {
+        manager = OWLManager.createOWLOntologyManager();
+        ontology = manager.createOntology(IRI.create("urn:test"));
+        // a DAG: 250.01 has two parents, both under 240-279
+        subClass("250.01", "250.0");
+        subClass("250.01", "Type1");
+        subClass("250.0", "250");
+        subClass("Type1", "250");
+        subClass("250", "240-279");
+        subClass("Type1", "240-279");
+        // a cycle, so its classes are equivalent, under the DAG
+        subClass("E1", "E2");
+        subClass("E2", "E3");
+        subClass("E3", "E1");
+        subClass("E3", "250.0");
+        subClass("E1", "Other");
+        // equivalent classes, and owl:Thing as a superclass
+        add(factory.getOWLEquivalentClassesAxiom(cls("Diabetes"), cls("250"), cls("DM")));
+        add(factory.getOWLSubClassOfAxiom(cls("240-279"), factory.getOWLThing()));
+        // a class without logical axioms, and axioms that are not logical
+        add(factory.getOWLDeclarationAxiom(cls("Alone")));
+        add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), cls("250").getIRI(),
+                factory.getOWLLiteral("Diabetes mellitus")));
+    }
+
+
+    private static Set<Set<OWLClass>> nodes(NodeSet<OWLClass> nodeSet) {
+        Set<Set<OWLClass>> nodes = new HashSet<>();
+        for (Node<OWLClass> node : nodeSet) {
+            nodes.add(node.getEntities());
+        }
+        return nodes;
+    }
+
+
+    private void assertSameHierarchy(OWLReasoner expected, OWLReasoner actual) {
+        assertEquals(expected.isConsistent(), actual.isConsistent());
+        assertEquals(expected.getTopClassNode().getEntities(), actual.getTopClassNode().getEntities());
+        assertEquals(expected.getUnsatisfiableClasses().getEntities(),
+                actual.getUnsatisfiableClasses().getEntities());
+        Set<OWLClass> classes = new HashSet<>(ontology.getClassesInSignature(Imports.INCLUDED));
+        classes.add(factory.getOWLThing());
+        classes.add(factory.getOWLNothing());
+        for (OWLClass cl : classes) {
+            String message = cl.getIRI().getShortForm();
+            assertEquals(message, expected.isSatisfiable(cl), actual.isSatisfiable(cl));
+            assertEquals(message, expected.getEquivalentClasses(cl).getEntities(),
+                    actual.getEquivalentClasses(cl).getEntities());
+            for (boolean direct : new boolean[] {true, false}) {
+                assertEquals(message, nodes(expected.getSuperClasses(cl, direct)),
+                        nodes(actual.getSuperClasses(cl, direct)));
+                assertEquals(message, nodes(expected.getSubClasses(cl, direct)),
+                        nodes(actual.getSubClasses(cl, direct)));
+            }
+            assertEquals(message, nodes(expected.getDisjointClasses(cl)), nodes(actual.getDisjointClasses(cl)));
+        }
+    }
+
+
+    private void assertSameAsHermit(OWLReasoner reasoner) {
+        OWLReasoner hermit = new ReasonerFactory().createReasoner(ontology);
+        try {
+            assertSameHierarchy(hermit, reasoner);
+        } finally {
+            hermit.dispose();
+        }
+    }
+
+
+    @Test
+    public void classifiesAsHermit() throws Exception {
+        assertTrue(TaxonomyReasoner.isTaxonomy(ontology));
+        OWLReasoner reasoner = ReasonerLoader.initReasoner(ReasonerName.HERMIT, ontology);
+        assertEquals("Taxonomy", reasoner.getReasonerName());
+        assertSameAsHermit(reasoner);
+        reasoner.dispose();
+    }
+
+
+    @Test
+    public void classifiesTaxonomyChangesAsHermit() throws Exception {
+        OWLReasoner reasoner = ReasonerLoader.initReasoner(ReasonerName.HERMIT, ontology);
+        assertFalse(reasoner.getSuperClasses(cls("Other"), false).containsEntity(cls("240-279")));
+        // puts Other under the DAG and breaks the cycle
+        subClass("Other", "Type1");
+        manager.removeAxiom(ontology, factory.getOWLSubClassOfAxiom(cls("E3"), cls("E1")));
+        reasoner.flush();
+        assertTrue(reasoner.getSuperClasses(cls("Other"), false).containsEntity(cls("240-279")));
+        assertEquals("Taxonomy", reasoner.getReasonerName());
+        assertSameAsHermit(reasoner);
+        reasoner.dispose();
+    }
+
+
+    @Test
+    public void fallsBackToHermit() throws Exception {
+        OWLReasoner reasoner = ReasonerLoader.initReasoner(ReasonerName.HERMIT, ontology);
+        assertTrue(reasoner.isSatisfiable(cls("250.01")));
+        // not a taxonomy: 250.01 is under both and so unsatisfiable
+        add(factory.getOWLDisjointClassesAxiom(cls("250.0"), cls("Type1")));
+        add(factory.getOWLSubClassOfAxiom(cls("Alone"),
+                factory.getOWLObjectSomeValuesFrom(factory.getOWLObjectProperty(IRI.create(NS + "r")), cls("E2"))));
+        reasoner.flush();
+        assertFalse(reasoner.isSatisfiable(cls("250.01")));
+        assertSameAsHermit(reasoner);
+        reasoner.dispose();
+    }
+
+}
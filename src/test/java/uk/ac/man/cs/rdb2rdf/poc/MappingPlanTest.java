@@ -0,0 +1,185 @@
+package uk.ac.man.cs.rdb2rdf.poc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import uk.ac.man.cs.rdb2rdf.io.ArrayRow;
+import uk.ac.man.cs.rdb2rdf.io.AxiomSink;
+import uk.ac.man.cs.rdb2rdf.io.Checkpoint;
+import uk.ac.man.cs.rdb2rdf.io.Row;
+import uk.ac.man.cs.rdb2rdf.io.RowProcessor;
+import uk.ac.man.cs.rdb2rdf.map.MappingLoader;
+import uk.ac.man.cs.rdb2rdf.ont.ICD9CodeTrie;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Each bundled mapping gives the axioms of the processRowAs* method it replaces
+ */
+public class MappingPlanTest {
+
+    private static final String ICD9_IRI = "http://purl.bioontology.org/ontology/ICD9CM/";
+
+    private static final String[] CODES = {"250.00", "401", "38.93", "V45.8", "E849.0"};
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    private CSV2OWLConverter converter;
+
+
+    @Before
+    public void setUp() throws OWLOntologyCreationException {
+        OWLClass[] classes = new OWLClass[CODES.length];
+        for (int i = 0; i < CODES.length; i++) {
+            classes[i] = factory.getOWLClass(IRI.create(ICD9_IRI + CODES[i]));
+        }
+        converter = new CSV2OWLConverter();
+        converter.icd9Codes = new ICD9CodeTrie<>(CODES, classes);
+    }
+
+
+    private void assertSameAxioms(String mapping, RowProcessor method, Row... rows) throws IOException {
+        RowProcessor plan = MappingLoader.initPlan(mapping, factory, converter.icd9Codes);
+        int count = 0;
+        for (Row row : rows) {
+            Set<OWLAxiom> expected = new HashSet<>();
+            Set<OWLAxiom> actual = new HashSet<>();
+            method.process(row, sink(expected));
+            plan.process(row, sink(actual));
+            assertEquals(mapping + " " + row.get(0), expected, actual);
+            count += expected.size();
+        }
+        assertTrue(count > 0);
+    }
+
+
+    private static AxiomSink sink(Set<OWLAxiom> axioms) {
+        return new AxiomSink() {
+
+            @Override
+            public void add(Set<? extends OWLAxiom> batch) {
+                axioms.addAll(batch);
+            }
+
+            @Override
+            public void checkpoint(Checkpoint checkpoint) {
+            }
+
+            @Override
+            public void close() {
+            }
+
+        };
+    }
+
+
+    @Test
+    public void vitalsDiagnosis() throws IOException {
+        Row[] rows = {
+                new ArrayRow("E1", "Pulse", "72.0", "250.00"),
+                new ArrayRow("E2", "Weight", "81.5", "38.93"),
+                new ArrayRow("E3", "Systolic", "120", "V45.8")
+        };
+        assertSameAxioms("vitals_diagnosis_icd9", converter::processRowAsVitalsDiagnosisICD9, rows);
+        assertSameAxioms("vitals_diagnosis", converter::processRowAsVitalsDiagnosis, rows);
+    }
+
+
+    @Test
+    public void medicineLab() throws IOException {
+        Row[] rows = {
+                new ArrayRow("E1", "M1", "Brand & Co", "Class1", "L1", "Lab L1", "2014-01-02 10:00:00",
+                        "2014-01-02 11:00:00", "250.00", "Condition 250.00", "2014-01-01 09:00:00"),
+                new ArrayRow("E2", "M2", "Brand <2>", "Class2", "L2", "Lab L2", "2015-03-04 00:00:00",
+                        "2015-03-05 00:00:00", "V45.8", "Condition V45.8", "2015-03-03 12:30:00")
+        };
+        assertSameAxioms("medicine_lab_diagnosis_time", converter::processRowAsMedicineLabDiagnosisTime, rows);
+        assertSameAxioms("medicine_lab_time", converter::processRowAsMedicineLabTime, rows);
+    }
+
+
+    @Test
+    public void medicineDiagnosis() throws IOException {
+        Row[] rows = {
+                new ArrayRow("E1", "M1", "250.00"),
+                new ArrayRow("E2", "M2", "38.93"),
+                new ArrayRow("E3", "M3", "E849.0")
+        };
+        assertSameAxioms("medicine_diagnosis_icd9", converter::processRowAsMedicineDiagnosisICD9, rows);
+        assertSameAxioms("medicine_diagnosis_icd9_rich", converter::processRowAsMedicineDiagnosisICD9Rich, rows);
+    }
+
+
+    @Test
+    public void diagnosisRich() throws IOException {
+        assertSameAxioms("diagnosis_icd9_rich", converter::processRowAsDiagnosisICD9Rich,
+                new ArrayRow("1", "E1", "401"),
+                new ArrayRow("2", "E1", "38.93"),
+                new ArrayRow("3", "E2", "V45.8"));
+    }
+
+
+    @Test
+    public void demographics() throws IOException {
+        assertSameAxioms("medicine_diagnosis_icd9_demographics_rich",
+                converter::processRowAsMedicineDiagnosisICD9DemographicsRich,
+                new ArrayRow("E1", "M1", "250.00", "45", "Female", "Asian"),
+                new ArrayRow("E2", "M2", "401", "2.5", "Male", "African American"),
+                new ArrayRow("E3", "M3", "38.93", "101", "Unknown", "Other"));
+    }
+
+
+    @Test
+    public void population() throws IOException {
+        Row[] rows = {
+                new ArrayRow("E1", "45", "Female", "Asian", "250.00"),
+                new ArrayRow("E2", "7.5", "Male", "Caucasian", "V45.8"),
+                // over 100, skipped
+                new ArrayRow("E3", "120", "Male", "Hispanic", "401")
+        };
+        assertSameAxioms("population_diagnosis_icd9_patient_id",
+                converter::processRowAsPopulationDiagnosisICD9PatientID, rows);
+        assertSameAxioms("population_diagnosis_icd9", converter::processRowAsPopulationDiagnosisICD9, rows);
+        assertSameAxioms("population_diagnosis", converter::processRowAsPopulationDiagnosis, rows);
+    }
+
+
+    @Test
+    public void nonNumericVital() throws IOException {
+        assertSameAxioms("non_numeric_vital_diagnosis_medicine",
+                converter::processRowAsNonNumericVitalDiagnosisMedicine,
+                new ArrayRow("E1", "Smoking", "Former", "250.00", "Inpatient", "M1"),
+                new ArrayRow("E2", "Smoking", "Never", "38.93", "Emergency", "M2"));
+    }
+
+
+    @Test
+    public void orders() throws IOException {
+        assertSameAxioms("orders", converter::processRowAsOrders,
+                new ArrayRow("E1", "250.00", "", "", "", "M1", "10 mg", "2014-01-02 10:00:00", "2014-01-09 10:00:00"),
+                new ArrayRow("E2", "38.93", "", "", "", "M2", "5 ml", "2015-03-04 00:00:00", ""));
+    }
+
+
+    @Test
+    public void convertsWithoutICD9Ontology() throws IOException {
+        // as with create(), which loads no ICD9 ontology
+        converter.icd9Codes = null;
+        Set<OWLAxiom> axioms = new HashSet<>();
+        converter.processRowAsVitalsDiagnosis(new ArrayRow("E1", "Pulse", "72.0", "8151"), sink(axioms));
+        converter.processRowAsPopulationDiagnosis(new ArrayRow("E2", "45", "Female", "Asian", "250.00"),
+                sink(axioms));
+        assertEquals(6, axioms.size());
+        assertTrue(axioms.toString(), axioms.toString().contains("8151"));
+    }
+
+}